@@ -0,0 +1,103 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package benchmark;
+
+import java.util.Locale;
+
+/**
+ * The result of running one benchmark configuration.
+ */
+public class BenchmarkResult {
+
+    static final String CSV_HEADER = "workload,processes,workers,executors,stealSize,stealDelay,queueLimit,repetitions,"
+            + "timeMillis,activitiesPerSecond,eventsPerSecond,speedup,efficiency,correct";
+
+    final String workload;
+    final int processes;
+    final int workers;
+    final String stealSize;
+    final String stealDelay;
+    final String queueLimit;
+    final int repetitions;
+    final double timeMillis;
+    final long activities;
+    final long events;
+    final boolean correct;
+
+    double speedup = 1.0;
+    double efficiency = 1.0;
+
+    BenchmarkResult(String workload, int processes, int workers, String stealSize, String stealDelay, String queueLimit,
+            int repetitions, double timeMillis, long activities, long events, boolean correct) {
+        this.workload = workload;
+        this.processes = processes;
+        this.workers = workers;
+        this.stealSize = stealSize;
+        this.stealDelay = stealDelay;
+        this.queueLimit = queueLimit;
+        this.repetitions = repetitions;
+        this.timeMillis = timeMillis;
+        this.activities = activities;
+        this.events = events;
+        this.correct = correct;
+    }
+
+    int getExecutors() {
+        return processes * workers;
+    }
+
+    double getActivitiesPerSecond() {
+        return activities / (timeMillis / 1000.0);
+    }
+
+    double getEventsPerSecond() {
+        return events / (timeMillis / 1000.0);
+    }
+
+    /**
+     * Returns whether this result and the specified one only differ in the number of executors, so that they are on
+     * the same speedup curve.
+     */
+    boolean sameCurve(BenchmarkResult other) {
+        return workload.equals(other.workload) && stealSize.equals(other.stealSize) && stealDelay.equals(other.stealDelay)
+                && queueLimit.equals(other.queueLimit);
+    }
+
+    String toCSV() {
+        return String.format(Locale.ROOT, "\"%s\",%d,%d,%d,%s,%s,%s,%d,%.3f,%.1f,%.1f,%.3f,%.3f,%b", workload, processes,
+                workers, getExecutors(), stealSize, stealDelay, queueLimit, repetitions, timeMillis, getActivitiesPerSecond(),
+                getEventsPerSecond(), speedup, efficiency, correct);
+    }
+
+    String toJSON() {
+        return String.format(Locale.ROOT,
+                "{\"workload\": \"%s\", \"processes\": %d, \"workers\": %d, \"executors\": %d, \"stealSize\": \"%s\", "
+                        + "\"stealDelay\": \"%s\", \"queueLimit\": \"%s\", \"repetitions\": %d, \"timeMillis\": %.3f, "
+                        + "\"activitiesPerSecond\": %.1f, \"eventsPerSecond\": %.1f, \"speedup\": %.3f, "
+                        + "\"efficiency\": %.3f, \"correct\": %b}",
+                workload, processes, workers, getExecutors(), stealSize, stealDelay, queueLimit, repetitions, timeMillis,
+                getActivitiesPerSecond(), getEventsPerSecond(), speedup, efficiency, correct);
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "%s on %d x %d executors (steal.size=%s, steal.delay=%s, queue.limit=%s): %.1f ms, "
+                + "%.0f activities/s, %.0f events/s, speedup %.2f, efficiency %.2f%s", workload, processes, workers,
+                stealSize, stealDelay, queueLimit, timeMillis, getActivitiesPerSecond(), getEventsPerSecond(), speedup,
+                efficiency, correct ? "" : " (WRONG!)");
+    }
+}
@@ -0,0 +1,374 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package benchmark;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ibis.constellation.Constellation;
+import ibis.constellation.ConstellationConfiguration;
+import ibis.constellation.ConstellationFactory;
+import ibis.constellation.ConstellationProperties;
+import ibis.constellation.StealStrategy;
+import ibis.constellation.util.SingleEventCollector;
+import ibis.ipl.server.Server;
+
+/**
+ * Runs workloads for a sweep of worker counts and scheduler properties, and reports activities/s, events/s, speedup and
+ * efficiency, as CSV and JSON.
+ *
+ * Arguments are given as <code>key=value</code> pairs:
+ * <ul>
+ * <li><code>workload</code>: <code>fib:N</code>, <code>dac:BRANCH,DEPTH,LOADMS</code>,
+ * <code>streaming:LENGTH,DATA</code>, <code>pipeline:JOBS,STAGES,SLEEPMS,DATA</code>,
+ * <code>spawntest:COUNT,CONCURRENT,SPAWNS</code> or <code>synthetic:FANOUT,DEPTH,GRANULARITYUS,EVENTS,CONTEXTS</code>. May be
+ * repeated. Default <code>fib:25</code>.</li>
+ * <li><code>workers</code>: comma separated list of worker (executor) counts per process. Default <code>1,2,4</code>.</li>
+ * <li><code>steal.size</code>, <code>steal.delay</code>, <code>queue.limit</code>: comma separated lists of values
+ * for the corresponding constellation properties. Default is the constellation default.</li>
+ * <li><code>repetitions</code>: number of measured runs per configuration, the median is reported. Default 3.</li>
+ * <li><code>warmup</code>: number of unmeasured runs per configuration. Default 1.</li>
+ * <li><code>processes</code>: when larger than 1, runs distributed over this many processes on localhost.</li>
+ * <li><code>server</code>: address of an already running registry (for instance started with
+ * <code>bin/ipl-server --events</code>). By default a registry is started in this process.</li>
+ * <li><code>port</code>: port for the registry started in this process. Default 8888.</li>
+ * <li><code>output</code>: path prefix; results are written to <code>output.csv</code> and
+ * <code>output.json</code>.</li>
+ * </ul>
+ */
+public class BenchmarkRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(BenchmarkRunner.class);
+
+    private static final String DEFAULT = "default";
+
+    private static final long PROCESS_TIMEOUT = 600;
+
+    private final Map<String, List<String>> options;
+
+    private final List<BenchmarkResult> results = new ArrayList<BenchmarkResult>();
+
+    private String serverAddress;
+
+    private int runs = 0;
+
+    BenchmarkRunner(Map<String, List<String>> options) {
+        this.options = options;
+    }
+
+    static Map<String, List<String>> parse(String[] args) {
+        Map<String, List<String>> result = new LinkedHashMap<String, List<String>>();
+        for (String arg : args) {
+            int index = arg.indexOf('=');
+            if (index <= 0) {
+                throw new IllegalArgumentException("Argument should be of the form key=value: " + arg);
+            }
+            String key = arg.substring(0, index);
+            String value = arg.substring(index + 1);
+            List<String> values = result.get(key);
+            if (values == null) {
+                values = new ArrayList<String>();
+                result.put(key, values);
+            }
+            if (key.equals("workload")) {
+                values.add(value);
+            } else {
+                values.addAll(Arrays.asList(value.split(",")));
+            }
+        }
+        return result;
+    }
+
+    static Workload createWorkload(String spec) {
+        String[] s = spec.split(":", 2);
+        String[] params = s.length > 1 ? s[1].split(",") : new String[0];
+        try {
+            if (s[0].equals("fib")) {
+                return new FibWorkload(Integer.parseInt(params[0]));
+            } else if (s[0].equals("dac")) {
+                return new DivideAndConquerWorkload(Integer.parseInt(params[0]), Integer.parseInt(params[1]),
+                        Integer.parseInt(params[2]));
+            } else if (s[0].equals("streaming")) {
+                return new StreamingWorkload(Integer.parseInt(params[0]), Integer.parseInt(params[1]));
+            } else if (s[0].equals("pipeline")) {
+                return new PipelineWorkload(Integer.parseInt(params[0]), Integer.parseInt(params[1]), Long.parseLong(params[2]),
+                        Integer.parseInt(params[3]));
+            } else if (s[0].equals("spawntest")) {
+                return new SpawnWorkload(Integer.parseInt(params[0]), Integer.parseInt(params[1]), Integer.parseInt(params[2]));
+            } else if (s[0].equals("synthetic")) {
+                return new SyntheticWorkload(Integer.parseInt(params[0]), Integer.parseInt(params[1]),
+                        Long.parseLong(params[2]), Integer.parseInt(params[3]), Integer.parseInt(params[4]));
+            }
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+            throw new IllegalArgumentException("Illegal workload parameters: " + spec, e);
+        }
+        throw new IllegalArgumentException("Unknown workload: " + spec);
+    }
+
+    private List<String> get(String key, String defaultValue) {
+        List<String> values = options.get(key);
+        if (values == null || values.isEmpty()) {
+            return Arrays.asList(defaultValue);
+        }
+        return values;
+    }
+
+    private String getSingle(String key, String defaultValue) {
+        return get(key, defaultValue).get(0);
+    }
+
+    private int getInt(String key, int defaultValue) {
+        return Integer.parseInt(getSingle(key, Integer.toString(defaultValue)));
+    }
+
+    private Properties createProperties(int processes, String stealSize, String stealDelay, String queueLimit,
+            String pool, boolean master) {
+        Properties p = new Properties();
+        if (!stealSize.equals(DEFAULT)) {
+            p.put(ConstellationProperties.S_STEAL_SIZE, stealSize);
+        }
+        if (!stealDelay.equals(DEFAULT)) {
+            p.put(ConstellationProperties.S_STEAL_DELAY, stealDelay);
+        }
+        if (!queueLimit.equals(DEFAULT)) {
+            p.put(ConstellationProperties.S_QUEUED_JOB_LIMIT, queueLimit);
+        }
+        if (processes > 1) {
+            p.put(ConstellationProperties.S_DISTRIBUTED, "true");
+            p.put(ConstellationProperties.S_CLOSED, "true");
+            p.put(ConstellationProperties.S_POOLSIZE, Integer.toString(processes));
+            p.put(ConstellationProperties.S_MASTER, Boolean.toString(master));
+            p.put("ibis.pool.name", pool);
+            p.put("ibis.server.address", serverAddress);
+        } else {
+            p.put(ConstellationProperties.S_DISTRIBUTED, "false");
+        }
+        return p;
+    }
+
+    private static ConstellationConfiguration createConfiguration(Workload workload) {
+        return new ConstellationConfiguration(workload.getExecutorContext(), StealStrategy.SMALLEST, StealStrategy.BIGGEST,
+                StealStrategy.BIGGEST);
+    }
+
+    private List<Process> startWorkerProcesses(int processes, int workers, String workload, String stealSize,
+            String stealDelay, String queueLimit, String pool) throws IOException {
+        List<Process> result = new ArrayList<Process>();
+        for (int i = 1; i < processes; i++) {
+            List<String> command = new ArrayList<String>();
+            command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+            command.add("-cp");
+            command.add(System.getProperty("java.class.path"));
+            command.add(BenchmarkRunner.class.getName());
+            command.add("role=worker");
+            command.add("pool=" + pool);
+            command.add("server=" + serverAddress);
+            command.add("processes=" + processes);
+            command.add("workers=" + workers);
+            command.add("workload=" + workload);
+            command.add("steal.size=" + stealSize);
+            command.add("steal.delay=" + stealDelay);
+            command.add("queue.limit=" + queueLimit);
+            result.add(new ProcessBuilder(command).inheritIO().start());
+        }
+        return result;
+    }
+
+    /**
+     * Runs a non-master process of a distributed benchmark, until the master is done.
+     */
+    private void runWorker() throws Exception {
+        Workload workload = createWorkload(getSingle("workload", "fib:25"));
+        serverAddress = getSingle("server", null);
+        Properties p = createProperties(getInt("processes", 1), getSingle("steal.size", DEFAULT),
+                getSingle("steal.delay", DEFAULT), getSingle("queue.limit", DEFAULT), getSingle("pool", null), false);
+        Constellation c = ConstellationFactory.createConstellation(p, createConfiguration(workload), getInt("workers", 1));
+        c.activate();
+        c.done();
+    }
+
+    /**
+     * Runs the workload once, and returns the elapsed time in milliseconds, or a negative value when the result is wrong.
+     */
+    private double runOnce(String spec, Workload workload, int processes, int workers, String stealSize, String stealDelay,
+            String queueLimit) throws Exception {
+
+        String pool = "constellation-benchmark-" + System.currentTimeMillis() + "-" + runs++;
+
+        List<Process> children = startWorkerProcesses(processes, workers, spec, stealSize, stealDelay, queueLimit, pool);
+
+        Properties p = createProperties(processes, stealSize, stealDelay, queueLimit, pool, true);
+        Constellation c = ConstellationFactory.createConstellation(p, createConfiguration(workload), workers);
+        c.activate();
+
+        if (!c.isMaster()) {
+            throw new IllegalStateException("Benchmark runner did not become master");
+        }
+
+        long start = System.nanoTime();
+
+        SingleEventCollector collector = new SingleEventCollector(workload.getCollectorContext());
+        c.submit(collector);
+        workload.start(c, collector.identifier());
+        Object result = collector.waitForEvent().getData();
+
+        long end = System.nanoTime();
+
+        c.done();
+
+        for (Process child : children) {
+            if (!child.waitFor(PROCESS_TIMEOUT, TimeUnit.SECONDS)) {
+                logger.warn("Worker process did not terminate, destroying it");
+                child.destroy();
+            }
+        }
+
+        double time = (end - start) / 1000000.0;
+        return workload.check(result) ? time : -time;
+    }
+
+    private void run() throws Exception {
+        int repetitions = getInt("repetitions", 3);
+        int warmup = getInt("warmup", 1);
+        int processes = getInt("processes", 1);
+
+        Server server = null;
+
+        if (processes > 1) {
+            serverAddress = getSingle("server", null);
+            if (serverAddress == null) {
+                Properties serverProps = new Properties();
+                serverProps.put("ibis.server.port", getSingle("port", "8888"));
+                server = new Server(serverProps);
+                serverAddress = server.getAddress();
+            }
+            logger.info("Using registry at " + serverAddress);
+        }
+
+        try {
+            for (String spec : get("workload", "fib:25")) {
+                Workload workload = createWorkload(spec);
+                for (String stealSize : get("steal.size", DEFAULT)) {
+                    for (String stealDelay : get("steal.delay", DEFAULT)) {
+                        for (String queueLimit : get("queue.limit", DEFAULT)) {
+                            for (String w : get("workers", "1,2,4")) {
+                                int workers = Integer.parseInt(w);
+
+                                for (int i = 0; i < warmup; i++) {
+                                    runOnce(spec, workload, processes, workers, stealSize, stealDelay, queueLimit);
+                                }
+
+                                double[] times = new double[repetitions];
+                                boolean correct = true;
+                                for (int i = 0; i < repetitions; i++) {
+                                    times[i] = runOnce(spec, workload, processes, workers, stealSize, stealDelay,
+                                            queueLimit);
+                                    if (times[i] < 0) {
+                                        correct = false;
+                                        times[i] = -times[i];
+                                    }
+                                }
+                                Arrays.sort(times);
+
+                                BenchmarkResult r = new BenchmarkResult(workload.getName(), processes, workers, stealSize,
+                                        stealDelay, queueLimit, repetitions, times[repetitions / 2],
+                                        workload.getActivities(), workload.getEvents(), correct);
+                                results.add(r);
+                                logger.info(r.toString());
+                            }
+                        }
+                    }
+                }
+            }
+        } finally {
+            if (server != null) {
+                server.end(1000);
+            }
+        }
+
+        computeSpeedups(results);
+
+        for (BenchmarkResult r : results) {
+            System.out.println(r);
+        }
+
+        String output = getSingle("output", null);
+        if (output != null) {
+            write(results, output);
+        }
+    }
+
+    /**
+     * Computes speedup and efficiency of each result, relative to the result with the fewest executors on the same curve.
+     */
+    static void computeSpeedups(List<BenchmarkResult> results) {
+        for (BenchmarkResult r : results) {
+            BenchmarkResult base = r;
+            for (BenchmarkResult o : results) {
+                if (o.sameCurve(r) && o.getExecutors() < base.getExecutors()) {
+                    base = o;
+                }
+            }
+            r.speedup = base.timeMillis / r.timeMillis;
+            r.efficiency = r.speedup * base.getExecutors() / r.getExecutors();
+        }
+    }
+
+    static void write(List<BenchmarkResult> results, String prefix) throws IOException {
+        File csv = new File(prefix + ".csv");
+        File parent = csv.getAbsoluteFile().getParentFile();
+        if (!parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Could not create directory " + parent);
+        }
+
+        try (PrintWriter out = new PrintWriter(new FileWriter(csv))) {
+            out.println(BenchmarkResult.CSV_HEADER);
+            for (BenchmarkResult r : results) {
+                out.println(r.toCSV());
+            }
+        }
+
+        try (PrintWriter out = new PrintWriter(new FileWriter(prefix + ".json"))) {
+            out.println("[");
+            for (int i = 0; i < results.size(); i++) {
+                out.println("  " + results.get(i).toJSON() + (i < results.size() - 1 ? "," : ""));
+            }
+            out.println("]");
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        BenchmarkRunner runner = new BenchmarkRunner(parse(args));
+        if (runner.getSingle("role", "master").equals("worker")) {
+            runner.runWorker();
+        } else {
+            runner.run();
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package benchmark;
+
+import ibis.constellation.AbstractContext;
+import ibis.constellation.ActivityIdentifier;
+import ibis.constellation.Constellation;
+import ibis.constellation.Context;
+import ibis.constellation.NoSuitableExecutorException;
+import test.lowlevel.DivideAndConquerWithLoad;
+
+/**
+ * Runs {@link DivideAndConquerWithLoad}, where the leaves spin for a configurable number of milliseconds.
+ */
+public class DivideAndConquerWorkload implements Workload {
+
+    private final int branch;
+    private final int depth;
+    private final int load;
+
+    public DivideAndConquerWorkload(int branch, int depth, int load) {
+        this.branch = branch;
+        this.depth = depth;
+        this.load = load;
+    }
+
+    @Override
+    public String getName() {
+        return "dac(" + branch + "," + depth + "," + load + ")";
+    }
+
+    @Override
+    public AbstractContext getExecutorContext() {
+        return new Context("DC");
+    }
+
+    @Override
+    public Context getCollectorContext() {
+        return new Context("DC");
+    }
+
+    @Override
+    public void start(Constellation c, ActivityIdentifier collector) throws NoSuitableExecutorException {
+        c.submit(new DivideAndConquerWithLoad(collector, branch, depth, load));
+    }
+
+    private long nodes() {
+        long count = 0;
+        long level = 1;
+        for (int i = 0; i <= depth; i++) {
+            count += level;
+            level *= branch;
+        }
+        return count;
+    }
+
+    @Override
+    public long getActivities() {
+        return nodes() + 1;
+    }
+
+    @Override
+    public long getEvents() {
+        return nodes();
+    }
+
+    @Override
+    public boolean check(Object result) {
+        return ((Number) result).longValue() == nodes();
+    }
+}
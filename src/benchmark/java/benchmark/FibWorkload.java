@@ -0,0 +1,84 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package benchmark;
+
+import ibis.constellation.AbstractContext;
+import ibis.constellation.ActivityIdentifier;
+import ibis.constellation.Constellation;
+import ibis.constellation.Context;
+import ibis.constellation.NoSuitableExecutorException;
+import test.fib.Fibonacci;
+
+/**
+ * Runs {@link Fibonacci}: very fine grained, one event per activity.
+ */
+public class FibWorkload implements Workload {
+
+    private final int input;
+
+    public FibWorkload(int input) {
+        this.input = input;
+    }
+
+    @Override
+    public String getName() {
+        return "fib(" + input + ")";
+    }
+
+    @Override
+    public AbstractContext getExecutorContext() {
+        return new Context("fib");
+    }
+
+    @Override
+    public Context getCollectorContext() {
+        return new Context("fib");
+    }
+
+    @Override
+    public void start(Constellation c, ActivityIdentifier collector) throws NoSuitableExecutorException {
+        c.submit(new Fibonacci(collector, input, false));
+    }
+
+    @Override
+    public long getActivities() {
+        // fib(n) creates 2 * fib(n + 1) - 1 activities, plus the collector.
+        return 2 * fib(input + 1);
+    }
+
+    @Override
+    public long getEvents() {
+        // Every Fibonacci activity sends a single event.
+        return 2 * fib(input + 1) - 1;
+    }
+
+    @Override
+    public boolean check(Object result) {
+        return ((Number) result).longValue() == fib(input);
+    }
+
+    private static long fib(int n) {
+        long a = 0;
+        long b = 1;
+        for (int i = 0; i < n; i++) {
+            long t = a + b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package benchmark;
+
+import ibis.constellation.AbstractContext;
+import ibis.constellation.Activity;
+import ibis.constellation.ActivityIdentifier;
+import ibis.constellation.Constellation;
+import ibis.constellation.Context;
+import ibis.constellation.Event;
+import ibis.constellation.NoSuitableExecutorException;
+import test.pipeline.simple.Pipeline;
+
+/**
+ * Runs a number of independent {@link Pipeline}s, each a chain of stages that pass on a block of data, like
+ * <code>test.pipeline.simple.PipelineTest</code>.
+ */
+public class PipelineWorkload implements Workload {
+
+    /**
+     * Gathers the results of the pipelines, and sends their number to the collector.
+     */
+    static class Gather extends Activity {
+
+        private static final long serialVersionUID = 2290163413640254393L;
+
+        private final ActivityIdentifier parent;
+        private final int jobs;
+
+        private long received = 0;
+
+        Gather(ActivityIdentifier parent, int jobs) {
+            super(new Context("X"), false, true);
+            this.parent = parent;
+            this.jobs = jobs;
+        }
+
+        @Override
+        public int initialize(Constellation c) {
+            return jobs == 0 ? FINISH : SUSPEND;
+        }
+
+        @Override
+        public int process(Constellation c, Event e) {
+            received++;
+            return received < jobs ? SUSPEND : FINISH;
+        }
+
+        @Override
+        public void cleanup(Constellation c) {
+            c.send(new Event(identifier(), parent, received));
+        }
+    }
+
+    private final int jobs;
+    private final int stages;
+    private final long sleep;
+    private final int data;
+
+    public PipelineWorkload(int jobs, int stages, long sleep, int data) {
+        this.jobs = jobs;
+        this.stages = stages;
+        this.sleep = sleep;
+        this.data = data;
+    }
+
+    @Override
+    public String getName() {
+        return "pipeline(" + jobs + "," + stages + "," + sleep + "," + data + ")";
+    }
+
+    @Override
+    public AbstractContext getExecutorContext() {
+        return new Context("X");
+    }
+
+    @Override
+    public Context getCollectorContext() {
+        return new Context("X");
+    }
+
+    @Override
+    public void start(Constellation c, ActivityIdentifier collector) throws NoSuitableExecutorException {
+        ActivityIdentifier gather = c.submit(new Gather(collector, jobs));
+        for (int i = 0; i < jobs; i++) {
+            c.submit(new Pipeline(gather, i, 0, stages - 1, sleep, new byte[data]));
+        }
+    }
+
+    @Override
+    public long getActivities() {
+        return (long) jobs * stages + 2;
+    }
+
+    @Override
+    public long getEvents() {
+        return jobs + 1;
+    }
+
+    @Override
+    public boolean check(Object result) {
+        return ((Number) result).longValue() == jobs;
+    }
+}
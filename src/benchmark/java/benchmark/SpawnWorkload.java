@@ -0,0 +1,77 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package benchmark;
+
+import ibis.constellation.AbstractContext;
+import ibis.constellation.ActivityIdentifier;
+import ibis.constellation.Constellation;
+import ibis.constellation.Context;
+import ibis.constellation.NoSuitableExecutorException;
+import test.spawntest.TestLoop;
+
+/**
+ * Runs {@link TestLoop}, which keeps a number of activities running that each spawn a fixed number of short leaf activities,
+ * like <code>test.spawntest.SpawnTest</code>.
+ */
+public class SpawnWorkload implements Workload {
+
+    private final int count;
+    private final int concurrent;
+    private final int spawns;
+
+    public SpawnWorkload(int count, int concurrent, int spawns) {
+        this.count = count;
+        this.concurrent = concurrent;
+        this.spawns = spawns;
+    }
+
+    @Override
+    public String getName() {
+        return "spawntest(" + count + "," + concurrent + "," + spawns + ")";
+    }
+
+    @Override
+    public AbstractContext getExecutorContext() {
+        return new Context("TEST", 0, Long.MAX_VALUE);
+    }
+
+    @Override
+    public Context getCollectorContext() {
+        return new Context("TEST", 0, 0);
+    }
+
+    @Override
+    public void start(Constellation c, ActivityIdentifier collector) throws NoSuitableExecutorException {
+        c.submit(new TestLoop(collector, count, Math.min(concurrent, count), spawns));
+    }
+
+    @Override
+    public long getActivities() {
+        return (long) count * (spawns + 1) + 2;
+    }
+
+    @Override
+    public long getEvents() {
+        return (long) count * (spawns + 1) + 1;
+    }
+
+    @Override
+    public boolean check(Object result) {
+        // TestLoop only sends an empty event when all its activities are done.
+        return result == null;
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package benchmark;
+
+import ibis.constellation.AbstractContext;
+import ibis.constellation.ActivityIdentifier;
+import ibis.constellation.Constellation;
+import ibis.constellation.Context;
+import ibis.constellation.Event;
+import ibis.constellation.NoSuitableExecutorException;
+import test.lowlevel.Streaming;
+
+/**
+ * Runs {@link Streaming}: a chain of activities that forward a stream of events.
+ */
+public class StreamingWorkload implements Workload {
+
+    private final int length;
+    private final int data;
+
+    public StreamingWorkload(int length, int data) {
+        this.length = length;
+        this.data = data;
+    }
+
+    @Override
+    public String getName() {
+        return "streaming(" + length + "," + data + ")";
+    }
+
+    @Override
+    public AbstractContext getExecutorContext() {
+        return new Context("S");
+    }
+
+    @Override
+    public Context getCollectorContext() {
+        return new Context("S");
+    }
+
+    @Override
+    public void start(Constellation c, ActivityIdentifier collector) throws NoSuitableExecutorException {
+        ActivityIdentifier head = c.submit(new Streaming(collector, length, 0, data));
+        for (int i = 0; i < data; i++) {
+            c.send(new Event(collector, head, i));
+        }
+    }
+
+    @Override
+    public long getActivities() {
+        return length + 2;
+    }
+
+    @Override
+    public long getEvents() {
+        return (long) data * (length + 1) + 1;
+    }
+
+    @Override
+    public boolean check(Object result) {
+        return ((Number) result).longValue() == data;
+    }
+}
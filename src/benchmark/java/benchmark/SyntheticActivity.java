@@ -0,0 +1,110 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package benchmark;
+
+import ibis.constellation.Activity;
+import ibis.constellation.ActivityIdentifier;
+import ibis.constellation.Constellation;
+import ibis.constellation.Context;
+import ibis.constellation.Event;
+import ibis.constellation.NoSuitableExecutorException;
+
+/**
+ * A tree shaped activity with configurable fan-out, depth, leaf granularity, number of events sent to the parent, and
+ * number of distinct contexts.
+ */
+public class SyntheticActivity extends Activity {
+
+    private static final long serialVersionUID = -4437210861226474018L;
+
+    private final ActivityIdentifier parent;
+    private final int fanout;
+    private final int depth;
+    private final long granularity;
+    private final int events;
+    private final int contexts;
+    private final boolean top;
+
+    private long count = 1;
+    private int received = 0;
+
+    public SyntheticActivity(ActivityIdentifier parent, int fanout, int depth, long granularity, int events, int contexts,
+            int index, boolean top) {
+        super(new Context(SyntheticWorkload.label(index % contexts), depth), true, depth > 0);
+        this.parent = parent;
+        this.fanout = fanout;
+        this.depth = depth;
+        this.granularity = granularity;
+        this.events = events;
+        this.contexts = contexts;
+        this.top = top;
+    }
+
+    @Override
+    public int initialize(Constellation c) {
+        if (depth == 0) {
+            spin(granularity);
+            return FINISH;
+        }
+
+        for (int i = 0; i < fanout; i++) {
+            try {
+                c.submit(new SyntheticActivity(identifier(), fanout, depth - 1, granularity, events, contexts, i, false));
+            } catch (NoSuitableExecutorException e) {
+                System.err.println("Should not happen: " + e);
+                e.printStackTrace(System.err);
+            }
+        }
+        return SUSPEND;
+    }
+
+    @Override
+    public int process(Constellation c, Event e) {
+        count += (Long) e.getData();
+        received++;
+
+        if (received < fanout * events) {
+            return SUSPEND;
+        }
+        return FINISH;
+    }
+
+    @Override
+    public void cleanup(Constellation c) {
+        // The first event carries the count, the others only add to the event rate. The top activity reports to a
+        // collector, which only expects a single event.
+        c.send(new Event(identifier(), parent, count));
+        for (int i = 1; !top && i < events; i++) {
+            c.send(new Event(identifier(), parent, 0L));
+        }
+    }
+
+    private static void spin(long micros) {
+        if (micros <= 0) {
+            return;
+        }
+        long end = System.nanoTime() + micros * 1000;
+        while (System.nanoTime() < end) {
+            // busy wait
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Synthetic(" + identifier() + ") " + fanout + ", " + depth + ", " + received + " -> " + count;
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package benchmark;
+
+import ibis.constellation.AbstractContext;
+import ibis.constellation.ActivityIdentifier;
+import ibis.constellation.Constellation;
+import ibis.constellation.Context;
+import ibis.constellation.NoSuitableExecutorException;
+import ibis.constellation.OrContext;
+
+/**
+ * A synthetic workload built from {@link SyntheticActivity} instances.
+ */
+public class SyntheticWorkload implements Workload {
+
+    private final int fanout;
+    private final int depth;
+    private final long granularity;
+    private final int events;
+    private final int contexts;
+
+    /**
+     * Creates a synthetic workload.
+     *
+     * @param fanout
+     *            the number of children of each inner activity
+     * @param depth
+     *            the depth of the tree
+     * @param granularity
+     *            the time each leaf spins, in microseconds
+     * @param events
+     *            the number of events each activity sends to its parent
+     * @param contexts
+     *            the number of distinct context labels used by the activities
+     */
+    public SyntheticWorkload(int fanout, int depth, long granularity, int events, int contexts) {
+        if (fanout < 1 || depth < 0 || events < 1 || contexts < 1) {
+            throw new IllegalArgumentException("Illegal synthetic workload parameters");
+        }
+        this.fanout = fanout;
+        this.depth = depth;
+        this.granularity = granularity;
+        this.events = events;
+        this.contexts = contexts;
+    }
+
+    static String label(int index) {
+        return "syn" + index;
+    }
+
+    @Override
+    public String getName() {
+        return "synthetic(" + fanout + "," + depth + "," + granularity + "us," + events + "," + contexts + ")";
+    }
+
+    @Override
+    public AbstractContext getExecutorContext() {
+        if (contexts == 1) {
+            return new Context(label(0));
+        }
+        Context[] c = new Context[contexts];
+        for (int i = 0; i < contexts; i++) {
+            c[i] = new Context(label(i));
+        }
+        return new OrContext(c);
+    }
+
+    @Override
+    public Context getCollectorContext() {
+        return new Context(label(0));
+    }
+
+    @Override
+    public void start(Constellation c, ActivityIdentifier collector) throws NoSuitableExecutorException {
+        c.submit(new SyntheticActivity(collector, fanout, depth, granularity, events, contexts, 0, true));
+    }
+
+    private long nodes() {
+        long count = 0;
+        long level = 1;
+        for (int i = 0; i <= depth; i++) {
+            count += level;
+            level *= fanout;
+        }
+        return count;
+    }
+
+    @Override
+    public long getActivities() {
+        return nodes() + 1;
+    }
+
+    @Override
+    public long getEvents() {
+        // The root sends a single event to the collector, all others send "events" events.
+        return (nodes() - 1) * events + 1;
+    }
+
+    @Override
+    public boolean check(Object result) {
+        return ((Number) result).longValue() == nodes();
+    }
+}
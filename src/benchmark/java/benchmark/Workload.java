@@ -0,0 +1,87 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package benchmark;
+
+import ibis.constellation.AbstractContext;
+import ibis.constellation.ActivityIdentifier;
+import ibis.constellation.Constellation;
+import ibis.constellation.Context;
+import ibis.constellation.NoSuitableExecutorException;
+
+/**
+ * A workload that can be driven by the {@link BenchmarkRunner}. The master submits the workload, which eventually sends a
+ * single event with its result to the collector.
+ */
+public interface Workload {
+
+    /**
+     * Returns the name of this workload, including its parameters, as reported in the results.
+     *
+     * @return the workload name
+     */
+    String getName();
+
+    /**
+     * Returns the context the executors should have to be able to run all activities of this workload.
+     *
+     * @return the executor context
+     */
+    AbstractContext getExecutorContext();
+
+    /**
+     * Returns the context of the activity that collects the result. This must be a plain {@link Context}
+     * that matches the executor context.
+     *
+     * @return the collector context
+     */
+    Context getCollectorContext();
+
+    /**
+     * Submits the workload.
+     *
+     * @param c
+     *            the constellation to submit to
+     * @param collector
+     *            the activity to send the final result to
+     * @throws NoSuitableExecutorException
+     *             when no executor can run the activities
+     */
+    void start(Constellation c, ActivityIdentifier collector) throws NoSuitableExecutorException;
+
+    /**
+     * Returns the number of activities the workload creates, including the collector.
+     *
+     * @return the number of activities
+     */
+    long getActivities();
+
+    /**
+     * Returns the number of events the workload sends, including the final result.
+     *
+     * @return the number of events
+     */
+    long getEvents();
+
+    /**
+     * Checks the result that arrived at the collector.
+     *
+     * @param result
+     *            the event data
+     * @return whether the result is correct
+     */
+    boolean check(Object result);
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.constellation;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link StealPool#overlap(StealPool)} and {@link StealPool#merge(StealPool...)}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StealPoolBenchmark {
+
+    private StealPool single = new StealPool("a");
+    private StealPool otherSingle = new StealPool("b");
+    private StealPool set = StealPool.merge(new StealPool("c"), new StealPool("d"), new StealPool("e"), new StealPool("a"));
+    private StealPool otherSet = StealPool.merge(new StealPool("f"), new StealPool("g"), new StealPool("h"),
+            new StealPool("e"));
+
+    @Benchmark
+    public boolean overlapSingle() {
+        return single.overlap(otherSingle);
+    }
+
+    @Benchmark
+    public boolean overlapSingleSet() {
+        return single.overlap(set);
+    }
+
+    @Benchmark
+    public boolean overlapSets() {
+        return set.overlap(otherSet);
+    }
+
+    @Benchmark
+    public StealPool merge() {
+        return StealPool.merge(single, otherSingle, set);
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.constellation.impl;
+
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import ibis.constellation.ActivityIdentifier;
+
+/**
+ * Measures the cost of using {@link ActivityIdentifierImpl} as a hash key, as is done for the activity lookup tables.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ActivityIdentifierImplBenchmark {
+
+    @Param({ "1024", "65536" })
+    public int size;
+
+    private ActivityIdentifierImpl[] ids;
+    private HashMap<ActivityIdentifier, ActivityIdentifierImpl> map;
+    private int next;
+
+    @Setup
+    public void fill() {
+        ids = new ActivityIdentifierImpl[size];
+        map = new HashMap<ActivityIdentifier, ActivityIdentifierImpl>();
+        for (int i = 0; i < size; i++) {
+            ConstellationIdentifierImpl cid = new ConstellationIdentifierImpl(i % 16, i % 4);
+            ids[i] = ActivityIdentifierImpl.createActivityIdentifier(cid, i, false);
+            map.put(ids[i], ids[i]);
+        }
+    }
+
+    @Benchmark
+    public void get(Blackhole bh) {
+        bh.consume(map.get(ids[next++ % size]));
+    }
+
+    @Benchmark
+    public void removePut(Blackhole bh) {
+        ActivityIdentifierImpl id = ids[next++ % size];
+        bh.consume(map.remove(id));
+        map.put(id, id);
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.constellation.impl;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import ibis.constellation.ConstellationConfiguration;
+import ibis.constellation.ConstellationProperties;
+import ibis.constellation.Context;
+import ibis.constellation.StealPool;
+import ibis.constellation.StealStrategy;
+
+/**
+ * Measures steals through {@link SingleThreadedConstellation#attemptSteal(ActivityRecord[], ibis.constellation.AbstractContext,
+ * StealStrategy, StealPool, ConstellationIdentifierImpl, int, boolean)}, which is synchronized on the constellation, with a
+ * submitting thread competing with several thieves, as happens when idle workers steal from a busy one.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AttemptStealBenchmark {
+
+    private static final int RECORDS = 1024;
+
+    private static final ConstellationIdentifierImpl THIEF = new ConstellationIdentifierImpl(1, 0);
+
+    @Param({ "1", "8" })
+    public int size;
+
+    @Param({ "true", "false" })
+    public boolean local;
+
+    private SingleThreadedConstellation constellation;
+    private ActivityRecord[] records;
+    private Context stealContext;
+
+    @Setup(Level.Trial)
+    public void createRecords() {
+        records = new ActivityRecord[RECORDS];
+        for (int i = 0; i < RECORDS; i++) {
+            records[i] = BenchmarkUtil.createActivityRecord(new Context("bench", i), i);
+        }
+        stealContext = new Context("bench", 0, RECORDS);
+    }
+
+    @Setup(Level.Iteration)
+    public void fill() throws Exception {
+        constellation = new SingleThreadedConstellation(null,
+                new ConstellationConfiguration(new Context("bench", 0, RECORDS), StealStrategy.SMALLEST),
+                new ConstellationProperties(new Properties()));
+        for (int i = 0; i < RECORDS; i++) {
+            submit(records[i]);
+        }
+    }
+
+    private void submit(ActivityRecord ar) {
+        constellation.doSubmit(ar, ar.getContext(), ar.identifier());
+    }
+
+    @State(Scope.Thread)
+    public static class Thief {
+        int next;
+        ActivityRecord[] result;
+    }
+
+    @Benchmark
+    @Group("single")
+    public void submitSteal(Thief thief, Blackhole bh) {
+        if (thief.result == null) {
+            thief.result = new ActivityRecord[size];
+        }
+        submit(records[thief.next++ % RECORDS]);
+        bh.consume(constellation.attemptSteal(thief.result, stealContext, StealStrategy.BIGGEST, StealPool.WORLD, THIEF, size,
+                local));
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(1)
+    public void producer(Thief thief) {
+        submit(records[thief.next++ % RECORDS]);
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(3)
+    public void thieves(Thief thief, Blackhole bh) {
+        if (thief.result == null) {
+            thief.result = new ActivityRecord[size];
+        }
+        bh.consume(constellation.attemptSteal(thief.result, stealContext, StealStrategy.BIGGEST, StealPool.WORLD, THIEF, size,
+                local));
+    }
+}
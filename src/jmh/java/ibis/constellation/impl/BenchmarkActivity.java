@@ -0,0 +1,49 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.constellation.impl;
+
+import ibis.constellation.AbstractContext;
+import ibis.constellation.Activity;
+import ibis.constellation.Constellation;
+import ibis.constellation.Event;
+
+/**
+ * Minimal activity used by the microbenchmarks. It is never actually run.
+ */
+public class BenchmarkActivity extends Activity {
+
+    private static final long serialVersionUID = -2496402542658458713L;
+
+    public BenchmarkActivity(AbstractContext c) {
+        super(c, true, false);
+    }
+
+    @Override
+    public int initialize(Constellation constellation) {
+        return FINISH;
+    }
+
+    @Override
+    public int process(Constellation constellation, Event event) {
+        return FINISH;
+    }
+
+    @Override
+    public void cleanup(Constellation constellation) {
+        // nothing
+    }
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.constellation.impl;
+
+import ibis.constellation.AbstractContext;
+
+/**
+ * Helpers for the microbenchmarks, giving access to package private constructors.
+ */
+public class BenchmarkUtil {
+
+    private static final ConstellationIdentifierImpl CID = new ConstellationIdentifierImpl(0, 0);
+
+    public static ActivityRecord createActivityRecord(AbstractContext c, long aid) {
+        BenchmarkActivity a = new BenchmarkActivity(c);
+        ActivityIdentifierImpl id = ActivityIdentifierImpl.createActivityIdentifier(CID, aid, false);
+        a.setIdentifier(id);
+        return new ActivityRecord(a, id);
+    }
+}
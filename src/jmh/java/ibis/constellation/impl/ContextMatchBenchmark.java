@@ -0,0 +1,91 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.constellation.impl;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ibis.constellation.AbstractContext;
+import ibis.constellation.Context;
+import ibis.constellation.OrContext;
+
+/**
+ * Measures {@link ContextMatch#match(AbstractContext, AbstractContext)} for the different context combinations, with
+ * and without a {@link ContextMatchCache}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ContextMatchBenchmark {
+
+    private AbstractContext context = new Context("bench", 10, 20);
+    private AbstractContext otherContext = new Context("other", 10, 20);
+    private AbstractContext smallOr = new OrContext(new Context("x"), new Context("bench", 15));
+    private AbstractContext largeOr = new OrContext(new Context("a"), new Context("b"), new Context("c"), new Context("d"),
+            new Context("e"), new Context("f"), new Context("g"), new Context("bench", 19));
+    private AbstractContext otherOr = new OrContext(new Context("p"), new Context("q"), new Context("r"),
+            new Context("bench", 20, 30));
+
+    private ContextMatchCache largeOrCache = new ContextMatchCache(largeOr);
+
+    @Benchmark
+    public boolean contextContext() {
+        return ContextMatch.match(context, context);
+    }
+
+    @Benchmark
+    public boolean contextContextMiss() {
+        return ContextMatch.match(context, otherContext);
+    }
+
+    @Benchmark
+    public boolean smallOrContext() {
+        return ContextMatch.match(smallOr, context);
+    }
+
+    @Benchmark
+    public boolean largeOrContext() {
+        return ContextMatch.match(largeOr, context);
+    }
+
+    @Benchmark
+    public boolean orOr() {
+        return ContextMatch.match(largeOr, otherOr);
+    }
+
+    @Benchmark
+    public boolean cachedLargeOrContext() {
+        return largeOrCache.match(context);
+    }
+
+    @Benchmark
+    public boolean cachedOrOr() {
+        return largeOrCache.match(otherOr);
+    }
+}
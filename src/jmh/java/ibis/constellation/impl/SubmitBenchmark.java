@@ -0,0 +1,94 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.constellation.impl;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ibis.constellation.AbstractContext;
+import ibis.constellation.ConstellationConfiguration;
+import ibis.constellation.ConstellationProperties;
+import ibis.constellation.Context;
+import ibis.constellation.OrContext;
+import ibis.constellation.StealStrategy;
+
+/**
+ * Measures submit throughput on a (not running) {@link SingleThreadedConstellation} whose executor and activities use 8-way
+ * {@link OrContext}s, which exercises the context matching on the submit path.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SubmitBenchmark {
+
+    private static final int BATCH = 256;
+
+    private static final int CONTEXTS = 8;
+
+    private AbstractContext[] contexts;
+
+    private SingleThreadedConstellation constellation;
+
+    private static OrContext orContext(String prefix, int offset) {
+        Context[] c = new Context[CONTEXTS];
+        for (int i = 0; i < CONTEXTS; i++) {
+            c[i] = new Context(prefix + ((i + offset) % (2 * CONTEXTS)));
+        }
+        return new OrContext(c);
+    }
+
+    @Setup(Level.Trial)
+    public void createContexts() {
+        // The executor matches the last of the 8 alternatives of every activity context.
+        contexts = new AbstractContext[4];
+        for (int i = 0; i < contexts.length; i++) {
+            contexts[i] = orContext("c", CONTEXTS + i + 1);
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void createConstellation() throws Exception {
+        Properties p = new Properties();
+        p.put(ConstellationProperties.S_QUEUED_JOB_LIMIT, Integer.toString(BATCH));
+        constellation = new SingleThreadedConstellation(null,
+                new ConstellationConfiguration(orContext("c", 0), StealStrategy.SMALLEST), new ConstellationProperties(p));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void submitOrContext() throws Exception {
+        for (int i = 0; i < BATCH; i++) {
+            constellation.performSubmit(new BenchmarkActivity(contexts[i & 3]));
+        }
+    }
+}
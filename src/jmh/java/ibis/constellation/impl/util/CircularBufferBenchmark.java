@@ -0,0 +1,82 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.constellation.impl.util;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the {@link CircularBuffer} operations used for the runnable and relocated activity queues.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CircularBufferBenchmark {
+
+    @Param({ "16", "1024" })
+    public int size;
+
+    private CircularBuffer<Integer> buffer;
+    private Integer[] items;
+    private int next;
+
+    @Setup(Level.Iteration)
+    public void fill() {
+        items = new Integer[size];
+        buffer = new CircularBuffer<Integer>(1);
+        for (int i = 0; i < size; i++) {
+            items[i] = i;
+            buffer.insertLast(items[i]);
+        }
+        next = 0;
+    }
+
+    @Benchmark
+    public void insertLastRemoveFirst(Blackhole bh) {
+        buffer.insertLast(items[next++ % size]);
+        bh.consume(buffer.removeFirst());
+    }
+
+    @Benchmark
+    public void insertFirstRemoveLast(Blackhole bh) {
+        buffer.insertFirst(items[next++ % size]);
+        bh.consume(buffer.removeLast());
+    }
+
+    @Benchmark
+    public void removeByReference(Blackhole bh) {
+        Integer item = items[next++ % size];
+        bh.consume(buffer.remove(item));
+        buffer.insertLast(item);
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.constellation.impl.util;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import ibis.constellation.AbstractContext;
+import ibis.constellation.Context;
+import ibis.constellation.OrContext;
+import ibis.constellation.StealStrategy;
+import ibis.constellation.impl.ActivityRecord;
+import ibis.constellation.impl.BenchmarkUtil;
+
+/**
+ * Measures enqueue / steal on a {@link SimpleWorkQueue}, both single threaded and with a producer competing with
+ * several thieves for the queue lock.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SimpleWorkQueueBenchmark {
+
+    private static final int RECORDS = 1024;
+
+    @Param({ "BIGGEST", "SMALLEST" })
+    public String strategy;
+
+    @Param({ "ranged", "or" })
+    public String contexts;
+
+    private SimpleWorkQueue queue;
+    private ActivityRecord[] records;
+    private AbstractContext stealContext;
+    private StealStrategy stealStrategy;
+
+    @Setup(Level.Trial)
+    public void createRecords() {
+        stealStrategy = "BIGGEST".equals(strategy) ? StealStrategy.BIGGEST : StealStrategy.SMALLEST;
+        records = new ActivityRecord[RECORDS];
+        for (int i = 0; i < RECORDS; i++) {
+            AbstractContext c;
+            if ("or".equals(contexts)) {
+                c = new OrContext(new Context("a" + (i % 8), i), new Context("b" + (i % 4), i));
+            } else {
+                c = new Context("bench", i);
+            }
+            records[i] = BenchmarkUtil.createActivityRecord(c, i);
+        }
+        if ("or".equals(contexts)) {
+            stealContext = new OrContext(new Context("a3", 0, RECORDS), new Context("b1", 0, RECORDS));
+        } else {
+            stealContext = new Context("bench", 0, RECORDS);
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void fill() {
+        queue = new SimpleWorkQueue("bench");
+        for (int i = 0; i < RECORDS; i++) {
+            queue.enqueue(records[i]);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Benchmark
+    @Group("single")
+    public void enqueueSteal(Cursor cursor, Blackhole bh) {
+        queue.enqueue(records[cursor.next++ % RECORDS]);
+        bh.consume(queue.steal(stealContext, stealStrategy));
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(1)
+    public void producer(Cursor cursor) {
+        queue.enqueue(records[cursor.next++ % RECORDS]);
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(3)
+    public void thieves(Blackhole bh) {
+        bh.consume(queue.steal(stealContext, stealStrategy));
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.constellation.impl.util;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import ibis.constellation.Context;
+import ibis.constellation.impl.ActivityRecord;
+import ibis.constellation.impl.BenchmarkUtil;
+
+/**
+ * Measures insertion and range removal on a {@link SortedRangeList}, as done by the work queues for ranged contexts.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SortedRangeListBenchmark {
+
+    @Param({ "16", "256", "4096" })
+    public int size;
+
+    private SortedRangeList list;
+    private ActivityRecord[] records;
+    private long[] ranks;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void createRecords() {
+        Random random = new Random(42);
+        records = new ActivityRecord[size];
+        ranks = new long[size];
+        for (int i = 0; i < size; i++) {
+            ranks[i] = random.nextInt(size * 4);
+            records[i] = BenchmarkUtil.createActivityRecord(new Context("bench", ranks[i]), i);
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void fill() {
+        list = new SortedRangeList("bench");
+        for (int i = 0; i < size; i++) {
+            list.insert(records[i], ranks[i], ranks[i]);
+        }
+        next = 0;
+    }
+
+    @Benchmark
+    public void insertRemoveSmallest(Blackhole bh) {
+        int i = next++ % size;
+        list.insert(records[i], ranks[i], ranks[i]);
+        bh.consume(list.removeSmallestInRange(0, size * 4));
+    }
+
+    @Benchmark
+    public void insertRemoveBiggest(Blackhole bh) {
+        int i = next++ % size;
+        list.insert(records[i], ranks[i], ranks[i]);
+        bh.consume(list.removeBiggestInRange(0, size * 4));
+    }
+
+    @Benchmark
+    public void insertRemoveNarrowRange(Blackhole bh) {
+        int i = next++ % size;
+        list.insert(records[i], ranks[i], ranks[i]);
+        bh.consume(list.removeSmallestInRange(ranks[i], ranks[i]));
+    }
+}
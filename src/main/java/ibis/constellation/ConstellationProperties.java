@@ -74,6 +74,15 @@ public class ConstellationProperties extends Properties {
 
     public final int REMOTESTEAL_TIMEOUT;
 
+    /**
+     * The "remotesteal.combine" property is a boolean property indicating whether the executors of an instance that run out of
+     * work at the same time share a single remote steal request, sized to the number of idle executors, and share the stolen
+     * activities. The default value is "false".
+     */
+    public static final String S_REMOTESTEAL_COMBINE = S_REMOTESTEAL_PREFIX + "combine";
+
+    public final boolean REMOTESTEAL_COMBINE;
+
     /**
      * The "profile" property is a boolean property indicating whether constellation should provide some timing information. The
      * default is "false".
@@ -115,6 +124,15 @@ public class ConstellationProperties extends Properties {
 
     public final String PROFILE_OUTPUT;
 
+    /**
+     * The "profile.chunkSize" property is an integer property indicating the maximum number of profiling events a node sends to
+     * the master in one message at the end of the run. The default is 65536.
+     */
+    public static final String S_PROFILE_CHUNKSIZE = S_PROFILE + ".chunkSize";
+
+    /** Value of the "profile.chunkSize" property. */
+    public final int PROFILE_CHUNKSIZE;
+
     /**
      * The "printStatistics" property is a boolean property indicating whether some constellation statistics should be printed or
      * not. Default is "false".
@@ -177,6 +195,89 @@ public class ConstellationProperties extends Properties {
     /** Value of the "closed" property. */
     public final boolean CLOSED;
 
+    /**
+     * The "communication" property is a string property, specifying how the nodes of a distributed run communicate. Possible
+     * values are "ibis", which uses the IPL and needs an IPL registry server, "local", which runs all nodes in a single JVM, and
+     * "nio", which uses plain sockets between a static list of nodes, see "communication.nio.peers". The default is "ibis".
+     */
+    public static final String S_COMMUNICATION = S_PREFIX + "communication";
+
+    /** Value of the "communication" property. */
+    public final String COMMUNICATION;
+
+    /**
+     * The "communication.local.group" property is a string property, specifying which nodes in the JVM form a pool when the
+     * "local" communication is used. The default is "constellation".
+     */
+    public static final String S_LOCAL_GROUP = S_COMMUNICATION + ".local.group";
+
+    /** Value of the "communication.local.group" property. */
+    public final String LOCAL_GROUP;
+
+    /**
+     * The "communication.local.latency" property is an integer property, specifying the simulated one-way latency of the "local"
+     * communication, in microseconds. The default is "0".
+     */
+    public static final String S_LOCAL_LATENCY = S_COMMUNICATION + ".local.latency";
+
+    /** Value of the "communication.local.latency" property. */
+    public final int LOCAL_LATENCY;
+
+    /**
+     * The "communication.local.bandwidth" property is an integer property, specifying the simulated bandwidth between two nodes
+     * of the "local" communication, in Mbit/s. A value of 0 means unlimited. The default is "0".
+     */
+    public static final String S_LOCAL_BANDWIDTH = S_COMMUNICATION + ".local.bandwidth";
+
+    /** Value of the "communication.local.bandwidth" property. */
+    public final int LOCAL_BANDWIDTH;
+
+    /**
+     * The "communication.nio.peers" property is a string property, specifying the nodes of a run with "nio" communication, as a
+     * comma-separated list of host:port entries, each optionally followed by @site. The first node is the master. All nodes must
+     * use the same list. The default is not set.
+     */
+    public static final String S_NIO_PEERS = S_COMMUNICATION + ".nio.peers";
+
+    /** Value of the "communication.nio.peers" property. */
+    public final String NIO_PEERS;
+
+    /**
+     * The "communication.nio.rank" property is an integer property, specifying the index of this node in the
+     * "communication.nio.peers" list. The default is "-1", which is invalid when "nio" communication is used.
+     */
+    public static final String S_NIO_RANK = S_COMMUNICATION + ".nio.rank";
+
+    /** Value of the "communication.nio.rank" property. */
+    public final int NIO_RANK;
+
+    /**
+     * The "shm" property is a boolean property indicating whether messages to nodes on the same host should be sent through
+     * ring buffers in shared memory instead of the network. The default is "false".
+     */
+    public static final String S_SHM = S_PREFIX + "shm";
+
+    /** Value of the "shm" property. */
+    public final boolean SHM;
+
+    /**
+     * The "shm.dir" property is a string property, specifying the directory in which the shared memory ring buffers are created.
+     * It must be on a file system that is local to the host. The default is "/dev/shm/constellation".
+     */
+    public static final String S_SHM_DIR = S_SHM + ".dir";
+
+    /** Value of the "shm.dir" property. */
+    public final String SHM_DIR;
+
+    /**
+     * The "shm.size" property is an integer property, specifying the size in bytes of each shared memory ring buffer. Larger
+     * messages are streamed through the ring. The default is "4194304".
+     */
+    public static final String S_SHM_SIZE = S_SHM + ".size";
+
+    /** Value of the "shm.size" property. */
+    public final int SHM_SIZE;
+
     /**
      * The "poolSize" property is an integer property indicating the pool size if the current run is a closed run, that is, when
      * the total number of nodes involved is fixed.
@@ -186,6 +287,25 @@ public class ConstellationProperties extends Properties {
     /** Value of the "closed" property. */
     public final int POOLSIZE;
 
+    /**
+     * The "closed.handshakeWindow" property is an integer property indicating how many nodes the master of a closed run
+     * handshakes with at the same time when the run starts. The default is 32.
+     */
+    public static final String S_CLOSED_HANDSHAKEWINDOW = S_PREFIX + "closed.handshakeWindow";
+
+    /** Value of the "closed.handshakeWindow" property. */
+    public final int CLOSED_HANDSHAKEWINDOW;
+
+    /**
+     * The "closed.peerPorts" property is a boolean property indicating whether, in a closed run, every node creates a separate
+     * receive port for each of the other nodes. If false, all nodes send to a single receive port, which is cheaper to set up for
+     * large runs. The default is "true".
+     */
+    public static final String S_CLOSED_PEERPORTS = S_PREFIX + "closed.peerPorts";
+
+    /** Value of the "closed.peerPorts" property. */
+    public final boolean CLOSED_PEERPORTS;
+
     /**
      * The "master" property is a boolean property indicating whether the current constellation instance is a candidate to be the
      * master. At least one of the constellation instances should be. See {@link Constellation#isMaster()}. The default is "true".
@@ -208,6 +328,299 @@ public class ConstellationProperties extends Properties {
     /** Value of the "queue.limit" property. */
     public final int QUEUED_JOB_LIMIT;
 
+    /**
+     * The "aggregation" property is a boolean property indicating whether small messages to the same node should be aggregated
+     * into a single network message. Messages that are latency critical, such as steal requests and replies, still cause an
+     * immediate flush. When sending an aggregated message fails, the events and steal replies in it are handed back to the
+     * sender, just like messages that could not be sent on their own. The default is "false".
+     */
+    public static final String S_AGGREGATION = S_PREFIX + "aggregation";
+
+    /** Value of the "aggregation" property. */
+    public final boolean AGGREGATION;
+
+    /**
+     * The "aggregation.size" property is an integer property, specifying the number of bytes after which an aggregated message is
+     * sent. The default is "65536".
+     */
+    public static final String S_AGGREGATION_SIZE = S_AGGREGATION + ".size";
+
+    /** Value of the "aggregation.size" property. */
+    public final int AGGREGATION_SIZE;
+
+    /**
+     * The "aggregation.delay" property is an integer property, specifying the maximum time a message may be delayed for
+     * aggregation, in milliseconds. The default is "5".
+     */
+    public static final String S_AGGREGATION_DELAY = S_AGGREGATION + ".delay";
+
+    /** Value of the "aggregation.delay" property. */
+    public final int AGGREGATION_DELAY;
+
+    /**
+     * The "aggregation.idle" property is an integer property, specifying after how many milliseconds without new messages an
+     * aggregated message is sent. The default is "1".
+     */
+    public static final String S_AGGREGATION_IDLE = S_AGGREGATION + ".idle";
+
+    /** Value of the "aggregation.idle" property. */
+    public final int AGGREGATION_IDLE;
+
+    /**
+     * The "compactMessages" property is a boolean property indicating whether runtime control messages (steal requests and
+     * replies, events, pool and rank management) should be sent using a compact hand-written encoding instead of object
+     * serialization. All nodes must use the same setting. The default is "false".
+     */
+    public static final String S_COMPACT_MESSAGES = S_PREFIX + "compactMessages";
+
+    /** Value of the "compactMessages" property. */
+    public final boolean COMPACT_MESSAGES;
+
+    /**
+     * The "bulk" property is a boolean property indicating whether messages carrying large bytebuffers should be sent over a
+     * separate connection, in fragments, so that they do not hold up steal requests and other control messages to the same
+     * node. Messages on the bulk connection are not ordered with respect to other messages. All nodes must use the same setting.
+     * The default is "false".
+     */
+    public static final String S_BULK = S_PREFIX + "bulk";
+
+    /** Value of the "bulk" property. */
+    public final boolean BULK;
+
+    /**
+     * The "bulk.threshold" property is an integer property, specifying the total bytebuffer size, in bytes, from which a message
+     * is sent over the bulk connection. The default is "65536".
+     */
+    public static final String S_BULK_THRESHOLD = S_BULK + ".threshold";
+
+    /** Value of the "bulk.threshold" property. */
+    public final int BULK_THRESHOLD;
+
+    /**
+     * The "bulk.fragment" property is an integer property, specifying the maximum number of bytebuffer bytes sent in a single
+     * network message on the bulk connection. The default is "1048576".
+     */
+    public static final String S_BULK_FRAGMENT = S_BULK + ".fragment";
+
+    /** Value of the "bulk.fragment" property. */
+    public final int BULK_FRAGMENT;
+
+    /**
+     * The "byteBuffers.partial" property is a boolean property indicating whether only the bytes between the position and the
+     * limit of a bytebuffer should be sent to another node, instead of its whole capacity. The receiver then gets a buffer with
+     * just those bytes, from position 0 to the limit. When false, the whole capacity is sent, regardless of position and limit.
+     * The default is "false".
+     */
+    public static final String S_BYTEBUFFERS_PARTIAL = S_PREFIX + "byteBuffers.partial";
+
+    /** Value of the "byteBuffers.partial" property. */
+    public final boolean BYTEBUFFERS_PARTIAL;
+
+    /**
+     * The "asyncSend" property is a boolean property indicating whether messages to other nodes should be queued per destination
+     * and sent by dedicated sender threads, so that the thread that sends a message never blocks on the network. The default is
+     * "false".
+     */
+    public static final String S_ASYNC_SEND = S_PREFIX + "asyncSend";
+
+    /** Value of the "asyncSend" property. */
+    public final boolean ASYNC_SEND;
+
+    /**
+     * The "asyncSend.queueSize" property is an integer property, specifying the maximum number of messages queued for a single
+     * destination. When the queue is full, sending a message to that destination fails immediately. The default is "1024".
+     */
+    public static final String S_ASYNC_SEND_QUEUESIZE = S_ASYNC_SEND + ".queueSize";
+
+    /** Value of the "asyncSend.queueSize" property. */
+    public final int ASYNC_SEND_QUEUESIZE;
+
+    /**
+     * The "asyncSend.threads" property is an integer property, specifying the number of sender threads. The default is "2".
+     */
+    public static final String S_ASYNC_SEND_THREADS = S_ASYNC_SEND + ".threads";
+
+    /** Value of the "asyncSend.threads" property. */
+    public final int ASYNC_SEND_THREADS;
+
+    /**
+     * The "handlerThreads" property is an integer property, specifying the number of threads that handle incoming messages. When
+     * it is 0, messages are handled by the thread that receives them. The default is "0".
+     */
+    public static final String S_HANDLER_THREADS = S_PREFIX + "handlerThreads";
+
+    /** Value of the "handlerThreads" property. */
+    public final int HANDLER_THREADS;
+
+    /**
+     * The "handlerThreads.queueSize" property is an integer property, specifying the maximum number of received messages waiting
+     * to be handled. Pool management and time synchronization messages are not counted. The default is "4096".
+     */
+    public static final String S_HANDLER_QUEUESIZE = S_HANDLER_THREADS + ".queueSize";
+
+    /** Value of the "handlerThreads.queueSize" property. */
+    public final int HANDLER_QUEUESIZE;
+
+    /**
+     * The "prefetch" property is a boolean property indicating whether a node should already steal remote work when its workers
+     * are running low on work, instead of waiting until a worker has run out of work completely. The default is "false".
+     */
+    public static final String S_PREFETCH = S_PREFIX + "prefetch";
+
+    /** Value of the "prefetch" property. */
+    public final boolean PREFETCH;
+
+    /**
+     * The "prefetch.lowWatermark" property is an integer property, specifying the number of queued activities on a node below
+     * which remote work is prefetched. The default is "4".
+     */
+    public static final String S_PREFETCH_LOWWATERMARK = S_PREFETCH + ".lowWatermark";
+
+    /** Value of the "prefetch.lowWatermark" property. */
+    public final int PREFETCH_LOWWATERMARK;
+
+    /**
+     * The "prefetch.maxOutstanding" property is an integer property, specifying the maximum number of prefetching steal requests
+     * that may be outstanding at the same time. The default is "2".
+     */
+    public static final String S_PREFETCH_MAXOUTSTANDING = S_PREFETCH + ".maxOutstanding";
+
+    /** Value of the "prefetch.maxOutstanding" property. */
+    public final int PREFETCH_MAXOUTSTANDING;
+
+    /**
+     * The "prefetch.interval" property is an integer property, specifying how often, in milliseconds, the number of queued
+     * activities is checked. The default is "10".
+     */
+    public static final String S_PREFETCH_INTERVAL = S_PREFETCH + ".interval";
+
+    /** Value of the "prefetch.interval" property. */
+    public final int PREFETCH_INTERVAL;
+
+    /**
+     * The "loadGossip" property is a boolean property indicating whether nodes should exchange summaries of their queued work, and
+     * use these to select the nodes to steal from. The default is "false".
+     */
+    public static final String S_LOADGOSSIP = S_PREFIX + "loadGossip";
+
+    /** Value of the "loadGossip" property. */
+    public final boolean LOADGOSSIP;
+
+    /**
+     * The "loadGossip.interval" property is an integer property, specifying the time between two gossip exchanges with a random
+     * node, in milliseconds. The default is "100".
+     */
+    public static final String S_LOADGOSSIP_INTERVAL = S_LOADGOSSIP + ".interval";
+
+    /** Value of the "loadGossip.interval" property. */
+    public final int LOADGOSSIP_INTERVAL;
+
+    /**
+     * The "loadGossip.staleness" property is an integer property, specifying after how many milliseconds the work summary of a
+     * node is no longer used. The default is "1000".
+     */
+    public static final String S_LOADGOSSIP_STALENESS = S_LOADGOSSIP + ".staleness";
+
+    /** Value of the "loadGossip.staleness" property. */
+    public final int LOADGOSSIP_STALENESS;
+
+    /**
+     * The "site" property is a string property, specifying the label of the site (for instance the cluster) this node runs on. It
+     * is used as the parent of the IPL location of this node. When it is not set, the site is derived from the IPL location. The
+     * default is not set.
+     */
+    public static final String S_SITE = S_PREFIX + "site";
+
+    /** Value of the "site" property. */
+    public final String SITE;
+
+    /**
+     * The "crs" property is a boolean property indicating whether cluster-aware random stealing should be used. Remote steal
+     * requests then go to nodes on the same site, while at most one steal request to another site is outstanding. The default is
+     * "false".
+     */
+    public static final String S_CRS = S_PREFIX + "crs";
+
+    /** Value of the "crs" property. */
+    public final boolean CRS;
+
+    /**
+     * The "crs.wanStealFactor" property is an integer property, specifying by which factor the size of a steal request to another
+     * site is multiplied, to amortize the wide-area latency. The default is "4".
+     */
+    public static final String S_CRS_WANSTEALFACTOR = S_CRS + ".wanStealFactor";
+
+    /** Value of the "crs.wanStealFactor" property. */
+    public final int CRS_WANSTEALFACTOR;
+
+    /**
+     * The "rankBroadcast" property is a boolean property indicating whether the master should send its complete table of ranks to
+     * every node that joins, and send updates of the table to all nodes, so that nodes do not have to look up ranks. The default is
+     * "false".
+     */
+    public static final String S_RANK_BROADCAST = S_PREFIX + "rankBroadcast";
+
+    /** Value of the "rankBroadcast" property. */
+    public final boolean RANK_BROADCAST;
+
+    /**
+     * The "poolPush" property is a boolean property indicating whether the master of a steal pool should push membership changes
+     * to the nodes that follow the pool, instead of having them poll for updates. The default is "false".
+     */
+    public static final String S_POOL_PUSH = S_PREFIX + "poolPush";
+
+    /** Value of the "poolPush" property. */
+    public final boolean POOL_PUSH;
+
+    /**
+     * The "quiescence" property is a boolean property indicating whether {@link Constellation#done()} on the master should wait
+     * until all work in the pool is done: no activities are queued or running, and no events are in transit anywhere. The other
+     * instances then terminate as well. The default is "false".
+     */
+    public static final String S_QUIESCENCE = S_PREFIX + "quiescence";
+
+    /** Value of the "quiescence" property. */
+    public final boolean QUIESCENCE;
+
+    /**
+     * The "quiescence.interval" property is an integer property indicating the time in milliseconds between the checks of the
+     * master for quiescence. The default is 50.
+     */
+    public static final String S_QUIESCENCE_INTERVAL = S_PREFIX + "quiescence.interval";
+
+    /** Value of the "quiescence.interval" property. */
+    public final int QUIESCENCE_INTERVAL;
+
+    /**
+     * The "locationHints" property is an integer property indicating how many activity locations each instance remembers, so
+     * that events for activities that were stolen are sent to their current location directly instead of through the instance
+     * where they were created. The value 0 disables the location hints. The default is 0.
+     */
+    public static final String S_LOCATIONHINTS = S_PREFIX + "locationHints";
+
+    /** Value of the "locationHints" property. */
+    public final int LOCATIONHINTS;
+
+    /**
+     * The "placement" property is a boolean property indicating whether an activity that is submitted to an executor with a
+     * context that does not match is passed on right away to an executor that can run it, on the same instance if possible, and
+     * otherwise on an instance that advertised a matching context. When there is no such executor, the activity waits until it
+     * is stolen, as usual. The default is "false".
+     */
+    public static final String S_PLACEMENT = S_PREFIX + "placement";
+
+    /** Value of the "placement" property. */
+    public final boolean PLACEMENT;
+
+    /**
+     * The "placement.delay" property is an integer property indicating the time in milliseconds during which activities that are
+     * passed on to the same instance are collected, so that they are sent together. The default is 10.
+     */
+    public static final String S_PLACEMENT_DELAY = S_PREFIX + "placement.delay";
+
+    /** Value of the "placement.delay" property. */
+    public final int PLACEMENT_DELAY;
+
     /**
      * Creates a <code>ConstellationProperties</code> object using the specified properties.
      *
@@ -219,13 +632,25 @@ public class ConstellationProperties extends Properties {
 
         MASTER = getBooleanProperty(S_MASTER, true);
         CLOSED = getBooleanProperty(S_CLOSED, false);
+        COMMUNICATION = getProperty(S_COMMUNICATION, "ibis");
+        LOCAL_GROUP = getProperty(S_LOCAL_GROUP, "constellation");
+        LOCAL_LATENCY = getIntProperty(S_LOCAL_LATENCY, 0);
+        LOCAL_BANDWIDTH = getIntProperty(S_LOCAL_BANDWIDTH, 0);
+        NIO_PEERS = getProperty(S_NIO_PEERS);
+        NIO_RANK = getIntProperty(S_NIO_RANK, -1);
+        SHM = getBooleanProperty(S_SHM, false);
+        SHM_DIR = getProperty(S_SHM_DIR, "/dev/shm/constellation");
+        SHM_SIZE = getIntProperty(S_SHM_SIZE, 4194304);
         POOLSIZE = getIntProperty(S_POOLSIZE, -1);
+        CLOSED_HANDSHAKEWINDOW = getIntProperty(S_CLOSED_HANDSHAKEWINDOW, 32);
+        CLOSED_PEERPORTS = getBooleanProperty(S_CLOSED_PEERPORTS, true);
         DISTRIBUTED = getBooleanProperty(S_DISTRIBUTED, true);
         PROFILE = getBooleanProperty(S_PROFILE, false);
         PROFILE_COMMUNICATION = getBooleanProperty(S_PROFILE_COMMUNICATION, false);
         PROFILE_ACTIVITY = getBooleanProperty(S_PROFILE_ACTIVITY, false);
         PROFILE_STEAL = getBooleanProperty(S_PROFILE_STEAL, false);
         PROFILE_OUTPUT = getProperty(S_PROFILE_OUTPUT);
+        PROFILE_CHUNKSIZE = getIntProperty(S_PROFILE_CHUNKSIZE, 65536);
         STATISTICS = getBooleanProperty(S_STATISTICS, false);
         STATISTICS_OUTPUT = getProperty(S_STATISTICS_OUTPUT);
         REMOTESTEAL_THROTTLE = getBooleanProperty(S_REMOTESTEAL_THROTTLE, false);
@@ -235,17 +660,68 @@ public class ConstellationProperties extends Properties {
         REMOTESTEAL_SIZE = getIntProperty(S_REMOTESTEAL_SIZE, 1);
         STEALSTRATEGY = getProperty(S_STEALSTRATEGY, "pool");
         REMOTESTEAL_TIMEOUT = getIntProperty(S_REMOTESTEAL_TIMEOUT, 5000);
+        REMOTESTEAL_COMBINE = getBooleanProperty(S_REMOTESTEAL_COMBINE, false);
         QUEUED_JOB_LIMIT = getIntProperty(S_QUEUED_JOB_LIMIT, 100);
+        AGGREGATION = getBooleanProperty(S_AGGREGATION, false);
+        AGGREGATION_SIZE = getIntProperty(S_AGGREGATION_SIZE, 65536);
+        AGGREGATION_DELAY = getIntProperty(S_AGGREGATION_DELAY, 5);
+        AGGREGATION_IDLE = getIntProperty(S_AGGREGATION_IDLE, 1);
+        COMPACT_MESSAGES = getBooleanProperty(S_COMPACT_MESSAGES, false);
+        BULK = getBooleanProperty(S_BULK, false);
+        BULK_THRESHOLD = getIntProperty(S_BULK_THRESHOLD, 65536);
+        BULK_FRAGMENT = getIntProperty(S_BULK_FRAGMENT, 1048576);
+        BYTEBUFFERS_PARTIAL = getBooleanProperty(S_BYTEBUFFERS_PARTIAL, false);
+        ASYNC_SEND = getBooleanProperty(S_ASYNC_SEND, false);
+        ASYNC_SEND_QUEUESIZE = getIntProperty(S_ASYNC_SEND_QUEUESIZE, 1024);
+        ASYNC_SEND_THREADS = getIntProperty(S_ASYNC_SEND_THREADS, 2);
+        HANDLER_THREADS = getIntProperty(S_HANDLER_THREADS, 0);
+        HANDLER_QUEUESIZE = getIntProperty(S_HANDLER_QUEUESIZE, 4096);
+        PREFETCH = getBooleanProperty(S_PREFETCH, false);
+        PREFETCH_LOWWATERMARK = getIntProperty(S_PREFETCH_LOWWATERMARK, 4);
+        PREFETCH_MAXOUTSTANDING = getIntProperty(S_PREFETCH_MAXOUTSTANDING, 2);
+        PREFETCH_INTERVAL = getIntProperty(S_PREFETCH_INTERVAL, 10);
+        LOADGOSSIP = getBooleanProperty(S_LOADGOSSIP, false);
+        LOADGOSSIP_INTERVAL = getIntProperty(S_LOADGOSSIP_INTERVAL, 100);
+        LOADGOSSIP_STALENESS = getIntProperty(S_LOADGOSSIP_STALENESS, 1000);
+        SITE = getProperty(S_SITE);
+        CRS = getBooleanProperty(S_CRS, false);
+        CRS_WANSTEALFACTOR = getIntProperty(S_CRS_WANSTEALFACTOR, 4);
+        RANK_BROADCAST = getBooleanProperty(S_RANK_BROADCAST, false);
+        POOL_PUSH = getBooleanProperty(S_POOL_PUSH, false);
+        QUIESCENCE = getBooleanProperty(S_QUIESCENCE, false);
+        QUIESCENCE_INTERVAL = getIntProperty(S_QUIESCENCE_INTERVAL, 50);
+        LOCATIONHINTS = getIntProperty(S_LOCATIONHINTS, 0);
+        PLACEMENT = getBooleanProperty(S_PLACEMENT, false);
+        PLACEMENT_DELAY = getIntProperty(S_PLACEMENT_DELAY, 10);
         if (logger.isInfoEnabled()) {
             logger.info("MASTER = " + MASTER);
             logger.info("CLOSED = " + CLOSED);
+            logger.info("COMMUNICATION = " + COMMUNICATION);
+            if ("local".equals(COMMUNICATION)) {
+                logger.info("LOCAL_GROUP = " + LOCAL_GROUP);
+                logger.info("LOCAL_LATENCY = " + LOCAL_LATENCY);
+                logger.info("LOCAL_BANDWIDTH = " + LOCAL_BANDWIDTH);
+            } else if ("nio".equals(COMMUNICATION)) {
+                logger.info("NIO_PEERS = " + NIO_PEERS);
+                logger.info("NIO_RANK = " + NIO_RANK);
+            }
+            logger.info("SHM = " + SHM);
+            if (SHM) {
+                logger.info("SHM_DIR = " + SHM_DIR);
+                logger.info("SHM_SIZE = " + SHM_SIZE);
+            }
             if (CLOSED) {
                 logger.info("POOLSIZE = " + POOLSIZE);
+                logger.info("CLOSED_HANDSHAKEWINDOW = " + CLOSED_HANDSHAKEWINDOW);
+                logger.info("CLOSED_PEERPORTS = " + CLOSED_PEERPORTS);
             }
             logger.info("DISTRIBUTED = " + DISTRIBUTED);
             logger.info("PROFILE = " + PROFILE);
             logger.info("PROFILE_COMMUNICATION = " + PROFILE_COMMUNICATION);
             logger.info("PROFILE_STEAL = " + PROFILE_STEAL);
+            if (PROFILE) {
+                logger.info("PROFILE_CHUNKSIZE = " + PROFILE_CHUNKSIZE);
+            }
             logger.info("STATISTICS = " + STATISTICS);
             logger.info("STATISTICS_OUTPUT = " + STATISTICS_OUTPUT);
             logger.info("REMOTESTEAL_THROTTLE = " + REMOTESTEAL_THROTTLE);
@@ -255,7 +731,57 @@ public class ConstellationProperties extends Properties {
             logger.info("REMOTESTEAL_SIZE = " + REMOTESTEAL_SIZE);
             logger.info("STEALSTRATEGY = " + STEALSTRATEGY);
             logger.info("REMOTESTEAL_TIMEOUT = " + REMOTESTEAL_TIMEOUT);
+            logger.info("REMOTESTEAL_COMBINE = " + REMOTESTEAL_COMBINE);
             logger.info("QUEUED_JOB_LIMIT = " + QUEUED_JOB_LIMIT);
+            logger.info("AGGREGATION = " + AGGREGATION);
+            if (AGGREGATION) {
+                logger.info("AGGREGATION_SIZE = " + AGGREGATION_SIZE);
+                logger.info("AGGREGATION_DELAY = " + AGGREGATION_DELAY);
+                logger.info("AGGREGATION_IDLE = " + AGGREGATION_IDLE);
+            }
+            logger.info("COMPACT_MESSAGES = " + COMPACT_MESSAGES);
+            logger.info("BULK = " + BULK);
+            if (BULK) {
+                logger.info("BULK_THRESHOLD = " + BULK_THRESHOLD);
+                logger.info("BULK_FRAGMENT = " + BULK_FRAGMENT);
+            }
+            logger.info("BYTEBUFFERS_PARTIAL = " + BYTEBUFFERS_PARTIAL);
+            logger.info("ASYNC_SEND = " + ASYNC_SEND);
+            if (ASYNC_SEND) {
+                logger.info("ASYNC_SEND_QUEUESIZE = " + ASYNC_SEND_QUEUESIZE);
+                logger.info("ASYNC_SEND_THREADS = " + ASYNC_SEND_THREADS);
+            }
+            logger.info("HANDLER_THREADS = " + HANDLER_THREADS);
+            if (HANDLER_THREADS > 0) {
+                logger.info("HANDLER_QUEUESIZE = " + HANDLER_QUEUESIZE);
+            }
+            logger.info("PREFETCH = " + PREFETCH);
+            if (PREFETCH) {
+                logger.info("PREFETCH_LOWWATERMARK = " + PREFETCH_LOWWATERMARK);
+                logger.info("PREFETCH_MAXOUTSTANDING = " + PREFETCH_MAXOUTSTANDING);
+                logger.info("PREFETCH_INTERVAL = " + PREFETCH_INTERVAL);
+            }
+            logger.info("LOADGOSSIP = " + LOADGOSSIP);
+            if (LOADGOSSIP) {
+                logger.info("LOADGOSSIP_INTERVAL = " + LOADGOSSIP_INTERVAL);
+                logger.info("LOADGOSSIP_STALENESS = " + LOADGOSSIP_STALENESS);
+            }
+            logger.info("SITE = " + SITE);
+            logger.info("CRS = " + CRS);
+            if (CRS) {
+                logger.info("CRS_WANSTEALFACTOR = " + CRS_WANSTEALFACTOR);
+            }
+            logger.info("RANK_BROADCAST = " + RANK_BROADCAST);
+            logger.info("POOL_PUSH = " + POOL_PUSH);
+            logger.info("QUIESCENCE = " + QUIESCENCE);
+            if (QUIESCENCE) {
+                logger.info("QUIESCENCE_INTERVAL = " + QUIESCENCE_INTERVAL);
+            }
+            logger.info("LOCATIONHINTS = " + LOCATIONHINTS);
+            logger.info("PLACEMENT = " + PLACEMENT);
+            if (PLACEMENT) {
+                logger.info("PLACEMENT_DELAY = " + PLACEMENT_DELAY);
+            }
         }
     }
 
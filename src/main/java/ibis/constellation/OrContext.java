@@ -16,6 +16,7 @@
  */
 package ibis.constellation;
 
+import java.util.Arrays;
 import java.util.Iterator;
 
 /**
@@ -102,6 +103,29 @@ public class OrContext extends AbstractContext implements Iterable<Context> {
         return contexts[index];
     }
 
+    @Override
+    public boolean equals(Object o) {
+
+        if (o == this) {
+            return true;
+        }
+
+        if (o == null) {
+            return false;
+        }
+
+        if (!(o instanceof OrContext)) {
+            return false;
+        }
+
+        return Arrays.equals(contexts, ((OrContext) o).contexts);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(contexts);
+    }
+
     @Override
     public String toString() {
 
@@ -58,6 +58,15 @@ public final class ActivityIdentifierImpl implements ActivityIdentifier, Seriali
         return expectsEvents;
     }
 
+    /**
+     * Returns the sequence number of this activity on the constellation that created it.
+     *
+     * @return the sequence number.
+     */
+    public long getSequenceNumber() {
+        return AID;
+    }
+
     /**
      * Returns the constellation identifier that created this activity.
      *
@@ -56,8 +56,9 @@ public class ContextMatch {
     
     public static boolean doMatch(OrContext a, Context b) {
         
-        for (Context c : a) {
-            if (doMatch(c, b)) { 
+        // Index loops, to avoid allocating iterators on this hot path.
+        for (int i = 0; i < a.size(); i++) {
+            if (doMatch(a.get(i), b)) { 
                 return true;
             }
         }
@@ -67,9 +68,10 @@ public class ContextMatch {
     
     public static boolean doMatch(OrContext a, OrContext b) {
             
-        for (Context c1 : a) {
-            for (Context c2 : b) {
-                if (doMatch(c1, c2)) { 
+        for (int i = 0; i < a.size(); i++) {
+            Context c1 = a.get(i);
+            for (int j = 0; j < b.size(); j++) {
+                if (doMatch(c1, b.get(j))) { 
                     return true;
                 }
             }
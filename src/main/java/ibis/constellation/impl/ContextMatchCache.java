@@ -0,0 +1,78 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.constellation.impl;
+
+import ibis.constellation.AbstractContext;
+
+/**
+ * Caches the results of matching the (fixed) context of an executor against activity contexts. Applications typically use
+ * a small set of contexts, so this turns most matches into a single table lookup.
+ *
+ * The table is direct mapped and bounded: a context that hashes to an occupied slot simply replaces the previous entry.
+ * Entries are immutable, so the cache may be used by several threads without locking; at worst a result is computed twice.
+ */
+class ContextMatchCache {
+
+    private static final int SIZE = 64;
+
+    private static final class Entry {
+
+        final AbstractContext context;
+        final boolean match;
+
+        Entry(AbstractContext context, boolean match) {
+            this.context = context;
+            this.match = match;
+        }
+    }
+
+    private final AbstractContext context;
+
+    private final Entry[] entries = new Entry[SIZE];
+
+    ContextMatchCache(AbstractContext context) {
+        this.context = context;
+    }
+
+    /**
+     * Returns whether the specified context matches the context of this cache, see
+     * {@link ContextMatch#match(AbstractContext, AbstractContext)}.
+     *
+     * @param other
+     *            the context to match
+     * @return whether the contexts match
+     */
+    boolean match(AbstractContext other) {
+
+        if (other == null) {
+            return false;
+        }
+
+        int h = other.hashCode();
+        int index = (h ^ (h >>> 16)) & (SIZE - 1);
+
+        Entry e = entries[index];
+
+        if (e != null && (e.context == other || e.context.equals(other))) {
+            return e.match;
+        }
+
+        boolean match = ContextMatch.match(context, other);
+        entries[index] = new Entry(other, match);
+        return match;
+    }
+}
@@ -16,6 +16,8 @@
  */
 package ibis.constellation.impl;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.Random;
@@ -36,6 +38,7 @@ import ibis.constellation.Event;
 import ibis.constellation.NoSuitableExecutorException;
 import ibis.constellation.OrContext;
 import ibis.constellation.StealPool;
+import ibis.constellation.impl.pool.LoadInfo;
 import ibis.constellation.impl.pool.Pool;
 import ibis.constellation.impl.pool.PoolCreationFailedException;
 import ibis.constellation.impl.util.Profiling;
@@ -79,7 +82,7 @@ public class DistributedConstellation {
     private boolean active;
 
     /** The sub-constellation. */
-    private MultiThreadedConstellation subConstellation;
+    private volatile MultiThreadedConstellation subConstellation;
 
     /** Our identification. */
     private final ConstellationIdentifierImpl identifier;
@@ -93,6 +96,12 @@ public class DistributedConstellation {
     /** Separate thread for delivering delayed event messages. */
     private final DeliveryThread delivery;
 
+    /** Separate thread for prefetching remote work, or <code>null</code> when prefetching is disabled. */
+    private final Prefetcher prefetcher;
+
+    /** Size of remote steal requests. */
+    private final int REMOTE_STEAL_SIZE;
+
     /** The constellation facade. */
     private final Facade facade = new Facade();
 
@@ -208,6 +217,9 @@ public class DistributedConstellation {
         /** The current delay. */
         private long currentDelay = MIN_DELAY;
 
+        /** The number of event messages that have not been sent yet. */
+        private int pending = 0;
+
         /**
          * Creates and starts a <code>Delivery</code> object as a daemon thread.
          */
@@ -227,6 +239,7 @@ public class DistributedConstellation {
          */
         private synchronized void enqueue(EventMessage m) {
             incoming.addLast(m);
+            pending++;
 
             // reset the deadline when new messages have been added.
             currentDelay = MIN_DELAY;
@@ -255,6 +268,25 @@ public class DistributedConstellation {
             return tmp;
         }
 
+        /**
+         * Registers that event messages were sent.
+         *
+         * @param n
+         *            the number of event messages sent.
+         */
+        private synchronized void sent(int n) {
+            pending -= n;
+        }
+
+        /**
+         * Returns whether all event messages have been sent.
+         *
+         * @return whether no event messages are pending.
+         */
+        private synchronized boolean isEmpty() {
+            return pending == 0;
+        }
+
         /**
          * Makes the delivery thread wait until the current deadline.
          */
@@ -323,13 +355,19 @@ public class DistributedConstellation {
 
                 waitForDeadline();
 
+                // Events for placed activities that did not arrive go back to where the activities came from.
+                MultiThreadedConstellation sub = subConstellation;
+                if (sub != null) {
+                    sub.expirePlacedEvents();
+                }
+
                 // First try to send any old messages that are still pending.
-                attemptSend(old);
+                sent(attemptSend(old));
 
                 // Next, get any new messages we've obtained and try to send
                 // them.
                 LinkedList<EventMessage> incoming = swap();
-                attemptSend(incoming);
+                sent(attemptSend(incoming));
 
                 if (incoming.size() > 0) {
                     // If we have any new message left, they are now appended to
@@ -344,6 +382,113 @@ public class DistributedConstellation {
         }
     }
 
+    /**
+     * A <code>Prefetcher</code> is a thread object that prefetches remote work.
+     *
+     * It regularly checks the number of activities queued in the sub-constellation. When this number drops below the low
+     * watermark, it sends remote steal requests on behalf of the hungriest workers, so that the latency of the remote steal
+     * overlaps with the computation of the remaining activities. The number of outstanding prefetching steal requests is limited.
+     * A steal request is no longer considered outstanding when a steal reply arrives, or when the remote steal timeout expires.
+     */
+    private class Prefetcher extends Thread {
+
+        /** The number of queued activities below which work is prefetched. */
+        private final int lowWatermark;
+
+        /** The maximum number of outstanding prefetching steal requests. */
+        private final int maxOutstanding;
+
+        /** The interval between checks, in milliseconds. */
+        private final long interval;
+
+        /** The deadlines of the outstanding prefetching steal requests, oldest first. */
+        private final ArrayDeque<Long> outstanding = new ArrayDeque<Long>();
+
+        /** Set when the prefetcher must stop. */
+        private volatile boolean done = false;
+
+        /**
+         * Creates a <code>Prefetcher</code> object as a daemon thread.
+         *
+         * @param props
+         *            the properties to use
+         */
+        Prefetcher(ConstellationProperties props) {
+            super("Constellation Prefetcher");
+            setDaemon(true);
+            lowWatermark = props.PREFETCH_LOWWATERMARK;
+            maxOutstanding = props.PREFETCH_MAXOUTSTANDING;
+            interval = props.PREFETCH_INTERVAL;
+        }
+
+        /**
+         * Notes that a steal reply has arrived, so one steal request less is outstanding.
+         */
+        private synchronized void gotReply() {
+            outstanding.pollFirst();
+        }
+
+        /**
+         * Removes the steal requests of which the deadline has passed, and returns the number of remaining ones.
+         *
+         * @return the number of outstanding steal requests.
+         */
+        private synchronized int expire() {
+            long now = System.currentTimeMillis();
+            while (!outstanding.isEmpty() && outstanding.peekFirst().longValue() <= now) {
+                outstanding.removeFirst();
+            }
+            return outstanding.size();
+        }
+
+        private synchronized void sent() {
+            outstanding.addLast(System.currentTimeMillis() + REMOTE_STEAL_TIMEOUT);
+        }
+
+        private void prefetch() {
+            int n = expire();
+            int queued = subConstellation.queuedActivities() + n * REMOTE_STEAL_SIZE;
+
+            while (queued < lowWatermark && n < maxOutstanding) {
+                StealRequest sr = subConstellation.createPrefetchRequest(REMOTE_STEAL_SIZE);
+                if (sr == null || !handleStealRequest(sr)) {
+                    return;
+                }
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Prefetching work for " + sr.source + ", queued = " + queued);
+                }
+                sent();
+                n++;
+                queued += REMOTE_STEAL_SIZE;
+            }
+        }
+
+        /**
+         * Stops the prefetcher, and waits until it no longer sends steal requests.
+         */
+        private void done() {
+            done = true;
+            interrupt();
+            try {
+                join();
+            } catch (InterruptedException e) {
+                // ignore
+            }
+        }
+
+        @Override
+        public void run() {
+            while (!done) {
+                prefetch();
+                try {
+                    Thread.sleep(interval);
+                } catch (InterruptedException e) {
+                    // ignore
+                }
+            }
+        }
+    }
+
     /**
      * Facade implementing the {@link Constellation} interface for this <code>DistributedConstellation</code>.
      */
@@ -380,7 +525,11 @@ public class DistributedConstellation {
             }
 
             pool.activate();
-            return subConstellation.activate();
+            boolean result = subConstellation.activate();
+            if (prefetcher != null) {
+                prefetcher.start();
+            }
+            return result;
         }
 
         @Override
@@ -447,6 +596,8 @@ public class DistributedConstellation {
 
         REMOTE_STEAL_TIMEOUT = props.REMOTESTEAL_TIMEOUT;
 
+        REMOTE_STEAL_SIZE = props.REMOTESTEAL_SIZE;
+
         PROFILE = props.PROFILE;
 
         PROFILE_OUTPUT = props.PROFILE_OUTPUT;
@@ -461,6 +612,8 @@ public class DistributedConstellation {
             delivery = new DeliveryThread();
             delivery.start();
 
+            prefetcher = props.PREFETCH ? new Prefetcher(props) : null;
+
             if (logger.isInfoEnabled()) {
                 logger.info("DistributeConstellation : " + identifier);
                 logger.info("               throttle : " + REMOTE_STEAL_THROTTLE);
@@ -479,9 +632,18 @@ public class DistributedConstellation {
     /**
      * Implements {@link Constellation#done()} for this <code>DistributedConstellation</code>.
      *
-     * It terminates the pool, notifies the sub-constellation, and deals with statistics.
+     * It stops the prefetcher, terminates the pool, notifies the sub-constellation, and deals with statistics.
      */
     private void performDone() {
+        if (pool.isMaster()) {
+            // Does not return until all work is done, if quiescence detection is enabled.
+            pool.waitForQuiescence();
+        }
+
+        if (prefetcher != null) {
+            prefetcher.done();
+        }
+
         try {
             // NOTE: this will proceed directly on the master. On other
             // instances, it blocks until the master terminates.
@@ -603,11 +765,16 @@ public class DistributedConstellation {
         // we now got an answer.
         setPendingSteal(sr.getPool(), sr.getContext(), false);
 
+        if (prefetcher != null) {
+            prefetcher.gotReply();
+        }
+
         if (sr.isEmpty()) {
             // No work in this steal reply.
             if (logger.isDebugEnabled()) {
                 logger.debug("Got empty steal reply for " + sr.target.toString() + " from " + sr.source.toString());
             }
+            subConstellation.deliverEmptyStealReply(sr);
             return;
         }
 
@@ -626,6 +793,64 @@ public class DistributedConstellation {
         subConstellation.deliverEventMessage(re);
     }
 
+    /**
+     * Deals with activities that another node passed on to this node, because it cannot run them itself.
+     *
+     * @param sr
+     *            the activities.
+     */
+    public void deliverPlacedActivities(StealReply sr) {
+        subConstellation.deliverPlacedActivities(sr);
+    }
+
+    /**
+     * Selects a remote constellation that advertised an executor context that matches the specified context.
+     *
+     * @param pool
+     *            the pool the activity belongs to
+     * @param context
+     *            the context of the activity
+     * @return the selected constellation, or <code>null</code> if there is none.
+     */
+    public ConstellationIdentifierImpl selectPlacement(StealPool pool, AbstractContext context) {
+        return pool.isNone() ? null : this.pool.selectPlacement(pool, context);
+    }
+
+    /**
+     * Sends an activity that cannot run here to the specified remote constellation. Activities for the same constellation are
+     * sent together, just before which {@link #registerPlacedActivities(StealReply)} is called.
+     *
+     * @param source
+     *            the sub-constellation the activity was submitted to
+     * @param target
+     *            the remote constellation
+     * @param ar
+     *            the activity
+     */
+    public void placeActivity(ConstellationIdentifierImpl source, ConstellationIdentifierImpl target, ActivityRecord ar) {
+        pool.place(source, target, ar);
+    }
+
+    /**
+     * Registers activities that are about to be sent to another node by placement as having left this node.
+     *
+     * @param sr
+     *            the activities
+     */
+    public void registerPlacedActivities(StealReply sr) {
+        subConstellation.registerPlacedActivities(sr);
+    }
+
+    /**
+     * Deals with a location hint delivered by the network (i.e. another node).
+     *
+     * @param hint
+     *            the location hint.
+     */
+    public void deliverLocationHint(LocationHint hint) {
+        subConstellation.deliverLocationHint(hint);
+    }
+
     private boolean dropSteal(StealRequest sr) {
         if (stealStrategy == STEAL_NONE) {
             // drop steal request
@@ -658,11 +883,12 @@ public class DistributedConstellation {
      *
      * @param sr
      *            the steal request.
+     * @return whether the steal request was sent.
      */
-    public void handleStealRequest(StealRequest sr) {
+    public boolean handleStealRequest(StealRequest sr) {
 
         if (dropSteal(sr)) {
-            return;
+            return false;
         }
 
         StealPool sp = sr.pool.randomlySelectPool(random);
@@ -674,7 +900,7 @@ public class DistributedConstellation {
             if (pending) {
                 // We have already sent out a steal in this slot, so
                 // we're not allowed to send another one.
-                return;
+                return false;
             }
         }
 
@@ -683,23 +909,24 @@ public class DistributedConstellation {
                 if (logger.isDebugEnabled()) {
                     logger.debug("D MASTER FORWARD steal request from child " + sr.source);
                 }
-            } else {
-                // Could not send steal request, so reset slot
-                setPendingSteal(sp, sr.context, false);
+                return true;
             }
+            // Could not send steal request, so reset slot
+            setPendingSteal(sp, sr.context, false);
 
         } else if (stealStrategy == STEAL_POOL) {
             if (pool.randomForwardToPool(sp, sr)) {
                 if (logger.isDebugEnabled()) {
                     logger.debug("D RANDOM FORWARD steal request from child " + sr.source + " to POOL " + sp.getTag());
                 }
-            } else {
-                // Could not send steal request, so reset slot
-                setPendingSteal(sp, sr.context, false);
+                return true;
             }
+            // Could not send steal request, so reset slot
+            setPendingSteal(sp, sr.context, false);
         } else {
             logger.error("D STEAL REQUEST unknown stealStrategy strategy " + stealStrategy);
         }
+        return false;
     }
 
     /**
@@ -744,6 +971,33 @@ public class DistributedConstellation {
         return false;
     }
 
+    /**
+     * Sends a location hint to the remote constellation it is addressed to. Hints are only shortcuts, so a hint that cannot be
+     * sent is dropped.
+     *
+     * @param hint
+     *            the location hint
+     */
+    public void handleLocationHint(LocationHint hint) {
+        if (!pool.forward(hint) && logger.isDebugEnabled()) {
+            logger.debug("Failed to forward location hint to remote constellation " + hint.target + " (dropped)");
+        }
+    }
+
+    /**
+     * Deals with an event message that was accepted by the pool, but could not be sent after all. Delivery will be retried by the
+     * delivery thread.
+     *
+     * @param m
+     *            the event message
+     */
+    public void handleFailedApplicationMessage(EventMessage m) {
+        if (logger.isDebugEnabled()) {
+            logger.debug("Failed to send message to remote constellation " + m.target + " (will retry!)");
+        }
+        delivery.enqueue(m);
+    }
+
     /**
      * Receives a steal reply from below, and forwards it to the pool.
      *
@@ -777,6 +1031,41 @@ public class DistributedConstellation {
         return true;
     }
 
+    /**
+     * Deals with a steal reply that was accepted by the pool, but could not be sent after all. Any work in the reply is returned
+     * to the sub-constellation that sent it.
+     *
+     * @param m
+     *            the steal reply
+     */
+    public void handleFailedStealReply(StealReply m) {
+        if (m.isEmpty()) {
+            logger.debug("Failed to send empty steal reply to " + m.target + " (dropping reply)");
+            return;
+        }
+        logger.debug("Failed to send steal reply to " + m.target + " (reclaiming work)");
+        subConstellation.reclaimStealReply(m);
+    }
+
+    /**
+     * Returns a summary of the work that other nodes may steal from this constellation.
+     *
+     * @return the load information.
+     */
+    public LoadInfo getLoadInfo() {
+        return subConstellation.getLoadInfo();
+    }
+
+    /**
+     * Returns whether this constellation is quiescent, that is, has no queued or running activities and no event messages waiting
+     * to be sent.
+     *
+     * @return whether this constellation is quiescent.
+     */
+    public boolean isQuiescent() {
+        return delivery.isEmpty() && subConstellation.isQuiescent();
+    }
+
     /**
      * Provides a constellation identifier factory to produce identifiers for sub-constellation instances (both multithreaded and
      * singlethreaded).
@@ -793,10 +1082,15 @@ public class DistributedConstellation {
      * This method is called from the MultiThreadedConstellation below. The tags from the pool get passed on to the communication
      * layer, allowing this layer to build a picture of which pool is running where.
      *
+     * With each pool, the contexts of the executors that belong to it are advertised, so that other nodes only send steal
+     * requests here that these executors may be able to satisfy.
+     *
      * @param belongsTo
      *            the pools to which this constellation belongs.
+     * @param contexts
+     *            the contexts of the executors, in the same order as <code>belongsTo</code>.
      */
-    public void belongsTo(StealPool[] belongsTo) {
+    public void belongsTo(StealPool[] belongsTo, AbstractContext[] contexts) {
 
         assert (belongsTo != null);
 
@@ -806,7 +1100,7 @@ public class DistributedConstellation {
             StealPool[] set = p.set();
             for (StealPool element : set) {
                 if (!element.isNone()) {
-                    pool.registerWithPool(element.getTag());
+                    pool.registerWithPool(element.getTag(), contextsIn(element, belongsTo, contexts));
                     if (element.isWorld()) {
                         worldDone = true;
                     }
@@ -815,11 +1109,24 @@ public class DistributedConstellation {
             }
         }
         if (notNone && !worldDone) {
-            pool.registerWithPool(StealPool.WORLD.getTag());
+            pool.registerWithPool(StealPool.WORLD.getTag(), contextsIn(StealPool.WORLD, belongsTo, contexts));
         }
 
     }
 
+    /**
+     * Returns the distinct contexts of the executors that belong to the specified pool.
+     */
+    private static AbstractContext[] contextsIn(StealPool p, StealPool[] belongsTo, AbstractContext[] contexts) {
+        ArrayList<AbstractContext> result = new ArrayList<AbstractContext>();
+        for (int i = 0; i < belongsTo.length; i++) {
+            if (p.overlap(belongsTo[i]) && !result.contains(contexts[i])) {
+                result.add(contexts[i]);
+            }
+        }
+        return result.toArray(new AbstractContext[result.size()]);
+    }
+
     /**
      * Informs this constellation from which pool it is stealStrategy.
      *
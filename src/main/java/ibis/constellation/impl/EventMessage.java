@@ -20,14 +20,17 @@ import java.nio.ByteBuffer;
 import java.util.List;
 
 import ibis.constellation.Event;
+import ibis.constellation.util.ByteBufferReceiver;
 import ibis.constellation.util.ByteBuffers;
 
-public class EventMessage extends AbstractMessage implements ByteBuffers {
+public class EventMessage extends AbstractMessage implements ByteBuffers, ByteBufferReceiver {
 
     private static final long serialVersionUID = -5430024744123215066L;
 
     public final Event event;
 
+    private boolean forwarded = false;
+
     public EventMessage(final ConstellationIdentifierImpl source, final ConstellationIdentifierImpl target, final Event e) {
         super(source, target);
         
@@ -38,6 +41,23 @@ public class EventMessage extends AbstractMessage implements ByteBuffers {
         this.event = e;
     }
 
+    public EventMessage(final ConstellationIdentifierImpl source, final ConstellationIdentifierImpl target, final Event e,
+            final boolean forwarded) {
+        this(source, target, e);
+        this.forwarded = forwarded;
+    }
+
+    /**
+     * Marks this message as forwarded to another node, because the target activity was no longer where the sender expected it.
+     */
+    public synchronized void setForwarded() {
+        forwarded = true;
+    }
+
+    public synchronized boolean isForwarded() {
+        return forwarded;
+    }
+
     @Override
     public String toString() {
         return "EventMessage: " + super.toString();
@@ -60,4 +80,14 @@ public class EventMessage extends AbstractMessage implements ByteBuffers {
             ((ByteBuffers) tmp).popByteBuffers(list);
         }
     }
+
+    @Override
+    public ByteBuffer[] supplyByteBuffers(int[] sizes) {
+        Object tmp = event.getData();
+
+        if (tmp != null && tmp instanceof ByteBufferReceiver) {
+            return ((ByteBufferReceiver) tmp).supplyByteBuffers(sizes);
+        }
+        return null;
+    }
 }
@@ -52,6 +52,8 @@ public class ExecutorWrapper implements Constellation {
 
     private final AbstractContext myContext;
 
+    private final ContextMatchCache matchCache;
+
     private final StealStrategy localStealStrategy;
     private final StealStrategy constellationStealStrategy;
     private final StealStrategy remoteStealStrategy;
@@ -90,6 +92,7 @@ public class ExecutorWrapper implements Constellation {
         this.parent = parent;
         this.identifier = identifier;
         this.myContext = config.getContext();
+        this.matchCache = new ContextMatchCache(myContext);
 
         this.myPool = config.getBelongsToPool();
         this.stealsFrom = config.getStealsFrom();
@@ -194,7 +197,7 @@ public class ExecutorWrapper implements Constellation {
 
         ActivityRecord ar = new ActivityRecord(activity, id);
 
-        boolean match = ContextMatch.match(myContext, activity.getContext());
+        boolean match = matchCache.match(activity.getContext());
 
         activitiesSubmitted++;
 
@@ -498,6 +501,16 @@ public class ExecutorWrapper implements Constellation {
         return parent.getProfiling().getOverallTimer();
     }
 
+    /**
+     * Returns the number of activities queued in this executor wrapper, that is, not counting the activity that is currently
+     * running. When called from another thread than the executor thread, the result is an approximation.
+     *
+     * @return the number of queued activities.
+     */
+    int queuedActivities() {
+        return fresh.size() + restricted.size() + runnable.size() + relocated.size();
+    }
+
     public int getJobLimit() {
         return QUEUED_JOB_LIMIT;
     }
@@ -547,6 +560,17 @@ public class ExecutorWrapper implements Constellation {
         return myContext;
     }
 
+    /**
+     * Returns whether the specified context matches the context of this executor.
+     *
+     * @param c
+     *            the context to match
+     * @return whether the context matches
+     */
+    public boolean matches(AbstractContext c) {
+        return matchCache.match(c);
+    }
+
     /**
      * Returns the steal pool that this executor belongs to.
      *
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.constellation.impl;
+
+/**
+ * Tells a constellation where an activity is now, after an event for it had to be forwarded to get there. The source is the
+ * constellation that delivered the event, which is also the location of the activity.
+ */
+public class LocationHint extends AbstractMessage {
+
+    private static final long serialVersionUID = -2735013629504841188L;
+
+    public final ActivityIdentifierImpl activity;
+
+    public LocationHint(final ConstellationIdentifierImpl source, final ConstellationIdentifierImpl target,
+            final ActivityIdentifierImpl activity) {
+        super(source, target);
+        checkNull(activity, "activity may not be null");
+        this.activity = activity;
+    }
+
+    @Override
+    public String toString() {
+        return "LocationHint: " + activity + " at " + source + " for " + target;
+    }
+}
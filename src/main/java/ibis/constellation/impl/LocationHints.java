@@ -0,0 +1,75 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.constellation.impl;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers where activities that were created elsewhere were last seen, so that events for them can be sent to their current
+ * location directly instead of through the constellation where they were created.
+ *
+ * A hint is only a shortcut: when it is stale, the constellation it points to forwards the event along the usual chain of
+ * exported activities. The number of hints is bounded; when the cache is full, the least recently used hint is dropped.
+ */
+class LocationHints {
+
+    private final LinkedHashMap<ActivityIdentifierImpl, ConstellationIdentifierImpl> hints;
+
+    LocationHints(final int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Location hint cache size must be positive");
+        }
+
+        hints = new LinkedHashMap<ActivityIdentifierImpl, ConstellationIdentifierImpl>(16, 0.75f, true) {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ActivityIdentifierImpl, ConstellationIdentifierImpl> eldest) {
+                return size() > size;
+            }
+        };
+    }
+
+    /**
+     * Returns the last known location of the specified activity, or <code>null</code> if it is not known.
+     *
+     * @param aid
+     *            the activity
+     * @return the location of the activity, or <code>null</code>
+     */
+    synchronized ConstellationIdentifierImpl get(ActivityIdentifierImpl aid) {
+        return hints.get(aid);
+    }
+
+    /**
+     * Records the location of the specified activity.
+     *
+     * @param aid
+     *            the activity
+     * @param cid
+     *            the constellation where the activity is now
+     */
+    synchronized void put(ActivityIdentifierImpl aid, ConstellationIdentifierImpl cid) {
+        hints.put(aid, cid);
+    }
+
+    synchronized int size() {
+        return hints.size();
+    }
+}
@@ -16,7 +16,10 @@
  */
 package ibis.constellation.impl;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Random;
 
 import org.slf4j.Logger;
@@ -35,6 +38,7 @@ import ibis.constellation.Event;
 import ibis.constellation.NoSuitableExecutorException;
 import ibis.constellation.OrContext;
 import ibis.constellation.StealPool;
+import ibis.constellation.impl.pool.LoadInfo;
 import ibis.constellation.impl.util.Profiling;
 
 public class MultiThreadedConstellation {
@@ -65,6 +69,35 @@ public class MultiThreadedConstellation {
 
     private final Facade facade = new Facade();
 
+    private final LocationHints locationHints;
+
+    /** Whether workers that run out of work at the same time share their remote steal requests and replies. */
+    private final boolean combineSteals;
+
+    /** For each worker, whether it is waiting for the reply to a remote steal request. Guarded by itself. */
+    private final boolean[] hungry;
+
+    /** Whether activities that a worker cannot run are passed on to a worker that can. */
+    private final boolean placement;
+
+    /** How long an event for a placed activity waits for the activity to arrive, in milliseconds. */
+    private static final long PLACED_EVENT_TIMEOUT = 1000;
+
+    /** An event for an activity that was placed at this node, but that none of our workers knows about yet. */
+    private static final class ParkedEvent {
+
+        final EventMessage message;
+        final long since;
+
+        ParkedEvent(EventMessage message, long since) {
+            this.message = message;
+            this.since = since;
+        }
+    }
+
+    /** Events waiting for their placed activity to arrive, per activity. Guarded by itself. */
+    private final HashMap<ActivityIdentifierImpl, ArrayList<ParkedEvent>> placedEvents = new HashMap<ActivityIdentifierImpl, ArrayList<ParkedEvent>>();
+
     private final String PROFILE_OUTPUT;
 
     private final boolean PROFILE;
@@ -150,6 +183,12 @@ public class MultiThreadedConstellation {
 
         localStealSize = properties.STEAL_SIZE;
 
+        locationHints = properties.LOCATIONHINTS > 0 ? new LocationHints(properties.LOCATIONHINTS) : null;
+
+        combineSteals = properties.REMOTESTEAL_COMBINE;
+
+        placement = properties.PLACEMENT;
+
         if (logger.isInfoEnabled()) {
             logger.info("MultiThreaded: steal size set to " + localStealSize);
             logger.info("Starting MultiThreadedConstellation " + identifier);
@@ -168,14 +207,18 @@ public class MultiThreadedConstellation {
         }
         workerCount = workers.length;
 
+        hungry = new boolean[workerCount];
+
         StealPool[] stealsFrom = new StealPool[workerCount];
         StealPool[] belongsTo = new StealPool[workerCount];
+        AbstractContext[] contexts = new AbstractContext[workerCount];
 
         poolMatrix = new boolean[workerCount][workerCount];
 
         for (int i = 0; i < workerCount; i++) {
             belongsTo[i] = workers[i].belongsTo();
             stealsFrom[i] = workers[i].stealsFrom();
+            contexts[i] = workers[i].getContext();
         }
 
         for (int i = 0; i < workerCount; i++) {
@@ -187,7 +230,7 @@ public class MultiThreadedConstellation {
         myContext = mergeContext();
 
         if (parent != null) {
-            parent.belongsTo(belongsTo);
+            parent.belongsTo(belongsTo, contexts);
             parent.stealsFrom(stealsFrom);
         }
 
@@ -207,7 +250,7 @@ public class MultiThreadedConstellation {
             next = next % workerCount;
             SingleThreadedConstellation e = workers[index];
 
-            if (ContextMatch.match(e.getContext(), activity.getContext())) {
+            if (e.matches(activity.getContext())) {
                 return e.performSubmit(activity);
             }
         }
@@ -238,9 +281,89 @@ public class MultiThreadedConstellation {
 
     public void performSend(Event e) {
 
-        // Since we don't known where the target activity is located, we simply
+        ActivityIdentifierImpl target = (ActivityIdentifierImpl) e.getTarget();
+
+        // Unless we have a hint of where the target activity is located, we simply
         // send the message to it's parent constellation (which may be local).
-        handleEventMessage(new EventMessage(identifier, ((ActivityIdentifierImpl) e.getTarget()).getOrigin(), e));
+        ConstellationIdentifierImpl cid = getLocationHint(target);
+
+        if (cid == null) {
+            cid = target.getOrigin();
+        }
+
+        handleEventMessage(new EventMessage(identifier, cid, e));
+    }
+
+    /**
+     * Returns the last known location of the specified activity, or <code>null</code> if it is not known or location hints are
+     * disabled.
+     *
+     * @param aid
+     *            the activity
+     * @return the location of the activity, or <code>null</code>
+     */
+    public ConstellationIdentifierImpl getLocationHint(ActivityIdentifierImpl aid) {
+        if (locationHints == null) {
+            return null;
+        }
+        return locationHints.get(aid);
+    }
+
+    /**
+     * Records that the specified activity is now located at the specified constellation, if location hints are enabled.
+     *
+     * @param aid
+     *            the activity
+     * @param cid
+     *            the location of the activity
+     */
+    public void setLocationHint(ActivityIdentifierImpl aid, ConstellationIdentifierImpl cid) {
+        if (locationHints != null) {
+            locationHints.put(aid, cid);
+        }
+    }
+
+    /**
+     * Deals with a location hint delivered by our parent. The hint is remembered, and when it is addressed to the constellation
+     * where the activity was created, that constellation also forwards later events for the activity to the new location
+     * directly.
+     *
+     * @param hint
+     *            the location hint
+     */
+    public void deliverLocationHint(LocationHint hint) {
+
+        setLocationHint(hint.activity, hint.source);
+
+        SingleThreadedConstellation st = getWorker(hint.target);
+
+        if (st != null) {
+            st.updateExportedLocation(hint.activity, hint.source);
+        }
+    }
+
+    // Called when an event message has been delivered by the specified worker. If the message had to be forwarded between
+    // nodes to get here, tell the sender and the origin of the activity where it is now, so the next events come here directly.
+    private void sendLocationHints(SingleThreadedConstellation st, EventMessage m) {
+
+        if (locationHints == null || !m.isForwarded()) {
+            return;
+        }
+
+        ActivityIdentifierImpl aid = (ActivityIdentifierImpl) m.event.getTarget();
+        ConstellationIdentifierImpl here = st.identifier();
+
+        if (cidFactory.isLocal(m.source)) {
+            setLocationHint(aid, here);
+        } else {
+            parent.handleLocationHint(new LocationHint(here, m.source, aid));
+        }
+
+        ConstellationIdentifierImpl origin = aid.getOrigin();
+
+        if (!cidFactory.isLocal(origin) && origin.getNodeId() != m.source.getNodeId()) {
+            parent.handleLocationHint(new LocationHint(here, origin, aid));
+        }
     }
 
     public void performCancel(ActivityIdentifier aid) {
@@ -258,6 +381,87 @@ public class MultiThreadedConstellation {
         return null;
     }
 
+    // Returns the worker that has the specified activity, or else the worker that knows where it went, or null if no worker
+    // knows about it (yet).
+    private SingleThreadedConstellation findWorker(ActivityIdentifierImpl aid) {
+
+        for (SingleThreadedConstellation b : workers) {
+            if (b.hasActivity(aid)) {
+                return b;
+            }
+        }
+
+        for (SingleThreadedConstellation b : workers) {
+            if (b.hasForwarded(aid)) {
+                return b;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Delivers the events that were waiting for the specified placed activity, now that it has arrived.
+     */
+    private void releasePlacedEvents(ActivityIdentifierImpl aid) {
+
+        ArrayList<ParkedEvent> waiting;
+
+        synchronized (placedEvents) {
+            waiting = placedEvents.remove(aid);
+        }
+
+        if (waiting != null) {
+            for (ParkedEvent p : waiting) {
+                deliverEventMessage(p.message);
+            }
+        }
+    }
+
+    /**
+     * Sends events that have been waiting too long for their placed activity back to the node the activity came from. The
+     * placement may have failed, in which case that node has reclaimed the activity.
+     */
+    public void expirePlacedEvents() {
+
+        ArrayList<EventMessage> expired = null;
+        long now = System.currentTimeMillis();
+
+        synchronized (placedEvents) {
+            Iterator<ArrayList<ParkedEvent>> it = placedEvents.values().iterator();
+            while (it.hasNext()) {
+                ArrayList<ParkedEvent> l = it.next();
+                Iterator<ParkedEvent> it2 = l.iterator();
+                while (it2.hasNext()) {
+                    ParkedEvent p = it2.next();
+                    if (now - p.since >= PLACED_EVENT_TIMEOUT) {
+                        it2.remove();
+                        if (expired == null) {
+                            expired = new ArrayList<EventMessage>();
+                        }
+                        expired.add(p.message);
+                    }
+                }
+                if (l.isEmpty()) {
+                    it.remove();
+                }
+            }
+        }
+
+        if (expired != null) {
+            for (EventMessage m : expired) {
+                ConstellationIdentifierImpl origin = ((ActivityIdentifierImpl) m.event.getTarget()).getOrigin();
+                if (parent == null || cidFactory.isLocal(origin)) {
+                    logger.error("Placed activity " + m.event.getTarget() + " never arrived (event dropped)");
+                    continue;
+                }
+                m.setTarget(origin);
+                m.setForwarded();
+                parent.handleApplicationMessage(m, true);
+            }
+        }
+    }
+
     private int selectRandomWorker() {
         // This return a random number between 0 .. workerCount-1
         return random.nextInt(workerCount);
@@ -355,15 +559,19 @@ public class MultiThreadedConstellation {
                         localStealSize, true);
 
                 if (size > 0) {
+                    setHungry(c, false);
                     return result;
                 }
             }
         }
 
         // If this fails, we do a remote steal followed by an enqueued steal at
-        // a random suitable peer.
+        // a random suitable peer. When combining steals, the remote steal also
+        // asks for work for the other workers that are waiting for the same work.
+        final int remoteSize = combineSteals ? stealSize * setHungry(c, true) : stealSize;
+
         final StealRequest sr = new StealRequest(c.identifier(), context, c.getLocalStealStrategy(),
-                c.getConstellationStealStrategy(), c.getRemoteStealStrategy(), pool, stealSize);
+                c.getConstellationStealStrategy(), c.getRemoteStealStrategy(), pool, remoteSize);
 
         if (parent != null) {
             parent.handleStealRequest(sr);
@@ -382,6 +590,310 @@ public class MultiThreadedConstellation {
         return null;
     }
 
+    /**
+     * Sets or resets the hungry flag of the specified worker, if steals are combined. When setting the flag, the number of hungry
+     * workers that steal the same work as the specified worker is returned, including the worker itself.
+     *
+     * @param c
+     *            the worker
+     * @param value
+     *            whether the worker is waiting for remote work
+     * @return the number of hungry workers with the same context and steal pool.
+     */
+    private int setHungry(SingleThreadedConstellation c, boolean value) {
+
+        if (!combineSteals) {
+            return 1;
+        }
+
+        synchronized (hungry) {
+            hungry[c.getRank()] = value;
+
+            if (!value) {
+                return 0;
+            }
+
+            int count = 0;
+
+            for (int i = 0; i < workerCount; i++) {
+                if (hungry[i] && workers[i].getContext().equals(c.getContext())
+                        && workers[i].stealsFrom().equals(c.stealsFrom())) {
+                    count++;
+                }
+            }
+
+            return count;
+        }
+    }
+
+    /**
+     * Returns the workers that share the work in a steal reply to the specified worker: the worker itself, followed by the other
+     * hungry workers that steal from the same pool. The hungry flags of the returned workers are reset.
+     *
+     * @param target
+     *            the worker the steal reply is addressed to
+     * @return the workers that share the work.
+     */
+    private SingleThreadedConstellation[] takeHungry(SingleThreadedConstellation target) {
+
+        synchronized (hungry) {
+            hungry[target.getRank()] = false;
+
+            int count = 1;
+
+            for (int i = 0; i < workerCount; i++) {
+                if (hungry[i] && workers[i].stealsFrom().equals(target.stealsFrom())) {
+                    count++;
+                }
+            }
+
+            SingleThreadedConstellation[] result = new SingleThreadedConstellation[count];
+            result[0] = target;
+            count = 1;
+
+            for (int i = 0; i < workerCount; i++) {
+                if (hungry[i] && workers[i].stealsFrom().equals(target.stealsFrom())) {
+                    hungry[i] = false;
+                    result[count++] = workers[i];
+                }
+            }
+
+            return result;
+        }
+    }
+
+    /**
+     * Divides stolen activities over workers with the specified contexts. The activities are handed out round-robin, each to the
+     * next worker whose context matches that of the activity. An activity that matches none of the workers is assigned to the
+     * first worker, which is the one that asked for it.
+     *
+     * @param work
+     *            the stolen activities
+     * @param contexts
+     *            the contexts of the workers
+     * @return for each activity, the index of the worker it is assigned to.
+     */
+    static int[] assignWork(ActivityRecord[] work, AbstractContext[] contexts) {
+
+        int[] result = new int[work.length];
+        int next = 0;
+
+        for (int i = 0; i < work.length; i++) {
+
+            result[i] = 0;
+
+            if (work[i] == null) {
+                continue;
+            }
+
+            for (int j = 0; j < contexts.length; j++) {
+                int w = (next + j) % contexts.length;
+
+                if (ContextMatch.match(contexts[w], work[i].getContext())) {
+                    result[i] = w;
+                    next = w + 1;
+                    break;
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Passes on an activity that was submitted to a worker that cannot run it. A local worker that could steal the activity and
+     * has a matching context gets it right away. Otherwise the activity is sent to another node that advertised a matching
+     * context, unless it is restricted to this node.
+     *
+     * @param src
+     *            the worker the activity was submitted to
+     * @param ar
+     *            the activity
+     * @return whether the activity was passed on; if not, it should wait in the wrong-context queue of the worker.
+     */
+    public boolean placeWrongContext(SingleThreadedConstellation src, ActivityRecord ar) {
+
+        if (!placement) {
+            return false;
+        }
+
+        final AbstractContext context = ar.getContext();
+        final int rank = src.getRank();
+        final int rnd = selectRandomWorker();
+
+        for (int i = 0; i < workerCount; i++) {
+
+            final SingleThreadedConstellation tmp = workers[(rnd + i) % workerCount];
+
+            if (!tmp.equals(src) && poolMatrix[tmp.getRank()][rank] && tmp.matches(context)) {
+
+                if (logger.isDebugEnabled()) {
+                    logger.debug("M placing activity " + ar.identifier() + " from " + src.identifier() + " at " + tmp.identifier());
+                }
+
+                src.registerPlacedActivity(ar, tmp.identifier());
+                tmp.deliverStealReply(new StealReply(src.identifier(), tmp.identifier(), src.belongsTo(), context, ar));
+                return true;
+            }
+        }
+
+        if (parent == null || ar.isRestrictedToLocal()) {
+            return false;
+        }
+
+        final ConstellationIdentifierImpl dest = parent.selectPlacement(src.belongsTo(), context);
+
+        if (dest == null) {
+            return false;
+        }
+
+        src.holdForPlacement(ar);
+        parent.placeActivity(src.identifier(), dest, ar);
+        return true;
+    }
+
+    /**
+     * Registers activities that are about to be sent to another node by placement as having left the worker they were submitted
+     * to.
+     *
+     * @param sr
+     *            the activities, with the worker as source and the remote constellation as target
+     */
+    public void registerPlacedActivities(StealReply sr) {
+
+        SingleThreadedConstellation b = getWorker(sr.source);
+
+        if (b == null) {
+            logger.error("Placed activities from unknown source " + sr.source);
+            return;
+        }
+
+        b.registerPlacedActivities(sr.getWork(), sr.target);
+    }
+
+    /**
+     * Deals with activities that another node passed on to this node because they match the context of one of our workers. Each
+     * activity goes to a matching worker, which tells the node the activity came from where it is now.
+     *
+     * @param sr
+     *            the activities
+     */
+    public void deliverPlacedActivities(StealReply sr) {
+
+        final ActivityRecord[] work = sr.getWork();
+        final AbstractContext[] contexts = new AbstractContext[workerCount];
+        final int rnd = selectRandomWorker();
+
+        for (int i = 0; i < workerCount; i++) {
+            contexts[i] = workers[(rnd + i) % workerCount].getContext();
+        }
+
+        final int[] assignment = assignWork(work, contexts);
+
+        for (int i = 0; i < work.length; i++) {
+
+            final ActivityRecord ar = work[i];
+
+            if (ar == null) {
+                continue;
+            }
+
+            final SingleThreadedConstellation b = workers[(rnd + assignment[i]) % workerCount];
+
+            if (b.matches(ar.getContext())) {
+                b.deliverStealReply(new StealReply(sr.source, b.identifier(), sr.getPool(), ar.getContext(), ar));
+            } else {
+                // Our executors changed their minds? Let it wait until someone steals it.
+                b.deliverWrongContext(ar);
+            }
+
+            releasePlacedEvents(ar.identifier());
+
+            if (parent != null) {
+                parent.handleLocationHint(new LocationHint(b.identifier(), sr.source, ar.identifier()));
+            }
+        }
+    }
+
+    /**
+     * Returns the number of activities queued in all workers. The result is an approximation, since the workers are running
+     * concurrently.
+     *
+     * @return the number of queued activities.
+     */
+    public int queuedActivities() {
+        int n = 0;
+        for (int i = 0; i < workerCount; i++) {
+            n += workers[i].queuedActivities();
+        }
+        return n;
+    }
+
+    /**
+     * Returns whether all workers of this constellation are quiescent.
+     *
+     * @return whether this constellation is quiescent.
+     */
+    public boolean isQuiescent() {
+        for (int i = 0; i < workerCount; i++) {
+            if (!workers[i].isQuiescent()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns a summary of the work that other nodes may steal from this constellation.
+     *
+     * @return the load information.
+     */
+    public LoadInfo getLoadInfo() {
+        AbstractContext[] contexts = new AbstractContext[workerCount];
+        int[] queued = new int[workerCount];
+        for (int i = 0; i < workerCount; i++) {
+            contexts[i] = workers[i].getContext();
+            queued[i] = workers[i].stealableActivities();
+        }
+        return new LoadInfo(System.currentTimeMillis(), contexts, queued);
+    }
+
+    /**
+     * Creates a steal request on behalf of the worker that currently has the fewest queued activities, to prefetch remote work
+     * for it. Spreading the requests this way spreads the prefetched work across the hungry workers.
+     *
+     * @param stealSize
+     *            the number of activities to steal
+     * @return the steal request, or <code>null</code> if none of the workers steals from a pool.
+     */
+    public StealRequest createPrefetchRequest(final int stealSize) {
+
+        final int rnd = selectRandomWorker();
+
+        SingleThreadedConstellation c = null;
+        int min = Integer.MAX_VALUE;
+
+        for (int i = 0; i < workerCount; i++) {
+
+            final SingleThreadedConstellation tmp = workers[(rnd + i) % workerCount];
+
+            if (tmp.stealsFrom() != StealPool.NONE) {
+                final int n = tmp.queuedActivities();
+                if (n < min) {
+                    min = n;
+                    c = tmp;
+                }
+            }
+        }
+
+        if (c == null) {
+            return null;
+        }
+
+        return new StealRequest(c.identifier(), c.getContext(), c.getLocalStealStrategy(), c.getConstellationStealStrategy(),
+                c.getRemoteStealStrategy(), c.stealsFrom(), stealSize);
+    }
+
     public ConstellationIdentifierFactory getConstellationIdentifierFactory() {
         return cidFactory;
     }
@@ -534,7 +1046,95 @@ public class MultiThreadedConstellation {
             b = workers[selectRandomWorker()];
         }
 
-        b.deliverStealReply(sr);
+        if (!combineSteals || sr.isEmpty()) {
+            b.deliverStealReply(sr);
+            return;
+        }
+
+        final SingleThreadedConstellation[] takers = takeHungry(b);
+
+        if (takers.length == 1) {
+            b.deliverStealReply(sr);
+            return;
+        }
+
+        final ActivityRecord[] work = sr.getWork();
+
+        final AbstractContext[] contexts = new AbstractContext[takers.length];
+
+        for (int i = 0; i < takers.length; i++) {
+            contexts[i] = takers[i].getContext();
+        }
+
+        final int[] assignment = assignWork(work, contexts);
+
+        for (int i = takers.length - 1; i >= 0; i--) {
+
+            int n = 0;
+
+            for (int j = 0; j < work.length; j++) {
+                if (work[j] != null && assignment[j] == i) {
+                    n++;
+                }
+            }
+
+            if (n == 0) {
+                if (i > 0) {
+                    // Nothing for this worker after all, so it is still hungry.
+                    setHungry(takers[i], true);
+                }
+                continue;
+            }
+
+            final ActivityRecord[] share = new ActivityRecord[n];
+            n = 0;
+
+            for (int j = 0; j < work.length; j++) {
+                if (work[j] != null && assignment[j] == i) {
+                    share[n++] = work[j];
+                }
+            }
+
+            if (i > 0) {
+                // The victim believes these activities went to the target worker, so events for them will arrive
+                // there. Make sure they are passed on.
+                b.registerRedirectedActivities(share, takers[i].identifier());
+
+                if (logger.isDebugEnabled()) {
+                    logger.debug("M passing " + n + " stolen activities for " + b.identifier() + " on to " + takers[i].identifier());
+                }
+            }
+
+            takers[i].deliverStealReply(new StealReply(sr.source, takers[i].identifier(), sr.getPool(), sr.getContext(), share));
+        }
+    }
+
+    /**
+     * Deals with an empty reply to a remote steal request of one of our workers.
+     *
+     * @param sr
+     *            the steal reply
+     */
+    public void deliverEmptyStealReply(StealReply sr) {
+
+        SingleThreadedConstellation b = getWorker(sr.target);
+
+        if (b != null) {
+            setHungry(b, false);
+        }
+    }
+
+    public void reclaimStealReply(StealReply sr) {
+        // steal reply from one of our workers that could not be sent by our parent
+
+        SingleThreadedConstellation b = getWorker(sr.source);
+
+        if (b == null) {
+            logger.error("Failed steal reply from unknown source " + sr.source + " (dropping work)");
+            return;
+        }
+
+        b.reclaimLater(sr.getWork());
     }
 
     public void deliverEventMessage(EventMessage am) {
@@ -542,6 +1142,29 @@ public class MultiThreadedConstellation {
 
         SingleThreadedConstellation st = getWorker(am.target);
 
+        if (st == null && am.target.equals(identifier)) {
+            // The target activity was placed here by another node, which does not know which worker got it.
+            final ActivityIdentifierImpl aid = (ActivityIdentifierImpl) am.event.getTarget();
+
+            synchronized (placedEvents) {
+                st = findWorker(aid);
+
+                if (st == null) {
+                    // The event overtook the activity. Checked and parked under the lock, so that releasePlacedEvents does
+                    // not miss it.
+                    ArrayList<ParkedEvent> l = placedEvents.get(aid);
+                    if (l == null) {
+                        l = new ArrayList<ParkedEvent>();
+                        placedEvents.put(aid, l);
+                    }
+                    l.add(new ParkedEvent(am, System.currentTimeMillis()));
+                    return;
+                }
+            }
+
+            am.setTarget(st.identifier());
+        }
+
         if (st == null) {
             logger.error("Failed to locate event target activity " + am.target + " for remote event (dropping event)");
             return;
@@ -551,6 +1174,7 @@ public class MultiThreadedConstellation {
 
         if (cid == null) {
             // AbstractMessage was delivered -- we're done!
+            sendLocationHints(st, am);
             return;
         }
 
@@ -569,8 +1193,13 @@ public class MultiThreadedConstellation {
             // NOTE: this should always return null!
             cid = st.deliverEventMessage(am);
 
+            if (cid == null) {
+                sendLocationHints(st, am);
+            }
+
         } else {
             // it has been exported
+            am.setForwarded();
             parent.handleApplicationMessage(am, true);
         }
     }
@@ -104,9 +104,11 @@ public class SingleThreadedConstellation extends Thread {
 
         private final HashMap<ConstellationIdentifierImpl, StealRequest> stealRequests = new HashMap<ConstellationIdentifierImpl, StealRequest>();
 
+        private final ArrayList<ActivityRecord[]> reclaimed = new ArrayList<ActivityRecord[]>();
+
         @Override
         public String toString() {
-            return "QUEUES: " + deliveredApplicationMessages.size() + " " + stealRequests.size();
+            return "QUEUES: " + deliveredApplicationMessages.size() + " " + stealRequests.size() + " " + reclaimed.size();
         }
     }
 
@@ -127,6 +129,9 @@ public class SingleThreadedConstellation extends Thread {
 
     private volatile boolean havePendingRequests = false;
 
+    /** Set when the executor last looked for work and found none, reset when it starts looking again. */
+    private volatile boolean idle = false;
+
     private boolean seenDone = false;
 
     private final boolean PRINT_STATISTICS;
@@ -256,6 +261,10 @@ public class SingleThreadedConstellation extends Thread {
         return wrapper.getContext();
     }
 
+    public boolean matches(AbstractContext c) {
+        return wrapper.matches(c);
+    }
+
     public StealStrategy getLocalStealStrategy() {
         return wrapper.getLocalStealStrategy();
     }
@@ -268,6 +277,44 @@ public class SingleThreadedConstellation extends Thread {
         return wrapper.getRemoteStealStrategy();
     }
 
+    /**
+     * Returns the number of activities queued in this constellation and its executor wrapper. The result is an approximation,
+     * since the executor may be running concurrently.
+     *
+     * @return the number of queued activities.
+     */
+    public int queuedActivities() {
+        int n;
+        synchronized (this) {
+            n = fresh.size() + restricted.size() + stolen.size() + relocated.size();
+        }
+        return n + wrapper.queuedActivities();
+    }
+
+    /**
+     * Returns the number of queued activities that other nodes may steal from this constellation.
+     *
+     * @return the number of remotely stealable activities.
+     */
+    public synchronized int stealableActivities() {
+        return fresh.size();
+    }
+
+    /**
+     * Returns whether this constellation is quiescent: its executor found no work, and no activities or requests are queued. The
+     * result is an approximation, since the executor may be running concurrently.
+     *
+     * @return whether this constellation is quiescent.
+     */
+    public boolean isQuiescent() {
+        synchronized (this) {
+            if (!idle || havePendingRequests || wrongContext.size() > 0 || restrictedWrongContext.size() > 0) {
+                return false;
+            }
+        }
+        return queuedActivities() == 0;
+    }
+
     public ConstellationIdentifierImpl identifier() {
         return identifier;
     }
@@ -285,7 +332,7 @@ public class SingleThreadedConstellation extends Thread {
 
     public ActivityIdentifierImpl doSubmit(final ActivityRecord ar, final AbstractContext c, final ActivityIdentifierImpl id) {
 
-        if (ContextMatch.match(c, wrapper.getContext())) {
+        if (wrapper.matches(c)) {
 
             synchronized (this) {
                 lookup.put(ar.identifier(), ar);
@@ -302,13 +349,71 @@ public class SingleThreadedConstellation extends Thread {
                     fresh.enqueue(ar);
                 }
             }
-        } else {
+        } else if (parent == null || !parent.placeWrongContext(this, ar)) {
             deliverWrongContext(ar);
         }
 
         return id;
     }
 
+    /**
+     * Registers an activity that was submitted here, but was passed on to the specified local constellation because our executor
+     * cannot run it.
+     *
+     * @param ar
+     *            the activity
+     * @param dest
+     *            the constellation that runs the activity
+     */
+    public void registerPlacedActivity(final ActivityRecord ar, final ConstellationIdentifierImpl dest) {
+        registerLeavingActivities(new ActivityRecord[] { ar }, 1, dest, true);
+    }
+
+    /**
+     * Keeps an activity that is about to be passed on to another node, so that events for it are queued with it until it leaves.
+     *
+     * @param ar
+     *            the activity
+     */
+    public synchronized void holdForPlacement(final ActivityRecord ar) {
+        lookup.put(ar.identifier(), ar);
+    }
+
+    /**
+     * Registers activities that were held for placement as having left for the specified remote constellation.
+     *
+     * @param ar
+     *            the activities
+     * @param dest
+     *            the remote constellation
+     */
+    public void registerPlacedActivities(final ActivityRecord[] ar, final ConstellationIdentifierImpl dest) {
+        registerLeavingActivities(ar, ar.length, dest, false);
+    }
+
+    /**
+     * Returns whether the specified activity is queued or running here.
+     *
+     * @param aid
+     *            the activity
+     * @return whether the activity is here
+     */
+    public synchronized boolean hasActivity(final ActivityIdentifierImpl aid) {
+        return lookup.containsKey(aid);
+    }
+
+    /**
+     * Returns whether the specified activity was relocated or exported by this constellation, so that it knows where the
+     * activity went.
+     *
+     * @param aid
+     *            the activity
+     * @return whether the activity was forwarded from here
+     */
+    public boolean hasForwarded(final ActivityIdentifierImpl aid) {
+        return relocatedActivities.containsKey(aid) || exportedActivities.containsKey(aid);
+    }
+
     public void performSend(final Event e) {
         logger.error("INTERNAL ERROR: Send not implemented!");
     }
@@ -457,11 +562,29 @@ public class SingleThreadedConstellation extends Thread {
                 } else {
                     ar[i].setStolen(true);
                     exportedActivities.put(ar[i].identifier(), dest);
+                    if (parent != null) {
+                        parent.setLocationHint(ar[i].identifier(), dest);
+                    }
                 }
             }
         }
     }
 
+    /**
+     * Registers activities that were stolen on behalf of this constellation, but were passed on to the specified local
+     * constellation. Events for these activities are forwarded to that constellation.
+     *
+     * @param ar
+     *            the activities
+     * @param dest
+     *            the constellation that received the activities
+     */
+    public synchronized void registerRedirectedActivities(final ActivityRecord[] ar, final ConstellationIdentifierImpl dest) {
+        for (final ActivityRecord a : ar) {
+            relocatedActivities.put(a.identifier(), dest);
+        }
+    }
+
     public void deliverStealRequest(final StealRequest sr) {
         // steal request (possibly remote) to enqueue and handle later
         if (logger.isTraceEnabled()) {
@@ -608,6 +731,22 @@ public class SingleThreadedConstellation extends Thread {
         return null;
     }
 
+    /**
+     * Updates the location of an activity that was stolen from this constellation, so that events for it are forwarded to where
+     * it is now instead of along the chain of constellations it was stolen from. The location is not recorded when the activity
+     * has returned in the meantime.
+     *
+     * @param aid
+     *            the activity
+     * @param cid
+     *            the current location of the activity
+     */
+    public synchronized void updateExportedLocation(final ActivityIdentifierImpl aid, final ConstellationIdentifierImpl cid) {
+        if (exportedActivities.containsKey(aid)) {
+            exportedActivities.put(aid, cid);
+        }
+    }
+
     public boolean isMaster() {
         return parent == null;
     }
@@ -639,6 +778,15 @@ public class SingleThreadedConstellation extends Thread {
                 cid = relocatedActivities.get(target);
             }
 
+            if (cid == null) {
+                // If not, we may know where it went
+                cid = parent.getLocationHint(target);
+
+                if (cid != null && cid.equals(identifier)) {
+                    cid = null;
+                }
+            }
+
             if (cid == null) {
                 // If not, we simply send the event to the parent
                 cid = target.getOrigin();
@@ -758,7 +906,7 @@ public class SingleThreadedConstellation extends Thread {
                     exportedActivities.remove(ar.identifier());
                 }
 
-                if (ContextMatch.match(c, wrapper.getContext())) {
+                if (wrapper.matches(c)) {
 
                     synchronized (this) {
                         lookup.put(ar.identifier(), ar);
@@ -778,6 +926,25 @@ public class SingleThreadedConstellation extends Thread {
         }
     }
 
+    /**
+     * Reclaims the activities at a later time, from the thread of this constellation. Used when a steal reply failed to be sent
+     * asynchronously.
+     *
+     * @param a
+     *            the ActivityRecords to reclaim
+     */
+    public synchronized void reclaimLater(final ActivityRecord[] a) {
+        incoming.reclaimed.add(a);
+        signal();
+    }
+
+    private void processReclaimed() {
+        for (final ActivityRecord[] a : processing.reclaimed) {
+            reclaim(a);
+        }
+        processing.reclaimed.clear();
+    }
+
     private void processStealRequests() {
 
         final Collection<StealRequest> requests = processing.stealRequests.values();
@@ -821,6 +988,7 @@ public class SingleThreadedConstellation extends Thread {
 
     private void processEvents() {
         swapEventQueues();
+        processReclaimed();
         processRemoteMessages();
         processStealRequests();
     }
@@ -905,6 +1073,7 @@ public class SingleThreadedConstellation extends Thread {
     // Either that, or we should sleep for a while.
     public boolean processActivities() {
         boolean haveRequests = false;
+        idle = false;
         synchronized (this) {
             if (havePendingRequests) {
                 if (getDone()) {
@@ -922,6 +1091,8 @@ public class SingleThreadedConstellation extends Thread {
             return false;
         }
 
+        idle = true;
+
         if (parent == null || stealsFrom() == StealPool.NONE) {
             // Cannot steal, either because there is no-one to steal from, or because of the NONE stealpool.
             waitForRequest();
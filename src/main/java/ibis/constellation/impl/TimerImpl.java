@@ -16,6 +16,8 @@
  */
 package ibis.constellation.impl;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -460,6 +462,74 @@ public class TimerImpl implements java.io.Serializable, ibis.constellation.Timer
         add(new TimerEvent(getNode(), nickName, thread, action, l, m, n, o));
     }
 
+    /**
+     * Writes events of this timer in a compact binary form, to be read back by {@link #readEvents(DataInput, int)}. Times are
+     * written relative to the previous time of the event.
+     *
+     * @param out
+     *            the output to write to
+     * @param from
+     *            the index of the first event to write
+     * @param max
+     *            the maximum number of events to write
+     * @return the number of events written.
+     * @throws IOException
+     *             is thrown when writing fails
+     */
+    public synchronized int writeEvents(DataOutput out, int from, int max) throws IOException {
+        int n = Math.max(0, Math.min(max, events.size() - from));
+        for (int i = from; i < from + n; i++) {
+            TimerEvent e = events.get(i);
+            writeString(out, e.node);
+            writeString(out, e.device);
+            writeString(out, e.thread);
+            writeString(out, e.action);
+            out.writeLong(e.queued);
+            out.writeLong(e.submitted - e.queued);
+            out.writeLong(e.start - e.submitted);
+            out.writeLong(e.end - e.start);
+            out.writeLong(e.nrBytes);
+        }
+        return n;
+    }
+
+    /**
+     * Reads events written by {@link #writeEvents(DataOutput, int, int)} and adds them to this timer.
+     *
+     * @param in
+     *            the input to read from
+     * @param n
+     *            the number of events to read
+     * @throws IOException
+     *             is thrown when reading fails
+     */
+    public synchronized void readEvents(DataInput in, int n) throws IOException {
+        for (int i = 0; i < n; i++) {
+            String node = readString(in);
+            String device = readString(in);
+            String thread = readString(in);
+            String action = readString(in);
+            long queued = in.readLong();
+            long submitted = queued + in.readLong();
+            long start = submitted + in.readLong();
+            long end = start + in.readLong();
+            TimerEvent e = new TimerEvent(node, device, thread, action, queued, submitted, start, end);
+            e.nrBytes = in.readLong();
+            events.add(e);
+        }
+    }
+
+    private static void writeString(DataOutput out, String s) throws IOException {
+        out.writeBoolean(s != null);
+        if (s != null) {
+            out.writeUTF(s);
+        }
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
     private synchronized void writeObject(java.io.ObjectOutputStream stream) throws IOException {
         stream.defaultWriteObject();
     }
@@ -0,0 +1,656 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.constellation.impl.pool;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.StreamCorruptedException;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import ibis.constellation.AbstractContext;
+import ibis.constellation.ActivityIdentifier;
+import ibis.constellation.Context;
+import ibis.constellation.Event;
+import ibis.constellation.OrContext;
+import ibis.constellation.StealPool;
+import ibis.constellation.StealStrategy;
+import ibis.constellation.impl.ActivityIdentifierImpl;
+import ibis.constellation.impl.ActivityRecord;
+import ibis.constellation.impl.ConstellationIdentifierImpl;
+import ibis.constellation.impl.EventMessage;
+import ibis.constellation.impl.LocationHint;
+import ibis.constellation.impl.StealReply;
+import ibis.constellation.impl.StealRequest;
+import ibis.constellation.impl.pool.communication.NodeIdentifier;
+
+/**
+ * Hand-written binary encoding of the runtime control messages, as an alternative to object serialization.
+ *
+ * An {@link Encoder} and a {@link Decoder} are created per connection. Contexts, steal pools and node identifiers are
+ * interned per connection: the first time one is sent, it is sent in full and added to a table on both sides; after that,
+ * only its index in the table is sent. This makes a typical steal request a few dozen bytes. Messages and values that
+ * have no compact encoding (for instance steal replies that contain work, or arbitrary event data) are embedded using Java
+ * serialization.
+ *
+ * An encoder and its decoder must see the same messages in the same order, which holds for a FIFO connection.
+ */
+public final class ControlMessageCodec {
+
+    private static final byte T_NULL = 0;
+    private static final byte T_OBJECT = 1;
+    private static final byte T_STEAL_REQUEST = 2;
+    private static final byte T_STEAL_REPLY = 3;
+    private static final byte T_EVENT_MESSAGE = 4;
+    private static final byte T_RANK_INFO = 5;
+    private static final byte T_POOL_REGISTER_REQUEST = 6;
+    private static final byte T_POOL_UPDATE_REQUEST = 7;
+    private static final byte T_LONG = 8;
+    private static final byte T_INTEGER = 9;
+    private static final byte T_DOUBLE = 10;
+    private static final byte T_BOOLEAN = 11;
+    private static final byte T_STRING = 12;
+    private static final byte T_LOAD_INFO = 13;
+    private static final byte T_RANK_TABLE_UPDATE = 14;
+    private static final byte T_POOL_DELTA = 15;
+    private static final byte T_QUIESCENCE_INFO = 16;
+    private static final byte T_PROFILING_CHUNK = 17;
+    private static final byte T_LOCATION_HINT = 18;
+
+    private static final byte CONTEXT = 0;
+    private static final byte OR_CONTEXT = 1;
+
+    /** Index code announcing a new entry in the intern table, followed by its value. */
+    private static final short NEW_ENTRY = -1;
+
+    /** Index code for a value that is sent inline, because the intern table is full. */
+    private static final short INLINE = -2;
+
+    /** Maximum number of entries in each intern table. */
+    static final int MAX_INTERNED = 4096;
+
+    private ControlMessageCodec() {
+        // not used
+    }
+
+    private static final class Buffer extends ByteArrayOutputStream {
+
+        Buffer() {
+            super(256);
+        }
+
+        byte[] array() {
+            return buf;
+        }
+    }
+
+    private static byte[] serialize(Object o) throws IOException {
+        ByteArrayOutputStream b = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(b)) {
+            out.writeObject(o);
+        }
+        return b.toByteArray();
+    }
+
+    private static Object deserialize(DataInputStream in) throws IOException, ClassNotFoundException {
+        byte[] b = new byte[in.readInt()];
+        in.readFully(b);
+        try (ObjectInputStream oin = new ObjectInputStream(new ByteArrayInputStream(b))) {
+            return oin.readObject();
+        }
+    }
+
+    /**
+     * Encodes messages for a single connection.
+     */
+    public static final class Encoder {
+
+        private final Buffer buffer = new Buffer();
+        private final DataOutputStream out = new DataOutputStream(buffer);
+
+        private final HashMap<AbstractContext, Integer> contexts = new HashMap<AbstractContext, Integer>();
+        private final HashMap<StealPool, Integer> pools = new HashMap<StealPool, Integer>();
+        private final HashMap<NodeIdentifier, Integer> nodes = new HashMap<NodeIdentifier, Integer>();
+
+        private boolean fresh = true;
+
+        /**
+         * Forgets all interned values, for instance because a message may have been lost. The next message tells the decoder
+         * to do the same.
+         */
+        public void reset() {
+            contexts.clear();
+            pools.clear();
+            nodes.clear();
+            fresh = true;
+        }
+
+        /**
+         * Encodes the specified message contents. The result is available in {@link #buffer()}.
+         *
+         * @param o
+         *            the message contents, may be <code>null</code>
+         * @return the number of bytes in the encoding
+         * @throws IOException
+         *             when the contents could not be serialized
+         */
+        public int encode(Object o) throws IOException {
+            buffer.reset();
+            out.writeBoolean(fresh);
+            fresh = false;
+            writeValue(o);
+            out.flush();
+            return buffer.size();
+        }
+
+        /**
+         * Returns the buffer that holds the result of the last {@link #encode(Object)}.
+         *
+         * @return the buffer
+         */
+        public byte[] buffer() {
+            return buffer.array();
+        }
+
+        private void writeValue(Object o) throws IOException {
+            if (o == null) {
+                out.writeByte(T_NULL);
+            } else if (o instanceof StealRequest) {
+                writeStealRequest((StealRequest) o);
+            } else if (o instanceof StealReply && ((StealReply) o).isEmpty()) {
+                StealReply r = (StealReply) o;
+                out.writeByte(T_STEAL_REPLY);
+                writeCID(r.source);
+                writeCID(r.target);
+                writePool(r.getPool());
+                writeContext(r.getContext());
+            } else if (o instanceof EventMessage && canWrite(((EventMessage) o).event)) {
+                EventMessage m = (EventMessage) o;
+                out.writeByte(T_EVENT_MESSAGE);
+                writeCID(m.source);
+                writeCID(m.target);
+                writeAID(m.event.getSource());
+                writeAID(m.event.getTarget());
+                writeValue(m.event.getData());
+                out.writeBoolean(m.isForwarded());
+            } else if (o instanceof LocationHint) {
+                LocationHint h = (LocationHint) o;
+                out.writeByte(T_LOCATION_HINT);
+                writeCID(h.source);
+                writeCID(h.target);
+                writeAID(h.activity);
+            } else if (o instanceof RankInfo) {
+                RankInfo r = (RankInfo) o;
+                out.writeByte(T_RANK_INFO);
+                out.writeInt(r.rank);
+                writeNode(r.id);
+            } else if (o instanceof PoolRegisterRequest) {
+                PoolRegisterRequest r = (PoolRegisterRequest) o;
+                out.writeByte(T_POOL_REGISTER_REQUEST);
+                writeNode(r.source);
+                out.writeUTF(r.tag);
+                writeContexts(r.contexts);
+            } else if (o instanceof PoolUpdateRequest) {
+                PoolUpdateRequest r = (PoolUpdateRequest) o;
+                out.writeByte(T_POOL_UPDATE_REQUEST);
+                writeNode(r.source);
+                out.writeUTF(r.tag);
+                out.writeLong(r.timestamp);
+            } else if (o instanceof PoolDelta) {
+                PoolDelta d = (PoolDelta) o;
+                out.writeByte(T_POOL_DELTA);
+                out.writeUTF(d.tag);
+                out.writeLong(d.from);
+                writeNode(d.id);
+                out.writeBoolean(d.joined);
+                writeContexts(d.contexts);
+            } else if (o instanceof QuiescenceInfo) {
+                QuiescenceInfo q = (QuiescenceInfo) o;
+                out.writeByte(T_QUIESCENCE_INFO);
+                out.writeInt(q.wave);
+                out.writeLong(q.sent);
+                out.writeLong(q.received);
+                out.writeBoolean(q.passive);
+            } else if (o instanceof ProfilingChunk) {
+                ProfilingChunk c = (ProfilingChunk) o;
+                out.writeByte(T_PROFILING_CHUNK);
+                out.writeInt(c.sequence);
+                out.writeInt(c.chunks);
+                out.writeInt(c.data.length);
+                out.write(c.data);
+            } else if (o instanceof LoadInfo) {
+                LoadInfo l = (LoadInfo) o;
+                out.writeByte(T_LOAD_INFO);
+                out.writeLong(l.timestamp);
+                out.writeInt(l.contexts.length);
+                for (int i = 0; i < l.contexts.length; i++) {
+                    writeContext(l.contexts[i]);
+                    out.writeInt(l.queued[i]);
+                }
+            } else if (o instanceof RankTableUpdate) {
+                RankTableUpdate u = (RankTableUpdate) o;
+                out.writeByte(T_RANK_TABLE_UPDATE);
+                out.writeInt(u.from);
+                out.writeInt(u.entries.length);
+                for (RankInfo r : u.entries) {
+                    out.writeInt(r.rank);
+                    writeNode(r.id);
+                }
+            } else if (o instanceof Long) {
+                out.writeByte(T_LONG);
+                out.writeLong((Long) o);
+            } else if (o instanceof Integer) {
+                out.writeByte(T_INTEGER);
+                out.writeInt((Integer) o);
+            } else if (o instanceof Double) {
+                out.writeByte(T_DOUBLE);
+                out.writeDouble((Double) o);
+            } else if (o instanceof Boolean) {
+                out.writeByte(T_BOOLEAN);
+                out.writeBoolean((Boolean) o);
+            } else if (o instanceof String && ((String) o).length() < 16384) {
+                // Short enough to always fit in writeUTF.
+                out.writeByte(T_STRING);
+                out.writeUTF((String) o);
+            } else {
+                byte[] b = serialize(o);
+                out.writeByte(T_OBJECT);
+                out.writeInt(b.length);
+                out.write(b);
+            }
+        }
+
+        private static boolean canWrite(Event e) {
+            return e.getSource() instanceof ActivityIdentifierImpl && e.getTarget() instanceof ActivityIdentifierImpl;
+        }
+
+        private void writeStealRequest(StealRequest r) throws IOException {
+            out.writeByte(T_STEAL_REQUEST);
+            writeCID(r.source);
+            writeCID(r.target);
+            writeContext(r.context);
+            out.writeByte(strategies(r));
+            writePool(r.pool);
+            out.writeInt(r.size);
+        }
+
+        private static int strategies(StealRequest r) {
+            return (StealStrategy.BIGGEST.equals(r.localStrategy) ? 1 : 0)
+                    | (StealStrategy.BIGGEST.equals(r.constellationStrategy) ? 2 : 0)
+                    | (StealStrategy.BIGGEST.equals(r.remoteStrategy) ? 4 : 0);
+        }
+
+        private void writeCID(ConstellationIdentifierImpl cid) throws IOException {
+            if (cid == null) {
+                out.writeBoolean(false);
+            } else {
+                out.writeBoolean(true);
+                out.writeInt(cid.getNodeId());
+                out.writeInt(cid.getLocalId());
+            }
+        }
+
+        private void writeAID(ActivityIdentifier id) throws IOException {
+            ActivityIdentifierImpl a = (ActivityIdentifierImpl) id;
+            writeCID(a.getOrigin());
+            out.writeLong(a.getSequenceNumber());
+            out.writeBoolean(a.expectsEvents());
+        }
+
+        /**
+         * Writes the index code of the value, and returns whether the value itself must follow.
+         */
+        private <T> boolean writeIndex(HashMap<T, Integer> table, T value) throws IOException {
+            Integer index = table.get(value);
+            if (index != null) {
+                out.writeShort(index);
+                return false;
+            }
+            if (table.size() < MAX_INTERNED) {
+                table.put(value, table.size());
+                out.writeShort(NEW_ENTRY);
+            } else {
+                out.writeShort(INLINE);
+            }
+            return true;
+        }
+
+        private void writeContexts(AbstractContext[] c) throws IOException {
+            if (c == null) {
+                out.writeInt(-1);
+                return;
+            }
+            out.writeInt(c.length);
+            for (AbstractContext a : c) {
+                writeContext(a);
+            }
+        }
+
+        private void writeContext(AbstractContext c) throws IOException {
+            if (c == null) {
+                out.writeBoolean(false);
+                return;
+            }
+            out.writeBoolean(true);
+            if (writeIndex(contexts, c)) {
+                if (c instanceof Context) {
+                    out.writeByte(CONTEXT);
+                    writeRangeContext((Context) c);
+                } else {
+                    OrContext o = (OrContext) c;
+                    out.writeByte(OR_CONTEXT);
+                    out.writeInt(o.size());
+                    for (int i = 0; i < o.size(); i++) {
+                        writeRangeContext(o.get(i));
+                    }
+                }
+            }
+        }
+
+        private void writeRangeContext(Context c) throws IOException {
+            out.writeUTF(c.getName());
+            out.writeLong(c.getRangeStart());
+            out.writeLong(c.getRangeEnd());
+        }
+
+        private void writePool(StealPool p) throws IOException {
+            if (p == null) {
+                out.writeBoolean(false);
+                return;
+            }
+            out.writeBoolean(true);
+            if (writeIndex(pools, p)) {
+                StealPool[] set = p.set();
+                out.writeInt(set.length);
+                for (StealPool s : set) {
+                    out.writeUTF(s.getTag());
+                }
+            }
+        }
+
+        private void writeNode(NodeIdentifier id) throws IOException {
+            if (id == null) {
+                out.writeBoolean(false);
+                return;
+            }
+            out.writeBoolean(true);
+            if (writeIndex(nodes, id)) {
+                // Node identifiers are transport specific, so use their serialized form.
+                byte[] b = serialize(id);
+                out.writeInt(b.length);
+                out.write(b);
+            }
+        }
+    }
+
+    /**
+     * Decodes messages from a single connection.
+     */
+    public static final class Decoder {
+
+        private final ArrayList<AbstractContext> contexts = new ArrayList<AbstractContext>();
+        private final ArrayList<StealPool> pools = new ArrayList<StealPool>();
+        private final ArrayList<NodeIdentifier> nodes = new ArrayList<NodeIdentifier>();
+
+        /**
+         * Decodes message contents produced by {@link Encoder#encode(Object)}.
+         *
+         * @param b
+         *            the encoded message
+         * @param length
+         *            the number of valid bytes in <code>b</code>
+         * @return the message contents
+         * @throws IOException
+         *             when the encoding is invalid
+         * @throws ClassNotFoundException
+         *             when an embedded serialized object refers to an unknown class
+         */
+        public Object decode(byte[] b, int length) throws IOException, ClassNotFoundException {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(b, 0, length));
+            if (in.readBoolean()) {
+                contexts.clear();
+                pools.clear();
+                nodes.clear();
+            }
+            return readValue(in);
+        }
+
+        private Object readValue(DataInputStream in) throws IOException, ClassNotFoundException {
+            byte type = in.readByte();
+            switch (type) {
+            case T_NULL:
+                return null;
+            case T_OBJECT:
+                return deserialize(in);
+            case T_STEAL_REQUEST:
+                return readStealRequest(in);
+            case T_STEAL_REPLY: {
+                ConstellationIdentifierImpl source = readCID(in);
+                ConstellationIdentifierImpl target = readCID(in);
+                StealPool pool = readPool(in);
+                AbstractContext context = readContext(in);
+                return new StealReply(source, target, pool, context, (ActivityRecord[]) null);
+            }
+            case T_EVENT_MESSAGE: {
+                ConstellationIdentifierImpl source = readCID(in);
+                ConstellationIdentifierImpl target = readCID(in);
+                ActivityIdentifierImpl eventSource = readAID(in);
+                ActivityIdentifierImpl eventTarget = readAID(in);
+                Object data = readValue(in);
+                return new EventMessage(source, target, new Event(eventSource, eventTarget, data), in.readBoolean());
+            }
+            case T_LOCATION_HINT: {
+                ConstellationIdentifierImpl source = readCID(in);
+                ConstellationIdentifierImpl target = readCID(in);
+                return new LocationHint(source, target, readAID(in));
+            }
+            case T_RANK_INFO: {
+                int rank = in.readInt();
+                return new RankInfo(rank, readNode(in));
+            }
+            case T_POOL_REGISTER_REQUEST: {
+                NodeIdentifier source = readNode(in);
+                String tag = in.readUTF();
+                return new PoolRegisterRequest(source, tag, readContexts(in));
+            }
+            case T_POOL_UPDATE_REQUEST: {
+                NodeIdentifier source = readNode(in);
+                String tag = in.readUTF();
+                return new PoolUpdateRequest(source, tag, in.readLong());
+            }
+            case T_POOL_DELTA: {
+                String tag = in.readUTF();
+                long from = in.readLong();
+                NodeIdentifier id = readNode(in);
+                boolean joined = in.readBoolean();
+                return new PoolDelta(tag, from, id, joined, readContexts(in));
+            }
+            case T_QUIESCENCE_INFO: {
+                int wave = in.readInt();
+                long sent = in.readLong();
+                long received = in.readLong();
+                return new QuiescenceInfo(wave, sent, received, in.readBoolean());
+            }
+            case T_PROFILING_CHUNK: {
+                int sequence = in.readInt();
+                int chunks = in.readInt();
+                byte[] data = new byte[in.readInt()];
+                in.readFully(data);
+                return new ProfilingChunk(sequence, chunks, data);
+            }
+            case T_LOAD_INFO: {
+                long timestamp = in.readLong();
+                int n = in.readInt();
+                AbstractContext[] contexts = new AbstractContext[n];
+                int[] queued = new int[n];
+                for (int i = 0; i < n; i++) {
+                    contexts[i] = readContext(in);
+                    queued[i] = in.readInt();
+                }
+                return new LoadInfo(timestamp, contexts, queued);
+            }
+            case T_RANK_TABLE_UPDATE: {
+                int from = in.readInt();
+                RankInfo[] entries = new RankInfo[in.readInt()];
+                for (int i = 0; i < entries.length; i++) {
+                    int rank = in.readInt();
+                    entries[i] = new RankInfo(rank, readNode(in));
+                }
+                return new RankTableUpdate(from, entries);
+            }
+            case T_LONG:
+                return in.readLong();
+            case T_INTEGER:
+                return in.readInt();
+            case T_DOUBLE:
+                return in.readDouble();
+            case T_BOOLEAN:
+                return in.readBoolean();
+            case T_STRING:
+                return in.readUTF();
+            default:
+                throw new StreamCorruptedException("Unknown type in control message: " + type);
+            }
+        }
+
+        private StealRequest readStealRequest(DataInputStream in) throws IOException, ClassNotFoundException {
+            ConstellationIdentifierImpl source = readCID(in);
+            ConstellationIdentifierImpl target = readCID(in);
+            AbstractContext context = readContext(in);
+            int strategies = in.readByte();
+            StealPool pool = readPool(in);
+            int size = in.readInt();
+            StealRequest r = new StealRequest(source, context, strategy(strategies, 1), strategy(strategies, 2),
+                    strategy(strategies, 4), pool, size);
+            if (target != null) {
+                r.setTarget(target);
+            }
+            // This request came in over the network.
+            r.setRemote();
+            return r;
+        }
+
+        private static StealStrategy strategy(int strategies, int bit) {
+            return (strategies & bit) != 0 ? StealStrategy.BIGGEST : StealStrategy.SMALLEST;
+        }
+
+        private static ConstellationIdentifierImpl readCID(DataInputStream in) throws IOException {
+            if (!in.readBoolean()) {
+                return null;
+            }
+            int nodeId = in.readInt();
+            return new ConstellationIdentifierImpl(nodeId, in.readInt());
+        }
+
+        private static ActivityIdentifierImpl readAID(DataInputStream in) throws IOException {
+            ConstellationIdentifierImpl cid = readCID(in);
+            long aid = in.readLong();
+            return ActivityIdentifierImpl.createActivityIdentifier(cid, aid, in.readBoolean());
+        }
+
+        /**
+         * Returns the interned value with the specified index.
+         */
+        private static <T> T lookup(ArrayList<T> table, short index) throws IOException {
+            if (index >= table.size()) {
+                throw new StreamCorruptedException("Unknown interned value " + index);
+            }
+            return table.get(index);
+        }
+
+        private AbstractContext[] readContexts(DataInputStream in) throws IOException {
+            int n = in.readInt();
+            if (n < 0) {
+                return null;
+            }
+            AbstractContext[] c = new AbstractContext[n];
+            for (int i = 0; i < n; i++) {
+                c[i] = readContext(in);
+            }
+            return c;
+        }
+
+        private AbstractContext readContext(DataInputStream in) throws IOException {
+            if (!in.readBoolean()) {
+                return null;
+            }
+            short index = in.readShort();
+            if (index >= 0) {
+                return lookup(contexts, index);
+            }
+            AbstractContext c;
+            if (in.readByte() == CONTEXT) {
+                c = readRangeContext(in);
+            } else {
+                Context[] tmp = new Context[in.readInt()];
+                for (int i = 0; i < tmp.length; i++) {
+                    tmp[i] = readRangeContext(in);
+                }
+                c = new OrContext(tmp);
+            }
+            if (index == NEW_ENTRY) {
+                contexts.add(c);
+            }
+            return c;
+        }
+
+        private static Context readRangeContext(DataInputStream in) throws IOException {
+            String name = in.readUTF();
+            long start = in.readLong();
+            return new Context(name, start, in.readLong());
+        }
+
+        private StealPool readPool(DataInputStream in) throws IOException {
+            if (!in.readBoolean()) {
+                return null;
+            }
+            short index = in.readShort();
+            if (index >= 0) {
+                return lookup(pools, index);
+            }
+            StealPool[] tmp = new StealPool[in.readInt()];
+            for (int i = 0; i < tmp.length; i++) {
+                tmp[i] = new StealPool(in.readUTF());
+            }
+            StealPool p = tmp.length == 1 ? tmp[0] : StealPool.merge(tmp);
+            if (index == NEW_ENTRY) {
+                pools.add(p);
+            }
+            return p;
+        }
+
+        private NodeIdentifier readNode(DataInputStream in) throws IOException, ClassNotFoundException {
+            if (!in.readBoolean()) {
+                return null;
+            }
+            short index = in.readShort();
+            if (index >= 0) {
+                return lookup(nodes, index);
+            }
+            NodeIdentifier id = (NodeIdentifier) deserialize(in);
+            if (index == NEW_ENTRY) {
+                nodes.add(id);
+            }
+            return id;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.constellation.impl.pool;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+import ibis.constellation.AbstractContext;
+import ibis.constellation.impl.ContextMatch;
+
+/**
+ * A summary of the work a node has available for other nodes: for each executor context, the number of queued activities that
+ * other nodes may steal.
+ */
+public class LoadInfo implements Serializable {
+
+    private static final long serialVersionUID = -2519271046389767315L;
+
+    /** Time at which the summary was made, in milliseconds, according to the clock of the node that made it. */
+    public final long timestamp;
+
+    public final AbstractContext[] contexts;
+
+    public final int[] queued;
+
+    public LoadInfo(long timestamp, AbstractContext[] contexts, int[] queued) {
+        if (contexts.length != queued.length) {
+            throw new IllegalArgumentException("LoadInfo needs a queue length for each context");
+        }
+        this.timestamp = timestamp;
+        this.contexts = contexts;
+        this.queued = queued;
+    }
+
+    /**
+     * Returns the number of queued activities that may match the specified context.
+     *
+     * @param context
+     *            the context of the thief
+     * @return the estimated number of activities available for the thief.
+     */
+    public int available(AbstractContext context) {
+        int n = 0;
+        for (int i = 0; i < contexts.length; i++) {
+            if (queued[i] > 0 && ContextMatch.match(contexts[i], context)) {
+                n += queued[i];
+            }
+        }
+        return n;
+    }
+
+    @Override
+    public String toString() {
+        return "LoadInfo(" + timestamp + ", " + Arrays.toString(contexts) + ", " + Arrays.toString(queued) + ")";
+    }
+}
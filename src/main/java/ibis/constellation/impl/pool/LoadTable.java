@@ -0,0 +1,114 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.constellation.impl.pool;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+import ibis.constellation.AbstractContext;
+import ibis.constellation.impl.pool.communication.NodeIdentifier;
+
+/**
+ * Keeps the most recent {@link LoadInfo} of other nodes, and uses it to select steal victims.
+ */
+class LoadTable {
+
+    private static final class Entry {
+
+        final LoadInfo info;
+
+        /** Local time at which the info was received, in milliseconds. */
+        final long received;
+
+        Entry(LoadInfo info, long received) {
+            this.info = info;
+            this.received = received;
+        }
+    }
+
+    private final ConcurrentHashMap<NodeIdentifier, Entry> entries = new ConcurrentHashMap<NodeIdentifier, Entry>();
+
+    /** Time after which load information is no longer trusted, in milliseconds. */
+    private final long staleness;
+
+    LoadTable(long staleness) {
+        this.staleness = staleness;
+    }
+
+    /**
+     * Records the load information of a node, unless more recent information of that node is already known.
+     *
+     * @param node
+     *            the node
+     * @param info
+     *            its load information
+     */
+    void update(NodeIdentifier node, LoadInfo info) {
+        Entry e = new Entry(info, System.currentTimeMillis());
+        Entry old = entries.putIfAbsent(node, e);
+        while (old != null && old.info.timestamp <= info.timestamp && !entries.replace(node, old, e)) {
+            old = entries.putIfAbsent(node, e);
+        }
+    }
+
+    /**
+     * Selects a victim among the specified members, with a probability proportional to its estimated number of activities that
+     * match the context. Only recent load information is used.
+     *
+     * @param members
+     *            the candidate victims
+     * @param local
+     *            the local node, which is never selected
+     * @param context
+     *            the context of the thief
+     * @param random
+     *            the random generator to use
+     * @return the victim, or <code>null</code> if no member is known to have matching work.
+     */
+    NodeIdentifier select(List<NodeIdentifier> members, NodeIdentifier local, AbstractContext context, Random random) {
+        long now = System.currentTimeMillis();
+        int n = members.size();
+        int[] weights = new int[n];
+        long total = 0;
+
+        for (int i = 0; i < n; i++) {
+            NodeIdentifier id = members.get(i);
+            if (id.equals(local)) {
+                continue;
+            }
+            Entry e = entries.get(id);
+            if (e != null && now - e.received <= staleness) {
+                weights[i] = e.info.available(context);
+                total += weights[i];
+            }
+        }
+
+        if (total == 0) {
+            return null;
+        }
+
+        long r = (long) (random.nextDouble() * total);
+        for (int i = 0; i < n; i++) {
+            r -= weights[i];
+            if (r < 0) {
+                return members.get(i);
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.constellation.impl.pool;
+
+import java.util.ArrayDeque;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ibis.constellation.impl.pool.communication.Message;
+import ibis.constellation.impl.pool.communication.NodeIdentifier;
+
+/**
+ * A pool of threads that handles incoming messages, so that the thread delivering a message (for instance an IPL upcall) only
+ * has to enqueue it.
+ *
+ * There are two queues: one for priority messages, such as pool management and time synchronization, and one for all other
+ * messages. Priority messages are always handled first. The queue for the other messages is bounded: when it is full,
+ * {@link #enqueue(NodeIdentifier, Message)} blocks, which slows down the senders.
+ */
+class MessageHandlerPool {
+
+    private static final Logger logger = LoggerFactory.getLogger(MessageHandlerPool.class);
+
+    /**
+     * Handles a single message.
+     */
+    interface Handler {
+
+        /**
+         * Handles the message. Called from one of the threads of the pool.
+         *
+         * @param source
+         *            the node that sent the message
+         * @param m
+         *            the message
+         */
+        void handle(NodeIdentifier source, Message m);
+
+        /**
+         * Returns whether a message with the specified opcode should be handled before other messages.
+         *
+         * @param opcode
+         *            the opcode of the message
+         * @return whether the message has priority
+         */
+        boolean isPriority(byte opcode);
+    }
+
+    private static final class Entry {
+
+        final NodeIdentifier source;
+        final Message message;
+
+        Entry(NodeIdentifier source, Message message) {
+            this.source = source;
+            this.message = message;
+        }
+    }
+
+    private final class HandlerThread extends Thread {
+
+        HandlerThread(int i) {
+            super("Constellation message handler " + i);
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            Entry e = dequeue();
+            while (e != null) {
+                try {
+                    handler.handle(e.source, e.message);
+                } catch (Throwable t) {
+                    logger.error(Pool.getString(e.message.opcode, "Failed to handle") + " from " + e.source.name(), t);
+                }
+                e = dequeue();
+            }
+        }
+    }
+
+    private final Handler handler;
+
+    private final int queueSize;
+
+    private final ArrayDeque<Entry> priority = new ArrayDeque<Entry>();
+
+    private final ArrayDeque<Entry> normal = new ArrayDeque<Entry>();
+
+    private final HandlerThread[] threads;
+
+    private boolean done = false;
+
+    MessageHandlerPool(Handler handler, int nThreads, int queueSize) {
+        if (nThreads < 1 || queueSize < 1) {
+            throw new IllegalArgumentException("MessageHandlerPool needs a positive number of threads and queue size");
+        }
+        this.handler = handler;
+        this.queueSize = queueSize;
+        threads = new HandlerThread[nThreads];
+        for (int i = 0; i < nThreads; i++) {
+            threads[i] = new HandlerThread(i);
+            threads[i].start();
+        }
+    }
+
+    synchronized void enqueue(NodeIdentifier source, Message m) {
+        if (handler.isPriority(m.opcode)) {
+            priority.addLast(new Entry(source, m));
+        } else {
+            while (normal.size() >= queueSize && !done) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    // ignored
+                }
+            }
+            normal.addLast(new Entry(source, m));
+        }
+        notifyAll();
+    }
+
+    private synchronized Entry dequeue() {
+        while (true) {
+            if (!priority.isEmpty()) {
+                return priority.removeFirst();
+            }
+            if (!normal.isEmpty()) {
+                if (normal.size() == queueSize) {
+                    // Someone may be waiting for room in the queue.
+                    notifyAll();
+                }
+                return normal.removeFirst();
+            }
+            if (done) {
+                return null;
+            }
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                // ignored
+            }
+        }
+    }
+
+    /**
+     * Stops the threads of this pool once all queued messages have been handled.
+     */
+    synchronized void done() {
+        done = true;
+        notifyAll();
+    }
+}
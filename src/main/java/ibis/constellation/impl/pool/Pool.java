@@ -18,29 +18,40 @@ package ibis.constellation.impl.pool;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
 import java.util.Random;
 import java.util.concurrent.ConcurrentHashMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import ibis.constellation.AbstractContext;
 import ibis.constellation.ConstellationProperties;
 import ibis.constellation.StealPool;
 import ibis.constellation.impl.AbstractMessage;
+import ibis.constellation.impl.ActivityRecord;
 import ibis.constellation.impl.ConstellationIdentifierImpl;
 import ibis.constellation.impl.DistributedConstellation;
 import ibis.constellation.impl.EventMessage;
+import ibis.constellation.impl.LocationHint;
 import ibis.constellation.impl.StealReply;
 import ibis.constellation.impl.StealRequest;
+import ibis.constellation.impl.pool.communication.AsyncCommunicationLayer;
 import ibis.constellation.impl.pool.communication.CommunicationLayer;
 import ibis.constellation.impl.pool.communication.Message;
 import ibis.constellation.impl.pool.communication.NodeIdentifier;
 import ibis.constellation.impl.pool.communication.ibis.CommunicationLayerImpl;
+import ibis.constellation.impl.pool.communication.local.LocalCommunicationLayer;
+import ibis.constellation.impl.pool.communication.nio.NioCommunicationLayer;
+import ibis.constellation.impl.pool.communication.shm.SharedMemoryCommunicationLayer;
 import ibis.constellation.impl.util.Profiling;
 import ibis.constellation.impl.util.TimeSyncInfo;
 
-public class Pool {
+public class Pool implements AsyncCommunicationLayer.FailureHandler {
 
     private static final Logger logger = LoggerFactory.getLogger(Pool.class);
 
@@ -51,15 +62,25 @@ public class Pool {
     private static final byte OPCODE_POOL_REGISTER_REQUEST = 43;
     private static final byte OPCODE_POOL_UPDATE_REQUEST = 44;
     private static final byte OPCODE_POOL_UPDATE_REPLY = 45;
+    private static final byte OPCODE_POOL_DELTA = 46;
 
     private static final byte OPCODE_RANK_REGISTER_REQUEST = 53;
     private static final byte OPCODE_RANK_LOOKUP_REQUEST = 54;
     private static final byte OPCODE_RANK_LOOKUP_REPLY = 55;
+    private static final byte OPCODE_RANK_TABLE = 56;
+    private static final byte OPCODE_RANK_TABLE_REQUEST = 57;
 
     private static final byte OPCODE_REQUEST_TIME = 63;
     private static final byte OPCODE_SEND_TIME = 64;
 
     private static final byte OPCODE_PROFILING = 73;
+    private static final byte OPCODE_PROFILING_ACK = 74;
+
+    /** Maximum number of profiling chunks that a node sends without an acknowledgement from the master. */
+    private static final int PROFILING_WINDOW = 4;
+
+    /** Time after which a node stops sending profiling chunks that the master does not acknowledge, in milliseconds. */
+    private static final long PROFILING_TIMEOUT = 60000;
 
     private static final byte OPCODE_NOTHING = 83;
     private static final byte OPCODE_RELEASE = 84;
@@ -67,10 +88,53 @@ public class Pool {
     private static final byte OPCODE_PING = 93;
     private static final byte OPCODE_PONG = 94;
 
+    private static final byte OPCODE_LOAD_REQUEST = 103;
+    private static final byte OPCODE_LOAD = 104;
+
+    private static final byte OPCODE_QUIESCENCE_PROBE = 113;
+    private static final byte OPCODE_QUIESCENCE_REPLY = 114;
+
+    private static final byte OPCODE_LOCATION_HINT = 123;
+    private static final byte OPCODE_PLACEMENT = 124;
+
+    /** Time the master waits for the replies to a quiescence probe, in milliseconds. */
+    private static final long QUIESCENCE_TIMEOUT = 5000;
+
     private DistributedConstellation owner;
 
     private final ConcurrentHashMap<Integer, NodeIdentifier> locationCache = new ConcurrentHashMap<Integer, NodeIdentifier>();
 
+    /** Time after which event messages waiting for a rank lookup are handed back for a retry, in milliseconds. */
+    private static final long PARKED_EVENT_TIMEOUT = 1000;
+
+    /**
+     * Time after which an unanswered rank lookup for parked event messages is sent again, in milliseconds. The master drops
+     * lookups for ranks that have not registered yet.
+     */
+    private static final long PARKED_LOOKUP_RETRY = PARKED_EVENT_TIMEOUT / 4;
+
+    /**
+     * Event messages waiting for the reply to a rank lookup.
+     */
+    private static final class ParkedEvents {
+
+        /** The time at which the first message was parked. */
+        final long since;
+
+        /** The time at which the last rank lookup was sent. */
+        long lookupSent;
+
+        final ArrayList<EventMessage> messages = new ArrayList<EventMessage>();
+
+        ParkedEvents(long since) {
+            this.since = since;
+            this.lookupSent = since;
+        }
+    }
+
+    /** Event messages waiting for a rank lookup, per rank. */
+    private final HashMap<Integer, ParkedEvents> parked = new HashMap<Integer, ParkedEvents>();
+
     private final NodeIdentifier local;
     private final NodeIdentifier master;
 
@@ -86,6 +150,9 @@ public class Pool {
 
     private final TimeSyncInfo syncInfo;
 
+    /** Round trip time of a ping above which the time in the pong is considered inaccurate, in nanoseconds. */
+    private static final long MAX_PING_TIME = 10000000L;
+
     class PoolUpdater extends Thread {
 
         private static final long MIN_DELAY = 1000;
@@ -99,6 +166,9 @@ public class Pool {
         private ArrayList<String> tags = new ArrayList<String>();
         private ArrayList<PoolInfo> updates = new ArrayList<PoolInfo>();
 
+        /** Tags of the pools that push their membership changes to us, which therefore need not be polled. */
+        private HashSet<String> subscribed = new HashSet<String>();
+
         private synchronized void addTag(String tag) {
             if (logger.isInfoEnabled()) {
                 logger.info("Adding tag " + tag + " to PoolUpdater");
@@ -109,7 +179,17 @@ public class Pool {
         }
 
         private synchronized String[] getTags() {
-            return tags.toArray(new String[tags.size()]);
+            ArrayList<String> result = new ArrayList<String>();
+            for (String tag : tags) {
+                if (!subscribed.contains(tag)) {
+                    result.add(tag);
+                }
+            }
+            return result.toArray(new String[result.size()]);
+        }
+
+        private synchronized void subscribed(String tag) {
+            subscribed.add(tag);
         }
 
         private synchronized void enqueueUpdate(PoolInfo info) {
@@ -160,6 +240,10 @@ public class Pool {
 
             while (update != null) {
                 performUpdate(update);
+                if (properties.POOL_PUSH) {
+                    // The master now pushes changes to us.
+                    subscribed(update.getTag());
+                }
                 update = dequeueUpdate();
             }
         }
@@ -219,21 +303,312 @@ public class Pool {
         }
     }
 
+    /**
+     * Repeats the rank lookups for parked event messages, and expires them, at the granularity of
+     * {@link Pool#PARKED_LOOKUP_RETRY}. It only wakes up while event messages are parked.
+     */
+    class ParkedEventTimer extends Thread {
+
+        /** Guarded by the lock on {@link Pool#parked}. */
+        private boolean done;
+
+        ParkedEventTimer() {
+            super("Constellation parked event timer");
+            setDaemon(true);
+        }
+
+        private void done() {
+            synchronized (parked) {
+                done = true;
+                parked.notifyAll();
+            }
+        }
+
+        private boolean waitInterval() {
+            synchronized (parked) {
+                try {
+                    while (!done && parked.isEmpty()) {
+                        parked.wait();
+                    }
+                    if (!done) {
+                        parked.wait(PARKED_LOOKUP_RETRY);
+                    }
+                } catch (InterruptedException e) {
+                    // ignore
+                }
+                return !done;
+            }
+        }
+
+        @Override
+        public void run() {
+            while (waitInterval()) {
+                expireParkedEvents();
+            }
+        }
+    }
+
+    /**
+     * Regularly exchanges load information with a random member of one of the known steal pools.
+     */
+    class LoadGossiper extends Thread {
+
+        private final long interval;
+
+        private boolean done;
+
+        LoadGossiper(long interval) {
+            super("Constellation load gossip");
+            setDaemon(true);
+            this.interval = interval;
+        }
+
+        private synchronized void done() {
+            done = true;
+            notifyAll();
+        }
+
+        private synchronized boolean waitInterval() {
+            if (!done) {
+                try {
+                    wait(interval);
+                } catch (InterruptedException e) {
+                    // ignore
+                }
+            }
+            return !done;
+        }
+
+        @Override
+        public void run() {
+            while (waitInterval()) {
+                NodeIdentifier id = selectGossipPartner();
+                if (id != null) {
+                    doForward(id, OPCODE_LOAD_REQUEST, owner.getLoadInfo());
+                }
+            }
+        }
+    }
+
+    /**
+     * Sends the entries that were added to the rank table of the master to all nodes in the table. Registrations that arrive
+     * shortly after each other are sent in a single update.
+     */
+    class RankBroadcaster extends Thread {
+
+        private static final long BATCH_DELAY = 10;
+
+        private boolean changed;
+        private boolean done;
+
+        /** Version of the rank table that was last sent to all nodes. */
+        private int sent;
+
+        RankBroadcaster(int sent) {
+            super("Constellation rank broadcast");
+            setDaemon(true);
+            this.sent = sent;
+        }
+
+        private synchronized void changed() {
+            changed = true;
+            notifyAll();
+        }
+
+        private synchronized void done() {
+            done = true;
+            notifyAll();
+        }
+
+        private synchronized boolean waitForChange() {
+            while (!changed && !done) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    // ignore
+                }
+            }
+            changed = false;
+            return !done;
+        }
+
+        @Override
+        public void run() {
+            while (waitForChange()) {
+                try {
+                    Thread.sleep(BATCH_DELAY);
+                } catch (InterruptedException e) {
+                    // ignore
+                }
+                RankTableUpdate update = rankTable.since(sent);
+                if (update.entries.length == 0) {
+                    continue;
+                }
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Broadcasting rank table entries " + update.from + " to " + update.to());
+                }
+                for (NodeIdentifier id : rankTable.members(local)) {
+                    doForward(id, OPCODE_RANK_TABLE, update);
+                }
+                sent = update.to();
+            }
+        }
+    }
+
+    /**
+     * Sends activities that cannot run on this node to nodes that advertised a matching executor context. The activities for the
+     * same node that are placed within a short delay are sent together.
+     */
+    class Placer extends Thread {
+
+        private final long delay;
+
+        /** The activities to send, per source sub-constellation and target constellation. */
+        private HashMap<ConstellationIdentifierImpl, HashMap<ConstellationIdentifierImpl, ArrayList<ActivityRecord>>> pending = new HashMap<ConstellationIdentifierImpl, HashMap<ConstellationIdentifierImpl, ArrayList<ActivityRecord>>>();
+
+        /** The number of activities that were placed but not sent yet. */
+        private int count;
+
+        private boolean done;
+
+        Placer(long delay) {
+            super("Constellation placement");
+            setDaemon(true);
+            this.delay = delay;
+        }
+
+        private synchronized void add(ConstellationIdentifierImpl source, ConstellationIdentifierImpl target, ActivityRecord ar) {
+            HashMap<ConstellationIdentifierImpl, ArrayList<ActivityRecord>> targets = pending.get(source);
+            if (targets == null) {
+                targets = new HashMap<ConstellationIdentifierImpl, ArrayList<ActivityRecord>>();
+                pending.put(source, targets);
+            }
+            ArrayList<ActivityRecord> list = targets.get(target);
+            if (list == null) {
+                list = new ArrayList<ActivityRecord>();
+                targets.put(target, list);
+            }
+            list.add(ar);
+            count++;
+            notifyAll();
+        }
+
+        private synchronized boolean isEmpty() {
+            return count == 0;
+        }
+
+        private synchronized void sent(int n) {
+            count -= n;
+        }
+
+        private synchronized void done() {
+            done = true;
+            notifyAll();
+        }
+
+        private synchronized boolean waitForWork() {
+            while (count == 0 && !done) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    // ignore
+                }
+            }
+            return !done;
+        }
+
+        @Override
+        public void run() {
+            while (waitForWork()) {
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException e) {
+                    // ignore
+                }
+
+                HashMap<ConstellationIdentifierImpl, HashMap<ConstellationIdentifierImpl, ArrayList<ActivityRecord>>> batches;
+
+                synchronized (this) {
+                    batches = pending;
+                    pending = new HashMap<ConstellationIdentifierImpl, HashMap<ConstellationIdentifierImpl, ArrayList<ActivityRecord>>>();
+                }
+
+                int n = 0;
+
+                for (Map.Entry<ConstellationIdentifierImpl, HashMap<ConstellationIdentifierImpl, ArrayList<ActivityRecord>>> s : batches
+                        .entrySet()) {
+                    for (Map.Entry<ConstellationIdentifierImpl, ArrayList<ActivityRecord>> t : s.getValue().entrySet()) {
+                        ArrayList<ActivityRecord> list = t.getValue();
+                        StealReply sr = new StealReply(s.getKey(), t.getKey(), null, null,
+                                list.toArray(new ActivityRecord[list.size()]));
+                        owner.registerPlacedActivities(sr);
+                        if (logger.isDebugEnabled()) {
+                            logger.debug("Placing " + list.size() + " activities at " + t.getKey());
+                        }
+                        if (!forward(sr, OPCODE_PLACEMENT)) {
+                            owner.handleFailedStealReply(sr);
+                        }
+                        n += list.size();
+                    }
+                }
+
+                sent(n);
+            }
+        }
+    }
+
     private HashMap<String, PoolInfo> pools = new HashMap<String, PoolInfo>();
     private PoolUpdater updater = new PoolUpdater();
+    private final ParkedEventTimer parkedTimer = new ParkedEventTimer();
+
+    private final LoadTable loads;
+    private final LoadGossiper gossiper;
+
+    /** Counts work-carrying messages for quiescence detection, or <code>null</code> if it is not enabled. */
+    private final QuiescenceDetector quiescence;
+
+    /** Sends activities to other nodes, or <code>null</code> if placement is not enabled. */
+    private final Placer placer;
+
+    /** The rank table, or <code>null</code> if the master does not distribute it. */
+    private final RankTable rankTable;
+    private final RankBroadcaster broadcaster;
+
+    /** Set when cluster-aware random stealing is used. */
+    private final boolean crs;
+
+    /** The site of this node. */
+    private final String site;
+
+    /** Deadline of the outstanding steal request to another site, or 0 if there is none. */
+    private long wideAreaStealDeadline = 0;
+
     private boolean gotRelease;
-    private boolean gotAnswer;
-    private boolean gotPong;
+    /** Number of outstanding handshakes of the master of a closed pool. */
+    private int handshakes;
+
+    /** Nodes to which a second ping was sent because the first took too long to obtain an accurate time. */
+    private final HashSet<NodeIdentifier> pingedAgain = new HashSet<NodeIdentifier>();
     private final ConstellationProperties properties;
 
     private int gotProfiling;
 
-    private boolean terminated;
+    /** On the master, the number of profiling chunks received from each node. */
+    private final HashMap<NodeIdentifier, Integer> profilingChunks = new HashMap<NodeIdentifier, Integer>();
+
+    /** The number of profiling chunks that the master acknowledged. */
+    private int profilingAcks;
+
+    private volatile boolean terminated;
 
     private NodeIdentifier[] ids = null;
 
     private final CommunicationLayer comm;
 
+    private final AsyncCommunicationLayer asyncComm;
+
+    private final MessageHandlerPool handlers;
+
     private boolean cleanup;
 
     public Pool(final DistributedConstellation owner, final ConstellationProperties properties)
@@ -247,13 +622,53 @@ public class Pool {
             properties.setProperty("ibis.pool.size", "" + properties.POOLSIZE);
         }
 
-        comm = new CommunicationLayerImpl(properties, this);
+        if (properties.HANDLER_THREADS > 0) {
+            handlers = new MessageHandlerPool(new MessageHandlerPool.Handler() {
+                @Override
+                public void handle(NodeIdentifier source, Message m) {
+                    handleMessage(source, m);
+                }
+
+                @Override
+                public boolean isPriority(byte opcode) {
+                    return Pool.isPriority(opcode);
+                }
+            }, properties.HANDLER_THREADS, properties.HANDLER_QUEUESIZE);
+        } else {
+            handlers = null;
+        }
+
+        if (properties.ASYNC_SEND) {
+            asyncComm = new AsyncCommunicationLayer(createCommunicationLayer(properties),
+                    properties.ASYNC_SEND_QUEUESIZE, properties.ASYNC_SEND_THREADS, this);
+            comm = asyncComm;
+        } else {
+            asyncComm = null;
+            comm = createCommunicationLayer(properties);
+        }
         local = comm.getMyIdentifier();
         master = comm.getMaster();
         rank = comm.getRank();
+        site = local.site();
+        crs = properties.CRS;
         isMaster = local.equals(master);
         locationCache.put(rank, local);
 
+        quiescence = properties.QUIESCENCE ? new QuiescenceDetector() : null;
+
+        if (properties.RANK_BROADCAST) {
+            rankTable = new RankTable();
+        } else {
+            rankTable = null;
+        }
+        if (rankTable != null && isMaster) {
+            rankTable.add(new RankInfo(rank, local));
+            broadcaster = new RankBroadcaster(rankTable.version());
+            broadcaster.start();
+        } else {
+            broadcaster = null;
+        }
+
         // Register my rank at the master
         if (!isMaster) {
             doForward(master, OPCODE_RANK_REGISTER_REQUEST, new RankInfo(rank, local));
@@ -264,6 +679,23 @@ public class Pool {
 
         // Start the updater thread...
         updater.start();
+        parkedTimer.start();
+
+        if (properties.LOADGOSSIP) {
+            loads = new LoadTable(properties.LOADGOSSIP_STALENESS);
+            gossiper = new LoadGossiper(properties.LOADGOSSIP_INTERVAL);
+            gossiper.start();
+        } else {
+            loads = null;
+            gossiper = null;
+        }
+
+        if (properties.PLACEMENT) {
+            placer = new Placer(properties.PLACEMENT_DELAY);
+            placer.start();
+        } else {
+            placer = null;
+        }
 
         if (closedPool) {
             ids = comm.getNodeIdentifiers();
@@ -273,6 +705,36 @@ public class Pool {
 
     }
 
+    /**
+     * Creates the communication layer selected by the "communication" property, with shared memory for nodes on the same host
+     * on top of it if the "shm" property is set.
+     */
+    private CommunicationLayer createCommunicationLayer(ConstellationProperties properties) throws PoolCreationFailedException {
+        CommunicationLayer c;
+        switch (properties.COMMUNICATION) {
+        case "ibis":
+            c = new CommunicationLayerImpl(properties, this);
+            break;
+        case "local":
+            c = new LocalCommunicationLayer(properties, this);
+            break;
+        case "nio":
+            c = new NioCommunicationLayer(properties, this);
+            break;
+        default:
+            throw new PoolCreationFailedException("Unknown communication layer: " + properties.COMMUNICATION);
+        }
+        if (properties.SHM) {
+            try {
+                c = new SharedMemoryCommunicationLayer(c, properties, this);
+            } catch (PoolCreationFailedException e) {
+                c.cleanup();
+                throw e;
+            }
+        }
+        return c;
+    }
+
     public String getId() {
         return local.name();
     }
@@ -289,31 +751,30 @@ public class Pool {
 
         if (closedPool) {
             if (isMaster()) {
+                // Handshake with a window of nodes at the same time. The pong tells us that the other side has upcalls
+                // enabled, and carries its time.
+                int window = Math.max(1, properties.CLOSED_HANDSHAKEWINDOW);
                 for (NodeIdentifier id : ids) {
                     if (!id.equals(local)) {
-                        // First do a pingpong to make sure that the other side
-                        // has upcalls enabled already.
-                        doForward(id, OPCODE_PING, null);
                         synchronized (this) {
-                            while (!gotPong) {
+                            while (handshakes >= window) {
                                 try {
                                     wait();
                                 } catch (Throwable e) {
                                     // ignore
                                 }
                             }
-                            gotPong = false;
+                            handshakes++;
                         }
-                        getTimeOfOther(id);
-                        synchronized (this) {
-                            while (!gotAnswer) {
-                                try {
-                                    wait();
-                                } catch (Throwable e) {
-                                    // ignore
-                                }
-                            }
-                            gotAnswer = false;
+                        ping(id);
+                    }
+                }
+                synchronized (this) {
+                    while (handshakes > 0) {
+                        try {
+                            wait();
+                        } catch (Throwable e) {
+                            // ignore
                         }
                     }
                 }
@@ -336,6 +797,63 @@ public class Pool {
         }
     }
 
+    /**
+     * On the master, waits until the pool is quiescent: all nodes are passive and no work-carrying messages are in transit.
+     * Returns immediately if quiescence detection is not enabled.
+     */
+    public void waitForQuiescence() {
+        if (quiescence == null) {
+            return;
+        }
+
+        if (logger.isInfoEnabled()) {
+            logger.info("Waiting for quiescence");
+        }
+
+        while (true) {
+            ArrayList<NodeIdentifier> others = new ArrayList<NodeIdentifier>();
+            for (NodeIdentifier id : closedPool ? Arrays.asList(ids) : locationCache.values()) {
+                if (!id.equals(local)) {
+                    others.add(id);
+                }
+            }
+
+            int wave = quiescence.startWave(others.size() + 1);
+            for (NodeIdentifier id : others) {
+                doForward(id, OPCODE_QUIESCENCE_PROBE, new Integer(wave));
+            }
+            quiescence.addReport(quiescence.report(wave, isPassive()));
+
+            if (quiescence.endWave(quiescence.awaitWave(QUIESCENCE_TIMEOUT))) {
+                if (logger.isInfoEnabled()) {
+                    logger.info("Quiescence detected after " + wave + " waves");
+                }
+                return;
+            }
+
+            try {
+                Thread.sleep(properties.QUIESCENCE_INTERVAL);
+            } catch (InterruptedException e) {
+                // ignore
+            }
+        }
+    }
+
+    /**
+     * Returns whether this node is passive: it has no work, and no event messages are waiting to be sent.
+     */
+    private boolean isPassive() {
+        synchronized (parked) {
+            if (!parked.isEmpty()) {
+                return false;
+            }
+        }
+        if (placer != null && !placer.isEmpty()) {
+            return false;
+        }
+        return owner.isQuiescent();
+    }
+
     public boolean isLocal(ConstellationIdentifierImpl id) {
         return rank == id.getNodeId();
     }
@@ -343,6 +861,7 @@ public class Pool {
     public void terminate() throws IOException {
         comm.terminate();
         updater.done();
+        parkedTimer.done();
         terminated = true;
     }
 
@@ -371,10 +890,19 @@ public class Pool {
                         }
                     }
                 } else {
-                    try {
-                        Thread.sleep(30000);
-                    } catch (Throwable e) {
-                        // ignore
+                    // Every node registered its rank with us, so we know how many to wait for.
+                    synchronized (this) {
+                        long time = System.currentTimeMillis();
+                        while (gotProfiling < locationCache.size() - 1) {
+                            try {
+                                wait(1000);
+                            } catch (Throwable e) {
+                                // ignore
+                            }
+                            if (System.currentTimeMillis() - time > 30000) {
+                                break;
+                            }
+                        }
                     }
                 }
             } else {
@@ -382,17 +910,77 @@ public class Pool {
                     logger.info("Sending statistics to master");
                 }
                 synchronized (profiling) {
-                    doForward(master, OPCODE_PROFILING, profiling);
+                    // The profiling data may not change while it is being written.
+                    sendProfiling(profiling);
                 }
             }
         }
     }
 
+    /**
+     * Sends the profiling data to the master in compressed chunks, of which at most {@link #PROFILING_WINDOW} are unacknowledged
+     * at any time, so that neither side has to hold all data in a single message.
+     */
+    private void sendProfiling(Profiling profiling) {
+        int size = Math.max(1, properties.PROFILE_CHUNKSIZE);
+        int events = profiling.countEvents();
+        int chunks = Math.max(1, (events + size - 1) / size);
+        long deadline = System.currentTimeMillis() + PROFILING_TIMEOUT;
+
+        try {
+            for (int i = 0; i < chunks; i++) {
+                if (!waitForProfilingAcks(i - PROFILING_WINDOW + 1, deadline)) {
+                    logger.warn("Master does not acknowledge profiling data, giving up");
+                    return;
+                }
+                doForward(master, OPCODE_PROFILING, new ProfilingChunk(i, chunks, profiling.encodeEvents(i * size, size)));
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to encode profiling data", e);
+            return;
+        }
+
+        if (!waitForProfilingAcks(chunks, deadline)) {
+            logger.warn("Master does not acknowledge profiling data");
+        }
+    }
+
+    private synchronized boolean waitForProfilingAcks(int acks, long deadline) {
+        long t = deadline - System.currentTimeMillis();
+        while (profilingAcks < acks && t > 0) {
+            try {
+                wait(t);
+            } catch (InterruptedException e) {
+                // ignore
+            }
+            t = deadline - System.currentTimeMillis();
+        }
+        return profilingAcks >= acks;
+    }
+
+    private synchronized void gotProfilingAck() {
+        profilingAcks++;
+        notifyAll();
+    }
+
     public void cleanup() {
         synchronized (this) {
             cleanup = true;
         }
         updater.done();
+        parkedTimer.done();
+        if (gossiper != null) {
+            gossiper.done();
+        }
+        if (broadcaster != null) {
+            broadcaster.done();
+        }
+        if (placer != null) {
+            placer.done();
+        }
+        if (handlers != null) {
+            handlers.done();
+        }
         comm.cleanup();
     }
 
@@ -408,14 +996,69 @@ public class Pool {
         return lookupRank(cid.getNodeId());
     }
 
-    private boolean doForward(NodeIdentifier dest, byte opcode, Object data) {
-        Message m = new Message(opcode, data);
+    private boolean doForward(NodeIdentifier dest, byte opcode, Object data) {
+        Message m = new Message(opcode, data);
+        synchronized (this) {
+            if (cleanup) {
+                return true;
+            }
+        }
+        // Count the message before it is sent, so that the receiver never counts it first.
+        boolean counted = quiescence != null && carriesWork(opcode, data);
+        if (counted) {
+            quiescence.sent();
+        }
+        boolean result = comm.sendMessage(dest, m);
+        if (!result && counted) {
+            quiescence.unsent();
+        }
+        return result;
+    }
+
+    /**
+     * Returns whether a message may make its receiver active, which is what quiescence detection counts.
+     */
+    private static boolean carriesWork(byte opcode, Object data) {
+        switch (opcode) {
+        case OPCODE_EVENT_MESSAGE:
+            return true;
+        case OPCODE_STEAL_REPLY:
+        case OPCODE_PLACEMENT:
+            return !((StealReply) data).isEmpty();
+        default:
+            return false;
+        }
+    }
+
+    @Override
+    public void sendFailed(NodeIdentifier dest, Message m) {
         synchronized (this) {
             if (cleanup) {
-                return true;
+                return;
+            }
+        }
+
+        switch (m.opcode) {
+        case OPCODE_STEAL_REPLY:
+        case OPCODE_PLACEMENT:
+            owner.handleFailedStealReply((StealReply) m.contents);
+            if (quiescence != null && carriesWork(m.opcode, m.contents)) {
+                quiescence.unsent();
+            }
+            break;
+        case OPCODE_EVENT_MESSAGE:
+            owner.handleFailedApplicationMessage((EventMessage) m.contents);
+            if (quiescence != null) {
+                quiescence.unsent();
+            }
+            break;
+        default:
+            // Steal requests just time out, and pool and rank management messages are repeated when needed.
+            if (logger.isInfoEnabled()) {
+                logger.info(getString(m.opcode, "Failed to send") + " to " + dest.name());
             }
+            break;
         }
-        return comm.sendMessage(dest, m);
     }
 
     public boolean forward(StealReply sr) {
@@ -423,6 +1066,14 @@ public class Pool {
         // logger.info("POOL:FORWARD StealReply from " + sr.source +
         // " to " + sr.target);
 
+        if (loads != null) {
+            // Tell the thief how much work is left here. This is sent first, so that it is aggregated with the steal reply.
+            NodeIdentifier id = translate(sr.target);
+            if (id != null) {
+                doForward(id, OPCODE_LOAD, owner.getLoadInfo());
+            }
+        }
+
         return forward(sr, OPCODE_STEAL_REPLY);
     }
 
@@ -430,6 +1081,67 @@ public class Pool {
         return forward(em, OPCODE_EVENT_MESSAGE);
     }
 
+    public boolean forward(LocationHint hint) {
+        return forward(hint, OPCODE_LOCATION_HINT);
+    }
+
+    /**
+     * Selects a node, other than this one, that advertised an executor context that matches the specified context, among the
+     * members of the specified steal pool. Only nodes of which the rank is known are selected.
+     *
+     * @param pool
+     *            the steal pool
+     * @param context
+     *            the context of an activity
+     * @return the identifier of the selected constellation, or <code>null</code> if there is none.
+     */
+    public ConstellationIdentifierImpl selectPlacement(StealPool pool, AbstractContext context) {
+
+        if (placer == null) {
+            return null;
+        }
+
+        PoolInfo info;
+
+        synchronized (pools) {
+            info = pools.get(pool.randomlySelectPool(random).getTag());
+        }
+
+        if (info == null) {
+            return null;
+        }
+
+        NodeIdentifier id = info.selectCapable(random, local, context);
+
+        if (id == null) {
+            return null;
+        }
+
+        for (Map.Entry<Integer, NodeIdentifier> e : locationCache.entrySet()) {
+            if (e.getValue().equals(id)) {
+                // The first constellation identifier of a node is that of its DistributedConstellation.
+                return new ConstellationIdentifierImpl(e.getKey(), 0);
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Sends an activity to the specified constellation after a short delay, together with the other activities for it that are
+     * placed in the meantime.
+     *
+     * @param source
+     *            the sub-constellation the activity was submitted to
+     * @param target
+     *            the constellation selected with {@link #selectPlacement(StealPool, AbstractContext)}
+     * @param ar
+     *            the activity
+     */
+    public void place(ConstellationIdentifierImpl source, ConstellationIdentifierImpl target, ActivityRecord ar) {
+        placer.add(source, target, ar);
+    }
+
     private boolean forward(AbstractMessage m, byte opcode) {
 
         ConstellationIdentifierImpl target = m.target;
@@ -438,7 +1150,16 @@ public class Pool {
             logger.trace("POOL FORWARD Message from " + m.source + " to " + m.target + " " + m);
         }
 
-        NodeIdentifier id = translate(target);
+        NodeIdentifier id = locationCache.get(target.getNodeId());
+
+        if (id == null && opcode == OPCODE_EVENT_MESSAGE && !isMaster) {
+            // Wait for the rank lookup instead of having the event retried later.
+            return parkEvent((EventMessage) m);
+        }
+
+        if (id == null) {
+            id = translate(target);
+        }
 
         if (id == null) {
             if (logger.isInfoEnabled()) {
@@ -465,8 +1186,11 @@ public class Pool {
     private void registerRank(int rank, NodeIdentifier id) {
         NodeIdentifier old = locationCache.put(rank, id);
 
-        if (logger.isInfoEnabled() && old == null) {
-            logger.info("Register rank " + rank + ", id = " + id);
+        if (old == null) {
+            if (logger.isInfoEnabled()) {
+                logger.info("Register rank " + rank + ", id = " + id);
+            }
+            sendParkedEvents(rank, id);
         }
 
         // sanity check
@@ -495,6 +1219,111 @@ public class Pool {
         return null;
     }
 
+    /**
+     * Parks an event message for a rank of which the node identifier is not known yet, and asks the master for it, unless another
+     * event message is already waiting for the same rank. The event message is sent when the reply arrives.
+     *
+     * @param m
+     *            the event message
+     * @return whether the event message was sent or parked.
+     */
+    private boolean parkEvent(EventMessage m) {
+        int rank = m.target.getNodeId();
+        NodeIdentifier id;
+        boolean lookup = false;
+
+        synchronized (parked) {
+            // The reply may have arrived in the meantime.
+            id = locationCache.get(rank);
+            if (id == null) {
+                long now = System.currentTimeMillis();
+                ParkedEvents p = parked.get(rank);
+                if (p == null) {
+                    p = new ParkedEvents(now);
+                    parked.put(rank, p);
+                    lookup = true;
+                    // Wake up the timer.
+                    parked.notifyAll();
+                } else if (now - p.lookupSent >= PARKED_LOOKUP_RETRY) {
+                    // The master may not have known the rank yet, so ask again.
+                    p.lookupSent = now;
+                    lookup = true;
+                }
+                p.messages.add(m);
+            }
+        }
+
+        if (id != null) {
+            return doForward(id, OPCODE_EVENT_MESSAGE, m);
+        }
+
+        if (lookup) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("Parking event messages for rank " + rank + " until its lookup returns");
+            }
+            doForward(master, OPCODE_RANK_LOOKUP_REQUEST, new RankInfo(rank, local));
+        }
+
+        return true;
+    }
+
+    private void sendParkedEvents(int rank, NodeIdentifier id) {
+        ParkedEvents p;
+        synchronized (parked) {
+            p = parked.remove(rank);
+        }
+        if (p != null) {
+            for (EventMessage m : p.messages) {
+                if (!doForward(id, OPCODE_EVENT_MESSAGE, m)) {
+                    owner.handleFailedApplicationMessage(m);
+                }
+            }
+        }
+    }
+
+    /**
+     * Hands event messages for which the rank lookup did not return in time back to the owner, which retries them with increasing
+     * delays, and repeats the lookups that have not been answered for a while.
+     */
+    private void expireParkedEvents() {
+        ArrayList<EventMessage> expired = null;
+        ArrayList<Integer> lookups = null;
+        long now = System.currentTimeMillis();
+
+        synchronized (parked) {
+            Iterator<Map.Entry<Integer, ParkedEvents>> i = parked.entrySet().iterator();
+            while (i.hasNext()) {
+                Map.Entry<Integer, ParkedEvents> e = i.next();
+                ParkedEvents p = e.getValue();
+                if (now - p.since >= PARKED_EVENT_TIMEOUT) {
+                    if (expired == null) {
+                        expired = new ArrayList<EventMessage>();
+                    }
+                    expired.addAll(p.messages);
+                    i.remove();
+                } else if (now - p.lookupSent >= PARKED_LOOKUP_RETRY) {
+                    p.lookupSent = now;
+                    if (lookups == null) {
+                        lookups = new ArrayList<Integer>();
+                    }
+                    lookups.add(e.getKey());
+                }
+            }
+        }
+
+        if (lookups != null) {
+            for (Integer r : lookups) {
+                doForward(master, OPCODE_RANK_LOOKUP_REQUEST, new RankInfo(r, local));
+            }
+        }
+
+        if (expired != null) {
+            for (EventMessage m : expired) {
+                owner.handleFailedApplicationMessage(m);
+            }
+        }
+    }
+
     private void lookupRankRequest(RankInfo info) {
 
         NodeIdentifier tmp = locationCache.get(info.rank);
@@ -511,6 +1340,32 @@ public class Pool {
         doForward(info.id, OPCODE_RANK_LOOKUP_REPLY, new RankInfo(info.rank, tmp));
     }
 
+    /**
+     * Adds a newly registered rank to the rank table of the master, and sends the complete table to the node that registered. The
+     * other nodes get the new entry from the {@link RankBroadcaster}.
+     */
+    private void addToRankTable(RankInfo info) {
+        if (rankTable.add(info)) {
+            broadcaster.changed();
+        }
+        doForward(info.id, OPCODE_RANK_TABLE, rankTable.since(0));
+    }
+
+    /**
+     * Registers the ranks in an update of the rank table. If updates were missed, the missing part of the table is requested from
+     * the master instead.
+     */
+    private void applyRankTable(RankTableUpdate update) {
+        RankInfo[] entries = rankTable.apply(update);
+        if (entries == null) {
+            doForward(master, OPCODE_RANK_TABLE_REQUEST, new Integer(rankTable.version()));
+            return;
+        }
+        for (RankInfo info : entries) {
+            registerRank(info);
+        }
+    }
+
     private void getTimeOfOther(NodeIdentifier id) {
         // Send something just to set up the connection.
         doForward(id, OPCODE_NOTHING, null);
@@ -525,24 +1380,71 @@ public class Pool {
     }
 
     private void sendTime(long l, NodeIdentifier source) {
-        Long myTime = times.get(source);
+        long now = System.nanoTime();
+        Long myTime;
+        synchronized (times) {
+            myTime = times.remove(source);
+        }
         if (myTime == null) {
             logger.warn("Ignored rogue time answer");
             return;
         }
-        long interval = (System.nanoTime() - myTime.longValue());
+        setOffset(source, myTime.longValue(), now, l);
+    }
+
+    private void setOffset(NodeIdentifier source, long myTime, long now, long otherTime) {
+        long interval = now - myTime;
         long half = interval / 2;
-        long offset = myTime.longValue() + half - l;
+        long offset = myTime + half - otherTime;
         if (logger.isDebugEnabled()) {
             logger.debug("source = " + source.name() + ", offset = " + offset + ", interval = " + interval);
         }
-        syncInfo.put(source.name(), new Long(offset));
-        if (closedPool) {
-            synchronized (this) {
-                gotAnswer = true;
-                notifyAll();
+        synchronized (syncInfo) {
+            syncInfo.put(source.name(), new Long(offset));
+        }
+    }
+
+    /**
+     * Starts the handshake of the master of a closed pool with a node.
+     */
+    private void ping(NodeIdentifier id) {
+        // Send something just to set up the connection, so that it does not count in the round trip time.
+        doForward(id, OPCODE_NOTHING, null);
+        synchronized (times) {
+            times.put(id, new Long(System.nanoTime()));
+        }
+        doForward(id, OPCODE_PING, null);
+    }
+
+    /**
+     * Completes a handshake with a node, using the time in the pong to determine its clock offset. If the round trip took too
+     * long for an accurate offset, for instance because the node was still starting up, the node is pinged once more.
+     */
+    private void gotPong(NodeIdentifier source, long otherTime) {
+        long now = System.nanoTime();
+        Long myTime;
+        synchronized (times) {
+            myTime = times.remove(source);
+        }
+        if (myTime == null) {
+            logger.warn("Ignored rogue pong");
+            return;
+        }
+        boolean again = false;
+        if (now - myTime.longValue() > MAX_PING_TIME) {
+            synchronized (pingedAgain) {
+                again = pingedAgain.add(source);
             }
         }
+        if (again) {
+            ping(source);
+            return;
+        }
+        setOffset(source, myTime.longValue(), now, otherTime);
+        synchronized (this) {
+            handshakes--;
+            notifyAll();
+        }
     }
 
     private void gotStealRequest(StealRequest m, NodeIdentifier source) {
@@ -561,18 +1463,39 @@ public class Pool {
         notifyAll();
     }
 
-    private void gotProfiling(Profiling data, NodeIdentifier source) {
-        owner.getProfiling().add(data);
-        comm.cleanup(source); // To speed up termination
-        synchronized (this) {
-            gotProfiling++;
-            notifyAll();
+    private void gotProfiling(ProfilingChunk chunk, NodeIdentifier source) {
+        try {
+            owner.getProfiling().decodeEvents(chunk.data);
+        } catch (IOException e) {
+            logger.warn("Dropping corrupt profiling data from " + source.name(), e);
+        }
+        doForward(source, OPCODE_PROFILING_ACK, null);
+
+        // Chunks may be handled concurrently, so count them rather than relying on the order.
+        boolean complete;
+        synchronized (profilingChunks) {
+            Integer n = profilingChunks.get(source);
+            n = n == null ? 1 : n + 1;
+            profilingChunks.put(source, n);
+            complete = n == chunk.chunks;
+        }
+
+        if (complete) {
+            comm.cleanup(source); // To speed up termination
+            synchronized (this) {
+                gotProfiling++;
+                notifyAll();
+            }
         }
     }
 
     private void gotStealReply(StealReply m, NodeIdentifier source) {
         registerRank(m.source, source);
 
+        if (crs && !site.equals(source.site())) {
+            wideAreaStealDone();
+        }
+
         if (logger.isTraceEnabled()) {
             logger.trace("POOL RECEIVE StealReply from " + m.source);
         }
@@ -595,6 +1518,14 @@ public class Pool {
     }
 
     public void upcall(NodeIdentifier source, Message rm) {
+        if (handlers != null) {
+            handlers.enqueue(source, rm);
+        } else {
+            handleMessage(source, rm);
+        }
+    }
+
+    private void handleMessage(NodeIdentifier source, Message rm) {
 
         byte opcode = rm.opcode;
         Object data = rm.contents;
@@ -613,19 +1544,19 @@ public class Pool {
             sendTime(((Long) data).longValue(), source);
             return;
         case OPCODE_PROFILING:
-            gotProfiling((Profiling) data, source);
+            gotProfiling((ProfilingChunk) data, source);
+            break;
+        case OPCODE_PROFILING_ACK:
+            gotProfilingAck();
             break;
         case OPCODE_REQUEST_TIME:
             doForward(source, OPCODE_SEND_TIME, new Long(System.nanoTime()));
             break;
         case OPCODE_PING:
-            doForward(source, OPCODE_PONG, null);
+            doForward(source, OPCODE_PONG, new Long(System.nanoTime()));
             break;
         case OPCODE_PONG:
-            synchronized (this) {
-                gotPong = true;
-                notifyAll();
-            }
+            gotPong(source, ((Long) data).longValue());
             break;
         case OPCODE_STEAL_REQUEST:
             gotStealRequest((StealRequest) data, source);
@@ -633,10 +1564,40 @@ public class Pool {
 
         case OPCODE_STEAL_REPLY:
             gotStealReply((StealReply) data, source);
+            // Counted after delivery, so that the work is visible when the count is.
+            if (quiescence != null && carriesWork(opcode, data)) {
+                quiescence.received();
+            }
             break;
 
         case OPCODE_EVENT_MESSAGE:
             gotEvent((EventMessage) data);
+            if (quiescence != null) {
+                quiescence.received();
+            }
+            break;
+
+        case OPCODE_QUIESCENCE_PROBE:
+            if (quiescence != null) {
+                doForward(source, OPCODE_QUIESCENCE_REPLY, quiescence.report((Integer) data, isPassive()));
+            }
+            break;
+
+        case OPCODE_QUIESCENCE_REPLY:
+            if (quiescence != null) {
+                quiescence.addReport((QuiescenceInfo) data);
+            }
+            break;
+
+        case OPCODE_LOCATION_HINT:
+            owner.deliverLocationHint((LocationHint) data);
+            break;
+
+        case OPCODE_PLACEMENT:
+            owner.deliverPlacedActivities((StealReply) data);
+            if (quiescence != null) {
+                quiescence.received();
+            }
             break;
 
         case OPCODE_POOL_REGISTER_REQUEST:
@@ -651,8 +1612,15 @@ public class Pool {
             updater.enqueueUpdate((PoolInfo) data);
             break;
 
+        case OPCODE_POOL_DELTA:
+            performDelta((PoolDelta) data);
+            break;
+
         case OPCODE_RANK_REGISTER_REQUEST:
             registerRank((RankInfo) data);
+            if (rankTable != null) {
+                addToRankTable((RankInfo) data);
+            }
             if (!closedPool) {
                 getTimeOfOther(source);
             }
@@ -666,6 +1634,31 @@ public class Pool {
             lookupRankRequest((RankInfo) data);
             break;
 
+        case OPCODE_RANK_TABLE:
+            if (rankTable != null) {
+                applyRankTable((RankTableUpdate) data);
+            }
+            break;
+
+        case OPCODE_RANK_TABLE_REQUEST:
+            if (rankTable != null) {
+                doForward(source, OPCODE_RANK_TABLE, rankTable.since((Integer) data));
+            }
+            break;
+
+        case OPCODE_LOAD_REQUEST:
+            if (loads != null) {
+                loads.update(source, (LoadInfo) data);
+                doForward(source, OPCODE_LOAD, owner.getLoadInfo());
+            }
+            break;
+
+        case OPCODE_LOAD:
+            if (loads != null) {
+                loads.update(source, (LoadInfo) data);
+            }
+            break;
+
         default:
             logger.error("Received unknown message opcode: " + opcode);
             break;
@@ -686,7 +1679,38 @@ public class Pool {
             return false;
         }
 
-        NodeIdentifier id = info.selectRandom(random);
+        if (crs) {
+            return clusterAwareForward(info, sr);
+        }
+
+        NodeIdentifier id = null;
+
+        if (loads != null) {
+            // Prefer a node that is known to have suitable work.
+            synchronized (info) {
+                id = loads.select(info.getMembers(), local, sr.context, random);
+            }
+            if (id != null) {
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Sending steal request to loaded node " + id.name());
+                }
+                return doForward(id, OPCODE_STEAL_REQUEST, sr);
+            }
+        }
+
+        // Only select a node with an executor that may match the work we are looking for.
+        id = info.selectRandom(random, local, sr.context);
+
+        if (id != null) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("Sending steal request to " + id.name());
+            }
+            return doForward(id, OPCODE_STEAL_REQUEST, sr);
+        }
+
+        // No node advertises a matching context. Matching work may still be queued at a node that cannot run it itself, so
+        // select any node.
+        id = info.selectRandom(random);
 
         if (id == null) {
             logger.warn("Failed to randomly select node in pool " + pool.getTag());
@@ -709,6 +1733,104 @@ public class Pool {
         return doForward(id, OPCODE_STEAL_REQUEST, sr);
     }
 
+    /**
+     * Forwards the steal request using cluster-aware random stealing: the request is sent to a node on the same site, and, if no
+     * steal request to another site is outstanding, a larger steal request is sent to a random node on another site as well.
+     *
+     * @param info
+     *            the steal pool to select the victims from
+     * @param sr
+     *            the steal request
+     * @return whether any steal request was sent.
+     */
+    private boolean clusterAwareForward(PoolInfo info, StealRequest sr) {
+
+        ArrayList<NodeIdentifier> near = new ArrayList<NodeIdentifier>();
+        ArrayList<NodeIdentifier> far = new ArrayList<NodeIdentifier>();
+
+        synchronized (info) {
+            // Prefer the nodes that advertise an executor context that may match; if there are none, use all nodes.
+            for (int pass = 0; pass < 2 && near.isEmpty() && far.isEmpty(); pass++) {
+                for (NodeIdentifier id : info.getMembers()) {
+                    if (!id.equals(local) && (pass == 1 || info.canSatisfy(id, sr.context))) {
+                        if (site.equals(id.site())) {
+                            near.add(id);
+                        } else {
+                            far.add(id);
+                        }
+                    }
+                }
+            }
+        }
+
+        boolean sent = false;
+
+        if (far.size() > 0 && startWideAreaSteal()) {
+            NodeIdentifier id = far.get(random.nextInt(far.size()));
+            StealRequest wan = new StealRequest(sr.source, sr.context, sr.localStrategy, sr.constellationStrategy,
+                    sr.remoteStrategy, sr.pool, sr.size * properties.CRS_WANSTEALFACTOR);
+            if (logger.isDebugEnabled()) {
+                logger.debug("Sending wide-area steal request to " + id.name() + " at site " + id.site());
+            }
+            sent = doForward(id, OPCODE_STEAL_REQUEST, wan);
+            if (!sent) {
+                wideAreaStealDone();
+            }
+        }
+
+        if (near.size() > 0) {
+            NodeIdentifier id = null;
+            if (loads != null) {
+                id = loads.select(near, local, sr.context, random);
+            }
+            if (id == null) {
+                id = near.get(random.nextInt(near.size()));
+            }
+            if (logger.isDebugEnabled()) {
+                logger.debug("Sending steal request to " + id.name());
+            }
+            if (doForward(id, OPCODE_STEAL_REQUEST, sr)) {
+                sent = true;
+            }
+        }
+
+        return sent;
+    }
+
+    private synchronized boolean startWideAreaSteal() {
+        long now = System.currentTimeMillis();
+        if (now < wideAreaStealDeadline) {
+            return false;
+        }
+        wideAreaStealDeadline = now + properties.REMOTESTEAL_TIMEOUT;
+        return true;
+    }
+
+    private synchronized void wideAreaStealDone() {
+        wideAreaStealDeadline = 0;
+    }
+
+    /**
+     * Selects a random node, other than this one, from a random known steal pool.
+     *
+     * @return the selected node, or <code>null</code> if no such node is known.
+     */
+    private NodeIdentifier selectGossipPartner() {
+        PoolInfo[] known;
+        synchronized (pools) {
+            known = pools.values().toArray(new PoolInfo[pools.size()]);
+        }
+        if (known.length == 0) {
+            return null;
+        }
+        PoolInfo info = known[random.nextInt(known.length)];
+        if (info.nMembers() <= 1) {
+            return null;
+        }
+        NodeIdentifier id = info.selectRandom(random);
+        return id.equals(local) ? null : id;
+    }
+
     private void performRegisterWithPool(PoolRegisterRequest request) {
 
         PoolInfo tmp = null;
@@ -726,7 +1848,46 @@ public class Pool {
             return;
         }
 
-        tmp.addMember(request.source);
+        PoolDelta delta = null;
+        synchronized (tmp) {
+            long from = tmp.currentTimeStamp();
+            if (tmp.addMember(request.source, request.contexts)) {
+                delta = new PoolDelta(request.tag, from, request.source, true, request.contexts);
+            }
+        }
+
+        if (delta != null && properties.POOL_PUSH) {
+            for (NodeIdentifier id : tmp.getFollowers()) {
+                doForward(id, OPCODE_POOL_DELTA, delta);
+            }
+        }
+    }
+
+    /**
+     * Applies a membership change pushed by the master of a pool. If earlier changes were missed, the complete pool is requested
+     * instead.
+     */
+    private void performDelta(PoolDelta delta) {
+
+        boolean gap;
+
+        synchronized (pools) {
+            PoolInfo tmp = pools.get(delta.tag);
+
+            if (tmp == null || tmp.isDummy()) {
+                logger.warn("Received spurious pool delta! " + delta.tag);
+                return;
+            }
+
+            gap = !tmp.applyDelta(delta);
+        }
+
+        if (gap) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("Missed membership changes of pool " + delta.tag + ", requesting full update");
+            }
+            requestUpdate(delta.tag);
+        }
     }
 
     private void performUpdateRequest(PoolUpdateRequest request) {
@@ -742,7 +1903,10 @@ public class Pool {
             return;
         }
 
-        if (tmp.currentTimeStamp() > request.timestamp) {
+        // A new follower always gets the complete pool, after which changes are pushed to it.
+        boolean subscribe = properties.POOL_PUSH && tmp.addFollower(request.source);
+
+        if (subscribe || tmp.currentTimeStamp() > request.timestamp) {
             synchronized (tmp) {
                 // Copy to avoid ConcurrentModificationException.
                 tmp = new PoolInfo(tmp);
@@ -755,12 +1919,12 @@ public class Pool {
         }
     }
 
-    private void requestRegisterWithPool(NodeIdentifier master, String tag) {
+    private void requestRegisterWithPool(NodeIdentifier master, String tag, AbstractContext[] contexts) {
         if (logger.isInfoEnabled()) {
             logger.info("Sending register request for pool " + tag + " to " + master);
         }
 
-        doForward(master, OPCODE_POOL_REGISTER_REQUEST, new PoolRegisterRequest(local, tag));
+        doForward(master, OPCODE_POOL_REGISTER_REQUEST, new PoolRegisterRequest(local, tag, contexts));
     }
 
     private void requestUpdate(NodeIdentifier master, String tag, long timestamp) {
@@ -771,7 +1935,15 @@ public class Pool {
         doForward(master, OPCODE_POOL_UPDATE_REQUEST, new PoolUpdateRequest(local, tag, timestamp));
     }
 
-    public void registerWithPool(String tag) {
+    /**
+     * Registers this node as a member of the specified steal pool.
+     *
+     * @param tag
+     *            the tag of the steal pool
+     * @param contexts
+     *            the contexts of the local executors that belong to the pool, which are advertised to the other members
+     */
+    public void registerWithPool(String tag, AbstractContext[] contexts) {
 
         try {
             // First check if the pool is already registered. If not, we need to
@@ -808,10 +1980,12 @@ public class Pool {
 
                     if (info.hasMembers()) {
                         logger.warn("Hit race in pool registration! -- will recover!");
-                        pools.put(tag, new PoolInfo(info, id));
+                        info = new PoolInfo(info, id);
                     } else {
-                        pools.put(tag, new PoolInfo(tag, id, true));
+                        info = new PoolInfo(tag, id, true);
                     }
+                    info.setContexts(id, contexts);
+                    pools.put(tag, info);
                 }
             } else {
                 // We remove the unused PoolInfo
@@ -828,7 +2002,7 @@ public class Pool {
                     }
                 }
 
-                requestRegisterWithPool(id, tag);
+                requestRegisterWithPool(id, tag, contexts);
             }
 
         } catch (IOException e) {
@@ -932,14 +2106,22 @@ public class Pool {
             return readOrWrite + " pool update request";
         case OPCODE_POOL_UPDATE_REPLY:
             return readOrWrite + " pool update reply";
+        case OPCODE_POOL_DELTA:
+            return readOrWrite + " pool delta";
         case OPCODE_RANK_REGISTER_REQUEST:
             return readOrWrite + " rank register request";
         case OPCODE_RANK_LOOKUP_REQUEST:
             return readOrWrite + " rank lookup request";
         case OPCODE_RANK_LOOKUP_REPLY:
             return readOrWrite + " rank lookup reply";
+        case OPCODE_RANK_TABLE:
+            return readOrWrite + " rank table";
+        case OPCODE_RANK_TABLE_REQUEST:
+            return readOrWrite + " rank table request";
         case OPCODE_PROFILING:
             return readOrWrite + " statistics";
+        case OPCODE_PROFILING_ACK:
+            return readOrWrite + " statistics acknowledgement";
         case OPCODE_REQUEST_TIME:
             return readOrWrite + " request time";
         case OPCODE_SEND_TIME:
@@ -952,12 +2134,68 @@ public class Pool {
             return readOrWrite + " ping";
         case OPCODE_PONG:
             return readOrWrite + " pong";
+        case OPCODE_LOAD_REQUEST:
+            return readOrWrite + " load request";
+        case OPCODE_LOAD:
+            return readOrWrite + " load";
+        case OPCODE_QUIESCENCE_PROBE:
+            return readOrWrite + " quiescence probe";
+        case OPCODE_QUIESCENCE_REPLY:
+            return readOrWrite + " quiescence reply";
+        case OPCODE_LOCATION_HINT:
+            return readOrWrite + " location hint";
+        case OPCODE_PLACEMENT:
+            return readOrWrite + " placement";
 
         default:
             return readOrWrite + " other";
         }
     }
 
+    /**
+     * Returns whether a message with the specified opcode is latency critical, which means that it should be sent
+     * immediately instead of being aggregated with other messages to the same destination.
+     *
+     * @param opcode
+     *            the opcode of the message
+     * @return whether the message is latency critical
+     */
+    public static boolean isLatencyCritical(int opcode) {
+        switch (opcode) {
+        case OPCODE_EVENT_MESSAGE:
+        case OPCODE_PROFILING:
+        case OPCODE_LOAD:
+        case OPCODE_LOCATION_HINT:
+            return false;
+        default:
+            return true;
+        }
+    }
+
+    /**
+     * Returns whether a received message with the specified opcode should be handled before other received messages. This holds
+     * for pool management, rank and time synchronization messages, which should not wait behind bulk steal, placement and event
+     * traffic.
+     *
+     * @param opcode
+     *            the opcode of the message
+     * @return whether the message has priority
+     */
+    public static boolean isPriority(int opcode) {
+        switch (opcode) {
+        case OPCODE_EVENT_MESSAGE:
+        case OPCODE_STEAL_REQUEST:
+        case OPCODE_STEAL_REPLY:
+        case OPCODE_PLACEMENT:
+        case OPCODE_LOAD:
+        case OPCODE_LOCATION_HINT:
+        case OPCODE_PROFILING:
+            return false;
+        default:
+            return true;
+        }
+    }
+
     public boolean isTerminated() {
         return terminated;
     }
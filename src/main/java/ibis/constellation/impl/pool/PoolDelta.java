@@ -0,0 +1,51 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.constellation.impl.pool;
+
+import java.io.Serializable;
+
+import ibis.constellation.AbstractContext;
+import ibis.constellation.impl.pool.communication.NodeIdentifier;
+
+/**
+ * A change in the membership of a steal pool, which the master of the pool pushes to its followers. The change takes the pool
+ * from timestamp <code>from</code> to timestamp <code>from + 1</code>.
+ */
+class PoolDelta implements Serializable {
+
+    private static final long serialVersionUID = 3322165467711598530L;
+
+    public final String tag;
+    public final long from;
+    public final NodeIdentifier id;
+    public final boolean joined;
+
+    /** The executor contexts advertised by a member that joined, or <code>null</code>. */
+    public final AbstractContext[] contexts;
+
+    PoolDelta(String tag, long from, NodeIdentifier id, boolean joined) {
+        this(tag, from, id, joined, null);
+    }
+
+    PoolDelta(String tag, long from, NodeIdentifier id, boolean joined, AbstractContext[] contexts) {
+        this.tag = tag;
+        this.from = from;
+        this.id = id;
+        this.joined = joined;
+        this.contexts = contexts;
+    }
+}
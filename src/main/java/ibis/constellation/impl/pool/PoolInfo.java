@@ -16,13 +16,18 @@
  */
 package ibis.constellation.impl.pool;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Random;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import ibis.constellation.AbstractContext;
+import ibis.constellation.impl.ContextMatch;
 import ibis.constellation.impl.pool.communication.NodeIdentifier;
 
 class PoolInfo implements Serializable {
@@ -31,6 +36,9 @@ class PoolInfo implements Serializable {
 
     private static final Logger logger = LoggerFactory.getLogger(PoolInfo.class);
 
+    /** Number of random members tried before the members that may be selected are counted. */
+    private static final int SAMPLES = 8;
+
     private final String tag;
 
     private final NodeIdentifier master;
@@ -43,6 +51,7 @@ class PoolInfo implements Serializable {
 
     public void setMembers(ArrayList<NodeIdentifier> members) {
         this.members = members;
+        buildIndex();
     }
 
     public String getTag() {
@@ -64,6 +73,15 @@ class PoolInfo implements Serializable {
     private long timestamp;
     private ArrayList<NodeIdentifier> members;
 
+    /** The executor contexts that each member advertised when it registered. Members without an entry may hold any work. */
+    private HashMap<NodeIdentifier, AbstractContext[]> contexts;
+
+    /** Position of each member in <code>members</code>, so that members can be found and removed in constant time. */
+    private transient HashMap<NodeIdentifier, Integer> index;
+
+    /** The nodes that follow this pool, to which membership changes are pushed. Only used by the master of the pool. */
+    private transient ArrayList<NodeIdentifier> followers;
+
     PoolInfo(String tag, NodeIdentifier master, boolean isMaster) {
         if (logger.isInfoEnabled()) {
             logger.info("Creating pool with tag " + tag + " and member " + master);
@@ -74,7 +92,9 @@ class PoolInfo implements Serializable {
         this.isDummy = false;
         members = new ArrayList<NodeIdentifier>();
         members.add(master);
+        contexts = new HashMap<NodeIdentifier, AbstractContext[]>();
         timestamp = 1;
+        buildIndex();
     }
 
     PoolInfo(PoolInfo orig) {
@@ -84,6 +104,8 @@ class PoolInfo implements Serializable {
         this.isDummy = orig.isDummy;
         this.timestamp = orig.timestamp;
         this.members = new ArrayList<NodeIdentifier>(orig.members);
+        this.contexts = new HashMap<NodeIdentifier, AbstractContext[]>(orig.contexts);
+        buildIndex();
     }
 
     PoolInfo(String tag) {
@@ -95,7 +117,9 @@ class PoolInfo implements Serializable {
         this.isMaster = false;
         this.isDummy = true;
         members = new ArrayList<NodeIdentifier>();
+        contexts = new HashMap<NodeIdentifier, AbstractContext[]>();
         timestamp = 1;
+        buildIndex();
     }
 
     PoolInfo(PoolInfo other, NodeIdentifier master) {
@@ -104,28 +128,167 @@ class PoolInfo implements Serializable {
         this.isMaster = true;
         this.isDummy = true;
         members = other.members;
+        contexts = other.contexts;
         timestamp = other.timestamp;
         members.add(master);
+        buildIndex();
+    }
+
+    private void buildIndex() {
+        index = new HashMap<NodeIdentifier, Integer>();
+        for (int i = 0; i < members.size(); i++) {
+            index.put(members.get(i), i);
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        buildIndex();
     }
 
     public synchronized boolean hasMembers() {
         return members.size() != 0;
     }
 
-    public synchronized void addMember(NodeIdentifier id) {
+    public synchronized boolean addMember(NodeIdentifier id) {
+        if (index.containsKey(id)) {
+            return false;
+        }
         if (logger.isInfoEnabled()) {
             logger.info("Adding " + id + " to pool with tag " + tag);
         }
+        index.put(id, members.size());
         members.add(id);
         timestamp++;
+        return true;
     }
 
-    public synchronized void removeMember(NodeIdentifier id) {
+    /**
+     * Adds a member that advertises the specified executor contexts.
+     *
+     * @param id
+     *            the new member
+     * @param c
+     *            the contexts of the executors of the member, or <code>null</code> if unknown
+     * @return whether the member is new.
+     */
+    public synchronized boolean addMember(NodeIdentifier id, AbstractContext[] c) {
+        setContexts(id, c);
+        return addMember(id);
+    }
+
+    /**
+     * Records the executor contexts that the specified member advertises.
+     *
+     * @param id
+     *            the member
+     * @param c
+     *            the contexts of the executors of the member, or <code>null</code> if unknown
+     */
+    public synchronized void setContexts(NodeIdentifier id, AbstractContext[] c) {
+        if (c == null) {
+            contexts.remove(id);
+        } else {
+            contexts.put(id, c);
+        }
+    }
+
+    public synchronized AbstractContext[] getContexts(NodeIdentifier id) {
+        return contexts.get(id);
+    }
+
+    /**
+     * Returns whether the specified member may have work for a thief with the specified context, that is, whether any of the
+     * contexts it advertised overlaps with it. Members that did not advertise their contexts may have any work.
+     *
+     * @param id
+     *            the member
+     * @param context
+     *            the context of the thief
+     * @return whether the member may have matching work.
+     */
+    public synchronized boolean canSatisfy(NodeIdentifier id, AbstractContext context) {
+        return matches(id, context, true);
+    }
+
+    private boolean matches(NodeIdentifier id, AbstractContext context, boolean unknown) {
+        AbstractContext[] c = contexts.get(id);
+        if (c == null) {
+            return unknown;
+        }
+        for (AbstractContext a : c) {
+            if (ContextMatch.match(a, context)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public synchronized boolean removeMember(NodeIdentifier id) {
+        Integer pos = index.remove(id);
+        if (pos == null) {
+            return false;
+        }
+        contexts.remove(id);
         if (logger.isInfoEnabled()) {
             logger.info("Removing " + id + " from pool with tag " + tag);
         }
-        members.remove(id);
+        // Move the last member into the hole, so that removal takes constant time.
+        NodeIdentifier last = members.remove(members.size() - 1);
+        if (pos < members.size()) {
+            members.set(pos, last);
+            index.put(last, pos);
+        }
         timestamp++;
+        return true;
+    }
+
+    /**
+     * Applies a membership change that was pushed by the master of the pool.
+     *
+     * @param delta
+     *            the change
+     * @return <code>false</code> if earlier changes were missed, in which case the change is not applied, <code>true</code>
+     *         otherwise.
+     */
+    public synchronized boolean applyDelta(PoolDelta delta) {
+        if (delta.from > timestamp) {
+            return false;
+        }
+        if (delta.from == timestamp) {
+            if (delta.joined) {
+                addMember(delta.id, delta.contexts);
+            } else {
+                removeMember(delta.id);
+            }
+            timestamp = delta.from + 1;
+        }
+        return true;
+    }
+
+    /**
+     * Adds a follower to which membership changes are pushed.
+     *
+     * @param id
+     *            the follower
+     * @return whether the follower is new.
+     */
+    public synchronized boolean addFollower(NodeIdentifier id) {
+        if (followers == null) {
+            followers = new ArrayList<NodeIdentifier>();
+        }
+        if (followers.contains(id)) {
+            return false;
+        }
+        followers.add(id);
+        return true;
+    }
+
+    public synchronized NodeIdentifier[] getFollowers() {
+        if (followers == null) {
+            return new NodeIdentifier[0];
+        }
+        return followers.toArray(new NodeIdentifier[followers.size()]);
     }
 
     public synchronized int nMembers() {
@@ -143,4 +306,79 @@ class PoolInfo implements Serializable {
         }
         return id;
     }
+
+    /**
+     * Selects a random member, other than the specified one, that may have work for a thief with the specified context, see
+     * {@link #canSatisfy(NodeIdentifier, AbstractContext)}.
+     *
+     * @param random
+     *            the random generator to use
+     * @param exclude
+     *            the member that may not be selected
+     * @param context
+     *            the context of the thief
+     * @return the selected member, or <code>null</code> if no member may have matching work.
+     */
+    public synchronized NodeIdentifier selectRandom(Random random, NodeIdentifier exclude, AbstractContext context) {
+        return select(random, exclude, context, true);
+    }
+
+    /**
+     * Selects a random member, other than the specified one, that advertised an executor context that matches the specified
+     * context. Unlike {@link #selectRandom(Random, NodeIdentifier, AbstractContext)}, members that did not advertise their
+     * contexts are not selected.
+     *
+     * @param random
+     *            the random generator to use
+     * @param exclude
+     *            the member that may not be selected
+     * @param context
+     *            the context of an activity
+     * @return the selected member, or <code>null</code> if no member advertised a matching context.
+     */
+    public synchronized NodeIdentifier selectCapable(Random random, NodeIdentifier exclude, AbstractContext context) {
+        return select(random, exclude, context, false);
+    }
+
+    private boolean isCandidate(NodeIdentifier id, NodeIdentifier exclude, AbstractContext context, boolean unknown) {
+        return !id.equals(exclude) && matches(id, context, unknown);
+    }
+
+    private NodeIdentifier select(Random random, NodeIdentifier exclude, AbstractContext context, boolean unknown) {
+        int n = members.size();
+
+        if (n == 0) {
+            return null;
+        }
+
+        // Usually many members qualify, so a few random samples find one without scanning the whole pool. Taking the first
+        // sample that qualifies still selects uniformly among the members that qualify.
+        for (int i = 0; i < SAMPLES; i++) {
+            NodeIdentifier id = members.get(random.nextInt(n));
+            if (isCandidate(id, exclude, context, unknown)) {
+                return id;
+            }
+        }
+
+        // Few or no members qualify, so count them and select one.
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            if (isCandidate(members.get(i), exclude, context, unknown)) {
+                count++;
+            }
+        }
+
+        if (count == 0) {
+            return null;
+        }
+
+        int r = random.nextInt(count);
+        for (int i = 0; i < n; i++) {
+            NodeIdentifier id = members.get(i);
+            if (isCandidate(id, exclude, context, unknown) && r-- == 0) {
+                return id;
+            }
+        }
+        return null;
+    }
 }
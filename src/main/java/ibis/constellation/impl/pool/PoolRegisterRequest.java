@@ -18,6 +18,7 @@ package ibis.constellation.impl.pool;
 
 import java.io.Serializable;
 
+import ibis.constellation.AbstractContext;
 import ibis.constellation.impl.pool.communication.NodeIdentifier;
 
 class PoolRegisterRequest implements Serializable {
@@ -27,8 +28,16 @@ class PoolRegisterRequest implements Serializable {
     public NodeIdentifier source;
     public String tag;
 
+    /** The contexts of the executors of the source that belong to the pool, or <code>null</code> if unknown. */
+    public AbstractContext[] contexts;
+
     PoolRegisterRequest(NodeIdentifier source, String tag) {
+        this(source, tag, null);
+    }
+
+    PoolRegisterRequest(NodeIdentifier source, String tag, AbstractContext[] contexts) {
         this.source = source;
         this.tag = tag;
+        this.contexts = contexts;
     }
 }
\ No newline at end of file
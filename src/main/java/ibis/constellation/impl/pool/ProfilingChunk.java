@@ -0,0 +1,42 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.constellation.impl.pool;
+
+import java.io.Serializable;
+
+/**
+ * A part of the profiling data of a node, sent to the master at the end of the run. The data holds compressed profiling events,
+ * as encoded by {@link ibis.constellation.impl.util.Profiling#encodeEvents(int, int)}.
+ */
+class ProfilingChunk implements Serializable {
+
+    private static final long serialVersionUID = -6300786101934611530L;
+
+    /** The sequence number of this chunk. */
+    public final int sequence;
+
+    /** The total number of chunks the node sends. */
+    public final int chunks;
+
+    public final byte[] data;
+
+    ProfilingChunk(int sequence, int chunks, byte[] data) {
+        this.sequence = sequence;
+        this.chunks = chunks;
+        this.data = data;
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.constellation.impl.pool;
+
+/**
+ * Detects global quiescence with the four-counter method. Every node counts the work-carrying messages (events and non-empty
+ * steal replies) it sends and receives. The master repeatedly collects these counters, and whether each node is passive, in
+ * waves. The pool is quiescent when two consecutive complete waves find all nodes passive, and the same number of messages sent
+ * as received, with the same totals in both waves. A message that is still in flight, or a node that was active in between,
+ * makes the counts differ.
+ */
+class QuiescenceDetector {
+
+    private long sent;
+    private long received;
+
+    // Only used on the master.
+    private int wave;
+    private int expected;
+    private int reports;
+    private long waveSent;
+    private long waveReceived;
+    private boolean wavePassive;
+
+    private boolean lastQuiet;
+    private int lastExpected;
+    private long lastSent;
+
+    synchronized void sent() {
+        sent++;
+    }
+
+    /**
+     * Registers that a message that was counted as sent, was not.
+     */
+    synchronized void unsent() {
+        sent--;
+    }
+
+    synchronized void received() {
+        received++;
+    }
+
+    /**
+     * Returns the counters of this node.
+     *
+     * @param wave
+     *            the wave to reply to
+     * @param passive
+     *            whether this node is passive
+     * @return the reply.
+     */
+    synchronized QuiescenceInfo report(int wave, boolean passive) {
+        return new QuiescenceInfo(wave, sent, received, passive);
+    }
+
+    /**
+     * Starts a new wave.
+     *
+     * @param expected
+     *            the number of replies to expect, including the one of the master itself
+     * @return the number of the wave.
+     */
+    synchronized int startWave(int expected) {
+        wave++;
+        this.expected = expected;
+        reports = 0;
+        waveSent = 0;
+        waveReceived = 0;
+        wavePassive = true;
+        return wave;
+    }
+
+    /**
+     * Adds a reply to the current wave. Replies to earlier waves are ignored.
+     *
+     * @param info
+     *            the reply
+     */
+    synchronized void addReport(QuiescenceInfo info) {
+        if (info.wave != wave) {
+            return;
+        }
+        reports++;
+        waveSent += info.sent;
+        waveReceived += info.received;
+        wavePassive &= info.passive;
+        notifyAll();
+    }
+
+    /**
+     * Waits until all replies of the current wave have arrived.
+     *
+     * @param timeout
+     *            the maximum time to wait, in milliseconds
+     * @return whether all replies have arrived.
+     */
+    synchronized boolean awaitWave(long timeout) {
+        long deadline = System.currentTimeMillis() + timeout;
+        long t = timeout;
+        while (reports < expected && t > 0) {
+            try {
+                wait(t);
+            } catch (InterruptedException e) {
+                // ignore
+            }
+            t = deadline - System.currentTimeMillis();
+        }
+        return reports >= expected;
+    }
+
+    /**
+     * Ends the current wave.
+     *
+     * @param complete
+     *            whether all replies arrived
+     * @return whether the pool is quiescent.
+     */
+    synchronized boolean endWave(boolean complete) {
+        boolean quiet = complete && wavePassive && waveSent == waveReceived;
+        boolean result = quiet && lastQuiet && expected == lastExpected && waveSent == lastSent;
+        lastQuiet = quiet;
+        lastExpected = expected;
+        lastSent = waveSent;
+        return result;
+    }
+}
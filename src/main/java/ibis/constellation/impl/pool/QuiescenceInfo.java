@@ -0,0 +1,42 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.constellation.impl.pool;
+
+import java.io.Serializable;
+
+/**
+ * The reply of a node to a quiescence probe of the master: how many work-carrying messages the node has sent and received, and
+ * whether it was passive.
+ */
+public class QuiescenceInfo implements Serializable {
+
+    private static final long serialVersionUID = 2863911540170593716L;
+
+    /** The probe wave this is a reply to. */
+    public final int wave;
+
+    public final long sent;
+    public final long received;
+    public final boolean passive;
+
+    public QuiescenceInfo(int wave, long sent, long received, boolean passive) {
+        this.wave = wave;
+        this.sent = sent;
+        this.received = received;
+        this.passive = passive;
+    }
+}
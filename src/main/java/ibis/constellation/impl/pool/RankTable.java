@@ -0,0 +1,110 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.constellation.impl.pool;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+
+import ibis.constellation.impl.pool.communication.NodeIdentifier;
+
+/**
+ * A versioned table of ranks, in the order in which they registered at the master. The version of the table is its number of
+ * entries. The master adds entries as nodes register, and the other nodes apply the {@link RankTableUpdate}s it sends them.
+ */
+class RankTable {
+
+    private final ArrayList<RankInfo> entries = new ArrayList<RankInfo>();
+
+    private final HashSet<Integer> ranks = new HashSet<Integer>();
+
+    /**
+     * Returns the version of the table.
+     *
+     * @return the version.
+     */
+    synchronized int version() {
+        return entries.size();
+    }
+
+    /**
+     * Adds a rank to the table, unless it is already present.
+     *
+     * @param info
+     *            the rank and its node identifier
+     * @return whether the rank was added.
+     */
+    synchronized boolean add(RankInfo info) {
+        if (!ranks.add(info.rank)) {
+            return false;
+        }
+        entries.add(info);
+        return true;
+    }
+
+    /**
+     * Returns the entries that were added after the specified version.
+     *
+     * @param version
+     *            the version the receiver already has
+     * @return the update.
+     */
+    synchronized RankTableUpdate since(int version) {
+        int from = Math.min(Math.max(version, 0), entries.size());
+        return new RankTableUpdate(from, entries.subList(from, entries.size()).toArray(new RankInfo[entries.size() - from]));
+    }
+
+    /**
+     * Applies an update to the table. Entries that the table already has are skipped.
+     *
+     * @param update
+     *            the update
+     * @return the entries that were new, or <code>null</code> if the update does not follow the current version, in which case
+     *         nothing is applied.
+     */
+    synchronized RankInfo[] apply(RankTableUpdate update) {
+        int version = entries.size();
+        if (update.from > version) {
+            return null;
+        }
+        ArrayList<RankInfo> result = new ArrayList<RankInfo>();
+        for (int i = version - update.from; i < update.entries.length; i++) {
+            RankInfo info = update.entries[i];
+            entries.add(info);
+            if (ranks.add(info.rank)) {
+                result.add(info);
+            }
+        }
+        return result.toArray(new RankInfo[result.size()]);
+    }
+
+    /**
+     * Returns the node identifiers in the table, except for the specified one.
+     *
+     * @param exclude
+     *            the node identifier to leave out
+     * @return the node identifiers.
+     */
+    synchronized NodeIdentifier[] members(NodeIdentifier exclude) {
+        ArrayList<NodeIdentifier> result = new ArrayList<NodeIdentifier>();
+        for (RankInfo info : entries) {
+            if (!info.id.equals(exclude)) {
+                result.add(info.id);
+            }
+        }
+        return result.toArray(new NodeIdentifier[result.size()]);
+    }
+}
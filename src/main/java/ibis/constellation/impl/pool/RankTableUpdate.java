@@ -0,0 +1,45 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.constellation.impl.pool;
+
+import java.io.Serializable;
+
+/**
+ * A part of the rank table of the master, which lists the ranks in the order in which they registered. The entries start at
+ * version <code>from</code>, which is the number of entries that precede them in the table.
+ */
+public class RankTableUpdate implements Serializable {
+
+    private static final long serialVersionUID = -1046587718370237216L;
+
+    public final int from;
+    public final RankInfo[] entries;
+
+    public RankTableUpdate(int from, RankInfo[] entries) {
+        this.from = from;
+        this.entries = entries;
+    }
+
+    /**
+     * Returns the version of the rank table after applying this update.
+     *
+     * @return the version.
+     */
+    public int to() {
+        return from + entries.length;
+    }
+}
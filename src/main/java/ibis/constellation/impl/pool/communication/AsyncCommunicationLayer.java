@@ -0,0 +1,296 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.constellation.impl.pool.communication;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.LinkedList;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A <code>CommunicationLayer</code> that sends messages asynchronously, on top of another communication layer.
+ *
+ * Messages are appended to a bounded queue per destination, and sent by a small number of sender threads. Messages to a single
+ * destination are sent in order, by at most one sender thread at a time, so a slow or unreachable destination only occupies one
+ * sender thread. When the queue for a destination is full, {@link #sendMessage(NodeIdentifier, Message)} fails immediately.
+ * Messages that cannot be sent later on are handed to the {@link FailureHandler}.
+ */
+public class AsyncCommunicationLayer implements CommunicationLayer {
+
+    private static final Logger logger = LoggerFactory.getLogger(AsyncCommunicationLayer.class);
+
+    /**
+     * Is notified of messages that were accepted by {@link AsyncCommunicationLayer#sendMessage(NodeIdentifier, Message)}, but
+     * could not be sent.
+     */
+    public interface FailureHandler {
+
+        /**
+         * Called from a sender thread when the message could not be sent to the destination.
+         *
+         * @param dest
+         *            the destination of the message
+         * @param m
+         *            the message
+         */
+        public void sendFailed(NodeIdentifier dest, Message m);
+    }
+
+    /**
+     * The messages for a single destination.
+     */
+    private static final class Destination {
+
+        final NodeIdentifier id;
+
+        final ArrayDeque<Message> messages = new ArrayDeque<Message>();
+
+        /** Set when the destination is on the ready list, or a sender thread is sending its messages. */
+        boolean scheduled;
+
+        Destination(NodeIdentifier id) {
+            this.id = id;
+        }
+    }
+
+    private final class Sender extends Thread {
+
+        Sender(int i) {
+            super("Constellation sender " + i);
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            Destination d = nextDestination();
+            while (d != null) {
+                sendMessages(d);
+                d = nextDestination();
+            }
+        }
+    }
+
+    private final CommunicationLayer comm;
+
+    private final FailureHandler handler;
+
+    private final int queueSize;
+
+    private final HashMap<NodeIdentifier, Destination> destinations = new HashMap<NodeIdentifier, Destination>();
+
+    /** Destinations with messages, that are not being handled by a sender thread. */
+    private final LinkedList<Destination> ready = new LinkedList<Destination>();
+
+    private final Sender[] senders;
+
+    private boolean done = false;
+
+    /**
+     * Creates an <code>AsyncCommunicationLayer</code> on top of the specified communication layer, and starts its sender threads.
+     *
+     * @param comm
+     *            the communication layer that actually sends the messages
+     * @param queueSize
+     *            the maximum number of queued messages per destination
+     * @param threads
+     *            the number of sender threads
+     * @param handler
+     *            is notified of messages that could not be sent
+     */
+    public AsyncCommunicationLayer(CommunicationLayer comm, int queueSize, int threads, FailureHandler handler) {
+        if (queueSize < 1 || threads < 1) {
+            throw new IllegalArgumentException("AsyncCommunicationLayer needs a positive queue size and number of threads");
+        }
+        this.comm = comm;
+        this.queueSize = queueSize;
+        this.handler = handler;
+        senders = new Sender[threads];
+        for (int i = 0; i < threads; i++) {
+            senders[i] = new Sender(i);
+            senders[i].start();
+        }
+    }
+
+    @Override
+    public synchronized boolean sendMessage(NodeIdentifier dest, Message m) {
+        if (done) {
+            return false;
+        }
+        Destination d = destinations.get(dest);
+        if (d == null) {
+            d = new Destination(dest);
+            destinations.put(dest, d);
+        }
+        if (d.messages.size() >= queueSize) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("Send queue to " + dest + " is full");
+            }
+            return false;
+        }
+        d.messages.addLast(m);
+        if (!d.scheduled) {
+            d.scheduled = true;
+            ready.addLast(d);
+            notifyAll();
+        }
+        return true;
+    }
+
+    private synchronized Destination nextDestination() {
+        while (ready.isEmpty()) {
+            if (done) {
+                return null;
+            }
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                // ignored
+            }
+        }
+        return ready.removeFirst();
+    }
+
+    private synchronized Message nextMessage(Destination d) {
+        Message m = d.messages.pollFirst();
+        if (m == null) {
+            d.scheduled = false;
+            // Someone may be waiting for the destination to become idle.
+            notifyAll();
+        }
+        return m;
+    }
+
+    private void sendMessages(Destination d) {
+        Message m = nextMessage(d);
+        while (m != null) {
+            if (!comm.sendMessage(d.id, m)) {
+                // Messages after a lost one would arrive out of order, and the destination is probably unreachable anyway.
+                ArrayDeque<Message> lost;
+                synchronized (this) {
+                    lost = new ArrayDeque<Message>(d.messages);
+                    d.messages.clear();
+                }
+                lost.addFirst(m);
+                logger.warn("Failed to send " + lost.size() + " message(s) to " + d.id);
+                for (Message l : lost) {
+                    handler.sendFailed(d.id, l);
+                }
+            }
+            m = nextMessage(d);
+        }
+    }
+
+    /**
+     * Waits until all messages queued for the destination have been handled.
+     */
+    private synchronized void waitUntilSent(NodeIdentifier dest) {
+        Destination d = destinations.get(dest);
+        while (d != null && d.scheduled) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                // ignored
+            }
+        }
+    }
+
+    private synchronized void waitUntilAllSent() {
+        for (Destination d : destinations.values()) {
+            while (d.scheduled) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    // ignored
+                }
+            }
+        }
+    }
+
+    @Override
+    public NodeIdentifier getMyIdentifier() {
+        return comm.getMyIdentifier();
+    }
+
+    @Override
+    public NodeIdentifier getMaster() {
+        return comm.getMaster();
+    }
+
+    @Override
+    public int getRank() {
+        return comm.getRank();
+    }
+
+    @Override
+    public int getPoolSize() {
+        return comm.getPoolSize();
+    }
+
+    @Override
+    public void terminate() throws IOException {
+        comm.terminate();
+    }
+
+    @Override
+    public void cleanup() {
+        waitUntilAllSent();
+        synchronized (this) {
+            done = true;
+            notifyAll();
+        }
+        for (Sender s : senders) {
+            try {
+                s.join();
+            } catch (InterruptedException e) {
+                // ignored
+            }
+        }
+        comm.cleanup();
+    }
+
+    @Override
+    public void cleanup(NodeIdentifier node) {
+        waitUntilSent(node);
+        synchronized (this) {
+            destinations.remove(node);
+        }
+        comm.cleanup(node);
+    }
+
+    @Override
+    public NodeIdentifier getElectionResult(String electTag, long timeout) throws IOException {
+        return comm.getElectionResult(electTag, timeout);
+    }
+
+    @Override
+    public NodeIdentifier elect(String electTag) throws IOException {
+        return comm.elect(electTag);
+    }
+
+    @Override
+    public void activate() {
+        comm.activate();
+    }
+
+    @Override
+    public NodeIdentifier[] getNodeIdentifiers() {
+        return comm.getNodeIdentifiers();
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.constellation.impl.pool.communication;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import ibis.constellation.util.ByteBufferCache;
+import ibis.constellation.util.ByteBufferReceiver;
+import ibis.constellation.util.ByteBuffers;
+
+/**
+ * Helper functions for sending and receiving the bytebuffers of {@link ByteBuffers} message contents, shared by the
+ * communication layers.
+ *
+ * On the sending side, a bytebuffer is sent as a region: either its whole capacity, or, with the "byteBuffers.partial"
+ * property, only the bytes between its position and its limit. The regions are views, so the buffers of the application are not
+ * modified, and slices and memory-mapped buffers are sent from where they are. On the receiving side, the sizes of the regions
+ * are known before their data arrives, so the contents may supply buffers to receive them into, see {@link ByteBufferReceiver}.
+ */
+public final class ByteBufferTransfer {
+
+    private ByteBufferTransfer() {
+        // not used
+    }
+
+    /**
+     * Returns the regions of the bytebuffers of the specified contents that are to be sent.
+     *
+     * @param contents
+     *            the message contents
+     * @param partial
+     *            whether only the bytes between position and limit are to be sent
+     * @return the regions, as views with their position and limit set to the region
+     */
+    public static List<ByteBuffer> regions(ByteBuffers contents, boolean partial) {
+        ArrayList<ByteBuffer> list = new ArrayList<ByteBuffer>();
+        contents.pushByteBuffers(list);
+        for (int i = 0; i < list.size(); i++) {
+            ByteBuffer d = list.get(i).duplicate();
+            if (!partial) {
+                d.clear();
+            }
+            list.set(i, d);
+        }
+        return list;
+    }
+
+    /**
+     * Returns the buffers to receive regions of the specified sizes into: the ones supplied by the contents, if it is a
+     * {@link ByteBufferReceiver} and they are large enough, and otherwise buffers from the {@link ByteBufferCache}, with position 0
+     * and limit set to the size.
+     *
+     * @param contents
+     *            the message contents
+     * @param sizes
+     *            the sizes of the regions
+     * @return the buffers
+     */
+    public static ByteBuffer[] destinations(Object contents, int[] sizes) {
+        ByteBuffer[] supplied = null;
+        if (contents instanceof ByteBufferReceiver) {
+            supplied = ((ByteBufferReceiver) contents).supplyByteBuffers(sizes.clone());
+        }
+        ByteBuffer[] result = new ByteBuffer[sizes.length];
+        for (int i = 0; i < sizes.length; i++) {
+            if (supplied != null && i < supplied.length && supplied[i] != null && supplied[i].remaining() >= sizes[i]) {
+                result[i] = supplied[i];
+            } else {
+                ByteBuffer b = ByteBufferCache.getByteBuffer(sizes[i], false);
+                b.clear();
+                b.limit(sizes[i]);
+                result[i] = b;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns a view of the part of a destination buffer that receives a region of the specified size.
+     *
+     * @param destination
+     *            the destination buffer
+     * @param size
+     *            the size of the region
+     * @return the view
+     */
+    public static ByteBuffer window(ByteBuffer destination, int size) {
+        ByteBuffer d = destination.duplicate();
+        d.limit(d.position() + size);
+        return d;
+    }
+
+    /**
+     * Hands the received buffers to the contents.
+     *
+     * @param contents
+     *            the message contents
+     * @param destinations
+     *            the buffers returned by {@link #destinations(Object, int[])}, filled
+     */
+    public static void deliver(ByteBuffers contents, ByteBuffer[] destinations) {
+        contents.popByteBuffers(new ArrayList<ByteBuffer>(Arrays.asList(destinations)));
+    }
+
+    /**
+     * Returns the total number of bytes in the specified regions.
+     *
+     * @param regions
+     *            the regions
+     * @return the number of bytes
+     */
+    public static long size(List<ByteBuffer> regions) {
+        long size = 0;
+        for (ByteBuffer b : regions) {
+            size += b.remaining();
+        }
+        return size;
+    }
+}
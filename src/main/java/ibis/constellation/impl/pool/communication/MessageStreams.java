@@ -0,0 +1,164 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.constellation.impl.pool.communication;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import ibis.constellation.impl.pool.ControlMessageCodec;
+import ibis.constellation.util.ByteBuffers;
+
+/**
+ * Writes and reads {@link Message messages} on plain data streams, for communication layers that do not have a serialization
+ * layer of their own. The contents of a message are encoded with a {@link ControlMessageCodec.Encoder} when one is given, and
+ * with object serialization otherwise. The bytebuffers of contents that implement {@link ByteBuffers} follow the contents, see
+ * {@link ByteBufferTransfer}.
+ */
+public final class MessageStreams {
+
+    private static final int COPY_SIZE = 65536;
+
+    private MessageStreams() {
+        // not used
+    }
+
+    /**
+     * Writes the specified message. Messages written with an encoder must be read with a decoder, and the other way around.
+     *
+     * @param out
+     *            the stream to write to
+     * @param m
+     *            the message
+     * @param e
+     *            the encoder for the stream, or <code>null</code>
+     * @param partial
+     *            whether only the bytes between position and limit of the bytebuffers are to be sent
+     * @throws IOException
+     *             when the message could not be written
+     */
+    public static void writeMessage(DataOutputStream out, Message m, ControlMessageCodec.Encoder e, boolean partial)
+            throws IOException {
+        out.writeByte(m.opcode);
+        if (e != null) {
+            int len;
+            try {
+                len = e.encode(m.contents);
+            } catch (IOException ex) {
+                // Nothing was written for this message yet, but the encoder may have interned values.
+                e.reset();
+                throw ex;
+            }
+            out.writeInt(len);
+            out.write(e.buffer(), 0, len);
+        } else {
+            ByteArrayOutputStream b = new ByteArrayOutputStream();
+            try (ObjectOutputStream oout = new ObjectOutputStream(b)) {
+                oout.writeObject(m.contents);
+            }
+            out.writeInt(b.size());
+            b.writeTo(out);
+        }
+        if (m.contents instanceof ByteBuffers) {
+            writeByteBuffers(out, ByteBufferTransfer.regions((ByteBuffers) m.contents, partial));
+        }
+    }
+
+    /**
+     * Reads a message written by {@link #writeMessage(DataOutputStream, Message, ControlMessageCodec.Encoder, boolean)}.
+     *
+     * @param in
+     *            the stream to read from
+     * @param d
+     *            the decoder for the stream, or <code>null</code>
+     * @return the message
+     * @throws IOException
+     *             when the message could not be read
+     * @throws ClassNotFoundException
+     *             when the contents refer to an unknown class
+     */
+    public static Message readMessage(DataInputStream in, ControlMessageCodec.Decoder d) throws IOException, ClassNotFoundException {
+        byte opcode = in.readByte();
+        byte[] b = new byte[in.readInt()];
+        in.readFully(b);
+        Object contents;
+        if (d != null) {
+            contents = d.decode(b, b.length);
+        } else {
+            try (ObjectInputStream oin = new ObjectInputStream(new ByteArrayInputStream(b))) {
+                contents = oin.readObject();
+            }
+        }
+        if (contents instanceof ByteBuffers) {
+            readByteBuffers(in, (ByteBuffers) contents);
+        }
+        return new Message(opcode, contents);
+    }
+
+    private static void writeByteBuffers(DataOutputStream out, List<ByteBuffer> regions) throws IOException {
+        out.writeInt(regions.size());
+        for (ByteBuffer b : regions) {
+            out.writeInt(b.remaining());
+        }
+        byte[] tmp = null;
+        for (ByteBuffer b : regions) {
+            if (b.hasArray()) {
+                out.write(b.array(), b.arrayOffset() + b.position(), b.remaining());
+            } else {
+                if (tmp == null) {
+                    tmp = new byte[COPY_SIZE];
+                }
+                while (b.hasRemaining()) {
+                    int n = Math.min(tmp.length, b.remaining());
+                    b.get(tmp, 0, n);
+                    out.write(tmp, 0, n);
+                }
+            }
+        }
+    }
+
+    private static void readByteBuffers(DataInputStream in, ByteBuffers contents) throws IOException {
+        int[] sizes = new int[in.readInt()];
+        for (int i = 0; i < sizes.length; i++) {
+            sizes[i] = in.readInt();
+        }
+        ByteBuffer[] destinations = ByteBufferTransfer.destinations(contents, sizes);
+        byte[] tmp = null;
+        for (int i = 0; i < sizes.length; i++) {
+            ByteBuffer b = ByteBufferTransfer.window(destinations[i], sizes[i]);
+            if (b.hasArray()) {
+                in.readFully(b.array(), b.arrayOffset() + b.position(), b.remaining());
+            } else {
+                if (tmp == null) {
+                    tmp = new byte[COPY_SIZE];
+                }
+                while (b.hasRemaining()) {
+                    int n = Math.min(tmp.length, b.remaining());
+                    in.readFully(tmp, 0, n);
+                    b.put(tmp, 0, n);
+                }
+            }
+        }
+        ByteBufferTransfer.deliver(contents, destinations);
+    }
+}
@@ -22,4 +22,12 @@ public interface NodeIdentifier extends Serializable {
 
     public String name();
 
+    /**
+     * Returns the label of the site (for instance the cluster) this node runs on. Nodes on the same site are assumed to be close
+     * to each other.
+     *
+     * @return the site label.
+     */
+    public String site();
+
 }
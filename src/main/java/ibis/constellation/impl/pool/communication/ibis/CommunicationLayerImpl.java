@@ -16,22 +16,30 @@
  */
 package ibis.constellation.impl.pool.communication.ibis;
 
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
 import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import ibis.constellation.ConstellationProperties;
 import ibis.constellation.impl.TimerImpl;
+import ibis.constellation.impl.pool.ControlMessageCodec;
 import ibis.constellation.impl.pool.Pool;
 import ibis.constellation.impl.pool.PoolCreationFailedException;
+import ibis.constellation.impl.pool.communication.ByteBufferTransfer;
 import ibis.constellation.impl.pool.communication.CommunicationLayer;
 import ibis.constellation.impl.pool.communication.Message;
+import ibis.constellation.impl.pool.communication.MessageStreams;
 import ibis.constellation.impl.pool.communication.NodeIdentifier;
-import ibis.constellation.util.ByteBufferCache;
 import ibis.constellation.util.ByteBuffers;
 import ibis.ipl.Ibis;
 import ibis.ipl.IbisCapabilities;
@@ -49,10 +57,17 @@ public class CommunicationLayerImpl implements CommunicationLayer, RegistryEvent
 
     private static final Logger logger = LoggerFactory.getLogger(CommunicationLayerImpl.class);
 
-    private final PortType portType = new PortType(PortType.COMMUNICATION_FIFO, PortType.COMMUNICATION_RELIABLE,
+    private static final PortType objectPortType = new PortType(PortType.COMMUNICATION_FIFO, PortType.COMMUNICATION_RELIABLE,
             PortType.SERIALIZATION_OBJECT, PortType.RECEIVE_AUTO_UPCALLS, PortType.RECEIVE_TIMEOUT,
             PortType.CONNECTION_MANY_TO_ONE);
 
+    // Used when messages are encoded with the ControlMessageCodec, which only needs a byte stream.
+    private static final PortType dataPortType = new PortType(PortType.COMMUNICATION_FIFO, PortType.COMMUNICATION_RELIABLE,
+            PortType.SERIALIZATION_DATA, PortType.RECEIVE_AUTO_UPCALLS, PortType.RECEIVE_TIMEOUT,
+            PortType.CONNECTION_MANY_TO_ONE);
+
+    private final PortType portType;
+
     private static final IbisCapabilities openIbisCapabilities = new IbisCapabilities(IbisCapabilities.MALLEABLE,
             IbisCapabilities.TERMINATION, IbisCapabilities.ELECTIONS_STRICT, IbisCapabilities.MEMBERSHIP_TOTALLY_ORDERED);
     private static final IbisCapabilities closedIbisCapabilities = new IbisCapabilities(IbisCapabilities.CLOSED_WORLD,
@@ -61,6 +76,9 @@ public class CommunicationLayerImpl implements CommunicationLayer, RegistryEvent
     private final ReceivePort rp;
     private final ReceivePort rports[];
 
+    /** Receive port for messages that are sent over the bulk connection, or <code>null</code>. */
+    private final ReceivePort bulkrp;
+
     private Ibis ibis;
 
     private final IbisIdentifier master;
@@ -69,6 +87,8 @@ public class CommunicationLayerImpl implements CommunicationLayer, RegistryEvent
 
     private final ConcurrentHashMap<IbisIdentifier, SendPort> sendports = new ConcurrentHashMap<IbisIdentifier, SendPort>();
 
+    private final ConcurrentHashMap<IbisIdentifier, SendPort> bulkports = new ConcurrentHashMap<IbisIdentifier, SendPort>();
+
     private int rank = -1;
 
     private final Pool pool;
@@ -81,11 +101,168 @@ public class CommunicationLayerImpl implements CommunicationLayer, RegistryEvent
 
     private TimerImpl communicationTimer;
 
+    /** Marks the end of the messages in a <code>WriteMessage</code>. */
+    private static final byte END_OF_MESSAGES = 0;
+
+    /** Precedes a batch of aggregated messages, encoded with {@link MessageStreams}. */
+    private static final byte AGGREGATED_MESSAGES = -1;
+
+    private final ConcurrentHashMap<IbisIdentifier, MessageBatch> batches = new ConcurrentHashMap<IbisIdentifier, MessageBatch>();
+
+    private final boolean aggregation;
+
+    private final boolean compactMessages;
+
+    private final ConcurrentHashMap<IbisIdentifier, ControlMessageCodec.Encoder> encoders = new ConcurrentHashMap<>();
+
+    private final ConcurrentHashMap<IbisIdentifier, ControlMessageCodec.Decoder> decoders = new ConcurrentHashMap<>();
+
+    private Flusher flusher;
+
+    /** Name of the receive port of the bulk connection. */
+    private static final String BULK_PORT = "constellation_bulk";
+
+    /** Starts a bulk transfer: the message itself and the sizes of its bytebuffers. */
+    private static final byte BULK_HEADER = 1;
+
+    /** Carries bytebuffer fragments of a bulk transfer. */
+    private static final byte BULK_DATA = 2;
+
+    private final boolean bulk;
+
+    private final boolean partial;
+
+    private final AtomicLong bulkTransfers = new AtomicLong();
+
+    /** The bulk transfers that are being received, per source node and transfer number. */
+    private final ConcurrentHashMap<IbisIdentifier, ConcurrentHashMap<Long, BulkTransfer>> bulkReceived = new ConcurrentHashMap<>();
+
+    /**
+     * A message received over the bulk connection of which not all bytebuffer data has arrived yet.
+     */
+    private static final class BulkTransfer {
+
+        final Message message;
+        final ByteBuffer[] destinations;
+        long remaining;
+
+        BulkTransfer(Message message, ByteBuffer[] destinations, long remaining) {
+            this.message = message;
+            this.destinations = destinations;
+            this.remaining = remaining;
+        }
+    }
+
+    /**
+     * Receives the messages on the bulk connection. Data fragments of different transfers from the same source may be
+     * interleaved; a message is handed to the pool once all its data has arrived.
+     */
+    private final class BulkReceiver implements MessageUpcall {
+
+        @Override
+        public void upcall(ReadMessage rm) throws IOException, ClassNotFoundException {
+            IbisIdentifier origin = rm.origin().ibisIdentifier();
+            ConcurrentHashMap<Long, BulkTransfer> transfers = getBulkTransfers(origin);
+
+            byte kind = rm.readByte();
+            long id = rm.readLong();
+            BulkTransfer t;
+            if (kind == BULK_HEADER) {
+                t = readBulkHeader(rm);
+                if (t.remaining > 0) {
+                    transfers.put(id, t);
+                }
+            } else {
+                t = transfers.get(id);
+                if (t == null) {
+                    logger.warn("Data for unknown bulk transfer " + id + " from " + origin + ", skipped");
+                }
+                readBulkData(rm, t);
+                if (t != null && t.remaining == 0) {
+                    transfers.remove(id);
+                }
+            }
+            // Other fragments of this transfer can only be read after finish(), so remaining is stable here.
+            rm.finish();
+
+            if (t != null && t.remaining == 0) {
+                ByteBufferTransfer.deliver((ByteBuffers) t.message.contents, t.destinations);
+                pool.upcall(new NodeIdentifierImpl(origin), t.message);
+            }
+        }
+    }
+
+    /**
+     * Sends aggregated messages that have been waiting too long, or to which no messages have been added for a while.
+     */
+    private final class Flusher extends Thread {
+
+        private final long delay;
+        private final long idle;
+        private final long interval;
+
+        private boolean done = false;
+
+        Flusher() {
+            super("Constellation message aggregation flusher");
+            setDaemon(true);
+            delay = properties.AGGREGATION_DELAY * 1000000L;
+            idle = properties.AGGREGATION_IDLE * 1000000L;
+            interval = Math.max(1, Math.min(properties.AGGREGATION_DELAY, properties.AGGREGATION_IDLE));
+        }
+
+        synchronized void done() {
+            done = true;
+            notifyAll();
+        }
+
+        private synchronized boolean waitInterval() {
+            if (!done) {
+                try {
+                    wait(interval);
+                } catch (InterruptedException e) {
+                    // ignored
+                }
+            }
+            return !done;
+        }
+
+        @Override
+        public void run() {
+            while (waitInterval()) {
+                long now = System.nanoTime();
+                for (MessageBatch b : batches.values()) {
+                    List<Message> lost = null;
+                    synchronized (b) {
+                        if (!b.isEmpty() && (now - b.lastAdded >= idle || now - b.firstAdded >= delay)) {
+                            lost = flushBatch(b);
+                        }
+                    }
+                    sendFailed(b.destination, lost, null);
+                }
+            }
+        }
+    }
+
     public CommunicationLayerImpl(final ConstellationProperties properties, Pool pool) throws PoolCreationFailedException {
 
         closedPool = properties.CLOSED;
         this.pool = pool;
         this.properties = properties;
+        this.aggregation = properties.AGGREGATION;
+        this.compactMessages = properties.COMPACT_MESSAGES;
+        this.portType = compactMessages ? dataPortType : objectPortType;
+        this.bulk = properties.BULK;
+        this.partial = properties.BYTEBUFFERS_PARTIAL;
+
+        if (properties.SITE != null && properties.getProperty("ibis.location") == null) {
+            // Make the site the parent of our IPL location, so that other nodes can derive it from our identifier.
+            try {
+                properties.setProperty("ibis.location", InetAddress.getLocalHost().getHostName() + "@" + properties.SITE);
+            } catch (UnknownHostException e) {
+                logger.warn("Could not determine host name, ignoring site " + properties.SITE, e);
+            }
+        }
 
         try {
             ibis = IbisFactory.createIbis(closedPool ? closedIbisCapabilities : openIbisCapabilities, properties, true,
@@ -124,9 +301,19 @@ public class CommunicationLayerImpl implements CommunicationLayer, RegistryEvent
             rp = ibis.createReceivePort(portType, "constellation", this);
             rp.enableConnections();
 
+            if (bulk) {
+                bulkrp = ibis.createReceivePort(portType, BULK_PORT, new BulkReceiver());
+                bulkrp.enableConnections();
+            } else {
+                bulkrp = null;
+            }
+
             if (closedPool) {
                 ibis.registry().waitUntilPoolClosed();
                 ids = ibis.registry().joinedIbises();
+            }
+
+            if (closedPool && properties.CLOSED_PEERPORTS) {
                 rports = new ReceivePort[ids.length];
                 for (int i = 0; i < rports.length; i++) {
                     if (!ids[i].equals(ibis.identifier())) {
@@ -179,12 +366,28 @@ public class CommunicationLayerImpl implements CommunicationLayer, RegistryEvent
 
     @Override
     public void cleanup() {
+        if (flusher != null) {
+            flusher.done();
+        }
+
+        for (MessageBatch b : batches.values()) {
+            List<Message> lost;
+            synchronized (b) {
+                lost = flushBatch(b);
+            }
+            sendFailed(b.destination, lost, null);
+        }
+
         // Try to cleanly disconnect all send and receive ports....
         logger.info("disabling receive port");
 
         try {
             rp.disableConnections();
             rp.disableMessageUpcalls();
+            if (bulkrp != null) {
+                bulkrp.disableConnections();
+                bulkrp.disableMessageUpcalls();
+            }
         } catch (Exception e) {
             logger.info("Clean receive port got exception", e);
         }
@@ -198,6 +401,13 @@ public class CommunicationLayerImpl implements CommunicationLayer, RegistryEvent
                 logger.info("Close sendport got exception", e);
             }
         }
+        for (SendPort sp : bulkports.values()) {
+            try {
+                sp.close();
+            } catch (Exception e) {
+                logger.info("Close bulk sendport got exception", e);
+            }
+        }
 
         logger.info("Closing receive ports");
 
@@ -206,6 +416,13 @@ public class CommunicationLayerImpl implements CommunicationLayer, RegistryEvent
         } catch (IOException e) {
             logger.info("Close receive port got exception", e);
         }
+        if (bulkrp != null) {
+            try {
+                bulkrp.close(10000);
+            } catch (IOException e) {
+                logger.info("Close bulk receive port got exception", e);
+            }
+        }
         if (rports != null) {
             for (ReceivePort rport : rports) {
                 if (rport != null) {
@@ -232,6 +449,16 @@ public class CommunicationLayerImpl implements CommunicationLayer, RegistryEvent
     @Override
     public void cleanup(NodeIdentifier id) {
         IbisIdentifier dest = ((NodeIdentifierImpl) id).getIbisIdentifier();
+        MessageBatch b = batches.remove(dest);
+        if (b != null) {
+            List<Message> lost;
+            synchronized (b) {
+                lost = flushBatch(b);
+            }
+            sendFailed(dest, lost, null);
+        }
+        encoders.remove(dest);
+        bulkReceived.remove(dest);
         SendPort s = sendports.remove(dest);
         if (s != null) {
             try {
@@ -240,12 +467,114 @@ public class CommunicationLayerImpl implements CommunicationLayer, RegistryEvent
                 // ignore
             }
         }
+        s = bulkports.remove(dest);
+        if (s != null) {
+            try {
+                s.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+
+    private ControlMessageCodec.Encoder getEncoder(IbisIdentifier dest) {
+        ControlMessageCodec.Encoder e = encoders.get(dest);
+        if (e == null) {
+            e = new ControlMessageCodec.Encoder();
+            ControlMessageCodec.Encoder e2 = encoders.putIfAbsent(dest, e);
+            if (e2 != null) {
+                e = e2;
+            }
+        }
+        return e;
+    }
+
+    private ControlMessageCodec.Decoder getDecoder(IbisIdentifier source) {
+        ControlMessageCodec.Decoder d = decoders.get(source);
+        if (d == null) {
+            d = new ControlMessageCodec.Decoder();
+            ControlMessageCodec.Decoder d2 = decoders.putIfAbsent(source, d);
+            if (d2 != null) {
+                d = d2;
+            }
+        }
+        return d;
+    }
+
+    /**
+     * Writes a single message, followed by its bytebuffers, if any. Must be called while the WriteMessage is open, which
+     * guarantees that messages to a destination are encoded in the order in which they are sent.
+     */
+    private void writeMessage(WriteMessage wm, Message m, IbisIdentifier dest) throws IOException {
+        wm.writeByte(m.opcode);
+        if (compactMessages) {
+            ControlMessageCodec.Encoder e = getEncoder(dest);
+            int len;
+            try {
+                len = e.encode(m.contents);
+            } catch (IOException ex) {
+                // Nothing was written for this message yet, but the encoder may have interned values.
+                e.reset();
+                throw ex;
+            }
+            wm.writeInt(len);
+            wm.writeArray(e.buffer(), 0, len);
+            if (m.contents instanceof ByteBuffers) {
+                writeByteBuffers(wm, (ByteBuffers) m.contents);
+            }
+        } else if (m.contents == null) {
+            wm.writeBoolean(false);
+        } else {
+            wm.writeBoolean(true);
+            wm.writeObject(m.contents);
+            if (m.contents instanceof ByteBuffers) {
+                wm.flush();
+                writeByteBuffers(wm, (ByteBuffers) m.contents);
+            }
+        }
+    }
+
+    private void writeByteBuffers(WriteMessage wm, ByteBuffers contents) throws IOException {
+        List<ByteBuffer> list = ByteBufferTransfer.regions(contents, partial);
+        if (logger.isDebugEnabled()) {
+            logger.debug("Writing " + list.size() + " bytebuffers");
+        }
+        wm.writeInt(list.size());
+        for (ByteBuffer b : list) {
+            wm.writeInt(b.remaining());
+        }
+        for (ByteBuffer b : list) {
+            int size = b.remaining();
+            wm.writeByteBuffer(b);
+            if (logger.isDebugEnabled()) {
+                logger.debug("Wrote bytebuffer of size " + size);
+            }
+        }
     }
 
     @Override
     public boolean sendMessage(NodeIdentifier destination, Message m) {
-        SendPort s;
         IbisIdentifier dest = ((NodeIdentifierImpl) destination).getIbisIdentifier();
+
+        if (bulk && m.contents instanceof ByteBuffers) {
+            List<ByteBuffer> list = ByteBufferTransfer.regions((ByteBuffers) m.contents, partial);
+            if (ByteBufferTransfer.size(list) >= properties.BULK_THRESHOLD) {
+                return sendBulk(dest, m, list);
+            }
+        }
+
+        if (aggregation) {
+            return aggregateMessage(dest, m);
+        }
+
+        return sendDirect(dest, m);
+    }
+
+    /**
+     * Sends the message in a <code>WriteMessage</code> of its own.
+     */
+    private boolean sendDirect(IbisIdentifier dest, Message m) {
+        SendPort s;
         try {
             s = getSendPort(dest);
         } catch (IOException e1) {
@@ -258,44 +587,122 @@ public class CommunicationLayerImpl implements CommunicationLayer, RegistryEvent
         WriteMessage wm = null;
         try {
             wm = s.newMessage();
-            String name = Pool.getString(m.opcode, "write");
             if (communicationTimer != null && m.contents != null) {
-                eventNo = communicationTimer.start(name);
+                eventNo = communicationTimer.start(Pool.getString(m.opcode, "write"));
+            }
+            writeMessage(wm, m, dest);
+            wm.writeByte(END_OF_MESSAGES);
+            sz = wm.finish();
+            if (eventNo != -1) {
+                communicationTimer.stop(eventNo);
+                communicationTimer.addBytes(sz, eventNo);
+            }
+        } catch (IOException e) {
+            logger.warn("Communication to " + dest + " gave exception", e);
+            if (wm != null) {
+                wm.finish(e);
+            }
+            messagesLost(dest);
+            if (eventNo != -1) {
+                communicationTimer.cancel(eventNo);
+            }
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Sends a message with large bytebuffers over the bulk connection. The message and the sizes of the bytebuffers go first,
+     * followed by the bytebuffer data in fragments of at most "bulk.fragment" bytes, each in its own <code>WriteMessage</code>.
+     * The send port is released between fragments, so that other bulk transfers to the same destination are interleaved with
+     * this one instead of waiting for it to finish. Control messages use the other connection and are not held up at all.
+     */
+    private boolean sendBulk(IbisIdentifier dest, Message m, List<ByteBuffer> list) {
+        SendPort s;
+        try {
+            s = getSendPort(dest, true);
+        } catch (IOException e1) {
+            logger.warn("POOL failed to make bulk connection to " + dest, e1);
+            return false;
+        }
+
+        long id = bulkTransfers.getAndIncrement();
+        int fragment = Math.max(1, properties.BULK_FRAGMENT);
+        int eventNo = -1;
+        long sz = 0;
+        WriteMessage wm = null;
+        try {
+            if (communicationTimer != null) {
+                eventNo = communicationTimer.start(Pool.getString(m.opcode, "write"));
             }
+
+            wm = s.newMessage();
+            wm.writeByte(BULK_HEADER);
+            wm.writeLong(id);
             wm.writeByte(m.opcode);
-            if (m.contents == null) {
-                wm.writeBoolean(false);
+            if (compactMessages) {
+                // A fresh encoder, because the bulk connection is not ordered with respect to the other one.
+                ControlMessageCodec.Encoder e = new ControlMessageCodec.Encoder();
+                int len = e.encode(m.contents);
+                wm.writeInt(len);
+                wm.writeArray(e.buffer(), 0, len);
             } else {
-                wm.writeBoolean(true);
                 wm.writeObject(m.contents);
-                if (m.contents instanceof ByteBuffers) {
-                    wm.flush();
-                    ArrayList<ByteBuffer> list = new ArrayList<ByteBuffer>();
-                    ((ByteBuffers) m.contents).pushByteBuffers(list);
-                    if (logger.isDebugEnabled()) {
-                        logger.debug("Writing " + list.size() + " bytebuffers");
-                    }
-                    wm.writeInt(list.size());
-                    for (ByteBuffer b : list) {
-                        b.position(0);
-                        b.limit(b.capacity());
-                        wm.writeInt(b.capacity());
+            }
+            wm.writeInt(list.size());
+            for (ByteBuffer b : list) {
+                wm.writeInt(b.remaining());
+            }
+            sz += wm.finish();
+            wm = null;
+
+            int index = 0;
+            int offset = 0;
+            while (true) {
+                while (index < list.size() && list.get(index).remaining() == 0) {
+                    index++;
+                }
+                if (index == list.size()) {
+                    break;
+                }
+                wm = s.newMessage();
+                wm.writeByte(BULK_DATA);
+                wm.writeLong(id);
+                int room = fragment;
+                while (room > 0 && index < list.size()) {
+                    ByteBuffer b = list.get(index);
+                    int len = Math.min(room, b.remaining() - offset);
+                    if (len > 0) {
+                        ByteBuffer d = b.duplicate();
+                        d.limit(b.position() + offset + len);
+                        d.position(b.position() + offset);
+                        wm.writeInt(index);
+                        wm.writeInt(offset);
+                        wm.writeInt(len);
+                        wm.writeByteBuffer(d);
+                        room -= len;
+                        offset += len;
                     }
-                    for (ByteBuffer b : list) {
-                        wm.writeByteBuffer(b);
-                        if (logger.isDebugEnabled()) {
-                            logger.debug("Wrote bytebuffer of size " + b.capacity());
-                        }
+                    if (offset == b.remaining()) {
+                        index++;
+                        offset = 0;
                     }
                 }
+                wm.writeInt(-1);
+                sz += wm.finish();
+                wm = null;
             }
-            sz = wm.finish();
+
             if (eventNo != -1) {
                 communicationTimer.stop(eventNo);
                 communicationTimer.addBytes(sz, eventNo);
             }
+            if (logger.isDebugEnabled()) {
+                logger.debug("Sent bulk transfer " + id + " of " + sz + " bytes to " + dest);
+            }
         } catch (IOException e) {
-            logger.warn("Communication to " + dest + " gave exception", e);
+            logger.warn("Bulk communication to " + dest + " gave exception", e);
             if (wm != null) {
                 wm.finish(e);
             }
@@ -304,68 +711,323 @@ public class CommunicationLayerImpl implements CommunicationLayer, RegistryEvent
             }
             return false;
         }
-
         return true;
     }
 
-    @Override
-    public void upcall(ReadMessage rm) throws IOException, ClassNotFoundException {
+    private ConcurrentHashMap<Long, BulkTransfer> getBulkTransfers(IbisIdentifier source) {
+        ConcurrentHashMap<Long, BulkTransfer> t = bulkReceived.get(source);
+        if (t == null) {
+            t = new ConcurrentHashMap<Long, BulkTransfer>();
+            ConcurrentHashMap<Long, BulkTransfer> t2 = bulkReceived.putIfAbsent(source, t);
+            if (t2 != null) {
+                t = t2;
+            }
+        }
+        return t;
+    }
 
-        IbisIdentifier source = rm.origin().ibisIdentifier();
-        int timerEvent = -1;
-        byte opcode = rm.readByte();
-        boolean hasObject = rm.readBoolean();
+    /**
+     * Reads the message at the start of a bulk transfer, and allocates its bytebuffers.
+     */
+    private BulkTransfer readBulkHeader(ReadMessage rm) throws IOException, ClassNotFoundException {
+        Message m = new Message(rm.readByte(), null);
+        try {
+            if (compactMessages) {
+                byte[] b = new byte[rm.readInt()];
+                rm.readArray(b);
+                m.contents = new ControlMessageCodec.Decoder().decode(b, b.length);
+            } else {
+                m.contents = rm.readObject();
+            }
+        } catch (ClassNotFoundException | IOException e) {
+            logger.error("Got exception in readObject", e);
+            throw e;
+        }
+        int[] sizes = new int[rm.readInt()];
+        long remaining = 0;
+        for (int i = 0; i < sizes.length; i++) {
+            sizes[i] = rm.readInt();
+            remaining += sizes[i];
+        }
+        return new BulkTransfer(m, ByteBufferTransfer.destinations(m.contents, sizes), remaining);
+    }
+
+    /**
+     * Reads the bytebuffer fragments in a bulk data message into the buffers of the transfer. When the transfer is not known,
+     * the data is skipped.
+     */
+    private void readBulkData(ReadMessage rm, BulkTransfer t) throws IOException {
+        int index = rm.readInt();
+        while (index != -1) {
+            int offset = rm.readInt();
+            int len = rm.readInt();
+            ByteBuffer d;
+            if (t != null) {
+                d = t.destinations[index].duplicate();
+                int base = d.position();
+                d.limit(base + offset + len);
+                d.position(base + offset);
+                t.remaining -= len;
+            } else {
+                d = ByteBuffer.allocate(len);
+            }
+            rm.readByteBuffer(d);
+            index = rm.readInt();
+        }
+    }
+
+    private MessageBatch getBatch(IbisIdentifier dest) {
+        MessageBatch b = batches.get(dest);
+        if (b == null) {
+            b = new MessageBatch(dest);
+            MessageBatch b2 = batches.putIfAbsent(dest, b);
+            if (b2 != null) {
+                b = b2;
+            }
+        }
+        return b;
+    }
+
+    /**
+     * Adds the message to the aggregated messages for the destination, and sends them if they are large enough or if the message
+     * is latency critical. Otherwise, the {@link Flusher} will send them. The bytebuffers of a message are copied into the batch,
+     * unless they are large enough to make the copy more expensive than a <code>WriteMessage</code> of their own.
+     */
+    private boolean aggregateMessage(IbisIdentifier dest, Message m) {
+        MessageBatch b = getBatch(dest);
+        List<Message> lost = null;
+        boolean result = true;
+
+        synchronized (b) {
+            if (m.contents instanceof ByteBuffers && ByteBufferTransfer
+                    .size(ByteBufferTransfer.regions((ByteBuffers) m.contents, partial)) >= properties.AGGREGATION_SIZE) {
+                lost = flushBatch(b);
+                result = lost == null && sendDirect(dest, m);
+            } else {
+                int eventNo = -1;
+                try {
+                    if (communicationTimer != null && m.contents != null) {
+                        eventNo = communicationTimer.start(Pool.getString(m.opcode, "write"));
+                    }
+                    int size = b.add(m, compactMessages ? getEncoder(dest) : null, partial);
+                    if (eventNo != -1) {
+                        communicationTimer.stop(eventNo);
+                        communicationTimer.addBytes(size, eventNo);
+                    }
+                } catch (IOException e) {
+                    logger.warn("Could not encode message for " + dest, e);
+                    if (eventNo != -1) {
+                        communicationTimer.cancel(eventNo);
+                    }
+                    return false;
+                }
+                if (b.mustFlush(m, properties.AGGREGATION_SIZE)) {
+                    lost = flushBatch(b);
+                    result = lost == null;
+                }
+            }
+        }
+
+        // The message itself is reported to the caller, the others were accepted earlier and go to the failure handler.
+        sendFailed(dest, lost, m);
+        return result;
+    }
+
+    /**
+     * Sends the aggregated messages, if any, in a single <code>WriteMessage</code>. Must be called while holding the lock on the
+     * batch.
+     *
+     * @return the messages that were lost, or <code>null</code> if they were sent.
+     */
+    private List<Message> flushBatch(MessageBatch b) {
+        if (b.isEmpty()) {
+            return null;
+        }
+        ArrayList<Message> messages = new ArrayList<Message>(b.count());
+        byte[] data = b.take(messages);
 
-        if (communicationTimer != null && hasObject) {
-            timerEvent = communicationTimer.start(Pool.getString(opcode, "read"));
+        WriteMessage wm = null;
+        try {
+            wm = getSendPort(b.destination).newMessage();
+            wm.writeByte(AGGREGATED_MESSAGES);
+            wm.writeInt(messages.size());
+            wm.writeInt(data.length);
+            wm.writeArray(data);
+            wm.writeByte(END_OF_MESSAGES);
+            wm.finish();
+            if (logger.isDebugEnabled()) {
+                logger.debug("Sent " + messages.size() + " aggregated messages to " + b.destination);
+            }
+        } catch (IOException e) {
+            logger.warn("Communication to " + b.destination + " gave exception, " + messages.size() + " aggregated messages failed",
+                    e);
+            if (wm != null) {
+                wm.finish(e);
+            }
+            messagesLost(b.destination);
+            return messages;
+        }
+        return null;
+    }
+
+    /**
+     * Hands the lost messages, except the specified one, to the failure handler. Must not be called while holding the lock on a
+     * batch, because the handler may send messages itself.
+     */
+    private void sendFailed(IbisIdentifier dest, List<Message> lost, Message except) {
+        if (lost == null) {
+            return;
+        }
+        NodeIdentifierImpl id = new NodeIdentifierImpl(dest);
+        for (Message l : lost) {
+            if (l != except) {
+                pool.sendFailed(id, l);
+            }
+        }
+    }
+
+    /**
+     * Called when messages to the destination may have been lost. Makes sure the encoder for the destination does not refer to
+     * values that the receiver has not seen.
+     */
+    private void messagesLost(IbisIdentifier dest) {
+        if (compactMessages) {
+            ControlMessageCodec.Encoder e = encoders.get(dest);
+            if (e != null) {
+                e.reset();
+            }
         }
+    }
+
+    /**
+     * Reads a single message, followed by its bytebuffers, if any.
+     */
+    private Message readMessage(ReadMessage rm, byte opcode, IbisIdentifier source) throws IOException, ClassNotFoundException {
+
+        int timerEvent = -1;
+        boolean hasObject = compactMessages || rm.readBoolean();
+
         Message m = new Message(opcode, null);
 
         if (hasObject) {
-            long sz = -1;
+            long start = 0;
+            if (communicationTimer != null) {
+                timerEvent = communicationTimer.start(Pool.getString(opcode, "read"));
+                start = rm.bytesRead();
+            }
             try {
                 try {
-                    m.contents = rm.readObject();
+                    if (compactMessages) {
+                        byte[] b = new byte[rm.readInt()];
+                        rm.readArray(b);
+                        m.contents = getDecoder(source).decode(b, b.length);
+                    } else {
+                        m.contents = rm.readObject();
+                    }
                 } catch (ClassNotFoundException | IOException e) {
                     logger.error("Got exception in readObject", e);
                     // Re-throwing the exception will cause Ibis to terminate the connection somewhat gracefully.
                     throw e;
                 }
                 if (m.contents != null && m.contents instanceof ByteBuffers) {
-                    int nByteBuffers = rm.readInt();
-                    ArrayList<ByteBuffer> l = new ArrayList<ByteBuffer>();
-                    if (nByteBuffers > 0) {
-                        if (logger.isDebugEnabled()) {
-                            logger.debug("Reading " + nByteBuffers + " bytebuffers");
-                        }
-                        for (int i = 0; i < nByteBuffers; i++) {
-                            int capacity = rm.readInt();
-                            ByteBuffer b = ByteBufferCache.getByteBuffer(capacity, false);
-                            l.add(b);
-                        }
-                        for (ByteBuffer b : l) {
-                            b.position(0);
-                            b.limit(b.capacity());
-                            rm.readByteBuffer(b);
-                        }
-                    }
-                    ((ByteBuffers) m.contents).popByteBuffers(l);
+                    readByteBuffers(rm, (ByteBuffers) m.contents);
                 }
-                sz = rm.finish();
             } finally {
                 if (timerEvent != -1) {
                     if (m.contents == null) {
                         communicationTimer.cancel(timerEvent);
                     } else {
                         communicationTimer.stop(timerEvent);
-                        communicationTimer.addBytes(sz, timerEvent);
+                        communicationTimer.addBytes(rm.bytesRead() - start, timerEvent);
                     }
                 }
             }
-        } else {
-            rm.finish();
         }
-        pool.upcall(new NodeIdentifierImpl(source), m);
+        return m;
+    }
+
+    private void readByteBuffers(ReadMessage rm, ByteBuffers contents) throws IOException {
+        int[] sizes = new int[rm.readInt()];
+        if (sizes.length > 0 && logger.isDebugEnabled()) {
+            logger.debug("Reading " + sizes.length + " bytebuffers");
+        }
+        for (int i = 0; i < sizes.length; i++) {
+            sizes[i] = rm.readInt();
+        }
+        ByteBuffer[] destinations = ByteBufferTransfer.destinations(contents, sizes);
+        for (int i = 0; i < sizes.length; i++) {
+            rm.readByteBuffer(ByteBufferTransfer.window(destinations[i], sizes[i]));
+        }
+        ByteBufferTransfer.deliver(contents, destinations);
+    }
+
+    /**
+     * Reads a batch of aggregated messages, and adds them to the list.
+     */
+    private void readAggregatedMessages(ReadMessage rm, IbisIdentifier source, List<Message> messages)
+            throws IOException, ClassNotFoundException {
+        int count = rm.readInt();
+        byte[] b = new byte[rm.readInt()];
+        rm.readArray(b);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(b));
+        ControlMessageCodec.Decoder d = compactMessages ? getDecoder(source) : null;
+        for (int i = 0; i < count; i++) {
+            int timerEvent = -1;
+            int start = in.available();
+            if (communicationTimer != null) {
+                timerEvent = communicationTimer.start(Pool.getString(b[b.length - start], "read"));
+            }
+            Message m = MessageStreams.readMessage(in, d);
+            if (timerEvent != -1) {
+                communicationTimer.stop(timerEvent);
+                communicationTimer.addBytes(start - in.available(), timerEvent);
+            }
+            messages.add(m);
+        }
+    }
+
+    @Override
+    public void upcall(ReadMessage rm) throws IOException, ClassNotFoundException {
+
+        IbisIdentifier origin = rm.origin().ibisIdentifier();
+        NodeIdentifierImpl source = new NodeIdentifierImpl(origin);
+
+        // A ReadMessage may contain several aggregated messages. They are all read before finishing the ReadMessage, and only
+        // then handed to the pool, in order.
+        Message first = null;
+        ArrayList<Message> more = null;
+
+        byte opcode = rm.readByte();
+        while (opcode != END_OF_MESSAGES) {
+            if (opcode == AGGREGATED_MESSAGES) {
+                if (more == null) {
+                    more = new ArrayList<Message>();
+                }
+                readAggregatedMessages(rm, origin, more);
+                opcode = rm.readByte();
+                continue;
+            }
+            Message m = readMessage(rm, opcode, origin);
+            if (first == null) {
+                first = m;
+            } else {
+                if (more == null) {
+                    more = new ArrayList<Message>();
+                }
+                more.add(m);
+            }
+            opcode = rm.readByte();
+        }
+        rm.finish();
+
+        if (first != null) {
+            pool.upcall(source, first);
+        }
+        if (more != null) {
+            for (Message m : more) {
+                pool.upcall(source, m);
+            }
+        }
     }
 
     @Override
@@ -412,14 +1074,16 @@ public class CommunicationLayerImpl implements CommunicationLayer, RegistryEvent
 
     }
 
-    private SendPort createAndConnect(IbisIdentifier id) throws IOException {
+    private SendPort createAndConnect(IbisIdentifier id, boolean bulk) throws IOException {
         if (logger.isInfoEnabled()) {
-            logger.info("Connecting to " + id + " from " + ibis.identifier());
+            logger.info("Connecting to " + id + " from " + ibis.identifier() + (bulk ? " for bulk transfers" : ""));
         }
         SendPort sp = null;
         try {
             sp = ibis.createSendPort(portType);
-            if (closedPool) {
+            if (bulk) {
+                sp.connect(id, BULK_PORT);
+            } else if (closedPool && properties.CLOSED_PEERPORTS) {
                 sp.connect(id, "constellation_" + ibis.identifier().name(), 10000, true);
             } else {
                 sp.connect(id, "constellation");
@@ -430,7 +1094,7 @@ public class CommunicationLayerImpl implements CommunicationLayer, RegistryEvent
             } catch (Throwable e2) {
                 // ignored ?
             }
-            if (closedPool) {
+            if (!bulk && closedPool && properties.CLOSED_PEERPORTS) {
                 try {
                     sp = ibis.createSendPort(portType);
                     sp.connect(id, "constellation");
@@ -452,21 +1116,26 @@ public class CommunicationLayerImpl implements CommunicationLayer, RegistryEvent
     }
 
     private SendPort getSendPort(IbisIdentifier id) throws IOException {
+        return getSendPort(id, false);
+    }
+
+    private SendPort getSendPort(IbisIdentifier id, boolean bulk) throws IOException {
+        ConcurrentHashMap<IbisIdentifier, SendPort> ports = bulk ? bulkports : sendports;
 
         if (id.equals(ibis.identifier())) {
             logger.error("POOL Sending to myself!", new Throwable());
         }
 
-        SendPort sp = sendports.get(id);
+        SendPort sp = ports.get(id);
 
         if (sp == null) {
-            sp = createAndConnect(id);
+            sp = createAndConnect(id, bulk);
 
             if (logger.isInfoEnabled()) {
                 logger.info("Succesfully connected to " + id + " from " + ibis.identifier());
             }
 
-            SendPort sp2 = sendports.putIfAbsent(id, sp);
+            SendPort sp2 = ports.putIfAbsent(id, sp);
 
             if (sp2 != null) {
                 // Someone managed to sneak in between our get and put!
@@ -492,8 +1161,16 @@ public class CommunicationLayerImpl implements CommunicationLayer, RegistryEvent
             communicationTimer = null;
         }
 
+        if (aggregation) {
+            flusher = new Flusher();
+            flusher.start();
+        }
+
         rp.enableMessageUpcalls();
-        if (closedPool) {
+        if (bulkrp != null) {
+            bulkrp.enableMessageUpcalls();
+        }
+        if (rports != null) {
             for (ReceivePort rport : rports) {
                 if (rport != null) {
                     rport.enableMessageUpcalls();
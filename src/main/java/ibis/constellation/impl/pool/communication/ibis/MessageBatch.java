@@ -0,0 +1,121 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.constellation.impl.pool.communication.ibis;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import ibis.constellation.impl.pool.ControlMessageCodec;
+import ibis.constellation.impl.pool.Pool;
+import ibis.constellation.impl.pool.communication.Message;
+import ibis.constellation.impl.pool.communication.MessageStreams;
+import ibis.ipl.IbisIdentifier;
+
+/**
+ * The messages to a single destination that are currently being aggregated. They are encoded into a local buffer, including
+ * their bytebuffers, and sent in a single <code>WriteMessage</code> when the batch is flushed. The messages themselves are kept
+ * until then, so that they can be handed to the failure handler if the batch cannot be sent.
+ *
+ * A batch is not thread-safe; its users synchronize on it.
+ */
+final class MessageBatch {
+
+    final IbisIdentifier destination;
+
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    private final DataOutputStream out = new DataOutputStream(bytes);
+    private final ArrayList<Message> messages = new ArrayList<Message>();
+
+    long firstAdded;
+    long lastAdded;
+
+    MessageBatch(IbisIdentifier destination) {
+        this.destination = destination;
+    }
+
+    /**
+     * Encodes the message into the batch. If encoding fails, the batch is left as it was before.
+     *
+     * @param m
+     *            the message
+     * @param e
+     *            the encoder for the destination, or <code>null</code> if the contents are serialized
+     * @param partial
+     *            whether bytebuffers are sent from their position to their limit
+     * @return the number of bytes added to the batch
+     * @throws IOException
+     *             when the message could not be encoded
+     */
+    int add(Message m, ControlMessageCodec.Encoder e, boolean partial) throws IOException {
+        int start = bytes.size();
+        try {
+            MessageStreams.writeMessage(out, m, e, partial);
+        } catch (IOException ex) {
+            // Drop the partly written message; the ones before it are still intact.
+            byte[] kept = bytes.toByteArray();
+            bytes.reset();
+            bytes.write(kept, 0, start);
+            throw ex;
+        }
+        long now = System.nanoTime();
+        if (messages.isEmpty()) {
+            firstAdded = now;
+        }
+        messages.add(m);
+        lastAdded = now;
+        return bytes.size() - start;
+    }
+
+    /**
+     * Returns whether the batch must be sent now that the specified message was added to it.
+     *
+     * @param m
+     *            the message that was added last
+     * @param threshold
+     *            the number of bytes from which a batch is sent
+     * @return whether the batch must be sent
+     */
+    boolean mustFlush(Message m, int threshold) {
+        return Pool.isLatencyCritical(m.opcode) || bytes.size() >= threshold;
+    }
+
+    boolean isEmpty() {
+        return messages.isEmpty();
+    }
+
+    int count() {
+        return messages.size();
+    }
+
+    /**
+     * Returns the encoded messages, and empties the batch. The messages themselves are moved to the specified list.
+     *
+     * @param taken
+     *            the list to which the messages are added
+     * @return the encoded messages
+     */
+    byte[] take(List<Message> taken) {
+        byte[] data = bytes.toByteArray();
+        taken.addAll(messages);
+        messages.clear();
+        bytes.reset();
+        return data;
+    }
+}
@@ -18,6 +18,7 @@ package ibis.constellation.impl.pool.communication.ibis;
 
 import ibis.constellation.impl.pool.communication.NodeIdentifier;
 import ibis.ipl.IbisIdentifier;
+import ibis.ipl.Location;
 
 public class NodeIdentifierImpl implements NodeIdentifier {
 
@@ -36,6 +37,18 @@ public class NodeIdentifierImpl implements NodeIdentifier {
         return id.name();
     }
 
+    /**
+     * Returns the site label, which is the IPL location of the node without its first (most specific) level.
+     */
+    @Override
+    public String site() {
+        Location l = id.location();
+        if (l == null || l.numberOfLevels() <= 1) {
+            return "";
+        }
+        return l.getParent().toString();
+    }
+
     @Override
     public String toString() {
         return id.toString();
@@ -0,0 +1,354 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.constellation.impl.pool.communication.local;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ibis.constellation.ConstellationProperties;
+import ibis.constellation.impl.pool.ControlMessageCodec;
+import ibis.constellation.impl.pool.Pool;
+import ibis.constellation.impl.pool.PoolCreationFailedException;
+import ibis.constellation.impl.pool.communication.CommunicationLayer;
+import ibis.constellation.impl.pool.communication.Message;
+import ibis.constellation.impl.pool.communication.MessageStreams;
+import ibis.constellation.impl.pool.communication.NodeIdentifier;
+
+/**
+ * A <code>CommunicationLayer</code> for running several nodes within a single JVM, without a registry server. Messages are
+ * serialized, so that nodes never share objects, and delivered by a thread per node after a simulated latency and transfer time.
+ * Messages between two nodes are delivered in the order in which they were sent.
+ *
+ * In a closed run, each node waits in its constructor until "poolSize" nodes have joined, so the constellations of a closed run
+ * must be created by different threads.
+ */
+public class LocalCommunicationLayer implements CommunicationLayer {
+
+    private static final Logger logger = LoggerFactory.getLogger(LocalCommunicationLayer.class);
+
+    private final Pool pool;
+
+    private final LocalNetwork network;
+
+    private final LocalNodeIdentifier local;
+
+    private final LocalNodeIdentifier master;
+
+    private final boolean closedPool;
+
+    private final int poolSize;
+
+    private final boolean compactMessages;
+
+    private final boolean partial;
+
+    /** Simulated one-way latency, in nanoseconds. */
+    private final long latency;
+
+    /** Simulated bandwidth, in Mbit/s, or 0 when unlimited. */
+    private final long bandwidth;
+
+    /**
+     * The state of the simulated link to a single destination.
+     */
+    private static final class Link {
+
+        final ControlMessageCodec.Encoder encoder;
+
+        /** The time at which the link has finished transferring the previous message. */
+        long free;
+
+        Link(boolean compactMessages) {
+            encoder = compactMessages ? new ControlMessageCodec.Encoder() : null;
+        }
+    }
+
+    private final ConcurrentHashMap<NodeIdentifier, Link> links = new ConcurrentHashMap<NodeIdentifier, Link>();
+
+    /**
+     * A message that is underway to this node.
+     */
+    private static final class Delivery implements Comparable<Delivery> {
+
+        final LocalNodeIdentifier source;
+        final byte[] data;
+        final long time;
+        final long sequence;
+
+        Delivery(LocalNodeIdentifier source, byte[] data, long time, long sequence) {
+            this.source = source;
+            this.data = data;
+            this.time = time;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(Delivery o) {
+            if (time != o.time) {
+                return time < o.time ? -1 : 1;
+            }
+            return sequence < o.sequence ? -1 : (sequence == o.sequence ? 0 : 1);
+        }
+    }
+
+    private final PriorityQueue<Delivery> deliveries = new PriorityQueue<Delivery>();
+
+    private long sequence;
+
+    private final HashMap<NodeIdentifier, ControlMessageCodec.Decoder> decoders = new HashMap<NodeIdentifier, ControlMessageCodec.Decoder>();
+
+    private Deliverer deliverer;
+
+    /**
+     * Hands the messages to the pool once their delivery time has come.
+     */
+    private final class Deliverer extends Thread {
+
+        private boolean done = false;
+
+        Deliverer() {
+            super("Constellation local delivery " + local.name());
+            setDaemon(true);
+        }
+
+        void done() {
+            synchronized (deliveries) {
+                done = true;
+                deliveries.notifyAll();
+            }
+        }
+
+        private Delivery next() {
+            synchronized (deliveries) {
+                while (!done) {
+                    Delivery d = deliveries.peek();
+                    long wait = d == null ? 0 : d.time - System.nanoTime();
+                    if (d != null && wait <= 0) {
+                        return deliveries.poll();
+                    }
+                    try {
+                        if (d == null) {
+                            deliveries.wait();
+                        } else {
+                            TimeUnit.NANOSECONDS.timedWait(deliveries, wait);
+                        }
+                    } catch (InterruptedException e) {
+                        // ignore
+                    }
+                }
+                return null;
+            }
+        }
+
+        @Override
+        public void run() {
+            Delivery d = next();
+            while (d != null) {
+                Message m;
+                try {
+                    m = MessageStreams.readMessage(new DataInputStream(new ByteArrayInputStream(d.data)), getDecoder(d.source));
+                } catch (IOException | ClassNotFoundException e) {
+                    logger.error("Could not read message from " + d.source, e);
+                    m = null;
+                }
+                if (m != null) {
+                    try {
+                        pool.upcall(d.source, m);
+                    } catch (Throwable e) {
+                        logger.error("Upcall for message from " + d.source + " gave exception", e);
+                    }
+                }
+                d = next();
+            }
+        }
+    }
+
+    public LocalCommunicationLayer(final ConstellationProperties properties, Pool pool) throws PoolCreationFailedException {
+        this.pool = pool;
+        this.closedPool = properties.CLOSED;
+        this.compactMessages = properties.COMPACT_MESSAGES;
+        this.partial = properties.BYTEBUFFERS_PARTIAL;
+        this.latency = Math.max(0, properties.LOCAL_LATENCY) * 1000L;
+        this.bandwidth = Math.max(0, properties.LOCAL_BANDWIDTH);
+
+        if (closedPool && properties.POOLSIZE <= 0) {
+            throw new PoolCreationFailedException("A closed pool with local communication needs the poolSize property");
+        }
+
+        network = LocalNetwork.get(properties.LOCAL_GROUP);
+        synchronized (network) {
+            local = new LocalNodeIdentifier(network.getGroup(), network.size(), properties.SITE);
+            network.join(this);
+        }
+
+        if (properties.MASTER) {
+            master = network.elect("Constellation Master", local);
+        } else {
+            master = network.getElectionResult("Constellation Master", 0);
+        }
+
+        if (closedPool) {
+            poolSize = properties.POOLSIZE;
+            network.waitForNodes(poolSize);
+        } else {
+            poolSize = -1;
+        }
+
+        if (logger.isInfoEnabled()) {
+            logger.info("Joined local pool " + network.getGroup() + " as " + local + ", master is " + master);
+        }
+    }
+
+    @Override
+    public NodeIdentifier getMyIdentifier() {
+        return local;
+    }
+
+    @Override
+    public NodeIdentifier getMaster() {
+        return master;
+    }
+
+    @Override
+    public int getRank() {
+        return local.getRank();
+    }
+
+    @Override
+    public int getPoolSize() {
+        return closedPool ? poolSize : network.size();
+    }
+
+    private Link getLink(NodeIdentifier dest) {
+        Link l = links.get(dest);
+        if (l == null) {
+            l = new Link(compactMessages);
+            Link l2 = links.putIfAbsent(dest, l);
+            if (l2 != null) {
+                l = l2;
+            }
+        }
+        return l;
+    }
+
+    private ControlMessageCodec.Decoder getDecoder(NodeIdentifier source) {
+        if (!compactMessages) {
+            return null;
+        }
+        ControlMessageCodec.Decoder d = decoders.get(source);
+        if (d == null) {
+            d = new ControlMessageCodec.Decoder();
+            decoders.put(source, d);
+        }
+        return d;
+    }
+
+    @Override
+    public boolean sendMessage(NodeIdentifier dest, Message m) {
+        LocalCommunicationLayer target = dest instanceof LocalNodeIdentifier ? network.getNode(((LocalNodeIdentifier) dest).getRank())
+                : null;
+        if (target == null || !target.local.equals(dest)) {
+            logger.warn("POOL cannot send to " + dest + ", it is not in local pool " + network.getGroup());
+            return false;
+        }
+
+        Link l = getLink(dest);
+        // Encoding and queueing under the lock of the link keeps the messages to a destination in order.
+        synchronized (l) {
+            ByteArrayOutputStream b = new ByteArrayOutputStream();
+            try {
+                DataOutputStream out = new DataOutputStream(b);
+                MessageStreams.writeMessage(out, m, l.encoder, partial);
+                out.flush();
+            } catch (IOException e) {
+                logger.warn("Could not write message for " + dest, e);
+                return false;
+            }
+            long now = System.nanoTime();
+            long time = Math.max(now, l.free);
+            if (bandwidth > 0) {
+                time += b.size() * 8000L / bandwidth;
+            }
+            l.free = time;
+            target.deliver(local, b.toByteArray(), time + latency);
+        }
+        return true;
+    }
+
+    private void deliver(LocalNodeIdentifier source, byte[] data, long time) {
+        synchronized (deliveries) {
+            deliveries.add(new Delivery(source, data, time, sequence++));
+            deliveries.notifyAll();
+        }
+    }
+
+    @Override
+    public void terminate() throws IOException {
+        if (local.equals(master)) {
+            network.terminate();
+        } else {
+            network.waitUntilTerminated();
+        }
+    }
+
+    @Override
+    public void cleanup() {
+        if (deliverer != null) {
+            deliverer.done();
+        }
+        network.leave(local.getRank());
+    }
+
+    @Override
+    public NodeIdentifier getElectionResult(String electTag, long timeout) throws IOException {
+        return network.getElectionResult(electTag, timeout);
+    }
+
+    @Override
+    public NodeIdentifier elect(String electTag) throws IOException {
+        return network.elect(electTag, local);
+    }
+
+    @Override
+    public void activate() {
+        deliverer = new Deliverer();
+        deliverer.start();
+    }
+
+    @Override
+    public NodeIdentifier[] getNodeIdentifiers() {
+        if (!closedPool) {
+            return null;
+        }
+        return network.getIdentifiers(poolSize);
+    }
+
+    @Override
+    public void cleanup(NodeIdentifier node) {
+        links.remove(node);
+    }
+}
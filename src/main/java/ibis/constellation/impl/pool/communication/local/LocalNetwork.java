@@ -0,0 +1,173 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.constellation.impl.pool.communication.local;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * The nodes of a pool that runs within a single JVM, and the registry functions they share: elections and termination. Each
+ * group of nodes, see {@link ibis.constellation.ConstellationProperties#S_LOCAL_GROUP}, has its own network, which disappears
+ * when its last node leaves.
+ */
+final class LocalNetwork {
+
+    private static final HashMap<String, LocalNetwork> networks = new HashMap<String, LocalNetwork>();
+
+    private final String group;
+
+    /** The nodes, indexed by rank. Nodes that left are <code>null</code>. */
+    private final ArrayList<LocalCommunicationLayer> nodes = new ArrayList<LocalCommunicationLayer>();
+
+    private int present;
+
+    private final HashMap<String, LocalNodeIdentifier> elections = new HashMap<String, LocalNodeIdentifier>();
+
+    private boolean terminated;
+
+    private LocalNetwork(String group) {
+        this.group = group;
+    }
+
+    /**
+     * Returns the network of the specified group, creating it if needed.
+     */
+    static LocalNetwork get(String group) {
+        synchronized (networks) {
+            LocalNetwork n = networks.get(group);
+            if (n == null) {
+                n = new LocalNetwork(group);
+                networks.put(group, n);
+            }
+            return n;
+        }
+    }
+
+    String getGroup() {
+        return group;
+    }
+
+    /**
+     * Adds a node to the network, and returns its rank.
+     */
+    synchronized int join(LocalCommunicationLayer node) {
+        nodes.add(node);
+        present++;
+        notifyAll();
+        return nodes.size() - 1;
+    }
+
+    /**
+     * Removes a node from the network. The network is discarded when it is empty.
+     */
+    void leave(int rank) {
+        synchronized (networks) {
+            synchronized (this) {
+                if (nodes.get(rank) != null) {
+                    nodes.set(rank, null);
+                    present--;
+                }
+                if (present == 0 && networks.get(group) == this) {
+                    networks.remove(group);
+                }
+            }
+        }
+    }
+
+    /**
+     * Waits until the specified number of nodes has joined.
+     */
+    synchronized void waitForNodes(int count) {
+        while (nodes.size() < count) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                // ignore
+            }
+        }
+    }
+
+    synchronized int size() {
+        return nodes.size();
+    }
+
+    synchronized LocalCommunicationLayer getNode(int rank) {
+        return rank < nodes.size() ? nodes.get(rank) : null;
+    }
+
+    /**
+     * Returns the identifiers of the first <code>count</code> nodes.
+     */
+    synchronized LocalNodeIdentifier[] getIdentifiers(int count) {
+        LocalNodeIdentifier[] result = new LocalNodeIdentifier[count];
+        for (int i = 0; i < count; i++) {
+            LocalCommunicationLayer n = nodes.get(i);
+            result[i] = n == null ? new LocalNodeIdentifier(group, i, null) : (LocalNodeIdentifier) n.getMyIdentifier();
+        }
+        return result;
+    }
+
+    /**
+     * Elects the candidate for the specified tag, unless another node was elected before. Returns the elected node.
+     */
+    synchronized LocalNodeIdentifier elect(String tag, LocalNodeIdentifier candidate) {
+        LocalNodeIdentifier id = elections.get(tag);
+        if (id == null) {
+            id = candidate;
+            elections.put(tag, id);
+            notifyAll();
+        }
+        return id;
+    }
+
+    /**
+     * Returns the node elected for the specified tag, waiting at most <code>timeout</code> milliseconds for an election, or
+     * forever if <code>timeout</code> is not positive. Returns <code>null</code> when nobody was elected in time.
+     */
+    synchronized LocalNodeIdentifier getElectionResult(String tag, long timeout) {
+        long deadline = timeout > 0 ? System.currentTimeMillis() + timeout : Long.MAX_VALUE;
+        LocalNodeIdentifier id = elections.get(tag);
+        while (id == null) {
+            long left = deadline - System.currentTimeMillis();
+            if (left <= 0) {
+                return null;
+            }
+            try {
+                wait(left);
+            } catch (InterruptedException e) {
+                // ignore
+            }
+            id = elections.get(tag);
+        }
+        return id;
+    }
+
+    synchronized void terminate() {
+        terminated = true;
+        notifyAll();
+    }
+
+    synchronized void waitUntilTerminated() {
+        while (!terminated) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                // ignore
+            }
+        }
+    }
+}
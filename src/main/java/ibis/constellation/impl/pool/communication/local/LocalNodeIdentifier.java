@@ -0,0 +1,72 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.constellation.impl.pool.communication.local;
+
+import ibis.constellation.impl.pool.communication.NodeIdentifier;
+
+public class LocalNodeIdentifier implements NodeIdentifier {
+
+    private static final long serialVersionUID = 6512086338424571012L;
+
+    private final String group;
+    private final int rank;
+    private final String site;
+
+    public LocalNodeIdentifier(String group, int rank, String site) {
+        this.group = group;
+        this.rank = rank;
+        this.site = site == null ? "" : site;
+    }
+
+    @Override
+    public String name() {
+        return group + "-" + rank;
+    }
+
+    @Override
+    public String site() {
+        return site;
+    }
+
+    /**
+     * Returns the rank of this node within its group, which is the order in which the nodes joined.
+     *
+     * @return the rank
+     */
+    public int getRank() {
+        return rank;
+    }
+
+    @Override
+    public String toString() {
+        return name();
+    }
+
+    @Override
+    public int hashCode() {
+        return group.hashCode() * 31 + rank;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof LocalNodeIdentifier)) {
+            return false;
+        }
+        LocalNodeIdentifier other = (LocalNodeIdentifier) o;
+        return rank == other.rank && group.equals(other.group);
+    }
+}
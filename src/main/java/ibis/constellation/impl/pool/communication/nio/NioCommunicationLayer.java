@@ -0,0 +1,578 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.constellation.impl.pool.communication.nio;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ibis.constellation.ConstellationProperties;
+import ibis.constellation.impl.pool.ControlMessageCodec;
+import ibis.constellation.impl.pool.Pool;
+import ibis.constellation.impl.pool.PoolCreationFailedException;
+import ibis.constellation.impl.pool.communication.CommunicationLayer;
+import ibis.constellation.impl.pool.communication.Message;
+import ibis.constellation.impl.pool.communication.MessageStreams;
+import ibis.constellation.impl.pool.communication.NodeIdentifier;
+
+/**
+ * A <code>CommunicationLayer</code> on plain sockets, for a fixed list of nodes that is known in advance, see
+ * {@link ConstellationProperties#S_NIO_PEERS}. It needs no registry server: the first node in the list is the master, and also
+ * decides elections. Every node has one connection to each node it sends to, made when the first message is sent, and a reader
+ * thread for each connection from another node.
+ */
+public class NioCommunicationLayer implements CommunicationLayer {
+
+    private static final Logger logger = LoggerFactory.getLogger(NioCommunicationLayer.class);
+
+    /** How long to keep trying to connect to a node that may not have started yet, in milliseconds. */
+    private static final long CONNECT_TIMEOUT = 60000;
+
+    /** How long to wait for the answer to an election request, in milliseconds. */
+    private static final long ELECTION_TIMEOUT = 60000;
+
+    private static final byte FRAME_MESSAGE = 1;
+    private static final byte FRAME_ELECT = 2;
+    private static final byte FRAME_ELECTION_RESULT = 3;
+    private static final byte FRAME_TERMINATE = 4;
+
+    private final Pool pool;
+
+    private final NioNodeIdentifier[] peers;
+
+    private final NioNodeIdentifier local;
+
+    private final boolean closedPool;
+
+    private final boolean compactMessages;
+
+    private final boolean partial;
+
+    private final ServerSocketChannel server;
+
+    /**
+     * An outgoing connection.
+     */
+    private static final class Connection {
+
+        final SocketChannel channel;
+        final DataOutputStream out;
+        final ControlMessageCodec.Encoder encoder;
+
+        Connection(SocketChannel channel, boolean compactMessages) throws IOException {
+            this.channel = channel;
+            this.out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 65536));
+            this.encoder = compactMessages ? new ControlMessageCodec.Encoder() : null;
+        }
+
+        void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+
+    private final ConcurrentHashMap<NodeIdentifier, Connection> connections = new ConcurrentHashMap<NodeIdentifier, Connection>();
+
+    private final ArrayList<SocketChannel> incoming = new ArrayList<SocketChannel>();
+
+    /** On the master, the elected node per tag. */
+    private final HashMap<String, Integer> elections = new HashMap<String, Integer>();
+
+    /** The answers to election requests of this node, per request number. */
+    private final HashMap<Integer, Integer> electionResults = new HashMap<Integer, Integer>();
+
+    private int nextRequest;
+
+    private boolean activated;
+
+    /** The messages that arrived before this node was activated, or <code>null</code> once they are being delivered. */
+    private ArrayList<Arrival> early = new ArrayList<Arrival>();
+
+    private static final class Arrival {
+
+        final NioNodeIdentifier source;
+        final Message message;
+
+        Arrival(NioNodeIdentifier source, Message message) {
+            this.source = source;
+            this.message = message;
+        }
+    }
+
+    private boolean terminated;
+
+    private volatile boolean done;
+
+    /**
+     * Accepts connections from other nodes, and starts a reader for each.
+     */
+    private final class Acceptor extends Thread {
+
+        Acceptor() {
+            super("Constellation NIO acceptor");
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (!done) {
+                try {
+                    SocketChannel c = server.accept();
+                    c.socket().setTcpNoDelay(true);
+                    synchronized (incoming) {
+                        incoming.add(c);
+                    }
+                    new Reader(c).start();
+                } catch (IOException e) {
+                    if (!done) {
+                        logger.warn("Accept gave exception", e);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the frames of a single incoming connection.
+     */
+    private final class Reader extends Thread {
+
+        private final SocketChannel channel;
+
+        Reader(SocketChannel channel) {
+            super("Constellation NIO reader");
+            setDaemon(true);
+            this.channel = channel;
+        }
+
+        @Override
+        public void run() {
+            NioNodeIdentifier source = null;
+            try {
+                DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), 65536));
+                int rank = in.readInt();
+                if (rank < 0 || rank >= peers.length) {
+                    throw new IOException("Connection from unknown node " + rank);
+                }
+                source = peers[rank];
+                setName("Constellation NIO reader from " + source);
+                ControlMessageCodec.Decoder decoder = compactMessages ? new ControlMessageCodec.Decoder() : null;
+                while (true) {
+                    byte frame = in.readByte();
+                    switch (frame) {
+                    case FRAME_MESSAGE:
+                        Message m = MessageStreams.readMessage(in, decoder);
+                        if (!holdUntilActivated(source, m)) {
+                            pool.upcall(source, m);
+                        }
+                        break;
+                    case FRAME_ELECT: {
+                        int request = in.readInt();
+                        boolean candidate = in.readBoolean();
+                        String tag = in.readUTF();
+                        int result = coordinate(tag, candidate ? rank : -1);
+                        Connection c = getConnection(source);
+                        synchronized (c) {
+                            c.out.writeByte(FRAME_ELECTION_RESULT);
+                            c.out.writeInt(request);
+                            c.out.writeInt(result);
+                            c.out.flush();
+                        }
+                        break;
+                    }
+                    case FRAME_ELECTION_RESULT: {
+                        int request = in.readInt();
+                        int result = in.readInt();
+                        synchronized (electionResults) {
+                            electionResults.put(request, result);
+                            electionResults.notifyAll();
+                        }
+                        break;
+                    }
+                    case FRAME_TERMINATE:
+                        synchronized (NioCommunicationLayer.this) {
+                            terminated = true;
+                            NioCommunicationLayer.this.notifyAll();
+                        }
+                        break;
+                    default:
+                        throw new IOException("Unknown frame " + frame);
+                    }
+                }
+            } catch (IOException | ClassNotFoundException e) {
+                if (!done) {
+                    logger.warn("Connection from " + (source == null ? "unknown node" : source) + " gave exception", e);
+                }
+            } finally {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+        }
+    }
+
+    public NioCommunicationLayer(final ConstellationProperties properties, Pool pool) throws PoolCreationFailedException {
+        this.pool = pool;
+        this.closedPool = properties.CLOSED;
+        this.compactMessages = properties.COMPACT_MESSAGES;
+        this.partial = properties.BYTEBUFFERS_PARTIAL;
+
+        try {
+            peers = parsePeers(properties.NIO_PEERS);
+        } catch (IllegalArgumentException e) {
+            throw new PoolCreationFailedException("Invalid " + ConstellationProperties.S_NIO_PEERS + " property", e);
+        }
+        if (properties.NIO_RANK < 0 || properties.NIO_RANK >= peers.length) {
+            throw new PoolCreationFailedException(
+                    ConstellationProperties.S_NIO_RANK + " should be an index in the peer list, not " + properties.NIO_RANK);
+        }
+        local = peers[properties.NIO_RANK];
+
+        try {
+            server = ServerSocketChannel.open();
+            server.socket().setReuseAddress(true);
+            server.socket().bind(new InetSocketAddress(local.getPort()));
+        } catch (IOException e) {
+            throw new PoolCreationFailedException("Could not listen on port " + local.getPort(), e);
+        }
+        new Acceptor().start();
+
+        if (logger.isInfoEnabled()) {
+            logger.info("NIO node " + local + ", rank " + local.getRank() + " of " + peers.length);
+        }
+    }
+
+    /**
+     * Parses a comma-separated list of host:port entries, each optionally followed by @site.
+     *
+     * @param list
+     *            the list
+     * @return the nodes in the list, with their index as rank
+     * @throws IllegalArgumentException
+     *             when the list is empty or an entry is invalid
+     */
+    static NioNodeIdentifier[] parsePeers(String list) {
+        if (list == null || list.trim().isEmpty()) {
+            throw new IllegalArgumentException("No peers specified");
+        }
+        String[] entries = list.split(",");
+        NioNodeIdentifier[] result = new NioNodeIdentifier[entries.length];
+        for (int i = 0; i < entries.length; i++) {
+            String entry = entries[i].trim();
+            String site = null;
+            int at = entry.indexOf('@');
+            if (at >= 0) {
+                site = entry.substring(at + 1);
+                entry = entry.substring(0, at);
+            }
+            int colon = entry.lastIndexOf(':');
+            if (colon <= 0) {
+                throw new IllegalArgumentException("Peer " + entries[i] + " is not of the form host:port");
+            }
+            int port;
+            try {
+                port = Integer.parseInt(entry.substring(colon + 1));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Peer " + entries[i] + " has an invalid port", e);
+            }
+            result[i] = new NioNodeIdentifier(i, entry.substring(0, colon), port, site);
+        }
+        return result;
+    }
+
+    @Override
+    public NodeIdentifier getMyIdentifier() {
+        return local;
+    }
+
+    @Override
+    public NodeIdentifier getMaster() {
+        return peers[0];
+    }
+
+    @Override
+    public int getRank() {
+        return local.getRank();
+    }
+
+    @Override
+    public int getPoolSize() {
+        return peers.length;
+    }
+
+    /**
+     * Keeps a message that arrives before this node is activated, and returns whether it did. The reader thread must not block
+     * until activation, because election answers may arrive on the same connection.
+     */
+    private synchronized boolean holdUntilActivated(NioNodeIdentifier source, Message m) {
+        if (!activated && early != null) {
+            early.add(new Arrival(source, m));
+            return true;
+        }
+        while (!activated) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                // ignore
+            }
+        }
+        return false;
+    }
+
+    private Connection connect(NioNodeIdentifier id) throws IOException {
+        long deadline = System.currentTimeMillis() + CONNECT_TIMEOUT;
+        while (true) {
+            SocketChannel channel = null;
+            try {
+                channel = SocketChannel.open(id.getAddress());
+                channel.socket().setTcpNoDelay(true);
+                Connection c = new Connection(channel, compactMessages);
+                c.out.writeInt(local.getRank());
+                c.out.flush();
+                return c;
+            } catch (IOException e) {
+                if (channel != null) {
+                    channel.close();
+                }
+                if (done || System.currentTimeMillis() >= deadline) {
+                    logger.error("Could not connect to " + id, e);
+                    throw e;
+                }
+            }
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                // ignore
+            }
+        }
+    }
+
+    private Connection getConnection(NodeIdentifier dest) throws IOException {
+        Connection c = connections.get(dest);
+        if (c == null) {
+            if (!(dest instanceof NioNodeIdentifier)) {
+                throw new IOException("Not a node of this pool: " + dest);
+            }
+            c = connect((NioNodeIdentifier) dest);
+            Connection c2 = connections.putIfAbsent(dest, c);
+            if (c2 != null) {
+                c.close();
+                c = c2;
+            }
+        }
+        return c;
+    }
+
+    @Override
+    public boolean sendMessage(NodeIdentifier dest, Message m) {
+        Connection c = null;
+        try {
+            c = getConnection(dest);
+            synchronized (c) {
+                c.out.writeByte(FRAME_MESSAGE);
+                MessageStreams.writeMessage(c.out, m, c.encoder, partial);
+                c.out.flush();
+            }
+        } catch (IOException e) {
+            logger.warn("Communication to " + dest + " gave exception", e);
+            if (c != null) {
+                // Part of a message may have been written, so the connection cannot be used anymore.
+                connections.remove(dest, c);
+                c.close();
+            }
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * On the master, decides an election: the first candidate for a tag is elected. Returns the rank of the elected node, or -1.
+     */
+    private int coordinate(String tag, int candidate) {
+        synchronized (elections) {
+            Integer result = elections.get(tag);
+            if (result == null && candidate >= 0) {
+                result = candidate;
+                elections.put(tag, result);
+            }
+            return result == null ? -1 : result;
+        }
+    }
+
+    /**
+     * Asks the master who was elected for the specified tag, optionally proposing this node.
+     */
+    private NioNodeIdentifier election(String tag, boolean candidate) throws IOException {
+        int result;
+        if (local.getRank() == 0) {
+            result = coordinate(tag, candidate ? 0 : -1);
+        } else {
+            int request;
+            synchronized (electionResults) {
+                request = nextRequest++;
+            }
+            Connection c = getConnection(peers[0]);
+            synchronized (c) {
+                c.out.writeByte(FRAME_ELECT);
+                c.out.writeInt(request);
+                c.out.writeBoolean(candidate);
+                c.out.writeUTF(tag);
+                c.out.flush();
+            }
+            long deadline = System.currentTimeMillis() + ELECTION_TIMEOUT;
+            synchronized (electionResults) {
+                while (!electionResults.containsKey(request)) {
+                    long left = deadline - System.currentTimeMillis();
+                    if (left <= 0) {
+                        throw new IOException("No answer from " + peers[0] + " for election " + tag);
+                    }
+                    try {
+                        electionResults.wait(left);
+                    } catch (InterruptedException e) {
+                        // ignore
+                    }
+                }
+                result = electionResults.remove(request);
+            }
+        }
+        return result < 0 ? null : peers[result];
+    }
+
+    @Override
+    public NodeIdentifier elect(String electTag) throws IOException {
+        return election(electTag, true);
+    }
+
+    @Override
+    public NodeIdentifier getElectionResult(String electTag, long timeout) throws IOException {
+        long deadline = timeout > 0 ? System.currentTimeMillis() + timeout : Long.MAX_VALUE;
+        while (true) {
+            NioNodeIdentifier id = election(electTag, false);
+            long left = deadline - System.currentTimeMillis();
+            if (id != null || left <= 0) {
+                return id;
+            }
+            try {
+                Thread.sleep(Math.min(100, left));
+            } catch (InterruptedException e) {
+                // ignore
+            }
+        }
+    }
+
+    @Override
+    public void terminate() throws IOException {
+        if (local.getRank() == 0) {
+            for (NioNodeIdentifier id : peers) {
+                if (id.getRank() != 0) {
+                    try {
+                        Connection c = getConnection(id);
+                        synchronized (c) {
+                            c.out.writeByte(FRAME_TERMINATE);
+                            c.out.flush();
+                        }
+                    } catch (IOException e) {
+                        logger.warn("Could not tell " + id + " to terminate", e);
+                    }
+                }
+            }
+        } else {
+            synchronized (this) {
+                while (!terminated) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        // ignore
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public void cleanup() {
+        done = true;
+        try {
+            server.close();
+        } catch (IOException e) {
+            logger.info("Close server socket got exception", e);
+        }
+        for (Connection c : connections.values()) {
+            c.close();
+        }
+        connections.clear();
+        synchronized (incoming) {
+            for (SocketChannel c : incoming) {
+                try {
+                    c.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+            incoming.clear();
+        }
+    }
+
+    @Override
+    public void activate() {
+        ArrayList<Arrival> messages;
+        synchronized (this) {
+            messages = early;
+            early = null;
+        }
+        for (Arrival a : messages) {
+            pool.upcall(a.source, a.message);
+        }
+        synchronized (this) {
+            activated = true;
+            notifyAll();
+        }
+    }
+
+    @Override
+    public NodeIdentifier[] getNodeIdentifiers() {
+        if (!closedPool) {
+            return null;
+        }
+        return peers.clone();
+    }
+
+    @Override
+    public void cleanup(NodeIdentifier node) {
+        Connection c = connections.remove(node);
+        if (c != null) {
+            c.close();
+        }
+    }
+}
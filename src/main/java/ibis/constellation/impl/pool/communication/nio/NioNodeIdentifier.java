@@ -0,0 +1,84 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.constellation.impl.pool.communication.nio;
+
+import java.net.InetSocketAddress;
+
+import ibis.constellation.impl.pool.communication.NodeIdentifier;
+
+public class NioNodeIdentifier implements NodeIdentifier {
+
+    private static final long serialVersionUID = -2793398000458911853L;
+
+    private final int rank;
+    private final String host;
+    private final int port;
+    private final String site;
+
+    public NioNodeIdentifier(int rank, String host, int port, String site) {
+        this.rank = rank;
+        this.host = host;
+        this.port = port;
+        this.site = site == null ? "" : site;
+    }
+
+    @Override
+    public String name() {
+        return host + ":" + port;
+    }
+
+    @Override
+    public String site() {
+        return site;
+    }
+
+    /**
+     * Returns the index of this node in the peer list.
+     *
+     * @return the rank
+     */
+    public int getRank() {
+        return rank;
+    }
+
+    InetSocketAddress getAddress() {
+        return new InetSocketAddress(host, port);
+    }
+
+    int getPort() {
+        return port;
+    }
+
+    @Override
+    public String toString() {
+        return name();
+    }
+
+    @Override
+    public int hashCode() {
+        return rank;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof NioNodeIdentifier)) {
+            return false;
+        }
+        NioNodeIdentifier other = (NioNodeIdentifier) o;
+        return rank == other.rank && port == other.port && host.equals(other.host);
+    }
+}
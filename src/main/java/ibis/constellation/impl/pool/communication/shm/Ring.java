@@ -0,0 +1,339 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.constellation.impl.pool.communication.shm;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A single-producer, single-consumer byte ring in a memory-mapped file, through which one process streams data to another
+ * process on the same host. The writer and the reader each map the file, and only exchange their positions through the header
+ * of the file: the writer publishes how many bytes it has written, the reader how many it has consumed.
+ *
+ * Accesses to the mapped file are plain, so the position updates are ordered with respect to the data with explicit fences: a
+ * position is published after a store fence (written data) or load fence (consumed data), and read before a load fence. Rings
+ * are not available on JVMs that do not offer these fences.
+ *
+ * A reader that finds no data spins briefly, and then parks for increasing periods: up to a tenth of a millisecond while the
+ * writer was recently active, and up to a few milliseconds once the ring has been idle for a while, so that idle rings do not
+ * keep their readers busy.
+ */
+final class Ring {
+
+    /** The total number of bytes consumed by the reader. */
+    private static final int HEAD = 0;
+
+    /** The total number of bytes published by the writer, on a different cache line than the head. */
+    private static final int TAIL = 64;
+
+    private static final int CAPACITY = 128;
+
+    private static final int MAGIC = 132;
+
+    private static final int DATA = 192;
+
+    private static final int RING_MAGIC = 0x52494e47;
+
+    /** Number of times to check for progress of the other side before parking. */
+    private static final int SPINS = 1000;
+
+    /** Maximum time to park while waiting for the other side, in nanoseconds. */
+    private static final long MAX_PARK = 100000;
+
+    /** Time without progress after which the other side is considered idle, in nanoseconds. */
+    private static final long IDLE = 10000000;
+
+    /** Maximum time to park while the other side is idle, in nanoseconds. */
+    private static final long MAX_IDLE_PARK = 5000000;
+
+    // The fences of sun.misc.Unsafe, looked up reflectively because it is not part of the public API. Calls through constant
+    // method handles are inlined by the JIT.
+    private static final MethodHandle LOAD_FENCE = getFence("loadFence");
+
+    private static final MethodHandle STORE_FENCE = getFence("storeFence");
+
+    private static MethodHandle getFence(String name) {
+        try {
+            Class<?> c = Class.forName("sun.misc.Unsafe");
+            Field f = c.getDeclaredField("theUnsafe");
+            f.setAccessible(true);
+            return MethodHandles.lookup().findVirtual(c, name, MethodType.methodType(void.class)).bindTo(f.get(null));
+        } catch (Throwable e) {
+            return null;
+        }
+    }
+
+    private static void loadFence() {
+        try {
+            LOAD_FENCE.invokeExact();
+        } catch (Throwable e) {
+            throw new IllegalStateException("Load fence failed", e);
+        }
+    }
+
+    private static void storeFence() {
+        try {
+            STORE_FENCE.invokeExact();
+        } catch (Throwable e) {
+            throw new IllegalStateException("Store fence failed", e);
+        }
+    }
+
+    private final MappedByteBuffer buffer;
+
+    private final ByteBuffer data;
+
+    private final int capacity;
+
+    private Ring(MappedByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.getInt(MAGIC) != RING_MAGIC) {
+            throw new IOException("Not a ring buffer");
+        }
+        capacity = buffer.getInt(CAPACITY);
+        buffer.position(DATA);
+        buffer.limit(DATA + capacity);
+        data = buffer.slice();
+        buffer.clear();
+    }
+
+    /**
+     * Creates a new ring file of the specified capacity, and maps it.
+     */
+    static Ring create(File file, int capacity) throws IOException {
+        checkFences();
+        try (RandomAccessFile f = new RandomAccessFile(file, "rw"); FileChannel c = f.getChannel()) {
+            f.setLength(DATA + capacity);
+            MappedByteBuffer b = c.map(FileChannel.MapMode.READ_WRITE, 0, DATA + capacity);
+            b.putLong(HEAD, 0);
+            b.putLong(TAIL, 0);
+            b.putInt(CAPACITY, capacity);
+            b.putInt(MAGIC, RING_MAGIC);
+            return new Ring(b);
+        }
+    }
+
+    /**
+     * Maps an existing ring file.
+     */
+    static Ring open(File file) throws IOException {
+        checkFences();
+        try (RandomAccessFile f = new RandomAccessFile(file, "rw"); FileChannel c = f.getChannel()) {
+            if (f.length() < DATA) {
+                throw new IOException("Not a ring buffer");
+            }
+            return new Ring(c.map(FileChannel.MapMode.READ_WRITE, 0, f.length()));
+        }
+    }
+
+    private static void checkFences() throws IOException {
+        if (LOAD_FENCE == null || STORE_FENCE == null) {
+            throw new IOException("Memory fences are not available, cannot use ring buffers");
+        }
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Reads a position published by the other side. Accesses to the data after this are not reordered before it.
+     */
+    private long get(int index) {
+        long v = buffer.getLong(index);
+        loadFence();
+        return v;
+    }
+
+    /**
+     * Publishes the position after data that was written.
+     */
+    private void release(int index, long value) {
+        storeFence();
+        buffer.putLong(index, value);
+    }
+
+    /**
+     * Publishes the position after data that was read, so that the other side does not overwrite it while it is being read.
+     */
+    private void consumed(int index, long value) {
+        loadFence();
+        buffer.putLong(index, value);
+    }
+
+    /**
+     * Waits for the other side to move, for at most <code>timeout</code> nanoseconds in total since <code>start</code>.
+     */
+    private static void backoff(int attempt, long start, long timeout) throws IOException {
+        if (attempt < SPINS) {
+            return;
+        }
+        long waited = System.nanoTime() - start;
+        if (waited > timeout) {
+            throw new IOException("Ring buffer peer did not make progress for " + (timeout / 1000000) + " ms");
+        }
+        LockSupport.parkNanos(parkTime(attempt, waited));
+    }
+
+    /**
+     * Returns how long to park after the specified number of attempts and time without progress, in nanoseconds.
+     */
+    static long parkTime(int attempt, long waited) {
+        if (waited < IDLE) {
+            return Math.min(MAX_PARK, 1000L << Math.min(7, Math.max(0, attempt - SPINS) / 100));
+        }
+        // Idle: the extra latency stays a small fraction of the time the other side was idle.
+        return Math.min(MAX_IDLE_PARK, Math.max(MAX_PARK, waited / 8));
+    }
+
+    /**
+     * The writing side of a ring. Written data becomes visible to the reader on {@link #flush()}, or when the ring is full.
+     */
+    final class Output extends OutputStream {
+
+        private long position;
+        private final long timeout;
+
+        /**
+         * @param timeout
+         *            how long to wait for the reader to make room, in milliseconds
+         */
+        Output(long timeout) {
+            this.position = buffer.getLong(TAIL);
+            this.timeout = timeout * 1000000L;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            awaitRoom();
+            data.put((int) (position % capacity), (byte) b);
+            position++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                int room = awaitRoom();
+                int index = (int) (position % capacity);
+                int n = Math.min(len, Math.min(room, capacity - index));
+                ByteBuffer d = data.duplicate();
+                d.position(index);
+                d.put(b, off, n);
+                position += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        private int awaitRoom() throws IOException {
+            long head = get(HEAD);
+            if (position - head < capacity) {
+                return (int) (capacity - (position - head));
+            }
+            // Publish what we have, or the reader cannot make room.
+            flush();
+            long start = System.nanoTime();
+            for (int attempt = 0;; attempt++) {
+                head = get(HEAD);
+                if (position - head < capacity) {
+                    return (int) (capacity - (position - head));
+                }
+                backoff(attempt, start, timeout);
+            }
+        }
+
+        @Override
+        public void flush() {
+            release(TAIL, position);
+        }
+    }
+
+    /**
+     * The reading side of a ring. Blocks until data is available; it never reports end of stream.
+     */
+    final class Input extends InputStream {
+
+        private long position;
+
+        private volatile boolean closed;
+
+        Input() {
+            this.position = buffer.getLong(HEAD);
+        }
+
+        @Override
+        public int read() throws IOException {
+            awaitData();
+            byte b = data.get((int) (position % capacity));
+            position++;
+            consumed(HEAD, position);
+            return b & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            long available = awaitData();
+            int index = (int) (position % capacity);
+            int n = (int) Math.min(len, Math.min(available, capacity - index));
+            ByteBuffer d = data.duplicate();
+            d.position(index);
+            d.get(b, off, n);
+            position += n;
+            consumed(HEAD, position);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, get(TAIL) - position);
+        }
+
+        private long awaitData() throws IOException {
+            long start = System.nanoTime();
+            for (int attempt = 0;; attempt++) {
+                if (closed) {
+                    throw new IOException("Ring closed");
+                }
+                long available = get(TAIL) - position;
+                if (available > 0) {
+                    return available;
+                }
+                // The writer may be idle for a long time, which is not an error for the reader.
+                backoff(attempt, start, Long.MAX_VALUE);
+            }
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}
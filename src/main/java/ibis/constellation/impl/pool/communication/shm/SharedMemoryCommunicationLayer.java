@@ -0,0 +1,461 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.constellation.impl.pool.communication.shm;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ibis.constellation.ConstellationProperties;
+import ibis.constellation.impl.pool.ControlMessageCodec;
+import ibis.constellation.impl.pool.Pool;
+import ibis.constellation.impl.pool.PoolCreationFailedException;
+import ibis.constellation.impl.pool.communication.CommunicationLayer;
+import ibis.constellation.impl.pool.communication.Message;
+import ibis.constellation.impl.pool.communication.MessageStreams;
+import ibis.constellation.impl.pool.communication.NodeIdentifier;
+
+/**
+ * A <code>CommunicationLayer</code> that sends messages to nodes on the same host through memory-mapped {@link Ring rings}, and
+ * all other messages through another communication layer.
+ *
+ * Every node has an inbox directory, below "shm.dir", named after the master and itself. A node holds a lock on a file in its
+ * inbox while it runs, so that others can tell a live inbox from one left behind by an earlier run. The first time a node sends
+ * to another node, it looks for a live inbox of that node. If there is one, the other node runs on the same host, and the sender
+ * creates a ring in it that the receiver picks up; otherwise, all messages to that node go through the other layer. The choice is
+ * made once per destination, so messages to a destination stay in order.
+ *
+ * The inbox directory must be on a file system that is local to the host, preferably a memory file system such as /dev/shm.
+ */
+public class SharedMemoryCommunicationLayer implements CommunicationLayer {
+
+    private static final Logger logger = LoggerFactory.getLogger(SharedMemoryCommunicationLayer.class);
+
+    private static final String OWNER_FILE = "owner.lock";
+
+    private static final String RING_SUFFIX = ".ring";
+
+    /** How often to look for new rings in the inbox, in milliseconds. */
+    private static final long SCAN_INTERVAL = 10;
+
+    /** How long a sender waits for room in a ring, in milliseconds. */
+    private static final long SEND_TIMEOUT = 60000;
+
+    /** The inboxes of the nodes in this JVM, which cannot be checked with file locks. */
+    private static final Set<File> owned = new HashSet<File>();
+
+    private final CommunicationLayer base;
+
+    private final Pool pool;
+
+    private final NodeIdentifier local;
+
+    private final File runDir;
+
+    private final File inbox;
+
+    private final FileChannel ownerChannel;
+
+    private final FileLock ownerLock;
+
+    private final int size;
+
+    private final boolean compactMessages;
+
+    private final boolean partial;
+
+    private final AtomicInteger rings = new AtomicInteger();
+
+    /**
+     * A ring to a node on the same host.
+     */
+    private static final class Outgoing {
+
+        final File file;
+        final DataOutputStream out;
+        final ControlMessageCodec.Encoder encoder;
+
+        Outgoing(File file, DataOutputStream out, ControlMessageCodec.Encoder encoder) {
+            this.file = file;
+            this.out = out;
+            this.encoder = encoder;
+        }
+    }
+
+    private final ConcurrentHashMap<NodeIdentifier, Outgoing> outgoing = new ConcurrentHashMap<NodeIdentifier, Outgoing>();
+
+    /** The destinations that are not on this host, or that could not be reached through a ring. */
+    private final Set<NodeIdentifier> remote = ConcurrentHashMap.newKeySet();
+
+    private final ArrayList<Reader> readers = new ArrayList<Reader>();
+
+    private final HashSet<String> known = new HashSet<String>();
+
+    private Scanner scanner;
+
+    private volatile boolean done;
+
+    /**
+     * Looks for new rings in the inbox, and starts a reader for each.
+     */
+    private final class Scanner extends Thread {
+
+        Scanner() {
+            super("Constellation shared memory scanner");
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (!done) {
+                File[] files = inbox.listFiles();
+                if (files != null) {
+                    for (File f : files) {
+                        if (f.getName().endsWith(RING_SUFFIX) && known.add(f.getName())) {
+                            try {
+                                Reader r = new Reader(Ring.open(f));
+                                synchronized (readers) {
+                                    readers.add(r);
+                                }
+                                r.start();
+                            } catch (IOException e) {
+                                logger.warn("Could not open ring " + f, e);
+                            }
+                        }
+                    }
+                }
+                try {
+                    Thread.sleep(SCAN_INTERVAL);
+                } catch (InterruptedException e) {
+                    // ignore
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the messages from a single ring, which start with the identifier of the sender.
+     */
+    private final class Reader extends Thread {
+
+        private final Ring.Input input;
+
+        Reader(Ring ring) {
+            super("Constellation shared memory reader");
+            setDaemon(true);
+            input = ring.new Input();
+        }
+
+        void done() {
+            input.close();
+        }
+
+        @Override
+        public void run() {
+            NodeIdentifier source = null;
+            try {
+                DataInputStream in = new DataInputStream(new BufferedInputStream(input, 65536));
+                byte[] b = new byte[in.readInt()];
+                in.readFully(b);
+                try (ObjectInputStream oin = new ObjectInputStream(new ByteArrayInputStream(b))) {
+                    source = (NodeIdentifier) oin.readObject();
+                }
+                setName("Constellation shared memory reader from " + source);
+                ControlMessageCodec.Decoder decoder = compactMessages ? new ControlMessageCodec.Decoder() : null;
+                while (true) {
+                    pool.upcall(source, MessageStreams.readMessage(in, decoder));
+                }
+            } catch (IOException | ClassNotFoundException e) {
+                if (!done) {
+                    logger.warn("Ring from " + (source == null ? "unknown node" : source) + " gave exception", e);
+                }
+            }
+        }
+    }
+
+    public SharedMemoryCommunicationLayer(CommunicationLayer base, final ConstellationProperties properties, Pool pool)
+            throws PoolCreationFailedException {
+        this.base = base;
+        this.pool = pool;
+        this.local = base.getMyIdentifier();
+        this.size = properties.SHM_SIZE;
+        this.compactMessages = properties.COMPACT_MESSAGES;
+        this.partial = properties.BYTEBUFFERS_PARTIAL;
+
+        runDir = new File(properties.SHM_DIR, sanitize(base.getMaster().toString()));
+        inbox = new File(runDir, sanitize(local.name()));
+        if (!inbox.isDirectory() && !inbox.mkdirs()) {
+            throw new PoolCreationFailedException("Could not create shared memory inbox " + inbox);
+        }
+
+        // Nobody can be sending to us yet, because we do not hold the lock. Rings that are left are from an earlier run.
+        File[] stale = inbox.listFiles();
+        if (stale != null) {
+            for (File f : stale) {
+                if (!f.getName().equals(OWNER_FILE) && !f.delete()) {
+                    logger.warn("Could not remove stale file " + f);
+                }
+            }
+        }
+
+        try {
+            ownerChannel = FileChannel.open(new File(inbox, OWNER_FILE).toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE);
+            ownerLock = ownerChannel.tryLock();
+        } catch (IOException e) {
+            throw new PoolCreationFailedException("Could not lock shared memory inbox " + inbox, e);
+        }
+        if (ownerLock == null) {
+            try {
+                ownerChannel.close();
+            } catch (IOException e) {
+                // ignore
+            }
+            throw new PoolCreationFailedException("Shared memory inbox " + inbox + " is in use by another process");
+        }
+        synchronized (owned) {
+            owned.add(inbox.getAbsoluteFile());
+        }
+
+        if (logger.isInfoEnabled()) {
+            logger.info("Shared memory inbox of " + local + " is " + inbox);
+        }
+    }
+
+    /**
+     * Makes a node name usable as a file name.
+     */
+    static String sanitize(String name) {
+        StringBuilder b = new StringBuilder(name.length());
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            b.append(Character.isLetterOrDigit(c) || c == '.' || c == '-' ? c : '_');
+        }
+        return b.toString();
+    }
+
+    /**
+     * Returns whether the specified inbox belongs to a running node.
+     */
+    private static boolean isLive(File dir) {
+        synchronized (owned) {
+            if (owned.contains(dir.getAbsoluteFile())) {
+                return true;
+            }
+        }
+        File lock = new File(dir, OWNER_FILE);
+        if (!lock.exists()) {
+            return false;
+        }
+        try (FileChannel c = FileChannel.open(lock.toPath(), StandardOpenOption.WRITE)) {
+            FileLock l = c.tryLock();
+            if (l != null) {
+                l.release();
+                return false;
+            }
+            return true;
+        } catch (OverlappingFileLockException e) {
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns the ring to the specified destination, creating it if the destination has a live inbox on this host. Returns
+     * <code>null</code> when messages to the destination must go through the other layer.
+     */
+    private Outgoing getOutgoing(NodeIdentifier dest) {
+        Outgoing o = outgoing.get(dest);
+        if (o != null || remote.contains(dest)) {
+            return o;
+        }
+        synchronized (outgoing) {
+            o = outgoing.get(dest);
+            if (o != null || remote.contains(dest)) {
+                return o;
+            }
+            File dir = new File(runDir, sanitize(dest.name()));
+            if (isLive(dir)) {
+                try {
+                    o = connect(dir);
+                } catch (IOException e) {
+                    logger.warn("Could not create ring to " + dest + ", using the network", e);
+                }
+            }
+            if (o == null) {
+                remote.add(dest);
+            } else {
+                outgoing.put(dest, o);
+                if (logger.isInfoEnabled()) {
+                    logger.info("Sending to " + dest + " through shared memory");
+                }
+            }
+            return o;
+        }
+    }
+
+    private Outgoing connect(File dir) throws IOException {
+        String name = sanitize(local.name()) + "-" + rings.getAndIncrement();
+        File tmp = new File(dir, name + ".tmp");
+        File file = new File(dir, name + RING_SUFFIX);
+        Ring ring = Ring.create(tmp, size);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(ring.new Output(SEND_TIMEOUT), 65536));
+
+        ByteArrayOutputStream b = new ByteArrayOutputStream();
+        try (ObjectOutputStream oout = new ObjectOutputStream(b)) {
+            oout.writeObject(local);
+        }
+        out.writeInt(b.size());
+        b.writeTo(out);
+        out.flush();
+
+        // The receiver only picks up complete rings.
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            throw new IOException("Could not rename " + tmp + " to " + file);
+        }
+        return new Outgoing(file, out, compactMessages ? new ControlMessageCodec.Encoder() : null);
+    }
+
+    @Override
+    public boolean sendMessage(NodeIdentifier dest, Message m) {
+        Outgoing o = getOutgoing(dest);
+        if (o == null) {
+            return base.sendMessage(dest, m);
+        }
+        synchronized (o) {
+            try {
+                MessageStreams.writeMessage(o.out, m, o.encoder, partial);
+                o.out.flush();
+            } catch (IOException e) {
+                // Part of the message may be in the ring, so it cannot be used anymore.
+                logger.warn("Shared memory communication to " + dest + " gave exception", e);
+                outgoing.remove(dest, o);
+                remote.add(dest);
+                o.file.delete();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public NodeIdentifier getMyIdentifier() {
+        return local;
+    }
+
+    @Override
+    public NodeIdentifier getMaster() {
+        return base.getMaster();
+    }
+
+    @Override
+    public int getRank() {
+        return base.getRank();
+    }
+
+    @Override
+    public int getPoolSize() {
+        return base.getPoolSize();
+    }
+
+    @Override
+    public void terminate() throws IOException {
+        base.terminate();
+    }
+
+    @Override
+    public void cleanup() {
+        done = true;
+        synchronized (readers) {
+            for (Reader r : readers) {
+                r.done();
+            }
+        }
+        try {
+            ownerLock.release();
+            ownerChannel.close();
+        } catch (IOException e) {
+            logger.info("Releasing shared memory inbox got exception", e);
+        }
+        synchronized (owned) {
+            owned.remove(inbox.getAbsoluteFile());
+        }
+        File[] files = inbox.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                f.delete();
+            }
+        }
+        inbox.delete();
+        // Succeeds for the last node of the run on this host.
+        runDir.delete();
+        base.cleanup();
+    }
+
+    @Override
+    public NodeIdentifier getElectionResult(String electTag, long timeout) throws IOException {
+        return base.getElectionResult(electTag, timeout);
+    }
+
+    @Override
+    public NodeIdentifier elect(String electTag) throws IOException {
+        return base.elect(electTag);
+    }
+
+    @Override
+    public void activate() {
+        base.activate();
+        scanner = new Scanner();
+        scanner.start();
+    }
+
+    @Override
+    public NodeIdentifier[] getNodeIdentifiers() {
+        return base.getNodeIdentifiers();
+    }
+
+    @Override
+    public void cleanup(NodeIdentifier node) {
+        Outgoing o = outgoing.remove(node);
+        if (o != null) {
+            o.file.delete();
+        }
+        remote.remove(node);
+        base.cleanup(node);
+    }
+}
@@ -17,11 +17,18 @@
 package ibis.constellation.impl.util;
 
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
 
 import ibis.constellation.impl.TimerImpl;
 
@@ -51,6 +58,73 @@ public class Profiling implements java.io.Serializable {
         this.timers.addAll(s.timers);
     }
 
+    /**
+     * Returns the total number of events in all timers.
+     *
+     * @return the number of events.
+     */
+    public synchronized int countEvents() {
+        int n = 0;
+        for (TimerImpl t : timers) {
+            n += t.nrTimes();
+        }
+        return n;
+    }
+
+    /**
+     * Encodes a range of the events of all timers in a compressed binary form, so that the profiling data can be sent in chunks
+     * of limited size. Events are numbered over all timers, in order.
+     *
+     * @param from
+     *            the number of the first event to encode
+     * @param max
+     *            the maximum number of events to encode
+     * @return the encoded events.
+     * @throws IOException
+     *             is thrown when encoding fails
+     */
+    public synchronized byte[] encodeEvents(int from, int max) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes));
+        int skip = from;
+        for (TimerImpl t : timers) {
+            if (max == 0) {
+                break;
+            }
+            if (skip >= t.nrTimes()) {
+                skip -= t.nrTimes();
+                continue;
+            }
+            int n = Math.min(max, t.nrTimes() - skip);
+            out.writeInt(n);
+            t.writeEvents(out, skip, n);
+            skip = 0;
+            max -= n;
+        }
+        out.writeInt(0);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decodes events encoded by {@link #encodeEvents(int, int)} and adds them to this profiling object.
+     *
+     * @param data
+     *            the encoded events
+     * @throws IOException
+     *             is thrown when the data cannot be decoded
+     */
+    public void decodeEvents(byte[] data) throws IOException {
+        TimerImpl timer = new TimerImpl(hostId);
+        DataInputStream in = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(data)));
+        int n = in.readInt();
+        while (n > 0) {
+            timer.readEvents(in, n);
+            n = in.readInt();
+        }
+        addTimer(timer);
+    }
+
     /**
      * Print the statistics. This is the entry point for the master in the conclusion phase process all statistics. The statistics
      * from all other nodes have already been added to this.
@@ -17,7 +17,6 @@
 package ibis.constellation.impl.util;
 
 import java.util.HashMap;
-import java.util.Iterator;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -59,8 +58,8 @@ public class SimpleWorkQueue extends WorkQueue {
     }
     
     private void enqueueOr(OrContext c, ActivityRecord a) { 
-        for (Context rc : c) { 
-            enqueueRange(rc, a);
+        for (int i = 0; i < c.size(); i++) { 
+            enqueueRange(c.get(i), a);
         }
     }
     
@@ -113,8 +112,9 @@ public class SimpleWorkQueue extends WorkQueue {
             AbstractContext ctxt = r.getContext();
             if (ctxt instanceof OrContext) {
                 // Yes, there may be other lists in which it exists
-                for (Context rc : (OrContext) ctxt) {
-                    removeByReference(rc, r);
+                OrContext o = (OrContext) ctxt;
+                for (int i = 0; i < o.size(); i++) {
+                    removeByReference(o.get(i), r);
                 }
             }
             size--;
@@ -139,10 +139,8 @@ public class SimpleWorkQueue extends WorkQueue {
         
         ActivityRecord tmp = null;
         
-        Iterator<Context> itt = c.iterator();
-
-        while (tmp == null && itt.hasNext()) { 
-            tmp = stealRange(itt.next(), s);
+        for (int i = 0; tmp == null && i < c.size(); i++) { 
+            tmp = stealRange(c.get(i), s);
         }
 
         if (tmp == null) {
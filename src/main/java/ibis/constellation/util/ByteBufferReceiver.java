@@ -0,0 +1,48 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.constellation.util;
+
+import java.nio.ByteBuffer;
+
+import ibis.constellation.Event;
+
+/**
+ * An object that implements {@link ByteBuffers} may also implement this interface, to receive its byte buffers into buffers of
+ * its own choice, for instance buffers that it already owns or regions of a memory-mapped file, instead of buffers allocated by
+ * Constellation. Constellation uses it for the data of {@link Event events}. When it has deserialized the object, and before it
+ * receives the byte buffer data, it calls {@link #supplyByteBuffers(int[])} with the sizes of the byte buffers that the object
+ * will get in {@link ByteBuffers#popByteBuffers(java.util.List)}.
+ *
+ * The data of a byte buffer is stored in the supplied buffer from its position on. The position and limit of the supplied
+ * buffer are not changed, and it is passed to {@link ByteBuffers#popByteBuffers(java.util.List)} as is. A buffer that is
+ * <code>null</code>, or that has fewer bytes remaining than needed, is replaced by one that Constellation allocates, with
+ * position 0 and limit set to the size of the data.
+ */
+public interface ByteBufferReceiver {
+
+    /**
+     * Returns the buffers to receive the byte buffer data into. Note: an application is not supposed to call this method.
+     * Constellation is responsible for that.
+     *
+     * @param sizes
+     *            the number of bytes to receive for each byte buffer, in the order of
+     *            {@link ByteBuffers#popByteBuffers(java.util.List)}
+     * @return for each size, a buffer, or <code>null</code> to have it allocated. The result itself may also be
+     *         <code>null</code>, or be shorter than <code>sizes</code>.
+     */
+    public ByteBuffer[] supplyByteBuffers(int[] sizes);
+}
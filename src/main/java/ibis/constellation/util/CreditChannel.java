@@ -0,0 +1,230 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.constellation.util;
+
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import ibis.constellation.Activity;
+import ibis.constellation.ActivityIdentifier;
+import ibis.constellation.Constellation;
+import ibis.constellation.Event;
+
+/**
+ * A <code>CreditChannel</code> is one end of a flow-controlled stream of events between two activities. Each end may have at
+ * most <code>window</code> events underway to the other end. Received events are acknowledged by granting credits back to the
+ * sender, which piggyback on events that are sent to the sender anyway, or are sent in a credit-only event once half of the
+ * window has been received. An activity that wants to send while {@link #canSend()} returns <code>false</code> should return
+ * {@link Activity#SUSPEND}; it will be resumed by the event that carries the new credits.
+ *
+ * A typical producer activity creates its channel in {@link Activity#initialize(Constellation)}, sends while it can, and in
+ * {@link Activity#process(Constellation, Event)} passes the event to {@link #receive(Event)} before sending more. A typical
+ * consumer passes each event to {@link #receive(Event)}, handles the data, and then calls {@link #release(Constellation)}. Both
+ * ends must use the same window size, and both activities must expect events.
+ *
+ * A <code>CreditChannel</code> is not thread-safe, and is meant to be a field of the activity that owns it. It is serializable, so
+ * that the activity can still be stolen.
+ */
+public class CreditChannel implements Serializable {
+
+    private static final long serialVersionUID = 3604180364530468795L;
+
+    /**
+     * The data of an event sent over a credit channel.
+     */
+    static final class CreditMessage implements Serializable, ByteBuffers {
+
+        private static final long serialVersionUID = -2479325290917440853L;
+
+        final Object data;
+        final int credits;
+        final boolean creditsOnly;
+
+        CreditMessage(Object data, int credits, boolean creditsOnly) {
+            this.data = data;
+            this.credits = credits;
+            this.creditsOnly = creditsOnly;
+        }
+
+        @Override
+        public void pushByteBuffers(List<ByteBuffer> list) {
+            if (data != null && data instanceof ByteBuffers) {
+                ((ByteBuffers) data).pushByteBuffers(list);
+            }
+        }
+
+        @Override
+        public void popByteBuffers(List<ByteBuffer> list) {
+            if (data != null && data instanceof ByteBuffers) {
+                ((ByteBuffers) data).popByteBuffers(list);
+            }
+        }
+    }
+
+    private final ActivityIdentifier self;
+    private ActivityIdentifier peer;
+
+    private final int window;
+
+    /** The number of events this end may still send. */
+    private int credits;
+
+    /** The number of received events that have not been acknowledged yet. */
+    private int received;
+
+    /**
+     * Constructs one end of a <code>CreditChannel</code>.
+     *
+     * @param self
+     *            the identifier of the activity that owns this end
+     * @param peer
+     *            the identifier of the activity at the other end, or <code>null</code> if it is to be taken from the first event
+     *            received
+     * @param window
+     *            the maximum number of events underway in each direction
+     * @throws IllegalArgumentException
+     *             when <code>self</code> is <code>null</code> or <code>window</code> is not positive
+     */
+    public CreditChannel(ActivityIdentifier self, ActivityIdentifier peer, int window) {
+        if (self == null) {
+            throw new IllegalArgumentException("Channel owner must be specified");
+        }
+        if (window <= 0) {
+            throw new IllegalArgumentException("Window size must be positive, not " + window);
+        }
+        this.self = self;
+        this.peer = peer;
+        this.window = window;
+        this.credits = window;
+    }
+
+    /**
+     * Returns the identifier of the activity at the other end, or <code>null</code> if it is not known yet.
+     *
+     * @return the peer activity
+     */
+    public ActivityIdentifier getPeer() {
+        return peer;
+    }
+
+    /**
+     * Returns whether an event may be sent to the other end now.
+     *
+     * @return whether there are credits left
+     */
+    public boolean canSend() {
+        return peer != null && credits > 0;
+    }
+
+    /**
+     * Returns the number of events that may be sent to the other end before new credits are needed.
+     *
+     * @return the number of credits left
+     */
+    public int getCredits() {
+        return credits;
+    }
+
+    /**
+     * Sends an event with the specified data to the other end, together with credits for the events received so far.
+     *
+     * @param c
+     *            the constellation to send the event with
+     * @param data
+     *            the data of the event
+     * @throws IllegalStateException
+     *             when the other end is not known yet, or there are no credits left
+     */
+    public void send(Constellation c, Object data) {
+        if (peer == null) {
+            throw new IllegalStateException("Peer of channel " + self + " is not known yet");
+        }
+        if (credits == 0) {
+            throw new IllegalStateException("No credits left on channel " + self + " to " + peer);
+        }
+        credits--;
+        c.send(new Event(self, peer, new CreditMessage(data, received, false)));
+        received = 0;
+    }
+
+    /**
+     * Returns whether the specified event was sent over this channel, by the other end.
+     *
+     * @param e
+     *            the event
+     * @return whether the event belongs to this channel
+     */
+    public boolean accepts(Event e) {
+        return e.getData() instanceof CreditMessage && (peer == null || peer.equals(e.getSource()));
+    }
+
+    /**
+     * Returns whether the specified event, which must belong to this channel, carries data, as opposed to only credits.
+     *
+     * @param e
+     *            the event
+     * @return whether the event carries data
+     */
+    public boolean carriesData(Event e) {
+        return !((CreditMessage) e.getData()).creditsOnly;
+    }
+
+    /**
+     * Processes an event from the other end: adds the credits it carries, and returns its data. Events that only carry credits
+     * are not counted as received, and return <code>null</code>; see {@link #carriesData(Event)}.
+     *
+     * @param e
+     *            the event
+     * @return the data of the event
+     * @throws IllegalArgumentException
+     *             when the event does not belong to this channel
+     */
+    public Object receive(Event e) {
+        if (!accepts(e)) {
+            throw new IllegalArgumentException("Event " + e + " does not belong to channel " + self);
+        }
+        if (peer == null) {
+            peer = e.getSource();
+        }
+        CreditMessage m = (CreditMessage) e.getData();
+        credits += m.credits;
+        if (!m.creditsOnly) {
+            received++;
+        }
+        return m.data;
+    }
+
+    /**
+     * Acknowledges the events received so far with a credit-only event, if they amount to at least half of the window. Should be
+     * called after the received data has been handled, so that the other end cannot run ahead of this one.
+     *
+     * @param c
+     *            the constellation to send the credits with
+     */
+    public void release(Constellation c) {
+        if (received > 0 && received >= (window + 1) / 2) {
+            c.send(new Event(self, peer, new CreditMessage(null, received, true)));
+            received = 0;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "CreditChannel(" + self + " -> " + peer + ", credits = " + credits + ", received = " + received + ")";
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.constellation.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+
+/**
+ * A region of a file, to be used as {@link ibis.constellation.Event event} data. On the sending side, the region is mapped into
+ * memory and sent from there, without copying it into the Java heap. On the receiving side, the data ends up in a buffer
+ * allocated by Constellation, or, when a target file is specified, directly in a memory-mapped region of that file.
+ */
+public class MappedFileRegion implements Serializable, ByteBuffers, ByteBufferReceiver {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String file;
+
+    private final long offset;
+
+    private final int length;
+
+    private final String target;
+
+    private final long targetOffset;
+
+    private transient ByteBuffer buffer;
+
+    /**
+     * Constructs a region of the specified file, to be received into a buffer allocated by Constellation.
+     *
+     * @param file
+     *            the file
+     * @param offset
+     *            the offset of the region in the file
+     * @param length
+     *            the length of the region
+     */
+    public MappedFileRegion(File file, long offset, int length) {
+        this(file, offset, length, null, 0);
+    }
+
+    /**
+     * Constructs a region of the specified file, to be received into a region of the specified target file, at the specified
+     * offset. The target file is extended if needed.
+     *
+     * @param file
+     *            the file
+     * @param offset
+     *            the offset of the region in the file
+     * @param length
+     *            the length of the region
+     * @param target
+     *            the target file on the receiving node, or <code>null</code>
+     * @param targetOffset
+     *            the offset in the target file
+     */
+    public MappedFileRegion(File file, long offset, int length, File target, long targetOffset) {
+        if (offset < 0 || length < 0 || targetOffset < 0) {
+            throw new IllegalArgumentException("Illegal region: offset " + offset + ", length " + length + ", target offset "
+                    + targetOffset);
+        }
+        this.file = file.getPath();
+        this.offset = offset;
+        this.length = length;
+        this.target = target == null ? null : target.getPath();
+        this.targetOffset = targetOffset;
+    }
+
+    /**
+     * Returns the buffer with the data of this region. On the sending side, this is the mapped region of the file, on the
+     * receiving side the received data.
+     *
+     * @return the buffer
+     */
+    public synchronized ByteBuffer getBuffer() {
+        if (buffer == null) {
+            buffer = map(file, FileChannel.MapMode.READ_ONLY, offset, length);
+        }
+        return buffer.duplicate();
+    }
+
+    /**
+     * Returns the file of this region.
+     *
+     * @return the file
+     */
+    public File getFile() {
+        return new File(file);
+    }
+
+    /**
+     * Returns the offset of this region in its file.
+     *
+     * @return the offset
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * Returns the length of this region.
+     *
+     * @return the length
+     */
+    public int getLength() {
+        return length;
+    }
+
+    @Override
+    public void pushByteBuffers(List<ByteBuffer> list) {
+        list.add(getBuffer());
+    }
+
+    @Override
+    public synchronized void popByteBuffers(List<ByteBuffer> list) {
+        buffer = list.remove(0);
+    }
+
+    @Override
+    public ByteBuffer[] supplyByteBuffers(int[] sizes) {
+        if (target == null || sizes.length == 0) {
+            return null;
+        }
+        return new ByteBuffer[] { map(target, FileChannel.MapMode.READ_WRITE, targetOffset, sizes[0]) };
+    }
+
+    private static ByteBuffer map(String path, FileChannel.MapMode mode, long offset, int length) {
+        try (RandomAccessFile f = new RandomAccessFile(path, mode == FileChannel.MapMode.READ_ONLY ? "r" : "rw")) {
+            return f.getChannel().map(mode, offset, length);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not map " + length + " bytes at offset " + offset + " of " + path, e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "MappedFileRegion(" + file + ", " + offset + ", " + length + ")";
+    }
+}
@@ -117,4 +117,26 @@ public class ConstellationPropertiesTest {
         /* ConstellationProperties cp = */ new ConstellationProperties(p);
     }
 
+    @Test
+    public void testAggregationDefault() {
+
+        ConstellationProperties cp = new ConstellationProperties(new Properties());
+
+        assertFalse(cp.AGGREGATION);
+        assertEquals(cp.AGGREGATION_SIZE, 65536);
+    }
+
+    @Test
+    public void testAggregation() {
+
+        Properties p = new Properties();
+        p.put("ibis.constellation.aggregation", "true");
+        p.put("ibis.constellation.aggregation.delay", "10");
+
+        ConstellationProperties cp = new ConstellationProperties(p);
+
+        assertTrue(cp.AGGREGATION);
+        assertEquals(cp.AGGREGATION_DELAY, 10);
+    }
+
 }
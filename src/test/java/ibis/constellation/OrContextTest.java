@@ -163,4 +163,26 @@ public class OrContextTest {
         OrContext c = new OrContext(new Context("A", 0, 0), new Context("B", 0, 0));
         assertEquals("OrContext(Context(A, 0-0), Context(B, 0-0))", c.toString());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testEquals() {
+        OrContext c1 = new OrContext(new Context("A", 0, 0), new Context("B", 0, 0));
+        OrContext c2 = new OrContext(new Context("A", 0, 0), new Context("B", 0, 0));
+        assertTrue(c1.equals(c2));
+        assertEquals(c1.hashCode(), c2.hashCode());
+    }
+
+    @Test
+    public void testNotEquals() {
+        OrContext c1 = new OrContext(new Context("A", 0, 0), new Context("B", 0, 0));
+        OrContext c2 = new OrContext(new Context("A", 0, 0), new Context("B", 0, 1));
+        assertFalse(c1.equals(c2));
+    }
+
+    @Test
+    public void testNotEqualsOtherType() {
+        OrContext c = new OrContext(new Context("A", 0, 0), new Context("B", 0, 0));
+        assertFalse(c.equals(new Context("A", 0, 0)));
+        assertFalse(c.equals(null));
+    }
+}
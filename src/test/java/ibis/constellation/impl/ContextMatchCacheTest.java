@@ -0,0 +1,68 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.constellation.impl;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import ibis.constellation.Context;
+import ibis.constellation.OrContext;
+
+public class ContextMatchCacheTest {
+
+    @Test
+    public void matchContext() {
+        ContextMatchCache cache = new ContextMatchCache(new Context("A", 0, 10));
+        assertTrue(cache.match(new Context("A", 5)));
+        assertTrue(cache.match(new Context("A", 5)));
+    }
+
+    @Test
+    public void noMatchContext() {
+        ContextMatchCache cache = new ContextMatchCache(new Context("A", 0, 10));
+        assertFalse(cache.match(new Context("A", 11)));
+        assertFalse(cache.match(new Context("A", 11)));
+    }
+
+    @Test
+    public void noMatchNull() {
+        ContextMatchCache cache = new ContextMatchCache(new Context("A"));
+        assertFalse(cache.match(null));
+    }
+
+    @Test
+    public void matchOrContext() {
+        ContextMatchCache cache = new ContextMatchCache(new OrContext(new Context("A"), new Context("B")));
+        assertTrue(cache.match(new Context("B", 3)));
+        assertTrue(cache.match(new OrContext(new Context("C"), new Context("B", 3))));
+        assertFalse(cache.match(new OrContext(new Context("C"), new Context("D"))));
+    }
+
+    @Test
+    public void manyContexts() {
+        // More contexts than the cache can hold, so entries get replaced.
+        ContextMatchCache cache = new ContextMatchCache(new Context("A", 0, 99));
+        for (int round = 0; round < 2; round++) {
+            for (int i = 0; i < 200; i++) {
+                assertTrue(cache.match(new Context("A", i)) == (i < 100));
+                assertFalse(cache.match(new Context("B", i)));
+            }
+        }
+    }
+}
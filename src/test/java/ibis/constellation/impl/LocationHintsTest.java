@@ -0,0 +1,63 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.constellation.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class LocationHintsTest {
+
+    private static ActivityIdentifierImpl aid(long seq) {
+        return ActivityIdentifierImpl.createActivityIdentifier(new ConstellationIdentifierImpl(0, 0), seq, true);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void zeroSize() {
+        new LocationHints(0);
+    }
+
+    @Test
+    public void unknown() {
+        LocationHints hints = new LocationHints(4);
+        assertNull(hints.get(aid(1)));
+    }
+
+    @Test
+    public void update() {
+        LocationHints hints = new LocationHints(4);
+        hints.put(aid(1), new ConstellationIdentifierImpl(1, 0));
+        hints.put(aid(1), new ConstellationIdentifierImpl(2, 0));
+        assertEquals(new ConstellationIdentifierImpl(2, 0), hints.get(aid(1)));
+        assertEquals(1, hints.size());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() {
+        LocationHints hints = new LocationHints(2);
+        hints.put(aid(1), new ConstellationIdentifierImpl(1, 0));
+        hints.put(aid(2), new ConstellationIdentifierImpl(2, 0));
+        // Using the first hint makes the second one the eldest.
+        hints.get(aid(1));
+        hints.put(aid(3), new ConstellationIdentifierImpl(3, 0));
+        assertEquals(2, hints.size());
+        assertEquals(new ConstellationIdentifierImpl(1, 0), hints.get(aid(1)));
+        assertNull(hints.get(aid(2)));
+        assertEquals(new ConstellationIdentifierImpl(3, 0), hints.get(aid(3)));
+    }
+}
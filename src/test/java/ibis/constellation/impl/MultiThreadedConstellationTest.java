@@ -0,0 +1,124 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.constellation.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Properties;
+
+import org.junit.Test;
+
+import ibis.constellation.AbstractContext;
+import ibis.constellation.ConstellationConfiguration;
+import ibis.constellation.ConstellationProperties;
+import ibis.constellation.Context;
+import ibis.constellation.Event;
+import ibis.constellation.FakeActivity;
+import ibis.constellation.StealPool;
+import ibis.constellation.StealStrategy;
+
+/**
+ * @version 1.0
+ * @since 1.0
+ *
+ */
+public class MultiThreadedConstellationTest {
+
+    private static ConstellationConfiguration config(String context, StealPool stealsFrom) {
+        return new ConstellationConfiguration(new Context(context), StealPool.WORLD, stealsFrom, StealStrategy.SMALLEST,
+                StealStrategy.BIGGEST, StealStrategy.BIGGEST);
+    }
+
+    private static MultiThreadedConstellation create(ConstellationConfiguration... c) throws Exception {
+        return new MultiThreadedConstellation(null, new ConstellationProperties(new Properties()), c);
+    }
+
+    @Test
+    public void testQueuedActivities() throws Exception {
+        MultiThreadedConstellation m = create(config("A", StealPool.WORLD), config("B", StealPool.WORLD));
+        assertEquals(0, m.queuedActivities());
+        m.performSubmit(new FakeActivity(new Context("A")));
+        m.performSubmit(new FakeActivity(new Context("B")));
+        m.performSubmit(new FakeActivity(new Context("B")));
+        assertEquals(3, m.queuedActivities());
+    }
+
+    @Test
+    public void testPrefetchRequestHungriest() throws Exception {
+        MultiThreadedConstellation m = create(config("A", StealPool.WORLD), config("B", StealPool.WORLD));
+        m.performSubmit(new FakeActivity(new Context("A")));
+        StealRequest sr = m.createPrefetchRequest(3);
+        assertEquals(new Context("B"), sr.context);
+        assertEquals(3, sr.size);
+        assertEquals(StealStrategy.BIGGEST, sr.remoteStrategy);
+    }
+
+    @Test
+    public void testPrefetchRequestNone() throws Exception {
+        MultiThreadedConstellation m = create(config("A", StealPool.NONE), config("B", StealPool.WORLD));
+        for (int i = 0; i < 10; i++) {
+            assertEquals(new Context("B"), m.createPrefetchRequest(1).context);
+        }
+        m = create(config("A", StealPool.NONE));
+        assertNull(m.createPrefetchRequest(1));
+    }
+
+    private static ActivityRecord record(String context, int seq) {
+        return new ActivityRecord(new FakeActivity(new Context(context)),
+                (ActivityIdentifierImpl) ImplUtil.createActivityIdentifier(1, 0, seq, false));
+    }
+
+    @Test
+    public void testAssignWorkRoundRobin() {
+        ActivityRecord[] work = { record("A", 1), record("A", 2), record("A", 3), record("A", 4) };
+        AbstractContext[] contexts = { new Context("A"), new Context("A"), new Context("A") };
+        assertArrayEquals(new int[] { 0, 1, 2, 0 }, MultiThreadedConstellation.assignWork(work, contexts));
+    }
+
+    @Test
+    public void testAssignWorkMatchingContext() {
+        ActivityRecord[] work = { record("B", 1), record("A", 2), record("B", 3), record("C", 4) };
+        AbstractContext[] contexts = { new Context("A"), new Context("B"), new Context("A") };
+        assertArrayEquals(new int[] { 1, 2, 1, 0 }, MultiThreadedConstellation.assignWork(work, contexts));
+    }
+
+    @Test
+    public void testAssignWorkNull() {
+        ActivityRecord[] work = { null, record("A", 2) };
+        AbstractContext[] contexts = { new Context("A"), new Context("A") };
+        assertArrayEquals(new int[] { 0, 0 }, MultiThreadedConstellation.assignWork(work, contexts));
+    }
+
+    @Test
+    public void testEventWaitsForPlacedActivity() throws Exception {
+        MultiThreadedConstellation m = create(config("A", StealPool.WORLD));
+        ConstellationIdentifierImpl here = (ConstellationIdentifierImpl) m.identifier();
+        ConstellationIdentifierImpl remote = ImplUtil.createConstellationIdentifier(1, 0);
+        ActivityRecord ar = new ActivityRecord(new FakeActivity(new Context("A")),
+                (ActivityIdentifierImpl) ImplUtil.createActivityIdentifier(1, 0, 7, true));
+
+        // The event overtakes the activity that was placed here.
+        Event e = new Event(ImplUtil.createActivityIdentifier(1, 0, 8, false), ar.identifier(), "data");
+        m.deliverEventMessage(new EventMessage(remote, here, e));
+        assertEquals(0, ar.pendingEvents());
+
+        m.deliverPlacedActivities(new StealReply(remote, here, StealPool.WORLD, new Context("A"), ar));
+        assertEquals(1, ar.pendingEvents());
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.constellation.impl.pool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import ibis.constellation.AbstractContext;
+import ibis.constellation.Context;
+import ibis.constellation.OrContext;
+import ibis.constellation.StealPool;
+import ibis.constellation.StealStrategy;
+import ibis.constellation.impl.ActivityIdentifierImpl;
+import ibis.constellation.impl.ConstellationIdentifierImpl;
+import ibis.constellation.impl.EventMessage;
+import ibis.constellation.impl.LocationHint;
+import ibis.constellation.impl.StealReply;
+import ibis.constellation.impl.StealRequest;
+import ibis.constellation.Event;
+
+public class ControlMessageCodecTest {
+
+    private final ControlMessageCodec.Encoder encoder = new ControlMessageCodec.Encoder();
+    private final ControlMessageCodec.Decoder decoder = new ControlMessageCodec.Decoder();
+
+    private int lastLength;
+
+    private Object roundTrip(Object o) throws Exception {
+        lastLength = encoder.encode(o);
+        return decoder.decode(Arrays.copyOf(encoder.buffer(), lastLength), lastLength);
+    }
+
+    private static StealRequest stealRequest() {
+        return new StealRequest(new ConstellationIdentifierImpl(1, 2),
+                new OrContext(new Context("A", 1, 10), new Context("B")), StealStrategy.SMALLEST, StealStrategy.BIGGEST,
+                StealStrategy.SMALLEST, StealPool.merge(new StealPool("X"), new StealPool("Y")), 3);
+    }
+
+    @Test
+    public void testNull() throws Exception {
+        assertNull(roundTrip(null));
+    }
+
+    @Test
+    public void testLong() throws Exception {
+        assertEquals(42L, roundTrip(42L));
+    }
+
+    @Test
+    public void testSerializable() throws Exception {
+        ArrayList<String> l = new ArrayList<String>();
+        l.add("hello");
+        assertEquals(l, roundTrip(l));
+    }
+
+    @Test
+    public void testStealRequest() throws Exception {
+        StealRequest r = (StealRequest) roundTrip(stealRequest());
+        assertEquals(new ConstellationIdentifierImpl(1, 2), r.source);
+        assertEquals(new OrContext(new Context("A", 1, 10), new Context("B")), r.context);
+        assertEquals(StealStrategy.SMALLEST, r.localStrategy);
+        assertEquals(StealStrategy.BIGGEST, r.constellationStrategy);
+        assertEquals(StealStrategy.SMALLEST, r.remoteStrategy);
+        assertEquals(StealPool.merge(new StealPool("X"), new StealPool("Y")), r.pool);
+        assertEquals(3, r.size);
+        assertFalse(r.isLocal());
+    }
+
+    @Test
+    public void testStealRequestInterned() throws Exception {
+        roundTrip(stealRequest());
+        int first = lastLength;
+        StealRequest r = (StealRequest) roundTrip(stealRequest());
+        assertTrue(lastLength < first);
+        assertTrue(lastLength < 40);
+        assertEquals(new OrContext(new Context("A", 1, 10), new Context("B")), r.context);
+    }
+
+    @Test
+    public void testReset() throws Exception {
+        roundTrip(stealRequest());
+        int first = lastLength;
+        encoder.reset();
+        StealRequest r = (StealRequest) roundTrip(stealRequest());
+        assertEquals(first, lastLength);
+        assertEquals(3, r.size);
+    }
+
+    @Test
+    public void testEmptyStealReply() throws Exception {
+        StealReply r = (StealReply) roundTrip(new StealReply(new ConstellationIdentifierImpl(1, 2),
+                new ConstellationIdentifierImpl(3, 4), StealPool.WORLD, new Context("A"), (ibis.constellation.impl.ActivityRecord[]) null));
+        assertTrue(r.isEmpty());
+        assertEquals(new ConstellationIdentifierImpl(3, 4), r.target);
+        assertEquals(StealPool.WORLD, r.getPool());
+        assertEquals(new Context("A"), r.getContext());
+    }
+
+    @Test
+    public void testEventMessage() throws Exception {
+        ConstellationIdentifierImpl cid = new ConstellationIdentifierImpl(1, 2);
+        ActivityIdentifierImpl source = ActivityIdentifierImpl.createActivityIdentifier(cid, 5, false);
+        ActivityIdentifierImpl target = ActivityIdentifierImpl.createActivityIdentifier(cid, 6, true);
+        EventMessage m = (EventMessage) roundTrip(new EventMessage(cid, new ConstellationIdentifierImpl(3, 4),
+                new Event(source, target, "data")));
+        assertEquals(cid, m.source);
+        assertEquals(source, m.event.getSource());
+        assertEquals(target, m.event.getTarget());
+        assertTrue(((ActivityIdentifierImpl) m.event.getTarget()).expectsEvents());
+        assertEquals("data", m.event.getData());
+        assertFalse(m.isForwarded());
+    }
+
+    @Test
+    public void testForwardedEventMessage() throws Exception {
+        ConstellationIdentifierImpl cid = new ConstellationIdentifierImpl(1, 2);
+        ActivityIdentifierImpl target = ActivityIdentifierImpl.createActivityIdentifier(cid, 6, true);
+        EventMessage m = new EventMessage(cid, new ConstellationIdentifierImpl(3, 4), new Event(target, target, null));
+        m.setForwarded();
+        assertTrue(((EventMessage) roundTrip(m)).isForwarded());
+    }
+
+    @Test
+    public void testLocationHint() throws Exception {
+        ConstellationIdentifierImpl cid = new ConstellationIdentifierImpl(1, 2);
+        ActivityIdentifierImpl aid = ActivityIdentifierImpl.createActivityIdentifier(cid, 7, true);
+        LocationHint h = (LocationHint) roundTrip(new LocationHint(new ConstellationIdentifierImpl(3, 0), cid, aid));
+        assertEquals(new ConstellationIdentifierImpl(3, 0), h.source);
+        assertEquals(cid, h.target);
+        assertEquals(aid, h.activity);
+    }
+
+    @Test
+    public void testRankInfo() throws Exception {
+        RankInfo r = (RankInfo) roundTrip(new RankInfo(7, new FakeNodeIdentifier("node")));
+        assertEquals(7, r.rank);
+        assertEquals(new FakeNodeIdentifier("node"), r.id);
+        int first = lastLength;
+        roundTrip(new RankInfo(8, new FakeNodeIdentifier("node")));
+        assertTrue(lastLength < first);
+    }
+
+    @Test
+    public void testRankTableUpdate() throws Exception {
+        RankTableUpdate u = (RankTableUpdate) roundTrip(new RankTableUpdate(2, new RankInfo[] {
+                new RankInfo(3, new FakeNodeIdentifier("a")), new RankInfo(5, new FakeNodeIdentifier("b")) }));
+        assertEquals(2, u.from);
+        assertEquals(2, u.entries.length);
+        assertEquals(5, u.entries[1].rank);
+        assertEquals(new FakeNodeIdentifier("b"), u.entries[1].id);
+    }
+
+    @Test
+    public void testPoolDelta() throws Exception {
+        PoolDelta d = (PoolDelta) roundTrip(new PoolDelta("tag", 4, new FakeNodeIdentifier("n"), false));
+        assertEquals("tag", d.tag);
+        assertEquals(4, d.from);
+        assertEquals(new FakeNodeIdentifier("n"), d.id);
+        assertFalse(d.joined);
+        assertNull(d.contexts);
+        d = (PoolDelta) roundTrip(new PoolDelta("tag", 5, new FakeNodeIdentifier("n"), true,
+                new AbstractContext[] { new Context("A") }));
+        assertTrue(d.joined);
+        assertEquals(new Context("A"), d.contexts[0]);
+    }
+
+    @Test
+    public void testQuiescenceInfo() throws Exception {
+        QuiescenceInfo q = (QuiescenceInfo) roundTrip(new QuiescenceInfo(2, 10, 9, true));
+        assertEquals(2, q.wave);
+        assertEquals(10, q.sent);
+        assertEquals(9, q.received);
+        assertTrue(q.passive);
+    }
+
+    @Test
+    public void testProfilingChunk() throws Exception {
+        ProfilingChunk c = (ProfilingChunk) roundTrip(new ProfilingChunk(1, 3, new byte[] { 4, 5, 6 }));
+        assertEquals(1, c.sequence);
+        assertEquals(3, c.chunks);
+        assertEquals(3, c.data.length);
+        assertEquals(6, c.data[2]);
+    }
+
+    @Test
+    public void testPoolRequests() throws Exception {
+        PoolRegisterRequest r = (PoolRegisterRequest) roundTrip(new PoolRegisterRequest(new FakeNodeIdentifier("n"), "tag"));
+        assertEquals("tag", r.tag);
+        assertNull(r.contexts);
+        r = (PoolRegisterRequest) roundTrip(new PoolRegisterRequest(new FakeNodeIdentifier("n"), "tag",
+                new AbstractContext[] { new Context("A"), new Context("B", 1, 2) }));
+        assertEquals(2, r.contexts.length);
+        assertEquals(new Context("B", 1, 2), r.contexts[1]);
+        PoolUpdateRequest u = (PoolUpdateRequest) roundTrip(new PoolUpdateRequest(new FakeNodeIdentifier("n"), "tag", 12));
+        assertEquals(new FakeNodeIdentifier("n"), u.source);
+        assertEquals(12, u.timestamp);
+    }
+
+    @Test
+    public void testLoadInfo() throws Exception {
+        LoadInfo l = (LoadInfo) roundTrip(new LoadInfo(5, new AbstractContext[] { new Context("A"), new OrContext(
+                new Context("B"), new Context("C", 1, 2)) }, new int[] { 3, 4 }));
+        assertEquals(5, l.timestamp);
+        assertEquals(new Context("A"), l.contexts[0]);
+        assertEquals(new OrContext(new Context("B"), new Context("C", 1, 2)), l.contexts[1]);
+        assertEquals(3, l.queued[0]);
+        assertEquals(4, l.queued[1]);
+    }
+
+    @Test(expected = IOException.class)
+    public void testCorrupt() throws Exception {
+        decoder.decode(new byte[] { 0, 99 }, 2);
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.constellation.impl.pool;
+
+import ibis.constellation.impl.pool.communication.NodeIdentifier;
+
+/**
+ * @version 1.0
+ * @since 1.0
+ *
+ */
+public class FakeNodeIdentifier implements NodeIdentifier {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String name;
+
+    public FakeNodeIdentifier(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public String name() {
+        return name;
+    }
+
+    @Override
+    public String site() {
+        return "";
+    }
+
+    @Override
+    public int hashCode() {
+        return name.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof FakeNodeIdentifier && ((FakeNodeIdentifier) o).name.equals(name);
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.constellation.impl.pool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ibis.constellation.AbstractContext;
+import ibis.constellation.Context;
+import ibis.constellation.OrContext;
+import ibis.constellation.impl.pool.communication.NodeIdentifier;
+
+/**
+ * @version 1.0
+ * @since 1.0
+ *
+ */
+public class LoadTableTest {
+
+    private static final NodeIdentifier LOCAL = new FakeNodeIdentifier("local");
+    private static final NodeIdentifier A = new FakeNodeIdentifier("a");
+    private static final NodeIdentifier B = new FakeNodeIdentifier("b");
+
+    private static LoadInfo load(long timestamp, String context, int queued) {
+        return new LoadInfo(timestamp, new AbstractContext[] { new Context(context) }, new int[] { queued });
+    }
+
+    private static ArrayList<NodeIdentifier> members() {
+        ArrayList<NodeIdentifier> l = new ArrayList<NodeIdentifier>();
+        l.add(LOCAL);
+        l.add(A);
+        l.add(B);
+        return l;
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testLoadInfoLengths() {
+        new LoadInfo(0, new AbstractContext[] { new Context("A") }, new int[0]);
+    }
+
+    @Test
+    public void testAvailable() {
+        LoadInfo l = new LoadInfo(0, new AbstractContext[] { new Context("X", 0, 10), new Context("Y") }, new int[] { 3, 4 });
+        assertEquals(3, l.available(new Context("X", 5, 5)));
+        assertEquals(0, l.available(new Context("X", 11, 12)));
+        assertEquals(7, l.available(new OrContext(new Context("X"), new Context("Y"))));
+        assertEquals(0, l.available(new Context("Z")));
+    }
+
+    @Test
+    public void testSelectUnknown() {
+        LoadTable t = new LoadTable(1000);
+        assertNull(t.select(members(), LOCAL, new Context("X"), new Random()));
+    }
+
+    @Test
+    public void testSelectMatching() {
+        LoadTable t = new LoadTable(1000);
+        t.update(A, load(1, "X", 10));
+        t.update(B, load(1, "Y", 10));
+        t.update(LOCAL, load(1, "X", 1000));
+        Random r = new Random(42);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(A, t.select(members(), LOCAL, new Context("X"), r));
+            assertEquals(B, t.select(members(), LOCAL, new Context("Y"), r));
+        }
+        assertNull(t.select(members(), LOCAL, new Context("Z"), r));
+    }
+
+    @Test
+    public void testSelectWeighted() {
+        LoadTable t = new LoadTable(1000);
+        t.update(A, load(1, "X", 90));
+        t.update(B, load(1, "X", 10));
+        Random r = new Random(42);
+        int a = 0;
+        for (int i = 0; i < 1000; i++) {
+            if (t.select(members(), LOCAL, new Context("X"), r).equals(A)) {
+                a++;
+            }
+        }
+        assertEquals(900, a, 50);
+    }
+
+    @Test
+    public void testOlderIgnored() {
+        LoadTable t = new LoadTable(1000);
+        t.update(A, load(2, "X", 10));
+        t.update(A, load(1, "X", 0));
+        assertEquals(A, t.select(members(), LOCAL, new Context("X"), new Random()));
+        t.update(A, load(3, "X", 0));
+        assertNull(t.select(members(), LOCAL, new Context("X"), new Random()));
+    }
+
+    @Test
+    public void testStale() {
+        LoadTable t = new LoadTable(-1);
+        t.update(A, load(1, "X", 10));
+        assertNull(t.select(members(), LOCAL, new Context("X"), new Random()));
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.constellation.impl.pool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import ibis.constellation.impl.pool.communication.Message;
+import ibis.constellation.impl.pool.communication.NodeIdentifier;
+
+public class MessageHandlerPoolTest {
+
+    private static final byte PRIORITY = 1;
+    private static final byte NORMAL = 2;
+    private static final byte BLOCK = 3;
+
+    private static class TestHandler implements MessageHandlerPool.Handler {
+
+        final ArrayList<Message> handled = new ArrayList<Message>();
+
+        final CountDownLatch started = new CountDownLatch(1);
+
+        final CountDownLatch blocker = new CountDownLatch(1);
+
+        @Override
+        public void handle(NodeIdentifier source, Message m) {
+            if (m.opcode == BLOCK) {
+                started.countDown();
+                try {
+                    blocker.await();
+                } catch (InterruptedException e) {
+                    // ignored
+                }
+                return;
+            }
+            synchronized (handled) {
+                handled.add(m);
+                handled.notifyAll();
+            }
+        }
+
+        @Override
+        public boolean isPriority(byte opcode) {
+            return opcode == PRIORITY;
+        }
+
+        void waitFor(int n) throws InterruptedException {
+            synchronized (handled) {
+                while (handled.size() < n) {
+                    handled.wait();
+                }
+            }
+        }
+    }
+
+    private final TestHandler handler = new TestHandler();
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testIllegalThreads() {
+        new MessageHandlerPool(handler, 0, 10);
+    }
+
+    @Test
+    public void testPriority() throws InterruptedException {
+        MessageHandlerPool pool = new MessageHandlerPool(handler, 1, 10);
+        pool.enqueue(null, new Message(BLOCK, null));
+        handler.started.await();
+        pool.enqueue(null, new Message(NORMAL, 0));
+        pool.enqueue(null, new Message(NORMAL, 1));
+        pool.enqueue(null, new Message(PRIORITY, 2));
+        handler.blocker.countDown();
+        handler.waitFor(3);
+        assertEquals(2, handler.handled.get(0).contents);
+        assertEquals(0, handler.handled.get(1).contents);
+        assertEquals(1, handler.handled.get(2).contents);
+        pool.done();
+    }
+
+    @Test
+    public void testBounded() throws InterruptedException {
+        final MessageHandlerPool pool = new MessageHandlerPool(handler, 1, 2);
+        pool.enqueue(null, new Message(BLOCK, null));
+        handler.started.await();
+        pool.enqueue(null, new Message(NORMAL, 0));
+        pool.enqueue(null, new Message(NORMAL, 1));
+        // Priority messages are not limited.
+        pool.enqueue(null, new Message(PRIORITY, 2));
+
+        final CountDownLatch enqueued = new CountDownLatch(1);
+        Thread t = new Thread() {
+            @Override
+            public void run() {
+                pool.enqueue(null, new Message(NORMAL, 3));
+                enqueued.countDown();
+            }
+        };
+        t.start();
+        assertFalse(enqueued.await(100, TimeUnit.MILLISECONDS));
+        handler.blocker.countDown();
+        assertTrue(enqueued.await(10, TimeUnit.SECONDS));
+        handler.waitFor(4);
+        pool.done();
+    }
+
+    @Test
+    public void testManyThreads() throws InterruptedException {
+        MessageHandlerPool pool = new MessageHandlerPool(handler, 4, 16);
+        for (int i = 0; i < 1000; i++) {
+            pool.enqueue(null, new Message(i % 3 == 0 ? PRIORITY : NORMAL, i));
+        }
+        handler.waitFor(1000);
+        pool.done();
+    }
+}
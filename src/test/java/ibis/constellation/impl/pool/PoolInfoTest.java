@@ -18,12 +18,16 @@ package ibis.constellation.impl.pool;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
+import java.util.Random;
 
 import org.junit.Test;
 
+import ibis.constellation.AbstractContext;
+import ibis.constellation.Context;
 import ibis.constellation.impl.pool.communication.NodeIdentifier;
 import ibis.constellation.impl.pool.communication.ibis.NodeIdentifierImpl;
 import ibis.ipl.IbisIdentifier;
@@ -297,4 +301,137 @@ public class PoolInfoTest {
         assertEquals(tmp.getMembers(), list);
     }
 
+    @Test
+    public void testAddMemberTwice() {
+        NodeIdentifier id = new FakeNodeIdentifier("a");
+        PoolInfo tmp = new PoolInfo("Hello", id, true);
+        assertFalse(tmp.addMember(id));
+        assertEquals(1, tmp.currentTimeStamp());
+    }
+
+    @Test
+    public void testRemoveMiddleMember() {
+        NodeIdentifier a = new FakeNodeIdentifier("a");
+        NodeIdentifier b = new FakeNodeIdentifier("b");
+        NodeIdentifier c = new FakeNodeIdentifier("c");
+        PoolInfo tmp = new PoolInfo("Hello", a, true);
+        tmp.addMember(b);
+        tmp.addMember(c);
+        assertTrue(tmp.removeMember(b));
+        assertFalse(tmp.removeMember(b));
+        assertEquals(2, tmp.nMembers());
+        assertTrue(tmp.removeMember(c));
+        assertTrue(tmp.getMembers().contains(a));
+        assertEquals(1, tmp.nMembers());
+    }
+
+    @Test
+    public void testApplyDelta() {
+        NodeIdentifier a = new FakeNodeIdentifier("a");
+        NodeIdentifier b = new FakeNodeIdentifier("b");
+        PoolInfo tmp = new PoolInfo("Hello", a, false);
+        assertTrue(tmp.applyDelta(new PoolDelta("Hello", 1, b, true)));
+        assertEquals(2, tmp.currentTimeStamp());
+        assertEquals(2, tmp.nMembers());
+        // An old change is ignored.
+        assertTrue(tmp.applyDelta(new PoolDelta("Hello", 1, b, false)));
+        assertEquals(2, tmp.nMembers());
+        assertTrue(tmp.applyDelta(new PoolDelta("Hello", 2, b, false)));
+        assertEquals(1, tmp.nMembers());
+        assertEquals(3, tmp.currentTimeStamp());
+    }
+
+    @Test
+    public void testApplyDeltaGap() {
+        NodeIdentifier a = new FakeNodeIdentifier("a");
+        PoolInfo tmp = new PoolInfo("Hello", a, false);
+        assertFalse(tmp.applyDelta(new PoolDelta("Hello", 2, new FakeNodeIdentifier("b"), true)));
+        assertEquals(1, tmp.currentTimeStamp());
+        assertEquals(1, tmp.nMembers());
+    }
+
+    @Test
+    public void testFollowers() {
+        PoolInfo tmp = new PoolInfo("Hello", new FakeNodeIdentifier("a"), true);
+        assertEquals(0, tmp.getFollowers().length);
+        assertTrue(tmp.addFollower(new FakeNodeIdentifier("b")));
+        assertFalse(tmp.addFollower(new FakeNodeIdentifier("b")));
+        assertEquals(1, tmp.getFollowers().length);
+    }
+
+    @Test
+    public void testCanSatisfy() {
+        NodeIdentifier a = new FakeNodeIdentifier("a");
+        NodeIdentifier b = new FakeNodeIdentifier("b");
+        PoolInfo tmp = new PoolInfo("Hello", a, true);
+        tmp.addMember(b, new AbstractContext[] { new Context("GPU") });
+        // Members that did not advertise their contexts may have any work.
+        assertTrue(tmp.canSatisfy(a, new Context("CPU")));
+        assertTrue(tmp.canSatisfy(b, new Context("GPU", 3)));
+        assertFalse(tmp.canSatisfy(b, new Context("CPU")));
+    }
+
+    @Test
+    public void testSelectRandomContext() {
+        NodeIdentifier a = new FakeNodeIdentifier("a");
+        NodeIdentifier b = new FakeNodeIdentifier("b");
+        NodeIdentifier c = new FakeNodeIdentifier("c");
+        PoolInfo tmp = new PoolInfo("Hello", a, true);
+        tmp.setContexts(a, new AbstractContext[] { new Context("CPU") });
+        tmp.addMember(b, new AbstractContext[] { new Context("GPU") });
+        tmp.addMember(c, new AbstractContext[] { new Context("CPU") });
+        Random random = new Random(1);
+        for (int i = 0; i < 20; i++) {
+            assertEquals(c, tmp.selectRandom(random, a, new Context("CPU")));
+            assertEquals(b, tmp.selectRandom(random, a, new Context("GPU")));
+        }
+        assertNull(tmp.selectRandom(random, a, new Context("FPGA")));
+    }
+
+    @Test
+    public void testDeltaContexts() {
+        NodeIdentifier a = new FakeNodeIdentifier("a");
+        NodeIdentifier b = new FakeNodeIdentifier("b");
+        PoolInfo tmp = new PoolInfo("Hello", a, false);
+        tmp.applyDelta(new PoolDelta("Hello", 1, b, true, new AbstractContext[] { new Context("GPU") }));
+        assertEquals(new Context("GPU"), tmp.getContexts(b)[0]);
+        // The contexts travel with a copy, and are dropped with the member.
+        assertEquals(new Context("GPU"), new PoolInfo(tmp).getContexts(b)[0]);
+        tmp.applyDelta(new PoolDelta("Hello", 2, b, false));
+        assertNull(tmp.getContexts(b));
+    }
+
+    @Test
+    public void testSelectCapable() {
+        NodeIdentifier a = new FakeNodeIdentifier("a");
+        NodeIdentifier b = new FakeNodeIdentifier("b");
+        NodeIdentifier c = new FakeNodeIdentifier("c");
+        PoolInfo tmp = new PoolInfo("Hello", a, true);
+        tmp.addMember(b);
+        tmp.addMember(c, new AbstractContext[] { new Context("GPU") });
+        Random random = new Random(2);
+        // Only members that advertised a matching context are capable.
+        for (int i = 0; i < 20; i++) {
+            assertEquals(c, tmp.selectCapable(random, a, new Context("GPU")));
+        }
+        assertNull(tmp.selectCapable(random, a, new Context("CPU")));
+        assertNull(tmp.selectCapable(random, c, new Context("GPU")));
+    }
+
+    @Test
+    public void testSelectCapableLargePool() {
+        NodeIdentifier a = new FakeNodeIdentifier("a");
+        NodeIdentifier c = new FakeNodeIdentifier("c");
+        PoolInfo tmp = new PoolInfo("Hello", a, true);
+        for (int i = 0; i < 100; i++) {
+            tmp.addMember(new FakeNodeIdentifier("b" + i));
+        }
+        tmp.addMember(c, new AbstractContext[] { new Context("GPU") });
+        Random random = new Random(3);
+        // Sampling rarely hits the single capable member, so the selection falls back to counting.
+        for (int i = 0; i < 20; i++) {
+            assertEquals(c, tmp.selectCapable(random, a, new Context("GPU")));
+        }
+        assertNull(tmp.selectCapable(random, c, new Context("GPU")));
+    }
 }
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.constellation.impl.pool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * @version 1.0
+ * @since 1.0
+ *
+ */
+public class QuiescenceDetectorTest {
+
+    private static boolean wave(QuiescenceDetector d, QuiescenceInfo... others) {
+        int wave = d.startWave(others.length + 1);
+        d.addReport(d.report(wave, true));
+        for (QuiescenceInfo info : others) {
+            d.addReport(new QuiescenceInfo(wave, info.sent, info.received, info.passive));
+        }
+        return d.endWave(d.awaitWave(0));
+    }
+
+    @Test
+    public void testReport() {
+        QuiescenceDetector d = new QuiescenceDetector();
+        d.sent();
+        d.sent();
+        d.unsent();
+        d.received();
+        QuiescenceInfo info = d.report(3, false);
+        assertEquals(3, info.wave);
+        assertEquals(1, info.sent);
+        assertEquals(1, info.received);
+        assertFalse(info.passive);
+    }
+
+    @Test
+    public void testTwoQuietWaves() {
+        QuiescenceDetector d = new QuiescenceDetector();
+        d.sent();
+        QuiescenceInfo other = new QuiescenceInfo(0, 0, 1, true);
+        assertFalse(wave(d, other));
+        assertTrue(wave(d, other));
+    }
+
+    @Test
+    public void testInFlight() {
+        QuiescenceDetector d = new QuiescenceDetector();
+        d.sent();
+        QuiescenceInfo other = new QuiescenceInfo(0, 0, 0, true);
+        assertFalse(wave(d, other));
+        assertFalse(wave(d, other));
+    }
+
+    @Test
+    public void testActive() {
+        QuiescenceDetector d = new QuiescenceDetector();
+        assertFalse(wave(d, new QuiescenceInfo(0, 0, 0, false)));
+        assertFalse(wave(d, new QuiescenceInfo(0, 0, 0, true)));
+        assertTrue(wave(d, new QuiescenceInfo(0, 0, 0, true)));
+    }
+
+    @Test
+    public void testCountsChanged() {
+        QuiescenceDetector d = new QuiescenceDetector();
+        assertFalse(wave(d, new QuiescenceInfo(0, 0, 0, true)));
+        d.sent();
+        assertFalse(wave(d, new QuiescenceInfo(0, 0, 1, true)));
+        assertTrue(wave(d, new QuiescenceInfo(0, 0, 1, true)));
+    }
+
+    @Test
+    public void testMissingReply() {
+        QuiescenceDetector d = new QuiescenceDetector();
+        int wave = d.startWave(2);
+        d.addReport(d.report(wave, true));
+        assertFalse(d.awaitWave(10));
+        assertFalse(d.endWave(false));
+        assertFalse(wave(d, new QuiescenceInfo(0, 0, 0, true)));
+    }
+
+    @Test
+    public void testOldReplyIgnored() {
+        QuiescenceDetector d = new QuiescenceDetector();
+        int wave = d.startWave(2);
+        d.addReport(d.report(wave, true));
+        d.addReport(new QuiescenceInfo(wave - 1, 0, 0, true));
+        assertFalse(d.awaitWave(0));
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.constellation.impl.pool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import ibis.constellation.impl.pool.communication.NodeIdentifier;
+
+/**
+ * @version 1.0
+ * @since 1.0
+ *
+ */
+public class RankTableTest {
+
+    private static final NodeIdentifier M = new FakeNodeIdentifier("master");
+    private static final NodeIdentifier A = new FakeNodeIdentifier("a");
+    private static final NodeIdentifier B = new FakeNodeIdentifier("b");
+
+    private static RankTable master() {
+        RankTable t = new RankTable();
+        t.add(new RankInfo(0, M));
+        t.add(new RankInfo(1, A));
+        t.add(new RankInfo(2, B));
+        return t;
+    }
+
+    @Test
+    public void testAdd() {
+        RankTable t = master();
+        assertEquals(3, t.version());
+        assertFalse(t.add(new RankInfo(1, A)));
+        assertEquals(3, t.version());
+        assertEquals(2, t.members(M).length);
+    }
+
+    @Test
+    public void testSince() {
+        RankTableUpdate u = master().since(1);
+        assertEquals(1, u.from);
+        assertEquals(3, u.to());
+        assertEquals(A, u.entries[0].id);
+        assertEquals(0, master().since(5).entries.length);
+    }
+
+    @Test
+    public void testApplySnapshot() {
+        RankTable t = new RankTable();
+        RankInfo[] entries = t.apply(master().since(0));
+        assertEquals(3, entries.length);
+        assertEquals(3, t.version());
+    }
+
+    @Test
+    public void testApplyOverlap() {
+        RankTable t = new RankTable();
+        t.apply(master().since(0));
+        RankTable m = master();
+        m.add(new RankInfo(3, new FakeNodeIdentifier("c")));
+        RankInfo[] entries = t.apply(m.since(2));
+        assertEquals(1, entries.length);
+        assertEquals(3, entries[0].rank);
+        assertEquals(4, t.version());
+    }
+
+    @Test
+    public void testApplyGap() {
+        RankTable t = new RankTable();
+        assertNull(t.apply(master().since(1)));
+        assertEquals(0, t.version());
+        assertEquals(3, t.apply(master().since(0)).length);
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.constellation.impl.pool.communication;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+public class AsyncCommunicationLayerTest {
+
+    private static class TestNode implements NodeIdentifier {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String name;
+
+        TestNode(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String name() {
+            return name;
+        }
+
+        @Override
+        public String site() {
+            return "";
+        }
+
+        @Override
+        public int hashCode() {
+            return name.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof TestNode && ((TestNode) o).name.equals(name);
+        }
+    }
+
+    private static class TestLayer implements CommunicationLayer {
+
+        final ArrayList<Message> sent = new ArrayList<Message>();
+
+        volatile NodeIdentifier failing;
+
+        CountDownLatch blocker;
+
+        boolean cleanedUp;
+
+        @Override
+        public NodeIdentifier getMyIdentifier() {
+            return new TestNode("me");
+        }
+
+        @Override
+        public boolean sendMessage(NodeIdentifier dest, Message m) {
+            if (blocker != null) {
+                try {
+                    blocker.await();
+                } catch (InterruptedException e) {
+                    // ignored
+                }
+            }
+            if (dest.equals(failing)) {
+                return false;
+            }
+            synchronized (sent) {
+                sent.add(m);
+            }
+            return true;
+        }
+
+        @Override
+        public NodeIdentifier getMaster() {
+            return null;
+        }
+
+        @Override
+        public int getRank() {
+            return 0;
+        }
+
+        @Override
+        public int getPoolSize() {
+            return 1;
+        }
+
+        @Override
+        public void terminate() throws IOException {
+        }
+
+        @Override
+        public void cleanup() {
+            cleanedUp = true;
+        }
+
+        @Override
+        public NodeIdentifier getElectionResult(String electTag, long timeout) throws IOException {
+            return null;
+        }
+
+        @Override
+        public NodeIdentifier elect(String electTag) throws IOException {
+            return null;
+        }
+
+        @Override
+        public void activate() {
+        }
+
+        @Override
+        public NodeIdentifier[] getNodeIdentifiers() {
+            return null;
+        }
+
+        @Override
+        public void cleanup(NodeIdentifier node) {
+        }
+    }
+
+    private static class TestHandler implements AsyncCommunicationLayer.FailureHandler {
+
+        final ArrayList<Message> failed = new ArrayList<Message>();
+
+        @Override
+        public synchronized void sendFailed(NodeIdentifier dest, Message m) {
+            failed.add(m);
+        }
+    }
+
+    private final TestLayer layer = new TestLayer();
+    private final TestHandler handler = new TestHandler();
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testIllegalQueueSize() {
+        new AsyncCommunicationLayer(layer, 0, 1, handler);
+    }
+
+    @Test
+    public void testOrder() {
+        AsyncCommunicationLayer a = new AsyncCommunicationLayer(layer, 1000, 3, handler);
+        for (int i = 0; i < 100; i++) {
+            assertTrue(a.sendMessage(new TestNode("other"), new Message((byte) 10, i)));
+        }
+        a.cleanup();
+        assertTrue(layer.cleanedUp);
+        assertEquals(100, layer.sent.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i, layer.sent.get(i).contents);
+        }
+    }
+
+    @Test
+    public void testQueueFull() {
+        layer.blocker = new CountDownLatch(1);
+        AsyncCommunicationLayer a = new AsyncCommunicationLayer(layer, 2, 1, handler);
+        int accepted = 0;
+        for (int i = 0; i < 10; i++) {
+            if (a.sendMessage(new TestNode("other"), new Message((byte) 10, i))) {
+                accepted++;
+            }
+        }
+        // At most one message is being sent, and two are queued.
+        assertTrue(accepted >= 2 && accepted <= 3);
+        layer.blocker.countDown();
+        a.cleanup();
+        assertEquals(accepted, layer.sent.size());
+        assertFalse(a.sendMessage(new TestNode("other"), new Message((byte) 10, null)));
+    }
+
+    @Test
+    public void testFailure() {
+        layer.failing = new TestNode("dead");
+        AsyncCommunicationLayer a = new AsyncCommunicationLayer(layer, 100, 2, handler);
+        for (int i = 0; i < 10; i++) {
+            assertTrue(a.sendMessage(new TestNode("dead"), new Message((byte) 10, i)));
+            assertTrue(a.sendMessage(new TestNode("alive"), new Message((byte) 10, i)));
+        }
+        a.cleanup();
+        assertEquals(10, layer.sent.size());
+        assertEquals(10, handler.failed.size());
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.constellation.impl.pool.communication;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.junit.Test;
+
+import ibis.constellation.impl.pool.ControlMessageCodec;
+import ibis.constellation.util.ByteBufferReceiver;
+import ibis.constellation.util.ByteBuffers;
+
+public class MessageStreamsTest {
+
+    private static class Data implements ByteBuffers, Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        final String label;
+        transient ByteBuffer heap;
+        transient ByteBuffer direct;
+
+        Data(String label) {
+            this.label = label;
+        }
+
+        @Override
+        public void pushByteBuffers(List<ByteBuffer> list) {
+            list.add(heap);
+            list.add(direct);
+        }
+
+        @Override
+        public void popByteBuffers(List<ByteBuffer> list) {
+            heap = list.remove(0);
+            direct = list.remove(0);
+        }
+    }
+
+    private static class Receiving extends Data implements ByteBufferReceiver {
+
+        private static final long serialVersionUID = 1L;
+
+        static ByteBuffer[] supplied;
+
+        Receiving(String label) {
+            super(label);
+        }
+
+        @Override
+        public ByteBuffer[] supplyByteBuffers(int[] sizes) {
+            return supplied;
+        }
+    }
+
+    private static Message roundTrip(Message m, ControlMessageCodec.Encoder e, ControlMessageCodec.Decoder d)
+            throws IOException, ClassNotFoundException {
+        return roundTrip(m, e, d, false);
+    }
+
+    private static Message roundTrip(Message m, ControlMessageCodec.Encoder e, ControlMessageCodec.Decoder d, boolean partial)
+            throws IOException, ClassNotFoundException {
+        ByteArrayOutputStream b = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(b);
+        MessageStreams.writeMessage(out, m, e, partial);
+        out.flush();
+        return MessageStreams.readMessage(new DataInputStream(new ByteArrayInputStream(b.toByteArray())), d);
+    }
+
+    @Test
+    public void testSerialized() throws Exception {
+        Message m = roundTrip(new Message((byte) 7, "hello"), null, null);
+        assertEquals(7, m.opcode);
+        assertEquals("hello", m.contents);
+    }
+
+    @Test
+    public void testNullContents() throws Exception {
+        Message m = roundTrip(new Message((byte) 3, null), null, null);
+        assertEquals(3, m.opcode);
+        assertNull(m.contents);
+    }
+
+    @Test
+    public void testEncoded() throws Exception {
+        ControlMessageCodec.Encoder e = new ControlMessageCodec.Encoder();
+        ControlMessageCodec.Decoder d = new ControlMessageCodec.Decoder();
+        assertEquals("one", roundTrip(new Message((byte) 1, "one"), e, d).contents);
+        assertEquals(Integer.valueOf(2), roundTrip(new Message((byte) 1, Integer.valueOf(2)), e, d).contents);
+    }
+
+    @Test
+    public void testByteBuffers() throws Exception {
+        Data data = new Data("x");
+        data.heap = ByteBuffer.allocate(100);
+        data.direct = ByteBuffer.allocateDirect(70000);
+        for (int i = 0; i < 100; i++) {
+            data.heap.put((byte) i);
+        }
+        for (int i = 0; i < 70000; i++) {
+            data.direct.put((byte) (i * 3));
+        }
+
+        Data result = (Data) roundTrip(new Message((byte) 10, data), null, null).contents;
+        assertEquals("x", result.label);
+        assertEquals(100, result.heap.capacity());
+        assertEquals(70000, result.direct.capacity());
+        for (int i = 0; i < 100; i++) {
+            assertEquals((byte) i, result.heap.get(i));
+        }
+        for (int i = 0; i < 70000; i++) {
+            assertEquals((byte) (i * 3), result.direct.get(i));
+        }
+    }
+
+    @Test
+    public void testPartialSlices() throws Exception {
+        ByteBuffer whole = ByteBuffer.allocate(1000);
+        for (int i = 0; i < 1000; i++) {
+            whole.put((byte) i);
+        }
+        Data data = new Data("slices");
+        whole.position(100);
+        whole.limit(300);
+        data.heap = whole.slice();
+        data.direct = ByteBuffer.allocateDirect(50);
+        data.direct.position(10);
+        data.direct.limit(20);
+
+        Data result = (Data) roundTrip(new Message((byte) 10, data), null, null, true).contents;
+        assertEquals(0, result.heap.position());
+        assertEquals(200, result.heap.limit());
+        for (int i = 0; i < 200; i++) {
+            assertEquals((byte) (i + 100), result.heap.get(i));
+        }
+        assertEquals(10, result.direct.remaining());
+        // The sent buffers are left as they were.
+        assertEquals(0, data.heap.position());
+        assertEquals(10, data.direct.position());
+        assertEquals(20, data.direct.limit());
+    }
+
+    @Test
+    public void testSuppliedBuffers() throws Exception {
+        Receiving data = new Receiving("supplied");
+        data.heap = ByteBuffer.allocate(4);
+        data.heap.putInt(0, 42);
+        data.direct = ByteBuffer.allocate(8);
+        data.direct.putLong(0, 43L);
+
+        ByteBuffer target = ByteBuffer.allocate(16);
+        target.position(8);
+        Receiving.supplied = new ByteBuffer[] { target, ByteBuffer.allocate(2) };
+        try {
+            Receiving result = (Receiving) roundTrip(new Message((byte) 10, data), null, null).contents;
+            assertSame(target, result.heap);
+            assertEquals(8, target.position());
+            assertEquals(42, target.getInt(8));
+            // Too small, so replaced.
+            assertEquals(8, result.direct.remaining());
+            assertEquals(43, result.direct.get(7));
+        } finally {
+            Receiving.supplied = null;
+        }
+    }
+}
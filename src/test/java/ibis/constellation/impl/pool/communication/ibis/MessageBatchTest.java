@@ -0,0 +1,105 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.constellation.impl.pool.communication.ibis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.NotSerializableException;
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+import ibis.constellation.Event;
+import ibis.constellation.impl.ConstellationIdentifierImpl;
+import ibis.constellation.impl.EventMessage;
+import ibis.constellation.impl.ImplUtil;
+import ibis.constellation.impl.pool.communication.Message;
+import ibis.constellation.impl.pool.communication.MessageStreams;
+
+public class MessageBatchTest {
+
+    // The opcodes used by the pool for events and steal requests.
+    private static final byte EVENT = 10;
+    private static final byte STEAL_REQUEST = 11;
+
+    private static Message event(int i) {
+        ConstellationIdentifierImpl source = ImplUtil.createConstellationIdentifier(1, 0);
+        ConstellationIdentifierImpl target = ImplUtil.createConstellationIdentifier(2, 0);
+        Event e = new Event(ImplUtil.createActivityIdentifier(1, 0, i, false), ImplUtil.createActivityIdentifier(2, 0, i, true),
+                "event " + i);
+        return new Message(EVENT, new EventMessage(source, target, e));
+    }
+
+    @Test
+    public void testEventsAreAggregated() throws Exception {
+        MessageBatch b = new MessageBatch(null);
+        for (int i = 0; i < 5; i++) {
+            Message m = event(i);
+            b.add(m, null, false);
+            // Events are not latency critical, so they wait for the ones after them.
+            assertFalse(b.mustFlush(m, 1 << 20));
+        }
+        assertEquals(5, b.count());
+
+        ArrayList<Message> taken = new ArrayList<Message>();
+        byte[] data = b.take(taken);
+        assertTrue(b.isEmpty());
+        assertEquals(5, taken.size());
+
+        // All events arrive from the single flush, in order.
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        for (int i = 0; i < 5; i++) {
+            Message m = MessageStreams.readMessage(in, null);
+            assertEquals(EVENT, m.opcode);
+            assertEquals("event " + i, ((EventMessage) m.contents).event.getData());
+        }
+        assertEquals(0, in.available());
+    }
+
+    @Test
+    public void testLatencyCriticalFlushes() throws Exception {
+        MessageBatch b = new MessageBatch(null);
+        Message m = event(0);
+        b.add(m, null, false);
+        assertTrue(b.mustFlush(m, 1));
+        Message steal = new Message(STEAL_REQUEST, "steal");
+        b.add(steal, null, false);
+        assertTrue(b.mustFlush(steal, 1 << 20));
+    }
+
+    @Test
+    public void testFailedEncodeKeepsBatch() throws Exception {
+        MessageBatch b = new MessageBatch(null);
+        b.add(event(0), null, false);
+        try {
+            b.add(new Message(EVENT, new Object()), null, false);
+            fail("Contents should not be serializable");
+        } catch (NotSerializableException e) {
+            // expected
+        }
+        assertEquals(1, b.count());
+        ArrayList<Message> taken = new ArrayList<Message>();
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(b.take(taken)));
+        assertEquals("event 0", ((EventMessage) MessageStreams.readMessage(in, null).contents).event.getData());
+        assertEquals(0, in.available());
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.constellation.impl.pool.communication.local;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.util.Properties;
+
+import org.junit.Test;
+
+import ibis.constellation.ConstellationProperties;
+import ibis.constellation.impl.pool.PoolCreationFailedException;
+import ibis.constellation.impl.pool.communication.Message;
+import ibis.constellation.impl.pool.communication.NodeIdentifier;
+
+public class LocalCommunicationLayerTest {
+
+    private static ConstellationProperties properties(String group, boolean master) {
+        Properties p = new Properties();
+        p.put(ConstellationProperties.S_COMMUNICATION, "local");
+        p.put(ConstellationProperties.S_LOCAL_GROUP, group);
+        p.put(ConstellationProperties.S_MASTER, "" + master);
+        return new ConstellationProperties(p);
+    }
+
+    @Test
+    public void testRanksAndMaster() throws PoolCreationFailedException {
+        LocalCommunicationLayer a = new LocalCommunicationLayer(properties("ranks", true), null);
+        LocalCommunicationLayer b = new LocalCommunicationLayer(properties("ranks", true), null);
+        LocalCommunicationLayer c = new LocalCommunicationLayer(properties("ranks", false), null);
+        try {
+            assertEquals(0, a.getRank());
+            assertEquals(1, b.getRank());
+            assertEquals(2, c.getRank());
+            assertEquals(a.getMyIdentifier(), b.getMaster());
+            assertEquals(a.getMyIdentifier(), c.getMaster());
+            assertEquals(3, c.getPoolSize());
+            assertNull(c.getNodeIdentifiers());
+        } finally {
+            a.cleanup();
+            b.cleanup();
+            c.cleanup();
+        }
+    }
+
+    @Test
+    public void testElections() throws Exception {
+        LocalCommunicationLayer a = new LocalCommunicationLayer(properties("elections", true), null);
+        LocalCommunicationLayer b = new LocalCommunicationLayer(properties("elections", true), null);
+        try {
+            assertNull(a.getElectionResult("pool", 10));
+            NodeIdentifier id = b.elect("pool");
+            assertEquals(b.getMyIdentifier(), id);
+            assertEquals(id, a.elect("pool"));
+            assertEquals(id, a.getElectionResult("pool", 10));
+        } finally {
+            a.cleanup();
+            b.cleanup();
+        }
+    }
+
+    @Test
+    public void testGroupDiscardedWhenEmpty() throws PoolCreationFailedException {
+        LocalCommunicationLayer a = new LocalCommunicationLayer(properties("discard", true), null);
+        a.cleanup();
+        LocalCommunicationLayer b = new LocalCommunicationLayer(properties("discard", true), null);
+        try {
+            assertEquals(0, b.getRank());
+            assertEquals(b.getMyIdentifier(), b.getMaster());
+        } finally {
+            b.cleanup();
+        }
+    }
+
+    @Test
+    public void testClosedPool() throws Exception {
+        Properties p = new Properties();
+        p.put(ConstellationProperties.S_LOCAL_GROUP, "closed");
+        p.put(ConstellationProperties.S_CLOSED, "true");
+        p.put(ConstellationProperties.S_POOLSIZE, "2");
+        final ConstellationProperties props = new ConstellationProperties(p);
+
+        final LocalCommunicationLayer[] b = new LocalCommunicationLayer[1];
+        Thread t = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    b[0] = new LocalCommunicationLayer(props, null);
+                } catch (PoolCreationFailedException e) {
+                    // checked below
+                }
+            }
+        };
+        t.start();
+        LocalCommunicationLayer a = new LocalCommunicationLayer(props, null);
+        t.join();
+        try {
+            assertEquals(2, a.getPoolSize());
+            assertArrayEquals(a.getNodeIdentifiers(), b[0].getNodeIdentifiers());
+        } finally {
+            a.cleanup();
+            b[0].cleanup();
+        }
+    }
+
+    @Test(expected = PoolCreationFailedException.class)
+    public void testClosedPoolWithoutSize() throws PoolCreationFailedException {
+        Properties p = new Properties();
+        p.put(ConstellationProperties.S_CLOSED, "true");
+        new LocalCommunicationLayer(new ConstellationProperties(p), null);
+    }
+
+    @Test
+    public void testSendToUnknownNode() throws PoolCreationFailedException {
+        LocalCommunicationLayer a = new LocalCommunicationLayer(properties("unknown", true), null);
+        try {
+            assertFalse(a.sendMessage(new LocalNodeIdentifier("unknown", 5, null), new Message((byte) 1, null)));
+            assertFalse(a.sendMessage(new LocalNodeIdentifier("other", 0, null), new Message((byte) 1, null)));
+        } finally {
+            a.cleanup();
+        }
+    }
+}
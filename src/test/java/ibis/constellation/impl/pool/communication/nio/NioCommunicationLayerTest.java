@@ -0,0 +1,52 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.constellation.impl.pool.communication.nio;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class NioCommunicationLayerTest {
+
+    @Test
+    public void testParsePeers() {
+        NioNodeIdentifier[] peers = NioCommunicationLayer.parsePeers("node1:4000, node2:4001@das5 ,10.0.0.3:4002");
+        assertEquals(3, peers.length);
+        assertEquals("node1:4000", peers[0].name());
+        assertEquals("", peers[0].site());
+        assertEquals(0, peers[0].getRank());
+        assertEquals("node2:4001", peers[1].name());
+        assertEquals("das5", peers[1].site());
+        assertEquals(2, peers[2].getRank());
+        assertEquals(4002, peers[2].getPort());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNoPeers() {
+        NioCommunicationLayer.parsePeers(" ");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMissingPort() {
+        NioCommunicationLayer.parsePeers("node1:4000,node2");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidPort() {
+        NioCommunicationLayer.parsePeers("node1:port");
+    }
+}
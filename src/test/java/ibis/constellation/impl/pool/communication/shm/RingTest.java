@@ -0,0 +1,126 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.constellation.impl.pool.communication.shm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Test;
+
+public class RingTest {
+
+    @Test
+    public void testCreateAndOpen() throws IOException {
+        File f = File.createTempFile("ring", null);
+        try {
+            Ring.create(f, 1024);
+            assertEquals(1024, Ring.open(f).capacity());
+        } finally {
+            f.delete();
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testOpenInvalid() throws IOException {
+        File f = File.createTempFile("ring", null);
+        try {
+            Ring.open(f);
+        } finally {
+            f.delete();
+        }
+    }
+
+    @Test
+    public void testSmallWrites() throws IOException {
+        File f = File.createTempFile("ring", null);
+        try {
+            DataOutputStream out = new DataOutputStream(Ring.create(f, 64).new Output(1000));
+            DataInputStream in = new DataInputStream(Ring.open(f).new Input());
+            out.writeInt(42);
+            out.writeUTF("hello");
+            out.flush();
+            assertEquals(42, in.readInt());
+            assertEquals("hello", in.readUTF());
+        } finally {
+            f.delete();
+        }
+    }
+
+    @Test
+    public void testStreamLargerThanRing() throws Exception {
+        File f = File.createTempFile("ring", null);
+        try {
+            final Ring.Output out = Ring.create(f, 100).new Output(10000);
+            final int count = 100000;
+            Thread writer = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        byte[] b = new byte[77];
+                        for (int i = 0; i < count; i += b.length) {
+                            int n = Math.min(b.length, count - i);
+                            for (int j = 0; j < n; j++) {
+                                b[j] = (byte) (i + j);
+                            }
+                            out.write(b, 0, n);
+                        }
+                        out.flush();
+                    } catch (IOException e) {
+                        // the reader will time out
+                    }
+                }
+            };
+            writer.start();
+
+            DataInputStream in = new DataInputStream(Ring.open(f).new Input());
+            byte[] b = new byte[count];
+            in.readFully(b);
+            for (int i = 0; i < count; i++) {
+                assertEquals((byte) i, b[i]);
+            }
+            writer.join();
+        } finally {
+            f.delete();
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testWriterTimesOut() throws IOException {
+        File f = File.createTempFile("ring", null);
+        try {
+            Ring.Output out = Ring.create(f, 16).new Output(10);
+            out.write(new byte[17]);
+        } finally {
+            f.delete();
+        }
+    }
+
+    @Test
+    public void testParkTime() {
+        // Recently active: short parks.
+        assertTrue(Ring.parkTime(1000, 0) <= 100000);
+        assertTrue(Ring.parkTime(100000, 5000000) <= 100000);
+        // Idle: millisecond parks, bounded.
+        assertTrue(Ring.parkTime(100000, 20000000) >= 1000000);
+        assertEquals(5000000, Ring.parkTime(100000, 60000000000L));
+    }
+}
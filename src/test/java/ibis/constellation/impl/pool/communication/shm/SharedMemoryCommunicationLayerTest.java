@@ -0,0 +1,30 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.constellation.impl.pool.communication.shm;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class SharedMemoryCommunicationLayerTest {
+
+    @Test
+    public void testSanitize() {
+        assertEquals("node1_4000", SharedMemoryCommunicationLayer.sanitize("node1:4000"));
+        assertEquals("a.b-c__d", SharedMemoryCommunicationLayer.sanitize("a.b-c/ d"));
+    }
+}
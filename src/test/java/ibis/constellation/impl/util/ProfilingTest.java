@@ -0,0 +1,88 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.constellation.impl.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+
+import org.junit.Test;
+
+import ibis.constellation.impl.TimerImpl;
+
+public class ProfilingTest {
+
+    private static Profiling createProfiling() {
+        Profiling p = new Profiling("host");
+        TimerImpl t1 = p.getTimer("java", "thread", "action");
+        t1.add(10, 20);
+        t1.add(30, 45);
+        t1.add(50, 51);
+        // A timer without standard device, thread and action.
+        TimerImpl t2 = p.getTimer();
+        t2.add(5, 100);
+        t2.add(7, 8);
+        return p;
+    }
+
+    @Test
+    public void testCountEvents() {
+        assertEquals(5, createProfiling().countEvents());
+    }
+
+    @Test
+    public void testEncodeAll() throws Exception {
+        Profiling p = createProfiling();
+        Profiling q = new Profiling("master");
+        q.decodeEvents(p.encodeEvents(0, 100));
+        assertEquals(5, q.countEvents());
+    }
+
+    @Test
+    public void testEncodeChunks() throws Exception {
+        Profiling p = createProfiling();
+        Profiling q = new Profiling("master");
+        for (int i = 0; i < 5; i += 2) {
+            q.decodeEvents(p.encodeEvents(i, 2));
+        }
+        assertEquals(5, q.countEvents());
+    }
+
+    @Test
+    public void testEncodeBeyondEnd() throws Exception {
+        Profiling q = new Profiling("master");
+        q.decodeEvents(createProfiling().encodeEvents(5, 2));
+        assertEquals(0, q.countEvents());
+    }
+
+    @Test
+    public void testTimesPreserved() throws Exception {
+        TimerImpl t = new TimerImpl("host", "java", "thread", "action");
+        t.add(1000, 3000);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        assertEquals(1, t.writeEvents(new DataOutputStream(bytes), 0, 10));
+        TimerImpl u = new TimerImpl("master");
+        u.readEvents(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())), 1);
+        assertEquals(1, u.nrTimes());
+        assertEquals(1000, u.getMinimumTime());
+        assertEquals(t.totalTimeVal(), u.totalTimeVal(), 0.0);
+        assertEquals("action", u.getAction());
+    }
+}
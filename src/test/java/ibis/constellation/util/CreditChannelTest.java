@@ -0,0 +1,153 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.constellation.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+import ibis.constellation.ActivityIdentifier;
+import ibis.constellation.Event;
+import ibis.constellation.impl.FakeConstellation;
+import ibis.constellation.impl.ImplUtil;
+
+/**
+ * @version 1.0
+ * @since 1.0
+ *
+ */
+public class CreditChannelTest {
+
+    static class Recorder extends FakeConstellation {
+
+        final ArrayList<Event> sent = new ArrayList<Event>();
+
+        @Override
+        public void send(Event e) {
+            sent.add(e);
+        }
+    }
+
+    private final ActivityIdentifier producer = ImplUtil.createActivityIdentifier(0, 1, 1, true);
+    private final ActivityIdentifier consumer = ImplUtil.createActivityIdentifier(0, 1, 2, true);
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testZeroWindow() {
+        new CreditChannel(producer, consumer, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNoOwner() {
+        new CreditChannel(null, consumer, 4);
+    }
+
+    @Test
+    public void testSendUntilNoCredits() {
+        Recorder c = new Recorder();
+        CreditChannel ch = new CreditChannel(producer, consumer, 2);
+        assertTrue(ch.canSend());
+        ch.send(c, "a");
+        ch.send(c, "b");
+        assertFalse(ch.canSend());
+        assertEquals(2, c.sent.size());
+        assertEquals(consumer, c.sent.get(0).getTarget());
+        assertEquals(producer, c.sent.get(0).getSource());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testSendWithoutCredits() {
+        Recorder c = new Recorder();
+        CreditChannel ch = new CreditChannel(producer, consumer, 1);
+        ch.send(c, "a");
+        ch.send(c, "b");
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testSendWithoutPeer() {
+        CreditChannel ch = new CreditChannel(consumer, null, 1);
+        assertFalse(ch.canSend());
+        ch.send(new Recorder(), "a");
+    }
+
+    @Test
+    public void testPeerFromFirstEvent() {
+        Recorder c = new Recorder();
+        CreditChannel p = new CreditChannel(producer, consumer, 4);
+        CreditChannel q = new CreditChannel(consumer, null, 4);
+        p.send(c, "a");
+        assertEquals("a", q.receive(c.sent.get(0)));
+        assertEquals(producer, q.getPeer());
+    }
+
+    @Test
+    public void testReleaseGrantsCredits() {
+        Recorder c = new Recorder();
+        Recorder d = new Recorder();
+        CreditChannel p = new CreditChannel(producer, consumer, 4);
+        CreditChannel q = new CreditChannel(consumer, producer, 4);
+        for (int i = 0; i < 4; i++) {
+            p.send(c, i);
+        }
+        assertFalse(p.canSend());
+
+        q.receive(c.sent.get(0));
+        q.release(d);
+        assertTrue(d.sent.isEmpty());
+        q.receive(c.sent.get(1));
+        q.release(d);
+        assertEquals(1, d.sent.size());
+
+        Event credit = d.sent.get(0);
+        assertTrue(p.accepts(credit));
+        assertFalse(p.carriesData(credit));
+        assertNull(p.receive(credit));
+        assertEquals(2, p.getCredits());
+    }
+
+    @Test
+    public void testCreditsPiggyback() {
+        Recorder c = new Recorder();
+        Recorder d = new Recorder();
+        CreditChannel p = new CreditChannel(producer, consumer, 4);
+        CreditChannel q = new CreditChannel(consumer, producer, 4);
+        p.send(c, "a");
+        p.send(c, "b");
+        q.receive(c.sent.get(0));
+        q.send(d, "reply");
+        q.receive(c.sent.get(1));
+        q.release(d);
+        assertEquals(1, d.sent.size());
+
+        assertEquals("reply", p.receive(d.sent.get(0)));
+        assertEquals(3, p.getCredits());
+    }
+
+    @Test
+    public void testAcceptsOnlyPeer() {
+        Recorder c = new Recorder();
+        CreditChannel p = new CreditChannel(producer, consumer, 4);
+        CreditChannel q = new CreditChannel(consumer, ImplUtil.createActivityIdentifier(0, 1, 3, true), 4);
+        p.send(c, "a");
+        assertFalse(q.accepts(c.sent.get(0)));
+        assertFalse(q.accepts(new Event(producer, consumer, "plain")));
+    }
+}
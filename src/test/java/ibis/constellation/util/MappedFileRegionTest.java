@@ -0,0 +1,104 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.constellation.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+public class MappedFileRegionTest {
+
+    private static File createSource() throws Exception {
+        File source = File.createTempFile("region", ".src");
+        source.deleteOnExit();
+        byte[] data = new byte[256];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        try (FileOutputStream out = new FileOutputStream(source)) {
+            out.write(data);
+        }
+        return source;
+    }
+
+    private static MappedFileRegion copy(MappedFileRegion r) throws Exception {
+        ByteArrayOutputStream b = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(b)) {
+            out.writeObject(r);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(b.toByteArray()))) {
+            return (MappedFileRegion) in.readObject();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeOffset() throws Exception {
+        new MappedFileRegion(createSource(), -1, 10);
+    }
+
+    @Test
+    public void testPush() throws Exception {
+        MappedFileRegion r = new MappedFileRegion(createSource(), 16, 32);
+        ArrayList<ByteBuffer> list = new ArrayList<ByteBuffer>();
+        r.pushByteBuffers(list);
+        assertEquals(1, list.size());
+        ByteBuffer b = list.get(0);
+        assertEquals(32, b.remaining());
+        assertEquals(16, b.get(0));
+        assertEquals(47, b.get(31));
+    }
+
+    @Test
+    public void testNoTarget() throws Exception {
+        assertNull(copy(new MappedFileRegion(createSource(), 0, 8)).supplyByteBuffers(new int[] { 8 }));
+    }
+
+    @Test
+    public void testReceiveIntoTarget() throws Exception {
+        File source = createSource();
+        File target = File.createTempFile("region", ".dst");
+        target.deleteOnExit();
+        MappedFileRegion r = copy(new MappedFileRegion(source, 100, 50, target, 10));
+        ByteBuffer[] supplied = r.supplyByteBuffers(new int[] { 50 });
+        assertEquals(1, supplied.length);
+        ByteBuffer sent = new MappedFileRegion(source, 100, 50).getBuffer();
+        supplied[0].duplicate().put(sent);
+        ArrayList<ByteBuffer> list = new ArrayList<ByteBuffer>();
+        list.add(supplied[0]);
+        r.popByteBuffers(list);
+        assertEquals(100, r.getBuffer().get(0));
+
+        try (RandomAccessFile f = new RandomAccessFile(target, "r")) {
+            assertEquals(60, f.length());
+            f.seek(10);
+            assertEquals(100, f.read());
+            f.seek(59);
+            assertEquals(149, f.read());
+        }
+    }
+}